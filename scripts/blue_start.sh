@@ -1,4 +1,4 @@
 sudo docker pull mmorrell/serum-data
 sudo docker stop blue
 sudo docker container prune -f
-sudo docker run --name blue -d -p 8080:8080 mmorrell/serum-data:latest
\ No newline at end of file
+sudo docker run --name blue -d -e OPENSERUM_DATA_DIR=/data -v serum-data-blue:/data -p 8080:8080 mmorrell/serum-data:latest
\ No newline at end of file
@@ -1,4 +1,4 @@
 sudo docker pull mmorrell/serum-data
 sudo docker stop green
 sudo docker container prune -f
-sudo docker run --name green -d -p 8081:8080 mmorrell/serum-data:latest
\ No newline at end of file
+sudo docker run --name green -d -e OPENSERUM_DATA_DIR=/data -v serum-data-green:/data -p 8081:8080 mmorrell/serum-data:latest
\ No newline at end of file
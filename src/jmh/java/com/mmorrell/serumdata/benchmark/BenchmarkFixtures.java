@@ -0,0 +1,204 @@
+package com.mmorrell.serumdata.benchmark;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.SerumUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Account data the benchmarks run on. Recorded accounts are read from {@code fixtures/} on the classpath (see
+ * {@link FixtureRecorder}). When a recording is missing, an account with the same layout is generated from a fixed
+ * seed, so results stay comparable between runs.
+ * <p>
+ * Files: {@code market-<depth>.bin}, {@code bids-<depth>.bin} and {@code asks-<depth>.bin} for a market with about
+ * that many orders per side, {@code event-queue.bin}, and {@code program-accounts.bin} (market accounts back to back).
+ */
+public class BenchmarkFixtures {
+
+    public static final byte BASE_DECIMALS = 9;
+    public static final byte QUOTE_DECIMALS = 6;
+
+    // Slab layout, see SlabReader
+    private static final int SLAB_BUMP_INDEX_OFFSET = 13;
+    private static final int SLAB_ROOT_OFFSET = 33;
+    private static final int SLAB_LEAF_COUNT_OFFSET = 37;
+    private static final int SLAB_NODES_OFFSET = 45;
+    private static final int SLAB_NODE_SIZE = 72;
+    private static final int INNER_NODE = 1;
+    private static final int LEAF_NODE = 2;
+
+    // Event queue layout, see EventQueueReader
+    private static final int EVENT_QUEUE_HEADER_SIZE = 37;
+    private static final int EVENT_QUEUE_PADDING = 7;
+    private static final int EVENT_SIZE = 88;
+    private static final int EVENT_QUEUE_CAPACITY = 2978;
+
+    private static final int PROGRAM_ACCOUNT_COUNT = 3000;
+
+    /**
+     * @param depth orders on each side
+     * @return market account data with lot sizes for the generated books
+     */
+    public static byte[] marketAccount(int depth) {
+        return recorded("market-" + depth + ".bin").orElseGet(() -> generateMarketAccount(new Random(depth)));
+    }
+
+    /**
+     * @param depth orders on the side
+     * @param bid   true for bids
+     * @return bids or asks account data
+     */
+    public static byte[] slab(int depth, boolean bid) {
+        return recorded((bid ? "bids-" : "asks-") + depth + ".bin").orElseGet(() -> generateSlab(depth, bid));
+    }
+
+    public static byte[] eventQueue() {
+        return recorded("event-queue.bin").orElseGet(BenchmarkFixtures::generateEventQueue);
+    }
+
+    /**
+     * @return every market account of a getProgramAccounts dump
+     */
+    public static List<byte[]> programAccounts() {
+        final byte[] dump = recorded("program-accounts.bin").orElse(null);
+        final List<byte[]> accounts = new ArrayList<>();
+        if (dump != null) {
+            for (int offset = 0; offset + SerumUtils.MARKET_ACCOUNT_SIZE <= dump.length;
+                 offset += SerumUtils.MARKET_ACCOUNT_SIZE) {
+                byte[] account = new byte[SerumUtils.MARKET_ACCOUNT_SIZE];
+                System.arraycopy(dump, offset, account, 0, account.length);
+                accounts.add(account);
+            }
+            return accounts;
+        }
+
+        final Random random = new Random(PROGRAM_ACCOUNT_COUNT);
+        for (int i = 0; i < PROGRAM_ACCOUNT_COUNT; i++) {
+            accounts.add(generateMarketAccount(random));
+        }
+        return accounts;
+    }
+
+    /**
+     * @return market decoded from the account, with the decimals the token registry would set
+     */
+    public static Market market(byte[] marketAccount) {
+        final Market market = Market.readMarket(marketAccount);
+        market.setBaseDecimals(BASE_DECIMALS);
+        market.setQuoteDecimals(QUOTE_DECIMALS);
+        return market;
+    }
+
+    private static Optional<byte[]> recorded(String name) {
+        try (InputStream input = BenchmarkFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            return input == null ? Optional.empty() : Optional.of(input.readAllBytes());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static byte[] generateMarketAccount(Random random) {
+        final ByteBuffer market = ByteBuffer.allocate(SerumUtils.MARKET_ACCOUNT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // Own address, mints, vaults and queues
+        for (int offset : new int[]{13, 53, 85, 117, 165, 221, 253, 285, 317}) {
+            byte[] key = new byte[32];
+            random.nextBytes(key);
+            market.put(offset, key);
+        }
+        market.putLong(149, random.nextInt(1_000_000_000)); // base deposits
+        market.putLong(197, random.nextInt(1_000_000_000)); // quote deposits
+        market.putLong(205, random.nextInt(1_000_000)); // quote fees
+        market.putLong(349, 1_000_000L); // base lot size
+        market.putLong(357, 100L); // quote lot size
+        return market.array();
+    }
+
+    /**
+     * Balanced tree over the leaves, which are in ascending price order like on chain. Bids sit just below 20_000
+     * price lots, asks start right above, a few owners place most of the orders.
+     */
+    private static byte[] generateSlab(int depth, boolean bid) {
+        final Random random = new Random(bid ? depth : -depth);
+        final int nodeCount = Math.max(1, 2 * depth - 1);
+        final ByteBuffer slab = ByteBuffer.allocate(SLAB_NODES_OFFSET + nodeCount * SLAB_NODE_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        slab.putInt(SLAB_BUMP_INDEX_OFFSET, depth == 0 ? 0 : nodeCount);
+        slab.putInt(SLAB_ROOT_OFFSET, 0);
+        slab.putLong(SLAB_LEAF_COUNT_OFFSET, depth);
+
+        final byte[][] owners = new byte[Math.max(1, depth / 4)][32];
+        for (byte[] owner : owners) {
+            random.nextBytes(owner);
+        }
+
+        final long[] prices = new long[depth];
+        long price = bid ? 20_000L - depth * 3L : 20_001L;
+        for (int i = 0; i < depth; i++) {
+            prices[i] = price;
+            // Some levels hold more than one order
+            price += random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(3);
+        }
+
+        if (depth > 0) {
+            putSubtree(slab, random, owners, prices, 0, depth - 1, new int[]{0});
+        }
+        return slab.array();
+    }
+
+    // Writes the subtree of leaves [from, to] at the next free node, returns its node index
+    private static int putSubtree(ByteBuffer slab, Random random, byte[][] owners, long[] prices, int from, int to,
+                                  int[] nextNode) {
+        final int node = nextNode[0]++;
+        final int offset = SLAB_NODES_OFFSET + node * SLAB_NODE_SIZE;
+        if (from == to) {
+            slab.putInt(offset, LEAF_NODE);
+            slab.putLong(offset + 16, prices[from]);
+            slab.put(offset + 24, owners[random.nextInt(owners.length)]);
+            slab.putLong(offset + 56, 1 + random.nextInt(10_000));
+            return node;
+        }
+
+        final int middle = (from + to) / 2;
+        slab.putInt(offset, INNER_NODE);
+        slab.putInt(offset + 24, putSubtree(slab, random, owners, prices, from, middle, nextNode));
+        slab.putInt(offset + 28, putSubtree(slab, random, owners, prices, middle + 1, to, nextNode));
+        return node;
+    }
+
+    /**
+     * Full queue of fills, each taker fill followed by its maker fill, with a wrapped head.
+     */
+    private static byte[] generateEventQueue() {
+        final Random random = new Random(EVENT_QUEUE_CAPACITY);
+        final ByteBuffer queue = ByteBuffer.allocate(EVENT_QUEUE_HEADER_SIZE + EVENT_QUEUE_CAPACITY * EVENT_SIZE +
+                EVENT_QUEUE_PADDING).order(ByteOrder.LITTLE_ENDIAN);
+        final long head = EVENT_QUEUE_CAPACITY / 3;
+        final long firstSeqNum = 1_000_000L;
+        queue.putLong(13, head);
+        queue.putLong(21, EVENT_QUEUE_CAPACITY);
+        queue.putLong(29, firstSeqNum + EVENT_QUEUE_CAPACITY);
+
+        for (int i = 0; i < EVENT_QUEUE_CAPACITY; i++) {
+            int offset = (int) (EVENT_QUEUE_HEADER_SIZE + ((head + i) % EVENT_QUEUE_CAPACITY) * EVENT_SIZE);
+            boolean maker = i % 2 == 1;
+            boolean bid = (i / 2) % 2 == 0;
+            long base = (1 + random.nextInt(1_000)) * 1_000_000L;
+            long quote = base / 50;
+            queue.put(offset, (byte) (1 | (bid ^ maker ? 4 : 0) | (maker ? 8 : 0)));
+            queue.putLong(offset + 8, bid ^ maker ? base : quote);
+            queue.putLong(offset + 16, bid ^ maker ? quote : base);
+            byte[] openOrders = new byte[32];
+            random.nextBytes(openOrders);
+            queue.put(offset + 48, openOrders);
+        }
+        return queue.array();
+    }
+}
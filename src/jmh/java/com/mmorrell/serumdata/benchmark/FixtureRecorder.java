@@ -0,0 +1,95 @@
+package com.mmorrell.serumdata.benchmark;
+
+import com.google.common.collect.Lists;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.SerumUtils;
+import com.mmorrell.serumdata.util.RpcUtil;
+import com.mmorrell.serumdata.util.SlabReader;
+import org.p2p.solanaj.core.PublicKey;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+import org.p2p.solanaj.rpc.types.AccountInfo;
+import org.p2p.solanaj.rpc.types.ProgramAccount;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Records the benchmark fixtures from mainnet into src/jmh/resources/fixtures, using OPENSERUM_ENDPOINT.
+ * For each benchmark depth, the market whose bids are closest to that depth is saved.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java -Dexec.mainClass=com.mmorrell.serumdata.benchmark.FixtureRecorder
+ * </pre>
+ */
+public class FixtureRecorder {
+
+    private static final PublicKey SERUM_PROGRAM_ID = new PublicKey("srmqPvymJeFKQ4zGQed1GFppgkRHL9kaELCbyksJtPX");
+    private static final Path FIXTURES_DIR = Path.of("src", "jmh", "resources", "fixtures");
+    private static final int[] DEPTHS = {10, 100, 1000};
+    // Markets with the most quote deposits, the ones whose books are worth looking at
+    private static final int CANDIDATE_MARKETS = 300;
+
+    public static void main(String[] args) throws RpcException, IOException {
+        final RpcClient client = new RpcClient(RpcUtil.getPublicEndpoint());
+        Files.createDirectories(FIXTURES_DIR);
+
+        final List<ProgramAccount> programAccounts = client.getApi().getProgramAccounts(
+                SERUM_PROGRAM_ID,
+                Collections.emptyList(),
+                SerumUtils.MARKET_ACCOUNT_SIZE
+        );
+        final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        final List<Market> markets = new ArrayList<>();
+        for (ProgramAccount programAccount : programAccounts) {
+            byte[] data = programAccount.getAccount().getDecodedData();
+            dump.write(data);
+            markets.add(Market.readMarket(data));
+        }
+        Files.write(FIXTURES_DIR.resolve("program-accounts.bin"), dump.toByteArray());
+        System.out.printf("Recorded %d market accounts%n", markets.size());
+
+        markets.sort(Comparator.comparingLong(Market::getQuoteDepositsTotal).reversed());
+        final List<Market> candidates = markets.subList(0, Math.min(CANDIDATE_MARKETS, markets.size()));
+
+        // <market, bid count>
+        final Map<Market, Integer> bidCounts = new HashMap<>();
+        final SlabReader slabReader = new SlabReader();
+        for (List<Market> batch : Lists.partition(candidates, 100)) {
+            Map<PublicKey, Optional<AccountInfo.Value>> bids = client.getApi().getMultipleAccountsMap(
+                    batch.stream().map(Market::getBids).toList()
+            );
+            for (Market market : batch) {
+                bids.getOrDefault(market.getBids(), Optional.empty()).ifPresent(account ->
+                        bidCounts.put(market, slabReader.wrapBase64(account.getData().get(0)).getLeafCount()));
+            }
+        }
+
+        byte[] eventQueue = null;
+        for (int depth : DEPTHS) {
+            Market market = bidCounts.keySet().stream()
+                    .min(Comparator.comparingInt(candidate -> Math.abs(bidCounts.get(candidate) - depth)))
+                    .orElseThrow();
+            Map<PublicKey, Optional<AccountInfo.Value>> accounts = client.getApi().getMultipleAccountsMap(
+                    List.of(market.getOwnAddress(), market.getBids(), market.getAsks(), market.getEventQueueKey())
+            );
+            write("market-" + depth + ".bin", accounts.get(market.getOwnAddress()));
+            write("bids-" + depth + ".bin", accounts.get(market.getBids()));
+            write("asks-" + depth + ".bin", accounts.get(market.getAsks()));
+            // Deepest book last, its queue is the busiest
+            eventQueue = decode(accounts.get(market.getEventQueueKey()));
+            System.out.printf("Depth %d: %s (%d bids)%n", depth, market.getOwnAddress(), bidCounts.get(market));
+        }
+        Files.write(FIXTURES_DIR.resolve("event-queue.bin"), eventQueue);
+    }
+
+    private static void write(String name, Optional<AccountInfo.Value> account) throws IOException {
+        Files.write(FIXTURES_DIR.resolve(name), decode(account));
+    }
+
+    private static byte[] decode(Optional<AccountInfo.Value> account) {
+        return Base64.getDecoder().decode(account.orElseThrow().getData().get(0));
+    }
+}
@@ -0,0 +1,59 @@
+package com.mmorrell.serumdata.benchmark;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.MarketRegistry;
+import com.mmorrell.serumdata.util.EventQueueTail;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Market list refresh: decoding every market account of a getProgramAccounts dump and indexing them, plus decoding
+ * a full event queue into a fresh tail.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarketDecodeBenchmark {
+
+    private List<byte[]> programAccounts;
+    private List<Market> markets;
+    private Market market;
+    private byte[] eventQueue;
+
+    @Setup
+    public void setup() {
+        programAccounts = BenchmarkFixtures.programAccounts();
+        markets = new ArrayList<>(programAccounts.size());
+        for (byte[] account : programAccounts) {
+            markets.add(Market.readMarket(account));
+        }
+        market = BenchmarkFixtures.market(BenchmarkFixtures.marketAccount(1000));
+        eventQueue = BenchmarkFixtures.eventQueue();
+    }
+
+    @Benchmark
+    public void readMarkets(Blackhole blackhole) {
+        for (byte[] account : programAccounts) {
+            blackhole.consume(Market.readMarket(account));
+        }
+    }
+
+    @Benchmark
+    public MarketRegistry buildRegistry() {
+        return new MarketRegistry(markets);
+    }
+
+    @Benchmark
+    public EventQueueTail appendEventQueue() {
+        final EventQueueTail tail = new EventQueueTail(market);
+        tail.append(eventQueue);
+        return tail;
+    }
+}
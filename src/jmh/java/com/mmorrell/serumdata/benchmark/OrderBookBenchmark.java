@@ -0,0 +1,92 @@
+package com.mmorrell.serumdata.benchmark;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.OrderBook;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.util.BinaryDepthEncoder;
+import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.SlabReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order book decoding, from account bytes to what /bids, /asks and /depth serve.
+ * The legacy path (OrderBook + sort) is kept as the baseline for the slab reader path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    private Market market;
+    private byte[] bids;
+    private String bidsBase64;
+    private SlabReader slabReader;
+    private PriceLevelBook bidLevels;
+    private MarketSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+        market = BenchmarkFixtures.market(BenchmarkFixtures.marketAccount(depth));
+        bids = BenchmarkFixtures.slab(depth, true);
+        bidsBase64 = Base64.getEncoder().encodeToString(bids);
+        slabReader = new SlabReader();
+
+        bidLevels = MarketUtil.buildPriceLevelBook(slabReader.wrap(bids), market, true);
+        snapshot = MarketSnapshot.builder()
+                .market(market)
+                .events(List.of())
+                .bidLevels(bidLevels)
+                .askLevels(MarketUtil.buildPriceLevelBook(
+                        slabReader.wrap(BenchmarkFixtures.slab(depth, false)), market, false))
+                .slot(1L)
+                .build();
+    }
+
+    @Benchmark
+    public List<SerumOrder> legacyReadOrderBook() {
+        final OrderBook orderBook = OrderBook.readOrderBook(bids);
+        orderBook.setBaseDecimals(market.getBaseDecimals());
+        orderBook.setQuoteDecimals(market.getQuoteDecimals());
+        orderBook.setBaseLotSize(market.getBaseLotSize());
+        orderBook.setQuoteLotSize(market.getQuoteLotSize());
+        return MarketUtil.convertOrderBookToSerumOrders(orderBook, true);
+    }
+
+    @Benchmark
+    public PriceLevelBook buildPriceLevelBook() {
+        return MarketUtil.buildPriceLevelBook(slabReader.wrap(bids), market, true);
+    }
+
+    // As polled or pushed, including the base64 decode
+    @Benchmark
+    public PriceLevelBook buildPriceLevelBookFromBase64() {
+        return MarketUtil.buildPriceLevelBook(slabReader.wrapBase64(bidsBase64), market, true);
+    }
+
+    @Benchmark
+    public List<SerumOrder> convertToSerumOrders() {
+        return MarketUtil.convertPriceLevelBookToSerumOrders(bidLevels);
+    }
+
+    @Benchmark
+    public float[][] convertToDepth() {
+        return MarketUtil.convertPriceLevelBookToDepth(bidLevels);
+    }
+
+    @Benchmark
+    public byte[] encodeBinaryDepth() {
+        return BinaryDepthEncoder.encode(snapshot);
+    }
+}
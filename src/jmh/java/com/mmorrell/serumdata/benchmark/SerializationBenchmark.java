@@ -0,0 +1,96 @@
+package com.mmorrell.serumdata.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.MarketDepth;
+import com.mmorrell.serumdata.model.MarketEvent;
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.model.TradeHistoryEvent;
+import com.mmorrell.serumdata.util.EventQueueTail;
+import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.SlabReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encoding of the JSON responses, i.e. the cost of a response cache miss.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<SerumOrder> bids;
+    private MarketDepth marketDepth;
+    private List<TradeHistoryEvent> tradeHistory;
+
+    @Setup
+    public void setup() {
+        final Market market = BenchmarkFixtures.market(BenchmarkFixtures.marketAccount(depth));
+        final SlabReader slabReader = new SlabReader();
+        final PriceLevelBook bidLevels =
+                MarketUtil.buildPriceLevelBook(slabReader.wrap(BenchmarkFixtures.slab(depth, true)), market, true);
+        final PriceLevelBook askLevels =
+                MarketUtil.buildPriceLevelBook(slabReader.wrap(BenchmarkFixtures.slab(depth, false)), market, false);
+
+        bids = MarketUtil.convertPriceLevelBookToSerumOrders(bidLevels);
+        marketDepth = MarketDepth.builder()
+                .bids(MarketUtil.convertPriceLevelBookToDepth(bidLevels))
+                .asks(MarketUtil.convertPriceLevelBookToDepth(askLevels))
+                .midpoint((bidLevels.getBestPrice() + askLevels.getBestPrice()) / 2)
+                .build();
+
+        // Taker rows with their maker, as MarketResponseManager builds them
+        final EventQueueTail tail = new EventQueueTail(market);
+        tail.append(BenchmarkFixtures.eventQueue());
+        final List<MarketEvent> events = tail.getEvents();
+        tradeHistory = new ArrayList<>();
+        for (int i = 0; i + 1 < events.size(); i++) {
+            MarketEvent event = events.get(i);
+            if (event.isMaker()) {
+                continue;
+            }
+            tradeHistory.add(TradeHistoryEvent.builder()
+                    .index(i)
+                    .seqNum(event.getSeqNum())
+                    .price(event.getPrice())
+                    .quantity(event.getQuantity())
+                    .owner(event.getOpenOrders())
+                    .takerOoa(event.getOpenOrders())
+                    .makerOoa(events.get(i + 1).getOpenOrders())
+                    .makerOwner(events.get(i + 1).getOpenOrders())
+                    .fill(event.isFill())
+                    .out(event.isOut())
+                    .bid(event.isBid())
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public byte[] writeOrders() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(bids);
+    }
+
+    @Benchmark
+    public byte[] writeDepth() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(marketDepth);
+    }
+
+    // Not depth dependent, the tail holds up to EventQueueTail.MAX_EVENTS events
+    @Benchmark
+    public byte[] writeTradeHistory() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(tradeHistory);
+    }
+}
@@ -0,0 +1,163 @@
+package com.mmorrell.serumdata.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.SerumUtils;
+import com.mmorrell.serumdata.util.RpcUtil;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Records an account dump for the stand-in RPC node from OPENSERUM_ENDPOINT: every market account, the bids, asks,
+ * event queue and open orders accounts of the markets with the most quote deposits, and the token list entries of
+ * every market's mints. Talks JSON-RPC directly, so the dump holds exactly what the node returned.
+ * <ul>
+ *     <li>loadtest.accounts: output file (target/loadtest/accounts.bin.gz)</li>
+ *     <li>loadtest.markets: markets to record order books for (50)</li>
+ * </ul>
+ */
+public class AccountRecorder {
+
+    private static final String TOKEN_LIST_URL =
+            "https://raw.githubusercontent.com/solana-labs/token-list/main/src/tokens/solana.tokenlist.json";
+    private static final int MAX_MULTIPLE_ACCOUNTS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final String endpoint;
+
+    private AccountRecorder(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final Path output = Path.of(System.getProperty("loadtest.accounts", "target/loadtest/accounts.bin.gz"));
+        final AccountStore store = new AccountRecorder(RpcUtil.getPublicEndpoint())
+                .record(Integer.getInteger("loadtest.markets", 50));
+        store.save(output);
+        System.out.printf("Recorded %d markets with order books at slot %d to %s%n",
+                store.getBookMarkets().size(), store.getSlot(), output);
+    }
+
+    private AccountStore record(int bookMarketCount) throws IOException, InterruptedException {
+        final long slot = call("getSlot", List.of()).asLong();
+        final Map<PublicKey, AccountStore.Account> accounts = new HashMap<>();
+
+        final JsonNode programAccounts = call("getProgramAccounts", List.of(
+                AccountStore.SERUM_PROGRAM_ID.toBase58(),
+                Map.of(
+                        "encoding", "base64",
+                        "filters", List.of(Map.of("dataSize", SerumUtils.MARKET_ACCOUNT_SIZE))
+                )
+        ));
+        final List<Market> markets = new ArrayList<>();
+        for (JsonNode programAccount : programAccounts) {
+            AccountStore.Account account = decode(programAccount.get("account"));
+            accounts.put(PublicKey.valueOf(programAccount.get("pubkey").asText()), account);
+            markets.add(Market.readMarket(account.data()));
+        }
+        System.out.printf("Recorded %d market accounts%n", markets.size());
+
+        markets.sort(Comparator.comparingLong(Market::getQuoteDepositsTotal).reversed());
+        final List<Market> bookMarkets = markets.subList(0, Math.min(bookMarketCount, markets.size()));
+        final List<PublicKey> bookAccounts = new ArrayList<>();
+        for (Market market : bookMarkets) {
+            bookAccounts.addAll(List.of(market.getBids(), market.getAsks(), market.getEventQueueKey()));
+        }
+        accounts.putAll(getMultipleAccounts(bookAccounts));
+
+        final Set<PublicKey> openOrders = new HashSet<>();
+        for (Market market : bookMarkets) {
+            AccountStore.Account bids = accounts.get(market.getBids());
+            AccountStore.Account asks = accounts.get(market.getAsks());
+            AccountStore.Account eventQueue = accounts.get(market.getEventQueueKey());
+            if (bids != null && asks != null && eventQueue != null) {
+                openOrders.addAll(AccountStore.openOrdersAccounts(market, bids.data(), asks.data(), eventQueue.data()));
+            }
+        }
+        accounts.putAll(getMultipleAccounts(new ArrayList<>(openOrders)));
+        System.out.printf("Recorded %d open orders accounts%n", openOrders.size());
+
+        return new AccountStore(slot, accounts, recordTokenList(markets));
+    }
+
+    // Only tokens traded on a market, the full list is several megabytes
+    private byte[] recordTokenList(List<Market> markets) throws IOException, InterruptedException {
+        final Set<String> mints = new HashSet<>();
+        for (Market market : markets) {
+            mints.add(market.getBaseMint().toBase58());
+            mints.add(market.getQuoteMint().toBase58());
+        }
+
+        final JsonNode tokenList = objectMapper.readTree(httpClient.send(
+                HttpRequest.newBuilder(URI.create(TOKEN_LIST_URL)).build(),
+                HttpResponse.BodyHandlers.ofByteArray()
+        ).body());
+        final ArrayNode tokens = objectMapper.createArrayNode();
+        for (JsonNode token : tokenList.path("tokens")) {
+            if (mints.contains(token.path("address").asText())) {
+                tokens.add(token);
+            }
+        }
+
+        final ObjectNode recorded = objectMapper.createObjectNode();
+        recorded.put("name", tokenList.path("name").asText());
+        recorded.set("tokens", tokens);
+        return objectMapper.writeValueAsBytes(recorded);
+    }
+
+    private Map<PublicKey, AccountStore.Account> getMultipleAccounts(List<PublicKey> publicKeys)
+            throws IOException, InterruptedException {
+        final Map<PublicKey, AccountStore.Account> accounts = new HashMap<>();
+        for (List<PublicKey> batch : Lists.partition(publicKeys, MAX_MULTIPLE_ACCOUNTS)) {
+            JsonNode values = call("getMultipleAccounts", List.of(
+                    batch.stream().map(PublicKey::toBase58).toList(),
+                    Map.of("encoding", "base64")
+            )).get("value");
+            for (int i = 0; i < batch.size(); i++) {
+                if (!values.get(i).isNull()) {
+                    accounts.put(batch.get(i), decode(values.get(i)));
+                }
+            }
+        }
+        return accounts;
+    }
+
+    private AccountStore.Account decode(JsonNode account) {
+        return new AccountStore.Account(
+                PublicKey.valueOf(account.get("owner").asText()),
+                Base64.getDecoder().decode(account.get("data").get(0).asText())
+        );
+    }
+
+    private JsonNode call(String method, List<Object> params) throws IOException, InterruptedException {
+        final byte[] request = objectMapper.writeValueAsBytes(Map.of(
+                "jsonrpc", "2.0",
+                "id", 1,
+                "method", method,
+                "params", params
+        ));
+        final JsonNode response = objectMapper.readTree(httpClient.send(
+                HttpRequest.newBuilder(URI.create(endpoint))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray()
+        ).body());
+        if (response.has("error")) {
+            throw new IOException(method + " failed: " + response.get("error").path("message").asText());
+        }
+        return response.get("result");
+    }
+}
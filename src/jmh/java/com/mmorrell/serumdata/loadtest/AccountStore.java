@@ -0,0 +1,246 @@
+package com.mmorrell.serumdata.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.SerumUtils;
+import com.mmorrell.serumdata.benchmark.BenchmarkFixtures;
+import com.mmorrell.serumdata.model.MarketEvent;
+import com.mmorrell.serumdata.util.EventQueueReader;
+import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.SlabReader;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Accounts and token list served by the stand-in servers, either recorded from mainnet with {@link AccountRecorder}
+ * or generated.
+ * <p>
+ * Dump layout (gzip, big-endian): u32 magic, u64 slot, u32 account count, then per account 32 byte address,
+ * 32 byte owner program, u32 length and the data, then u32 length and the token list JSON.
+ */
+public class AccountStore {
+
+    public static final PublicKey SERUM_PROGRAM_ID = new PublicKey("srmqPvymJeFKQ4zGQed1GFppgkRHL9kaELCbyksJtPX");
+
+    private static final int MAGIC = 0x4f534144;
+    private static final long GENERATED_SLOT = 200_000_000L;
+    private static final int OPEN_ORDERS_SIZE = 3228;
+    private static final int OPEN_ORDERS_OWNER_OFFSET = 45;
+    private static final int BASE_DECIMALS = 9;
+    private static final int QUOTE_DECIMALS = 6;
+
+    // Market account fields, see Market.readMarket
+    private static final int MARKET_OWN_ADDRESS_OFFSET = 13;
+    private static final int MARKET_BASE_MINT_OFFSET = 53;
+    private static final int MARKET_QUOTE_MINT_OFFSET = 85;
+    private static final int MARKET_QUOTE_DEPOSITS_OFFSET = 197;
+    private static final int MARKET_EVENT_QUEUE_OFFSET = 253;
+    private static final int MARKET_BIDS_OFFSET = 285;
+    private static final int MARKET_ASKS_OFFSET = 317;
+
+    public record Account(PublicKey owner, byte[] data) {
+    }
+
+    private final long slot;
+    // <address, account>
+    private final Map<PublicKey, Account> accounts;
+    private final byte[] tokenList;
+    // Markets whose bids, asks and event queue are all present, by quote deposits
+    private final List<Market> bookMarkets;
+
+    public AccountStore(long slot, Map<PublicKey, Account> accounts, byte[] tokenList) {
+        this.slot = slot;
+        this.accounts = Map.copyOf(accounts);
+        this.tokenList = tokenList;
+        this.bookMarkets = accounts.values().stream()
+                .filter(account -> account.owner().equals(SERUM_PROGRAM_ID))
+                .filter(account -> account.data().length == SerumUtils.MARKET_ACCOUNT_SIZE)
+                .map(account -> Market.readMarket(account.data()))
+                .filter(market -> accounts.containsKey(market.getBids()) &&
+                        accounts.containsKey(market.getAsks()) &&
+                        accounts.containsKey(market.getEventQueueKey()))
+                .sorted(Comparator.comparingLong(Market::getQuoteDepositsTotal).reversed())
+                .toList();
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public Optional<Account> getAccount(PublicKey address) {
+        return Optional.ofNullable(accounts.get(address));
+    }
+
+    /**
+     * @param owner    owner program
+     * @param dataSize only accounts of this size, -1 for all
+     * @return address and account of every match
+     */
+    public Map<PublicKey, Account> getProgramAccounts(PublicKey owner, int dataSize) {
+        final Map<PublicKey, Account> result = new LinkedHashMap<>();
+        accounts.forEach((address, account) -> {
+            if (account.owner().equals(owner) && (dataSize < 0 || account.data().length == dataSize)) {
+                result.put(address, account);
+            }
+        });
+        return result;
+    }
+
+    public List<Market> getBookMarkets() {
+        return bookMarkets;
+    }
+
+    /**
+     * @return solana.tokenlist.json format
+     */
+    public byte[] getTokenList() {
+        return tokenList;
+    }
+
+    public static AccountStore load(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path))))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not an account dump: " + path);
+            }
+
+            final long slot = input.readLong();
+            final int accountCount = input.readInt();
+            final Map<PublicKey, Account> accounts = new HashMap<>(accountCount * 2);
+            for (int i = 0; i < accountCount; i++) {
+                PublicKey address = new PublicKey(input.readNBytes(32));
+                PublicKey owner = new PublicKey(input.readNBytes(32));
+                accounts.put(address, new Account(owner, input.readNBytes(input.readInt())));
+            }
+            final byte[] tokenList = input.readNBytes(input.readInt());
+            return new AccountStore(slot, accounts, tokenList);
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(path))))) {
+            output.writeInt(MAGIC);
+            output.writeLong(slot);
+            output.writeInt(accounts.size());
+            for (Map.Entry<PublicKey, Account> entry : accounts.entrySet()) {
+                output.write(entry.getKey().toByteArray());
+                output.write(entry.getValue().owner().toByteArray());
+                output.writeInt(entry.getValue().data().length);
+                output.write(entry.getValue().data());
+            }
+            output.writeInt(tokenList.length);
+            output.write(tokenList);
+        }
+    }
+
+    /**
+     * Markets quoted in USDC or USDT, one base token each. All markets share the same bids, asks and event queue
+     * contents (from {@link BenchmarkFixtures}) under their own addresses, and every open orders account in them
+     * resolves to an owner.
+     *
+     * @param marketCount markets with order books
+     * @param depth       orders on each side of every book
+     */
+    public static AccountStore generate(int marketCount, int depth) throws IOException {
+        final Random random = new Random(marketCount);
+        final Map<PublicKey, Account> accounts = new HashMap<>();
+        final List<Map<String, Object>> tokens = new ArrayList<>();
+        tokens.add(token(MarketUtil.USDC_MINT, "USDC", "USD Coin", QUOTE_DECIMALS));
+        tokens.add(token(MarketUtil.USDT_MINT, "USDT", "USDT", QUOTE_DECIMALS));
+
+        final byte[] marketTemplate = BenchmarkFixtures.marketAccount(depth);
+        final byte[] bids = BenchmarkFixtures.slab(depth, true);
+        final byte[] asks = BenchmarkFixtures.slab(depth, false);
+        final byte[] eventQueue = BenchmarkFixtures.eventQueue();
+
+        for (int i = 0; i < marketCount; i++) {
+            PublicKey marketId = randomKey(random);
+            PublicKey baseMint = randomKey(random);
+            PublicKey quoteMint = i % 4 == 3 ? MarketUtil.USDT_MINT : MarketUtil.USDC_MINT;
+            PublicKey bidsKey = randomKey(random);
+            PublicKey asksKey = randomKey(random);
+            PublicKey eventQueueKey = randomKey(random);
+
+            ByteBuffer market = ByteBuffer.wrap(marketTemplate.clone()).order(ByteOrder.LITTLE_ENDIAN);
+            market.put(MARKET_OWN_ADDRESS_OFFSET, marketId.toByteArray());
+            market.put(MARKET_BASE_MINT_OFFSET, baseMint.toByteArray());
+            market.put(MARKET_QUOTE_MINT_OFFSET, quoteMint.toByteArray());
+            // Popular markets first, like the real distribution
+            market.putLong(MARKET_QUOTE_DEPOSITS_OFFSET, 1_000_000_000_000L / (i + 1));
+            market.put(MARKET_EVENT_QUEUE_OFFSET, eventQueueKey.toByteArray());
+            market.put(MARKET_BIDS_OFFSET, bidsKey.toByteArray());
+            market.put(MARKET_ASKS_OFFSET, asksKey.toByteArray());
+
+            accounts.put(marketId, new Account(SERUM_PROGRAM_ID, market.array()));
+            accounts.put(bidsKey, new Account(SERUM_PROGRAM_ID, bids));
+            accounts.put(asksKey, new Account(SERUM_PROGRAM_ID, asks));
+            accounts.put(eventQueueKey, new Account(SERUM_PROGRAM_ID, eventQueue));
+            tokens.add(token(baseMint, "TKN" + i, "Stand-in token " + i, BASE_DECIMALS));
+        }
+
+        final Market market = BenchmarkFixtures.market(marketTemplate);
+        for (PublicKey openOrders : openOrdersAccounts(market, bids, asks, eventQueue)) {
+            byte[] data = new byte[OPEN_ORDERS_SIZE];
+            System.arraycopy(randomKey(random).toByteArray(), 0, data, OPEN_ORDERS_OWNER_OFFSET, 32);
+            accounts.put(openOrders, new Account(SERUM_PROGRAM_ID, data));
+        }
+
+        final byte[] tokenList = new ObjectMapper().writeValueAsBytes(Map.of(
+                "name", "Stand-in token list",
+                "tokens", tokens
+        ));
+        return new AccountStore(GENERATED_SLOT, accounts, tokenList);
+    }
+
+    /**
+     * @return open orders accounts referenced by the market's books and event queue
+     */
+    public static Set<PublicKey> openOrdersAccounts(Market market, byte[] bids, byte[] asks, byte[] eventQueue) {
+        final Set<PublicKey> openOrders = new HashSet<>();
+        final SlabReader slabReader = new SlabReader();
+        for (byte[] slab : List.of(bids, asks)) {
+            slabReader.wrap(slab);
+            for (int leaf = 0; leaf < slabReader.getLeafCount(); leaf++) {
+                openOrders.add(slabReader.getOwner(leaf));
+            }
+        }
+
+        final EventQueueReader eventQueueReader = new EventQueueReader(eventQueue);
+        for (long seqNum = eventQueueReader.getFirstSeqNum(); seqNum < eventQueueReader.getSeqNum(); seqNum++) {
+            MarketEvent event = eventQueueReader.readEvent(seqNum, market);
+            openOrders.add(event.getOpenOrders());
+        }
+        return openOrders;
+    }
+
+    private static PublicKey randomKey(Random random) {
+        final byte[] key = new byte[32];
+        random.nextBytes(key);
+        return new PublicKey(key);
+    }
+
+    private static Map<String, Object> token(PublicKey mint, String symbol, String name, int decimals) {
+        return Map.of(
+                "chainId", 101,
+                "address", mint.toBase58(),
+                "symbol", symbol,
+                "name", name,
+                "decimals", decimals,
+                // Rewritten to the stand-in token server when served
+                "logoURI", "https://example.invalid/" + symbol + ".png"
+        );
+    }
+}
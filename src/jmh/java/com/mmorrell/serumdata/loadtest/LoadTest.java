@@ -0,0 +1,312 @@
+package com.mmorrell.serumdata.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.util.BinaryDepthEncoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Drives the /api/serum/* endpoints of a running app (started against {@link StandInServers}) at a fixed request
+ * rate, then reports latency percentiles per endpoint and the RPC calls made per request.
+ * <p>
+ * Requests are sent on schedule whether or not earlier ones completed, and latency is measured from the scheduled
+ * time, so a stalled app shows up as latency instead of a lower rate. Popular markets get most requests. RPC calls
+ * per request are the stand-in node's calls during the run, minus the app's background polling measured while idle.
+ * <ul>
+ *     <li>loadtest.app: app URL (http://localhost:8080)</li>
+ *     <li>loadtest.rpc: stand-in RPC URL (http://127.0.0.1:8899/)</li>
+ *     <li>loadtest.qps: requests per second (200)</li>
+ *     <li>loadtest.duration, loadtest.warmup, loadtest.baseline: seconds of measured load, unmeasured load and idle
+ *     time for the background RPC rate (60, 15, 15)</li>
+ *     <li>loadtest.maxInFlight: requests outstanding before new ones are dropped (2000)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final List<String> SEARCH_QUERIES = List.of("US", "SO", "TKN", "RAY", "BTC", "ETH", "m");
+    private static final Duration READY_TIMEOUT = Duration.ofMinutes(3);
+
+    private record Endpoint(String name, int weight, Function<MarketInfo, HttpRequest.Builder> request) {
+    }
+
+    private record MarketInfo(String market, String baseMint, String quoteMint) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final Random random = new Random(1);
+    private final String app;
+    private final String rpc;
+    private final double qps;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final List<Endpoint> endpoints;
+    private final int totalWeight;
+    private List<MarketInfo> markets;
+
+    private LoadTest(String app, String rpc, double qps, int maxInFlight) {
+        this.app = app.endsWith("/") ? app.substring(0, app.length() - 1) : app;
+        this.rpc = rpc.endsWith("/") ? rpc : rpc + "/";
+        this.qps = qps;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.endpoints = List.of(
+                new Endpoint("bids", 20, market -> get("/api/serum/market/" + market.market() + "/bids")),
+                new Endpoint("asks", 20, market -> get("/api/serum/market/" + market.market() + "/asks")),
+                new Endpoint("depth", 15, market -> get("/api/serum/market/" + market.market() + "/depth")),
+                new Endpoint("depth.bin", 5, market -> get("/api/serum/market/" + market.market() + "/depth")
+                        .header("Accept", BinaryDepthEncoder.MEDIA_TYPE)),
+                new Endpoint("tradeHistory", 15, market ->
+                        get("/api/serum/market/" + market.market() + "/tradeHistory")),
+                new Endpoint("market", 5, market -> get("/api/serum/market/" + market.market())),
+                new Endpoint("trades", 5, market -> get("/api/serum/market/" + market.market() + "/trades")),
+                new Endpoint("candles", 5, market -> get("/api/serum/market/" + market.market() + "/candles")),
+                new Endpoint("token", 5, market -> get("/api/serum/token/" + market.baseMint())),
+                new Endpoint("token/search", 5, market -> get("/api/serum/token/search?q=" +
+                        SEARCH_QUERIES.get(random.nextInt(SEARCH_QUERIES.size()))))
+        );
+        this.totalWeight = endpoints.stream().mapToInt(Endpoint::weight).sum();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final LoadTest loadTest = new LoadTest(
+                System.getProperty("loadtest.app", "http://localhost:8080"),
+                System.getProperty("loadtest.rpc", "http://127.0.0.1:8899/"),
+                Double.parseDouble(System.getProperty("loadtest.qps", "200")),
+                Integer.getInteger("loadtest.maxInFlight", 2000)
+        );
+        loadTest.run(
+                Integer.getInteger("loadtest.duration", 60),
+                Integer.getInteger("loadtest.warmup", 15),
+                Integer.getInteger("loadtest.baseline", 15)
+        );
+    }
+
+    private void run(int durationSeconds, int warmupSeconds, int baselineSeconds)
+            throws IOException, InterruptedException {
+        markets = objectMapper.readValue(
+                send(HttpRequest.newBuilder(URI.create(rpc + "markets"))).body(),
+                new TypeReference<List<Map<String, String>>>() {
+                }
+        ).stream().map(market -> new MarketInfo(market.get("market"), market.get("baseMint"), market.get("quoteMint")))
+                .toList();
+        if (markets.isEmpty()) {
+            throw new IllegalStateException("The stand-in RPC node has no markets with order books");
+        }
+        awaitReady();
+
+        System.out.printf("Warming up for %ds%n", warmupSeconds);
+        drive(warmupSeconds);
+
+        System.out.printf("Measuring background RPC calls for %ds%n", baselineSeconds);
+        final Map<String, Long> idleStart = rpcCallCounts();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(baselineSeconds));
+        final Map<String, Long> idle = subtract(rpcCallCounts(), idleStart);
+
+        System.out.printf("Running %.0f requests/s for %ds over %d markets%n", qps, durationSeconds, markets.size());
+        final Map<String, Long> runStart = rpcCallCounts();
+        final Map<String, Results> results = drive(durationSeconds);
+        final Map<String, Long> run = subtract(rpcCallCounts(), runStart);
+
+        report(results, durationSeconds, idle, baselineSeconds, run);
+    }
+
+    private void awaitReady() throws InterruptedException {
+        final long deadline = System.nanoTime() + READY_TIMEOUT.toNanos();
+        final HttpRequest.Builder probe = get("/api/serum/market/" + markets.get(0).market() + "/bids");
+        while (System.nanoTime() < deadline) {
+            try {
+                if (send(probe).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(1000L);
+        }
+        throw new IllegalStateException("App not ready after " + READY_TIMEOUT + ": " + app);
+    }
+
+    // Open loop: request i is due at start + i / qps, whatever happened to the previous ones
+    private Map<String, Results> drive(int seconds) throws InterruptedException {
+        final Map<String, Results> results = new ConcurrentHashMap<>();
+        endpoints.forEach(endpoint -> results.put(endpoint.name(), new Results()));
+
+        final long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / qps);
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (long i = 0; start + i * intervalNanos < end; i++) {
+            final long scheduled = start + i * intervalNanos;
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            final Endpoint endpoint = pickEndpoint();
+            final Results endpointResults = results.get(endpoint.name());
+            if (!inFlight.tryAcquire()) {
+                endpointResults.dropped.increment();
+                continue;
+            }
+
+            httpClient.sendAsync(endpoint.request().apply(pickMarket()).build(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        endpointResults.record(
+                                System.nanoTime() - scheduled,
+                                error == null && (response.statusCode() == 200 || response.statusCode() == 304)
+                        );
+                        inFlight.release();
+                    });
+        }
+
+        // Let outstanding requests finish
+        if (inFlight.tryAcquire(maxInFlight, 30, TimeUnit.SECONDS)) {
+            inFlight.release(maxInFlight);
+        }
+        return results;
+    }
+
+    private Endpoint pickEndpoint() {
+        int choice = random.nextInt(totalWeight);
+        for (Endpoint endpoint : endpoints) {
+            choice -= endpoint.weight();
+            if (choice < 0) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(0);
+    }
+
+    // Markets are sorted by quote deposits, the first ones get most of the traffic
+    private MarketInfo pickMarket() {
+        return markets.get((int) (markets.size() * Math.pow(random.nextDouble(), 3)));
+    }
+
+    private void report(Map<String, Results> results, int durationSeconds, Map<String, Long> idle, int idleSeconds,
+                        Map<String, Long> run) {
+        System.out.printf("%n%-14s %8s %7s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "dropped", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long completed = 0;
+        final Results all = new Results();
+        for (Endpoint endpoint : endpoints) {
+            Results endpointResults = results.get(endpoint.name());
+            printRow(endpoint.name(), endpointResults);
+            completed += endpointResults.count();
+            all.addAll(endpointResults);
+        }
+        printRow("all", all);
+        System.out.printf("%nAchieved %.1f requests/s (target %.0f)%n", (double) completed / durationSeconds, qps);
+
+        System.out.printf("%n%-22s %10s %12s %12s%n", "RPC method", "calls", "background", "per request");
+        final Set<String> methods = new TreeSet<>(run.keySet());
+        methods.addAll(idle.keySet());
+        double totalPerRequest = 0.0;
+        long totalCalls = 0;
+        for (String method : methods) {
+            long calls = run.getOrDefault(method, 0L);
+            double background = (double) idle.getOrDefault(method, 0L) * durationSeconds / idleSeconds;
+            double perRequest = completed == 0 ? 0.0 : Math.max(0.0, calls - background) / completed;
+            System.out.printf("%-22s %10d %12.0f %12.4f%n", method, calls, background, perRequest);
+            totalCalls += calls;
+            totalPerRequest += perRequest;
+        }
+        System.out.printf("%-22s %10d %12s %12.4f%n", "all", totalCalls, "", totalPerRequest);
+    }
+
+    private static void printRow(String name, Results results) {
+        final long[] latencies = results.sortedLatencies();
+        final StringBuilder row = new StringBuilder(String.format("%-14s %8d %7d %8d",
+                name, latencies.length, results.errors.sum(), results.dropped.sum()));
+        for (double percentile : PERCENTILES) {
+            row.append(String.format(" %9.2f", millis(latencies, percentile)));
+        }
+        row.append(String.format(" %9.2f", latencies.length == 0 ? 0.0 : latencies[latencies.length - 1] / 1e6));
+        System.out.println(row);
+    }
+
+    private static double millis(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0.0;
+        }
+        final int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+    private Map<String, Long> rpcCallCounts() throws IOException, InterruptedException {
+        return objectMapper.readValue(
+                send(HttpRequest.newBuilder(URI.create(rpc + "stats"))).body(),
+                new TypeReference<Map<String, Long>>() {
+                }
+        );
+    }
+
+    private static Map<String, Long> subtract(Map<String, Long> after, Map<String, Long> before) {
+        final Map<String, Long> difference = new TreeMap<>();
+        after.forEach((method, calls) -> difference.put(method, calls - before.getOrDefault(method, 0L)));
+        return difference;
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(app + path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Latencies of one endpoint, in nanoseconds.
+     */
+    private static class Results {
+        private long[] latencies = new long[1024];
+        private int count;
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        private synchronized void record(long latencyNanos, boolean success) {
+            if (!success) {
+                errors.increment();
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        private synchronized void addAll(Results other) {
+            final long[] otherLatencies = other.sortedLatencies();
+            for (long latency : otherLatencies) {
+                record(latency, true);
+            }
+            errors.add(other.errors.sum());
+            dropped.add(other.dropped.sum());
+        }
+
+        private synchronized long count() {
+            return count;
+        }
+
+        private synchronized long[] sortedLatencies() {
+            final long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
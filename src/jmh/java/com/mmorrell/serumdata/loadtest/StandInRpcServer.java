@@ -0,0 +1,252 @@
+package com.mmorrell.serumdata.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local JSON-RPC node serving an {@link AccountStore}: getProgramAccounts (dataSize filter, dataSlice),
+ * getAccountInfo, getMultipleAccounts (minContextSlot, dataSlice) and getSlot. Every other method is "not found".
+ * Account data never changes, the slot advances in real time so every fetch looks like a new snapshot.
+ * <p>
+ * Each call is delayed by the latency plus up to the jitter, and fails with a "node is behind" error at the given
+ * rate. Besides JSON-RPC, {@code GET /stats} returns calls per method and {@code GET /markets} the markets with
+ * order books.
+ */
+@Slf4j
+public class StandInRpcServer implements Closeable {
+
+    private static final long SLOT_MILLIS = 400L;
+    private static final int MAX_MULTIPLE_ACCOUNTS = 100;
+    private static final long RENT_LAMPORTS_PER_BYTE = 6960L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AccountStore store;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+    private final long startMillis = System.currentTimeMillis();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // <method, calls>
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    /**
+     * @param port          0 for any free port
+     * @param latencyMillis added to every call
+     * @param jitterMillis  up to this much more, uniformly distributed
+     * @param errorRate     share of calls that fail, 0 to 1
+     */
+    public StandInRpcServer(AccountStore store, int port, long latencyMillis, long jitterMillis, double errorRate)
+            throws IOException {
+        this.store = store;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public long getSlot() {
+        return store.getSlot() + (System.currentTimeMillis() - startMillis) / SLOT_MILLIS;
+    }
+
+    /**
+     * @return calls per method since start, including failed ones
+     */
+    public Map<String, Long> getCallCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        calls.forEach((method, count) -> counts.put(method, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (exchange.getRequestMethod().equals("GET")) {
+                handleAdmin(exchange);
+                return;
+            }
+
+            final JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            final String method = request.path("method").asText();
+            calls.computeIfAbsent(method, key -> new LongAdder()).increment();
+
+            final long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0L);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            final Map<String, Object> response = new LinkedHashMap<>();
+            response.put("jsonrpc", "2.0");
+            response.put("id", request.path("id"));
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                response.put("error", error(-32005, "Node is behind by 42 slots"));
+            } else {
+                try {
+                    response.put("result", call(method, request.path("params")));
+                } catch (RpcError e) {
+                    response.put("error", error(e.code, e.getMessage()));
+                }
+            }
+            send(exchange, 200, objectMapper.writeValueAsBytes(response));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Stand-in RPC request failed: " + e.getMessage());
+            send(exchange, 500, new byte[0]);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleAdmin(HttpExchange exchange) throws IOException {
+        switch (exchange.getRequestURI().getPath()) {
+            case "/stats" -> send(exchange, 200, objectMapper.writeValueAsBytes(getCallCounts()));
+            case "/markets" -> send(exchange, 200, objectMapper.writeValueAsBytes(
+                    store.getBookMarkets().stream()
+                            .map(market -> Map.of(
+                                    "market", market.getOwnAddress().toBase58(),
+                                    "baseMint", market.getBaseMint().toBase58(),
+                                    "quoteMint", market.getQuoteMint().toBase58()
+                            ))
+                            .toList()
+            ));
+            default -> send(exchange, 404, new byte[0]);
+        }
+    }
+
+    private Object call(String method, JsonNode params) throws RpcError {
+        final JsonNode config = params.path(1);
+        return switch (method) {
+            case "getSlot" -> getSlot();
+            case "getAccountInfo" -> withContext(config,
+                    encodeAccount(store.getAccount(publicKey(params.path(0))), config));
+            case "getMultipleAccounts" -> {
+                if (params.path(0).size() > MAX_MULTIPLE_ACCOUNTS) {
+                    throw new RpcError(-32602, "Too many inputs provided; max " + MAX_MULTIPLE_ACCOUNTS);
+                }
+                final List<Object> values = new ArrayList<>();
+                for (JsonNode key : params.path(0)) {
+                    values.add(encodeAccount(store.getAccount(publicKey(key)), config));
+                }
+                yield withContext(config, values);
+            }
+            case "getProgramAccounts" -> {
+                final List<Object> values = new ArrayList<>();
+                store.getProgramAccounts(publicKey(params.path(0)), dataSizeFilter(config)).forEach(
+                        (address, account) -> values.add(Map.of(
+                                "pubkey", address.toBase58(),
+                                "account", encodeAccount(Optional.of(account), config)
+                        ))
+                );
+                yield config.path("withContext").asBoolean() ? withContext(config, values) : values;
+            }
+            default -> throw new RpcError(-32601, "Method not found");
+        };
+    }
+
+    private Map<String, Object> withContext(JsonNode config, Object value) throws RpcError {
+        final long slot = getSlot();
+        if (config.path("minContextSlot").asLong() > slot) {
+            throw new RpcError(-32016, "Minimum context slot has not been reached");
+        }
+
+        // Missing accounts are null values
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("context", Map.of("slot", slot));
+        result.put("value", value);
+        return result;
+    }
+
+    private static int dataSizeFilter(JsonNode config) throws RpcError {
+        int dataSize = -1;
+        for (JsonNode filter : config.path("filters")) {
+            if (filter.has("dataSize")) {
+                dataSize = filter.get("dataSize").asInt();
+            } else {
+                throw new RpcError(-32602, "Only dataSize filters are supported by the stand-in");
+            }
+        }
+        return dataSize;
+    }
+
+    private static Map<String, Object> encodeAccount(Optional<AccountStore.Account> account, JsonNode config) {
+        if (account.isEmpty()) {
+            return null;
+        }
+
+        byte[] data = account.get().data();
+        final JsonNode dataSlice = config.path("dataSlice");
+        if (!dataSlice.isMissingNode()) {
+            int offset = Math.min(dataSlice.path("offset").asInt(), data.length);
+            int length = Math.min(dataSlice.path("length").asInt(), data.length - offset);
+            data = Arrays.copyOfRange(data, offset, offset + length);
+        }
+
+        final Map<String, Object> encoded = new LinkedHashMap<>();
+        encoded.put("data", List.of(Base64.getEncoder().encodeToString(data), "base64"));
+        encoded.put("executable", false);
+        encoded.put("lamports", (account.get().data().length + 128L) * RENT_LAMPORTS_PER_BYTE);
+        encoded.put("owner", account.get().owner().toBase58());
+        encoded.put("rentEpoch", 0);
+        encoded.put("space", account.get().data().length);
+        return encoded;
+    }
+
+    private static PublicKey publicKey(JsonNode node) throws RpcError {
+        try {
+            return PublicKey.valueOf(node.asText());
+        } catch (IllegalArgumentException e) {
+            throw new RpcError(-32602, "Invalid param: " + node.asText());
+        }
+    }
+
+    private static Map<String, Object> error(int code, String message) {
+        return Map.of("code", code, "message", message);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    private static class RpcError extends Exception {
+        private final int code;
+
+        private RpcError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
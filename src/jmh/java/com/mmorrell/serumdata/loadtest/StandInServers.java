@@ -0,0 +1,47 @@
+package com.mmorrell.serumdata.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Starts the stand-in RPC node and token server, and prints the environment to start the app against them.
+ * Runs until stopped. Settings are system properties:
+ * <ul>
+ *     <li>loadtest.accounts: account dump from {@link AccountRecorder}, generated accounts if not set</li>
+ *     <li>loadtest.markets, loadtest.depth: generated markets and orders per side (200, 100)</li>
+ *     <li>loadtest.rpcPort, loadtest.tokenPort: listen ports (8899, 8898)</li>
+ *     <li>loadtest.latencyMs, loadtest.jitterMs: delay of every RPC call (30, 20)</li>
+ *     <li>loadtest.errorRate: share of RPC calls that fail (0)</li>
+ * </ul>
+ */
+public class StandInServers {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final String accounts = System.getProperty("loadtest.accounts");
+        final AccountStore store = accounts != null ?
+                AccountStore.load(Path.of(accounts)) :
+                AccountStore.generate(Integer.getInteger("loadtest.markets", 200), Integer.getInteger("loadtest.depth", 100));
+
+        final StandInRpcServer rpcServer = new StandInRpcServer(
+                store,
+                Integer.getInteger("loadtest.rpcPort", 8899),
+                Long.getLong("loadtest.latencyMs", 30L),
+                Long.getLong("loadtest.jitterMs", 20L),
+                Double.parseDouble(System.getProperty("loadtest.errorRate", "0"))
+        );
+        final StandInTokenServer tokenServer = new StandInTokenServer(
+                store,
+                Integer.getInteger("loadtest.tokenPort", 8898)
+        );
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            rpcServer.close();
+            tokenServer.close();
+        }));
+
+        System.out.printf("Serving %d markets with order books, start the app with:%n", store.getBookMarkets().size());
+        System.out.printf("OPENSERUM_ENDPOINT=%s OPENSERUM_TOKEN_LIST_URL=%s OPENSERUM_DATA_DIR=$(mktemp -d)%n",
+                rpcServer.getUrl(), tokenServer.getTokenListUrl());
+        new CountDownLatch(1).await();
+    }
+}
@@ -0,0 +1,111 @@
+package com.mmorrell.serumdata.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for the token list on GitHub and the token icon hosts. Serves the store's token list at
+ * {@code /tokenlist.json}, with every logoURI pointing at a generated PNG under {@code /icons/}.
+ */
+public class StandInTokenServer implements Closeable {
+
+    private static final int ICON_SIZE = 64;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final byte[] tokenList;
+    // <path, png>
+    private final Map<String, byte[]> icons = new ConcurrentHashMap<>();
+
+    /**
+     * @param port 0 for any free port
+     */
+    public StandInTokenServer(AccountStore store, int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.tokenList = rewriteLogoUris(store.getTokenList());
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getTokenListUrl() {
+        return getUrl() + "tokenlist.json";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private byte[] rewriteLogoUris(byte[] json) throws IOException {
+        final JsonNode root = objectMapper.readTree(json);
+        for (JsonNode token : root.path("tokens")) {
+            ((ObjectNode) token).put("logoURI", getUrl() + "icons/" + token.path("address").asText() + ".png");
+        }
+        return objectMapper.writeValueAsBytes(root);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            if (path.equals("/tokenlist.json")) {
+                send(exchange, "application/json", tokenList);
+            } else if (path.startsWith("/icons/")) {
+                send(exchange, "image/png", icons.computeIfAbsent(path, StandInTokenServer::drawIcon));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Solid circle, colored by path so icons differ
+    private static byte[] drawIcon(String path) {
+        final BufferedImage image = new BufferedImage(ICON_SIZE, ICON_SIZE, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(Color.getHSBColor((path.hashCode() & 0xffff) / 65536f, 0.6f, 0.9f));
+        graphics.fillOval(0, 0, ICON_SIZE, ICON_SIZE);
+        graphics.dispose();
+
+        try {
+            final ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+            return png.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.mmorrell.serumdata.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.util.RpcUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps one websocket open to the RPC node, with one accountSubscribe per registered account.
+ * Notifications are handed to the account's listener on a small pool of threads, never the socket's receiving thread.
+ * Each account's listener runs one notification at a time, and one that arrives while the previous is still being
+ * handled replaces any other still waiting. When the socket drops, every account stops being "live" (callers go back
+ * to polling) until the socket is reconnected and the subscription is confirmed again.
+ * <p>
+ * Subscribing, unsubscribing and the replay after a reconnect hold the client's lock, so every account is subscribed
+ * at most once per socket. Sends are queued and never waited on, so the lock is only held briefly.
+ */
+@Component
+@Slf4j
+public class AccountSubscriptionClient {
+
+    private static final long RECONNECT_DELAY_MS = 2000L;
+    private static final long MAX_RECONNECT_DELAY_MS = 60000L;
+    private static final long PING_INTERVAL_SECONDS = 30L;
+    private static final int NOTIFICATION_THREADS = 4;
+
+    public interface AccountListener {
+        void onAccountUpdate(PublicKey account, long slot, byte[] data);
+    }
+
+    private final String endpoint;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AccountSubscriptionThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService notificationExecutor = Executors.newFixedThreadPool(
+            NOTIFICATION_THREADS,
+            runnable -> {
+                Thread thread = new Thread(runnable, "AccountNotificationThread");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private record Notification(long slot, String data) {
+    }
+
+    // <account, listener>
+    private final Map<PublicKey, AccountListener> listeners = new ConcurrentHashMap<>();
+    // <request id, account>, subscribe requests waiting for a subscription id
+    private final Map<Long, PublicKey> pendingRequests = new ConcurrentHashMap<>();
+    // <subscription id, account>
+    private final Map<Long, PublicKey> subscriptions = new ConcurrentHashMap<>();
+    // <account, subscription id>, used to unsubscribe
+    private final Map<PublicKey, Long> subscriptionIds = new ConcurrentHashMap<>();
+    // Accounts with a confirmed subscription on the current socket
+    private final Set<PublicKey> liveAccounts = ConcurrentHashMap.newKeySet();
+    // <account, latest notification not yet handed to the listener>
+    private final Map<PublicKey, Notification> pendingNotifications = new ConcurrentHashMap<>();
+    // Accounts with a delivery task queued or running
+    private final Set<PublicKey> deliveringAccounts = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requestId = new AtomicLong();
+    private final Object sendLock = new Object();
+    // Completes when the last queued send on the current socket is written
+    private CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+
+    private volatile WebSocket webSocket;
+    private volatile boolean connecting = false;
+    private long reconnectDelayMs = RECONNECT_DELAY_MS;
+
+    @Autowired
+    public AccountSubscriptionClient(final ObjectMapper objectMapper) {
+        this(RpcUtil.getWebsocketEndpoint().orElse(null), objectMapper);
+    }
+
+    public AccountSubscriptionClient(final String endpoint, final ObjectMapper objectMapper) {
+        this.endpoint = endpoint;
+        this.objectMapper = objectMapper;
+
+        if (isEnabled()) {
+            scheduler.scheduleAtFixedRate(this::ping, PING_INTERVAL_SECONDS, PING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Subscription mode is only used when a websocket endpoint is configured.
+     *
+     * @return true if account subscriptions are available
+     */
+    public boolean isEnabled() {
+        return endpoint != null;
+    }
+
+    public boolean isConnected() {
+        return webSocket != null;
+    }
+
+    /**
+     * @param account account to check
+     * @return true if the account has a confirmed subscription on an open socket
+     */
+    public boolean isLive(PublicKey account) {
+        return liveAccounts.contains(account);
+    }
+
+    /**
+     * Registers listener and sends accountSubscribe for the account. No-op if the account is already subscribed.
+     *
+     * @param account  account to subscribe to
+     * @param listener called on every accountNotification
+     */
+    public synchronized void subscribe(PublicKey account, AccountListener listener) {
+        if (!isEnabled() || listeners.putIfAbsent(account, listener) != null) {
+            return;
+        }
+
+        WebSocket socket = webSocket;
+        if (socket != null) {
+            sendSubscribe(socket, account);
+        } else {
+            connect();
+        }
+    }
+
+    /**
+     * Removes the listener and sends accountUnsubscribe for the account. A subscription still waiting for its id is
+     * cancelled once the id arrives.
+     *
+     * @param account account to unsubscribe from
+     */
+    public synchronized void unsubscribe(PublicKey account) {
+        if (listeners.remove(account) == null) {
+            return;
+        }
+
+        liveAccounts.remove(account);
+        Long subscriptionId = subscriptionIds.remove(account);
+        WebSocket socket = webSocket;
+        if (subscriptionId != null) {
+            subscriptions.remove(subscriptionId);
+            if (socket != null) {
+                sendUnsubscribe(socket, subscriptionId);
+            }
+        }
+    }
+
+    private synchronized void connect() {
+        if (webSocket != null || connecting) {
+            return;
+        }
+
+        connecting = true;
+        httpClient.newWebSocketBuilder()
+                .buildAsync(URI.create(endpoint), new SubscriptionListener())
+                .whenComplete((socket, throwable) -> {
+                    synchronized (this) {
+                        connecting = false;
+                        if (throwable != null) {
+                            log.warn("Unable to connect to " + endpoint + ": " + throwable.getMessage());
+                            scheduleReconnect();
+                            return;
+                        }
+
+                        log.info("Connected to websocket endpoint: " + endpoint);
+                        webSocket = socket;
+                        reconnectDelayMs = RECONNECT_DELAY_MS;
+                        synchronized (sendLock) {
+                            lastSend = CompletableFuture.completedFuture(socket);
+                        }
+
+                        // Under the lock, so subscribe() either runs before and is replayed here, or after and
+                        // sends on its own
+                        listeners.keySet().forEach(account -> sendSubscribe(socket, account));
+                    }
+                });
+    }
+
+    private synchronized void handleDisconnect(WebSocket socket, String reason) {
+        if (webSocket != socket) {
+            return;
+        }
+
+        log.warn("Websocket disconnected (" + reason + "), falling back to polling.");
+        webSocket = null;
+        liveAccounts.clear();
+        subscriptions.clear();
+        subscriptionIds.clear();
+        pendingRequests.clear();
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        long delay = reconnectDelayMs;
+        reconnectDelayMs = Math.min(reconnectDelayMs * 2, MAX_RECONNECT_DELAY_MS);
+        scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendSubscribe(WebSocket socket, PublicKey account) {
+        long id = requestId.incrementAndGet();
+        pendingRequests.put(id, account);
+
+        Map<String, Object> request = Map.of(
+                "jsonrpc", "2.0",
+                "id", id,
+                "method", "accountSubscribe",
+                "params", List.of(
+                        account.toBase58(),
+                        Map.of(
+                                "encoding", "base64",
+                                "commitment", "confirmed"
+                        )
+                )
+        );
+
+        final String message;
+        try {
+            message = objectMapper.writeValueAsString(request);
+        } catch (Exception ex) {
+            pendingRequests.remove(id);
+            log.warn("Unable to subscribe to " + account.toBase58() + ": " + ex.getMessage());
+            return;
+        }
+
+        send(socket, s -> s.sendText(message, true)).whenComplete((s, throwable) -> {
+            if (throwable != null) {
+                pendingRequests.remove(id);
+                log.warn("Unable to subscribe to " + account.toBase58() + ": " + throwable.getMessage());
+            }
+        });
+    }
+
+    private void sendUnsubscribe(WebSocket socket, long subscriptionId) {
+        Map<String, Object> request = Map.of(
+                "jsonrpc", "2.0",
+                "id", requestId.incrementAndGet(),
+                "method", "accountUnsubscribe",
+                "params", List.of(subscriptionId)
+        );
+
+        final String message;
+        try {
+            message = objectMapper.writeValueAsString(request);
+        } catch (Exception ex) {
+            log.warn("Unable to unsubscribe from subscription " + subscriptionId + ": " + ex.getMessage());
+            return;
+        }
+
+        send(socket, s -> s.sendText(message, true)).whenComplete((s, throwable) -> {
+            if (throwable != null) {
+                log.warn("Unable to unsubscribe from subscription " + subscriptionId + ": " + throwable.getMessage());
+            }
+        });
+    }
+
+    // WebSocket does not allow a send while a previous one is still pending, so each send starts when the previous
+    // one completes, whether or not it failed.
+    private CompletableFuture<WebSocket> send(WebSocket socket,
+                                              Function<WebSocket, CompletableFuture<WebSocket>> write) {
+        synchronized (sendLock) {
+            CompletableFuture<WebSocket> sent = lastSend
+                    .handle((previous, throwable) -> socket)
+                    .thenCompose(write);
+            lastSend = sent;
+            return sent;
+        }
+    }
+
+    private void ping() {
+        WebSocket socket = webSocket;
+        if (socket != null) {
+            send(socket, s -> s.sendPing(ByteBuffer.allocate(0))).whenComplete((s, throwable) -> {
+                if (throwable != null) {
+                    handleDisconnect(socket, "ping failed");
+                }
+            });
+        }
+    }
+
+    private void handleMessage(WebSocket socket, String message) {
+        final JsonNode rootNode;
+        try {
+            rootNode = objectMapper.readTree(message);
+        } catch (Exception ex) {
+            log.warn("Invalid websocket message: " + ex.getMessage());
+            return;
+        }
+
+        if (rootNode.has("id")) {
+            // Unsubscribe confirmations aren't tracked
+            PublicKey account = pendingRequests.remove(rootNode.get("id").asLong());
+            if (account == null) {
+                return;
+            }
+
+            if (rootNode.has("result")) {
+                confirmSubscription(socket, account, rootNode.get("result").asLong());
+            } else {
+                log.warn("Subscription rejected for " + account.toBase58() + ": " + rootNode.path("error"));
+            }
+        } else if ("accountNotification".equals(rootNode.path("method").asText())) {
+            JsonNode params = rootNode.path("params");
+            PublicKey account = subscriptions.get(params.path("subscription").asLong());
+            JsonNode data = params.path("result").path("value").path("data");
+            if (account == null || !data.isArray()) {
+                return;
+            }
+
+            pendingNotifications.put(account, new Notification(
+                    params.path("result").path("context").path("slot").asLong(),
+                    data.get(0).asText()
+            ));
+            if (deliveringAccounts.add(account)) {
+                notificationExecutor.execute(() -> deliverNotifications(account));
+            }
+        }
+    }
+
+    // Runs until the account has nothing waiting, at most one per account at a time
+    private void deliverNotifications(PublicKey account) {
+        while (true) {
+            Notification notification = pendingNotifications.remove(account);
+            if (notification == null) {
+                deliveringAccounts.remove(account);
+                // A notification queued after the remove above, but before the account was released, is delivered
+                // here unless its own task already started
+                if (!pendingNotifications.containsKey(account) || !deliveringAccounts.add(account)) {
+                    return;
+                }
+                continue;
+            }
+
+            AccountListener listener = listeners.get(account);
+            if (listener == null) {
+                continue;
+            }
+            try {
+                listener.onAccountUpdate(
+                        account,
+                        notification.slot(),
+                        Base64.getDecoder().decode(notification.data())
+                );
+            } catch (Exception ex) {
+                log.warn("Unable to handle account notification: " + ex.getMessage());
+            }
+        }
+    }
+
+    // Unsubscribed while the request was pending, or subscribed again and confirmed twice
+    private synchronized void confirmSubscription(WebSocket socket, PublicKey account, long subscriptionId) {
+        if (socket != webSocket) {
+            return;
+        }
+
+        if (listeners.containsKey(account) && subscriptionIds.putIfAbsent(account, subscriptionId) == null) {
+            subscriptions.put(subscriptionId, account);
+            liveAccounts.add(account);
+        } else {
+            sendUnsubscribe(socket, subscriptionId);
+        }
+    }
+
+    private class SubscriptionListener implements WebSocket.Listener {
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+            buffer.append(data);
+            if (last) {
+                String message = buffer.toString();
+                buffer.setLength(0);
+                try {
+                    handleMessage(socket, message);
+                } catch (Exception ex) {
+                    log.warn("Unable to handle account notification: " + ex.getMessage());
+                }
+            }
+
+            socket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+            handleDisconnect(socket, statusCode + " " + reason);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket socket, Throwable error) {
+            handleDisconnect(socket, String.valueOf(error.getMessage()));
+        }
+    }
+}
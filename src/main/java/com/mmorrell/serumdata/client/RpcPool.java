@@ -0,0 +1,352 @@
+package com.mmorrell.serumdata.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link RpcClient} spread over several RPC endpoints. Each call goes to the healthiest endpoint: not ejected, caught
+ * up with the newest slot any endpoint reported, lowest recent latency.
+ * <p>
+ * Account reads ({@link #HEDGED_METHODS}) are hedged: if the chosen endpoint hasn't answered by the time 90% of its
+ * recent calls had, the same call goes to the next endpoint too and the first answer wins. Other calls fail over to
+ * the next endpoint on error.
+ * <p>
+ * Endpoints are ejected after repeated failures, for a while, or while they lag too many slots behind, checked with
+ * getSlot in the background. If every endpoint is ejected, calls go to all of them anyway.
+ * <p>
+ * Metrics tag endpoints by their position in the list, URLs may carry API keys.
+ */
+@Slf4j
+public class RpcPool extends RpcClient implements Closeable {
+
+    private static final Set<String> HEDGED_METHODS = Set.of("getAccountInfo", "getMultipleAccounts");
+    private static final int MAX_ATTEMPTS = 2;
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long FAILURE_EJECTION_MS = 30_000L;
+
+    // Hedge delay: percentile of recent latencies, defaulted until there are enough samples
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int MIN_LATENCY_SAMPLES = 16;
+    private static final double HEDGE_PERCENTILE = 0.9;
+    private static final long DEFAULT_HEDGE_DELAY_MS = 250L;
+    private static final long MIN_HEDGE_DELAY_MS = 20L;
+    private static final long MAX_HEDGE_DELAY_MS = 2_000L;
+    private static final Duration[] LATENCY_BUCKETS = {
+            Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(10)
+    };
+
+    /**
+     * One RPC endpoint, {@link #of(RpcClient)} in production.
+     */
+    public interface Endpoint {
+        String getUrl();
+
+        <T> T call(String method, List<Object> params, Class<T> clazz) throws RpcException;
+
+        static Endpoint of(RpcClient client) {
+            return new Endpoint() {
+                @Override
+                public String getUrl() {
+                    return client.getEndpoint();
+                }
+
+                @Override
+                public <T> T call(String method, List<Object> params, Class<T> clazz) throws RpcException {
+                    return client.call(method, params, clazz);
+                }
+            };
+        }
+    }
+
+    /**
+     * @param url          endpoint
+     * @param healthy      true if calls are routed to it
+     * @param slot         latest slot it reported
+     * @param latencyMs    average latency of recent calls
+     * @param hedgeDelayMs how long a hedged call waits for it before asking another endpoint
+     */
+    public record EndpointStatus(String url, boolean healthy, long slot, double latencyMs, long hedgeDelayMs) {
+    }
+
+    private static class EndpointState {
+        private final Endpoint endpoint;
+        private final String tag;
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int latencyCount;
+        private int latencyIndex;
+        private volatile double averageLatencyMs;
+        private volatile long hedgeDelayMs = DEFAULT_HEDGE_DELAY_MS;
+        private volatile long slot;
+        private volatile boolean lagging;
+        private volatile long ejectedUntil;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private EndpointState(Endpoint endpoint, int position) {
+            this.endpoint = endpoint;
+            this.tag = String.valueOf(position);
+        }
+
+        private boolean isHealthy(long now) {
+            return !lagging && now >= ejectedUntil;
+        }
+
+        private synchronized void recordSuccess(long latencyMs) {
+            consecutiveFailures.set(0);
+            latencies[latencyIndex] = latencyMs;
+            latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+            latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+            averageLatencyMs = averageLatencyMs == 0 ? latencyMs : averageLatencyMs * 0.8 + latencyMs * 0.2;
+
+            if (latencyCount >= MIN_LATENCY_SAMPLES) {
+                long[] sorted = Arrays.copyOf(latencies, latencyCount);
+                Arrays.sort(sorted);
+                long percentile = sorted[(int) Math.min(latencyCount - 1, Math.ceil(latencyCount * HEDGE_PERCENTILE))];
+                hedgeDelayMs = Math.max(MIN_HEDGE_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, percentile));
+            }
+        }
+
+        private void recordFailure() {
+            if (consecutiveFailures.incrementAndGet() >= MAX_CONSECUTIVE_FAILURES) {
+                ejectedUntil = System.currentTimeMillis() + FAILURE_EJECTION_MS;
+                consecutiveFailures.set(0);
+                log.warn("Ejecting RPC endpoint " + endpoint.getUrl() + " after repeated failures.");
+            }
+        }
+    }
+
+    private final List<EndpointState> endpoints;
+    private final long maxSlotLag;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "RpcPoolThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RpcPoolHealthThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param endpoints     at least one endpoint, the first one is preferred until latencies are known
+     * @param slotPollMs    how often each endpoint's slot is checked, 0 to never check
+     * @param maxSlotLag    endpoints further behind the newest slot than this are ejected
+     * @param meterRegistry per method and endpoint latencies, hedges, endpoint slots and health
+     */
+    public RpcPool(List<Endpoint> endpoints, long slotPollMs, long maxSlotLag, MeterRegistry meterRegistry) {
+        super(endpoints.get(0).getUrl());
+        final List<EndpointState> states = new ArrayList<>(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            states.add(new EndpointState(endpoints.get(i), i));
+        }
+        this.endpoints = List.copyOf(states);
+        this.maxSlotLag = maxSlotLag;
+        this.meterRegistry = meterRegistry;
+
+        for (EndpointState state : this.endpoints) {
+            Gauge.builder("serum.rpc.endpoint.slot", state, endpointState -> endpointState.slot)
+                    .description("Latest slot reported by the endpoint")
+                    .tag("endpoint", state.tag)
+                    .register(meterRegistry);
+            Gauge.builder("serum.rpc.endpoint.healthy", state,
+                            endpointState -> endpointState.isHealthy(System.currentTimeMillis()) ? 1 : 0)
+                    .description("1 if calls are routed to the endpoint")
+                    .tag("endpoint", state.tag)
+                    .register(meterRegistry);
+        }
+
+        if (slotPollMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::pollSlots, 0L, slotPollMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public String getEndpoint() {
+        return rank().get(0).endpoint.getUrl();
+    }
+
+    @Override
+    public <T> T call(String method, List<Object> params, Class<T> clazz) throws RpcException {
+        final List<EndpointState> ranked = rank();
+        if (ranked.size() > 1 && HEDGED_METHODS.contains(method)) {
+            return callHedged(ranked.get(0), ranked.get(1), method, params, clazz);
+        }
+
+        RpcException lastException = null;
+        for (int i = 0; i < Math.min(MAX_ATTEMPTS, ranked.size()); i++) {
+            try {
+                return attempt(ranked.get(i), method, params, clazz);
+            } catch (RpcException ex) {
+                lastException = ex;
+            }
+        }
+        throw lastException;
+    }
+
+    private <T> T callHedged(EndpointState primary, EndpointState secondary, String method, List<Object> params,
+                             Class<T> clazz) throws RpcException {
+        final CompletableFuture<T> primaryCall = submit(primary, method, params, clazz);
+        try {
+            return primaryCall.get(primary.hedgeDelayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            // Slower than usual, ask the next endpoint as well and take whichever answers first
+            Counter.builder("serum.rpc.hedged")
+                    .description("Calls sent to a second endpoint after the first was slow")
+                    .tag("method", method)
+                    .register(meterRegistry)
+                    .increment();
+            final CompletableFuture<T> secondaryCall = submit(secondary, method, params, clazz);
+            final CompletableFuture<T> first = new CompletableFuture<>();
+            primaryCall.thenAccept(first::complete);
+            secondaryCall.thenAccept(first::complete);
+            CompletableFuture.allOf(primaryCall, secondaryCall).whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    first.completeExceptionally(throwable);
+                }
+            });
+            return await(first);
+        } catch (ExecutionException ex) {
+            // Failed fast, no reason to wait out the hedge delay
+            return attempt(secondary, method, params, clazz);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RpcException("Interrupted while calling " + method);
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(EndpointState state, String method, List<Object> params, Class<T> clazz) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return attempt(state, method, params, clazz);
+            } catch (RpcException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws RpcException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RpcException("Interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+            if (cause instanceof RpcException rpcException) {
+                throw rpcException;
+            }
+            throw new RpcException(String.valueOf(cause));
+        }
+    }
+
+    private <T> T attempt(EndpointState state, String method, List<Object> params, Class<T> clazz)
+            throws RpcException {
+        final long start = System.nanoTime();
+        try {
+            T result = state.endpoint.call(method, params, clazz);
+            long elapsed = System.nanoTime() - start;
+            state.recordSuccess(TimeUnit.NANOSECONDS.toMillis(elapsed));
+            recordLatency(state, method, "success", elapsed);
+            return result;
+        } catch (RpcException | RuntimeException ex) {
+            state.recordFailure();
+            recordLatency(state, method, "error", System.nanoTime() - start);
+            if (ex instanceof RpcException rpcException) {
+                throw rpcException;
+            }
+            throw new RpcException(state.endpoint.getUrl() + ": " + ex.getMessage());
+        }
+    }
+
+    private void recordLatency(EndpointState state, String method, String outcome, long elapsedNanos) {
+        Timer.builder("serum.rpc.requests")
+                .description("RPC calls by method, endpoint and outcome")
+                .tags("method", method, "endpoint", state.tag, "outcome", outcome)
+                .serviceLevelObjectives(LATENCY_BUCKETS)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Healthy endpoints by latency, or every endpoint if none is healthy
+    private List<EndpointState> rank() {
+        final long now = System.currentTimeMillis();
+        final List<EndpointState> ranked = new ArrayList<>(endpoints.size());
+        for (EndpointState state : endpoints) {
+            if (state.isHealthy(now)) {
+                ranked.add(state);
+            }
+        }
+        if (ranked.isEmpty()) {
+            ranked.addAll(endpoints);
+        }
+
+        ranked.sort(Comparator.comparingDouble(state -> state.averageLatencyMs));
+        return ranked;
+    }
+
+    /**
+     * Reads every endpoint's slot, then ejects the ones that fell behind and restores the ones that caught up. Runs
+     * every slotPollMs.
+     */
+    public void pollSlots() {
+        final List<CompletableFuture<Void>> polls = endpoints.stream()
+                .map(state -> CompletableFuture.runAsync(() -> {
+                    try {
+                        Number slot = state.endpoint.call("getSlot", List.of(Map.of("commitment", "confirmed")),
+                                Long.class);
+                        state.slot = slot.longValue();
+                    } catch (Exception ex) {
+                        state.recordFailure();
+                    }
+                }, executor))
+                .toList();
+        try {
+            CompletableFuture.allOf(polls.toArray(new CompletableFuture[0])).get(MAX_HEDGE_DELAY_MS * 5,
+                    TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            // Endpoints that didn't answer keep their last slot
+        }
+
+        final long newestSlot = endpoints.stream().mapToLong(state -> state.slot).max().orElse(0L);
+        for (EndpointState state : endpoints) {
+            boolean lagging = newestSlot - state.slot > maxSlotLag;
+            if (lagging != state.lagging) {
+                log.info((lagging ? "Ejecting" : "Restoring") + " RPC endpoint " + state.endpoint.getUrl() +
+                        ", slot " + state.slot + " of " + newestSlot);
+            }
+            state.lagging = lagging;
+        }
+    }
+
+    public List<EndpointStatus> getStatus() {
+        final long now = System.currentTimeMillis();
+        return endpoints.stream()
+                .map(state -> new EndpointStatus(
+                        state.endpoint.getUrl(),
+                        state.isHealthy(now),
+                        state.slot,
+                        state.averageLatencyMs,
+                        state.hedgeDelayMs
+                ))
+                .toList();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -1,6 +1,8 @@
 package com.mmorrell.serumdata.config;
 
+import com.mmorrell.serumdata.client.RpcPool;
 import com.mmorrell.serumdata.util.RpcUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import okhttp3.OkHttpClient;
 import org.p2p.solanaj.rpc.RpcClient;
 import org.springframework.context.annotation.Bean;
@@ -15,6 +17,7 @@ import org.springframework.web.servlet.view.BeanNameViewResolver;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @EnableWebMvc
@@ -23,6 +26,9 @@ import java.util.concurrent.TimeUnit;
 public class WebConfig implements WebMvcConfigurer {
 
     private static final int HTTP_TIMEOUT_SECONDS = 30;
+    private static final long RPC_SLOT_POLL_MS = 2000L;
+    // ~10 seconds of slots
+    private static final long RPC_MAX_SLOT_LAG = 25L;
 
     @Bean
     public ViewResolver viewResolver() {
@@ -55,11 +61,21 @@ public class WebConfig implements WebMvcConfigurer {
     }
 
     /**
-     * Used for updating market listings every 5 minutes.
+     * Used for updating market listings every 5 minutes and loading order books. Spread over every configured
+     * endpoint, see {@link RpcPool}.
      */
     @Bean
-    public RpcClient backgroundRpcClient() {
-        return new RpcClient(RpcUtil.getPublicEndpoint(), HTTP_TIMEOUT_SECONDS);
+    public RpcClient backgroundRpcClient(MeterRegistry meterRegistry) {
+        final List<RpcPool.Endpoint> endpoints = RpcUtil.getPublicEndpoints().stream()
+                .map(endpoint -> RpcPool.Endpoint.of(new RpcClient(endpoint, HTTP_TIMEOUT_SECONDS)))
+                .toList();
+        return new RpcPool(
+                endpoints,
+                // A single endpoint can't lag behind the others, its slot isn't worth polling
+                endpoints.size() > 1 ? RPC_SLOT_POLL_MS : 0L,
+                RPC_MAX_SLOT_LAG,
+                meterRegistry
+        );
     }
 
     @Bean
@@ -1,29 +1,50 @@
 package com.mmorrell.serumdata.controller;
 
 import com.mmorrell.serum.model.*;
-import com.mmorrell.serumdata.manager.IdentityManager;
+import com.mmorrell.serumdata.manager.CandleManager;
 import com.mmorrell.serumdata.manager.MarketManager;
+import com.mmorrell.serumdata.manager.MarketRankManager;
+import com.mmorrell.serumdata.manager.MarketResponseManager;
+import com.mmorrell.serumdata.manager.MarketStreamManager;
 import com.mmorrell.serumdata.manager.TokenManager;
+import com.mmorrell.serumdata.manager.TradeTapeManager;
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
 import com.mmorrell.serumdata.model.MarketDepth;
-import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.TokenSearchResult;
 import com.mmorrell.serumdata.model.TradeHistoryEvent;
-import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.model.TradeRecord;
+import com.mmorrell.serumdata.util.BinaryDepthEncoder;
+import com.mmorrell.serumdata.util.SerializedResponseCache;
+import com.mmorrell.serumdata.util.SerializedResponseCache.SerializedResponse;
 import org.p2p.solanaj.core.PublicKey;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 @RestController
 public class ApiController {
 
     private final TokenManager tokenManager;
     private final MarketManager marketManager;
-    private final IdentityManager identityManager;
+    private final MarketRankManager marketRankManager;
+    private final MarketResponseManager marketResponseManager;
+    private final MarketStreamManager marketStreamManager;
+    private final TradeTapeManager tradeTapeManager;
+    private final CandleManager candleManager;
 
     // Cache headers
     private final static String CACHE_CONTROL_HEADER_NAME = "Cache-Control";
@@ -31,6 +52,8 @@ public class ApiController {
     private final static String CACHE_HEADER_NAME = "Cloudflare-CDN-Cache-Control";
     private final static String CACHE_HEADER_VALUE = "max-age=";
     private final static int CACHE_MAX_DURATION_SECONDS = 1;
+    private final static int MAX_TRADES_LIMIT = 1000;
+    private final static int MAX_TOKEN_SEARCH_PAGE_SIZE = 100;
     private final static String CACHE_HEADER_VALUE_FORMATTED = String.format(
             "%s%d",
             CACHE_HEADER_VALUE,
@@ -41,10 +64,41 @@ public class ApiController {
     // Auto-injected beans created by Component annotation
     public ApiController(TokenManager tokenManager,
                          MarketManager marketManager,
-                         IdentityManager identityManager) {
+                         MarketRankManager marketRankManager,
+                         MarketResponseManager marketResponseManager,
+                         MarketStreamManager marketStreamManager,
+                         TradeTapeManager tradeTapeManager,
+                         CandleManager candleManager) {
         this.tokenManager = tokenManager;
         this.marketManager = marketManager;
-        this.identityManager = identityManager;
+        this.marketRankManager = marketRankManager;
+        this.marketResponseManager = marketResponseManager;
+        this.marketStreamManager = marketStreamManager;
+        this.tradeTapeManager = tradeTapeManager;
+        this.candleManager = candleManager;
+    }
+
+    /**
+     * Tokens with at least one market, matched by symbol, name or mint and ranked by market activity.
+     *
+     * @param q    symbol, name or mint prefix, typos are tolerated. Blank lists every token.
+     * @param page 1-based page
+     * @param size page size, at most 100
+     * @return one page of matches
+     */
+    @GetMapping(value = "/api/serum/token/search")
+    public TokenSearchResult searchTokens(@RequestParam(defaultValue = "") String q,
+                                          @RequestParam(defaultValue = "1") int page,
+                                          @RequestParam(defaultValue = "20") int size,
+                                          HttpServletResponse response) {
+        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
+        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
+
+        return marketRankManager.searchTokens(
+                q,
+                Math.max(1, page),
+                Math.max(1, Math.min(size, MAX_TOKEN_SEARCH_PAGE_SIZE))
+        );
     }
 
     @GetMapping(value = "/api/serum/token/{tokenId}")
@@ -101,211 +155,232 @@ public class ApiController {
     }
 
     @GetMapping(value = "/api/serum/market/{marketId}/bids")
-    public List<SerumOrder> getMarketBids(@PathVariable String marketId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
-
-        final PublicKey marketPublicKey = PublicKey.valueOf(marketId);
-        final Optional<OrderBook> orderBook = marketManager.getCachedBidOrderBook(marketPublicKey);
-
-        if (orderBook.isPresent()) {
-            List<SerumOrder> serumOrders = MarketUtil.convertOrderBookToSerumOrders(orderBook.get(), true);
-
-            // Calculate aggregate percentages for each quote, add to metadata
-            float aggregateNotional = serumOrders.stream()
-                    .map(order -> order.getQuantity() * order.getPrice())
-                    .reduce(0f, Float::sum);
-
-            float currentTotal = 0.0f;
-            for (SerumOrder order : serumOrders) {
-                float notional = order.getPrice() * order.getQuantity();
-                currentTotal += notional;
-                order.addMetadata("percent", currentTotal / aggregateNotional);
-            }
-
-
-            identityManager.reverseOwnerLookup(serumOrders);
-            return serumOrders;
-        } else {
-            return Collections.emptyList();
-        }
+    public ResponseEntity<byte[]> getMarketBids(@PathVariable String marketId,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                String ifNoneMatch) {
+        return snapshotResponse(MarketResponseManager.BIDS, marketId, ifNoneMatch, Collections.emptyList());
     }
 
     @GetMapping(value = "/api/serum/market/{marketId}/asks")
-    public List<SerumOrder> getMarketAsks(@PathVariable String marketId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
-
-        final PublicKey marketPublicKey = PublicKey.valueOf(marketId);
-        final Optional<OrderBook> orderBook = marketManager.getCachedAskOrderBook(marketPublicKey);
-
-        if (orderBook.isPresent()) {
-            List<SerumOrder> serumOrders = MarketUtil.convertOrderBookToSerumOrders(orderBook.get(), false);
+    public ResponseEntity<byte[]> getMarketAsks(@PathVariable String marketId,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                String ifNoneMatch) {
+        return snapshotResponse(MarketResponseManager.ASKS, marketId, ifNoneMatch, Collections.emptyList());
+    }
 
-            // Calculate aggregate percentages for each quote, add to metadata
-            float aggregateNotional = serumOrders.stream()
-                    .map(order -> order.getQuantity() * order.getPrice())
-                    .reduce(0f, Float::sum);
+    // since: only trades with a higher seqNum, e.g. the highest seqNum from the previous response
+    @GetMapping(value = "/api/serum/market/{marketId}/tradeHistory")
+    public ResponseEntity<byte[]> getMarketTradeHistory(@PathVariable String marketId,
+                                                        @RequestParam(required = false) Long since,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                        String ifNoneMatch) {
+        if (since == null) {
+            return snapshotResponse(MarketResponseManager.TRADE_HISTORY, marketId, ifNoneMatch, Collections.emptyList());
+        }
 
-            float currentTotal = 0.0f;
-            for (SerumOrder order : serumOrders) {
-                float notional = order.getPrice() * order.getQuantity();
-                currentTotal += notional;
-                order.addMetadata("percent", currentTotal / aggregateNotional);
-            }
+        // Cursor responses are small and differ per client, so they skip the response cache
+        final List<TradeHistoryEvent> trades = marketManager.getMarketSnapshot(PublicKey.valueOf(marketId))
+                .map(snapshot -> marketResponseManager.buildTradeHistory(snapshot, since))
+                .orElse(Collections.emptyList());
 
-            identityManager.reverseOwnerLookup(serumOrders);
-            return serumOrders;
-        } else {
-            return Collections.emptyList();
-        }
+        return ResponseEntity.ok()
+                .header(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED)
+                .header(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(marketResponseManager.writeJson(trades));
     }
 
-    @GetMapping(value = "/api/serum/market/{marketId}/tradeHistory")
-    public List<TradeHistoryEvent> getMarketTradeHistory(@PathVariable String marketId, HttpServletResponse response) {
+    /**
+     * Recorded fills, read from the market's trade tape. Pages forward by seqNum with since, or by time with from/to.
+     *
+     * @param marketId market id
+     * @param since    only fills with a higher seqNum, e.g. the last seqNum of the previous page
+     * @param from     start time in ms, inclusive (used when since isn't set)
+     * @param to       end time in ms, exclusive, defaults to now
+     * @param limit    page size, at most 1000
+     * @return fills, oldest first
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/trades")
+    public List<TradeRecord> getMarketTrades(@PathVariable String marketId,
+                                             @RequestParam(required = false) Long since,
+                                             @RequestParam(required = false) Long from,
+                                             @RequestParam(required = false) Long to,
+                                             @RequestParam(defaultValue = "100") int limit,
+                                             HttpServletResponse response) {
         response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
         response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
 
-        final List<TradeHistoryEvent> result = new ArrayList<>();
-        final PublicKey marketKey = new PublicKey(marketId);
-
-        final Optional<EventQueue> eventQueue = marketManager.getCachedEventQueue(marketKey);
-        if (eventQueue.isEmpty()) {
+        final Optional<Market> marketOptional = marketManager.getMarketById(marketId);
+        if (marketOptional.isEmpty()) {
             return Collections.emptyList();
         }
 
-        List<TradeEvent> tradeEvents = eventQueue.get().getEvents();
-        Map<PublicKey, Optional<PublicKey>> owners = identityManager.lookupAndAddOwnersToCache(
-                tradeEvents.stream()
-                        .map(TradeEvent::getOpenOrders)
-                        .toList()
-        );
-
-        for (int i = 0; i < tradeEvents.size(); i++) {
-            TradeEvent event = tradeEvents.get(i);
-
-            if (event.getEventQueueFlags().isMaker()) {
-                // Skip event if it's a maker side fill
-                // We are attaching that metadata to the taker event instead.
-                continue;
-            }
+        final Market market = marketOptional.get();
+        final int pageSize = Math.max(1, Math.min(limit, MAX_TRADES_LIMIT));
 
-            // Get owner of taker OOA
-            Optional<PublicKey> owner = owners.getOrDefault(event.getOpenOrders(), Optional.empty());
-
-            // Fall back if not found yet
-            PublicKey taker = owner.orElseGet(event::getOpenOrders);
-
-            // Calculate the corresponding maker for trade.
-            // The maker row is always adjacent to the taker. E.g. index 0 is taker, index 1 is maker.
-            // Volume and price can also be correlated but it isn't as deterministic.
-            int makerIndex = i + 1;
-            final Optional<PublicKey> makerPubkey = makerIndex < tradeEvents.size() ?
-                    Optional.ofNullable(tradeEvents.get(makerIndex).getOpenOrders()) :
-                    Optional.empty();
-
-            final TradeHistoryEvent tradeHistoryEvent = TradeHistoryEvent.builder()
-                    .index(i)
-                    .price(event.getFloatPrice())
-                    .quantity(event.getFloatQuantity())
-                    .owner(taker)
-                    .takerOoa(event.getOpenOrders())
-                    .build();
+        if (since == null && from != null) {
+            return tradeTapeManager.getTradesBetween(
+                    market.getOwnAddress(),
+                    from,
+                    to != null ? to : System.currentTimeMillis(),
+                    pageSize
+            );
+        }
 
-            // Known entity e.g. Wintermute
-            boolean isKnownTaker = identityManager.hasReverseLookup(taker);
-            if (isKnownTaker) {
-                tradeHistoryEvent.setTakerEntityName(identityManager.getEntityNameByOwner(taker));
-                tradeHistoryEvent.setTakerEntityIcon(identityManager.getEntityIconByOwner(taker));
-            }
+        return tradeTapeManager.getTradesSince(market.getOwnAddress(), since != null ? since : -1L, pageSize);
+    }
 
-            // Maker metadata
-            if (makerPubkey.isPresent()) {
-                Optional<PublicKey> makerOwner = owners.get(makerPubkey.get());
-                tradeHistoryEvent.setMakerOoa(makerPubkey.get());
-                if (makerOwner.isPresent()) {
-                    tradeHistoryEvent.setMakerOwner(makerOwner.get());
-                    if (identityManager.hasReverseLookup(makerOwner.get())) {
-                        tradeHistoryEvent.setMakerEntityName(identityManager.getEntityNameByOwner(makerOwner.get()));
-                        tradeHistoryEvent.setMakerEntityIcon(identityManager.getEntityIconByOwner(makerOwner.get()));
-                    }
-                } else {
-                    tradeHistoryEvent.setMakerOwner(makerPubkey.get());
-                }
-            }
+    /**
+     * OHLCV bars built from recorded fills. Periods without fills have no bar.
+     *
+     * @param marketId   market id
+     * @param resolution 1m, 5m, 1h or 1d
+     * @param limit      maximum number of bars, newest are kept
+     * @return bars, oldest first
+     */
+    @GetMapping(value = "/api/serum/market/{marketId}/candles")
+    public List<Candle> getMarketCandles(@PathVariable String marketId,
+                                         @RequestParam(defaultValue = "1h") String resolution,
+                                         @RequestParam(defaultValue = "500") int limit,
+                                         HttpServletResponse response) {
+        final CandleResolution candleResolution = CandleResolution.fromLabel(resolution)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Unknown resolution: " + resolution
+                ));
 
-            tradeHistoryEvent.setFill(event.getEventQueueFlags().isFill());
-            tradeHistoryEvent.setOut(event.getEventQueueFlags().isOut());
-            tradeHistoryEvent.setBid(event.getEventQueueFlags().isBid());
-            tradeHistoryEvent.setMaker(event.getEventQueueFlags().isMaker());
+        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
+        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
 
-            result.add(tradeHistoryEvent);
+        final Optional<Market> market = marketManager.getMarketById(marketId);
+        if (market.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        return result;
+        return candleManager.getCandles(
+                market.get().getOwnAddress(),
+                candleResolution,
+                Math.max(1, Math.min(limit, candleResolution.getCapacity()))
+        );
     }
 
     // Only works for cached markets.
+    // JSON by default, compact binary (see BinaryDepthEncoder) with ?format=binary or a matching Accept header.
     @GetMapping(value = "/api/serum/market/{marketId}/depth")
-    public MarketDepth getMarketDepth(@PathVariable String marketId, HttpServletResponse response) {
-        response.addHeader(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED);
-        response.addHeader(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE);
-
-        final PublicKey marketPubkey = new PublicKey(marketId);
-        CompletableFuture<Optional<OrderBook>> bidFuture = CompletableFuture.supplyAsync(() -> marketManager.getCachedBidOrderBook(marketPubkey));
-        CompletableFuture<Optional<OrderBook>> askFuture = CompletableFuture.supplyAsync(() -> marketManager.getCachedAskOrderBook(marketPubkey));
+    public ResponseEntity<byte[]> getMarketDepth(@PathVariable String marketId,
+                                                 @RequestParam(required = false) String format,
+                                                 @RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+                                                 String accept,
+                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                 String ifNoneMatch) {
+        final boolean binary = "binary".equals(format) ||
+                (accept != null && accept.contains(BinaryDepthEncoder.MEDIA_TYPE));
+
+        if (binary) {
+            return snapshotResponse(
+                    MarketResponseManager.DEPTH_BINARY,
+                    marketId,
+                    ifNoneMatch,
+                    MediaType.parseMediaType(BinaryDepthEncoder.MEDIA_TYPE),
+                    null
+            );
+        }
 
-        final CompletableFuture<Void> combinedFutures = CompletableFuture.allOf(bidFuture, askFuture);
-        Optional<OrderBook> bidOrderBook, askOrderBook;
+        return snapshotResponse(MarketResponseManager.DEPTH, marketId, ifNoneMatch, MarketDepth.builder().build());
+    }
 
+    /**
+     * Streams market views over one connection as server-sent events, pushed whenever a market's snapshot changes.
+     *
+     * @param markets comma separated market ids
+     * @param topics  comma separated views: depth, bids, asks, tradeHistory
+     */
+    @GetMapping(value = "/api/serum/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void streamMarkets(@RequestParam String markets,
+                              @RequestParam(defaultValue = MarketResponseManager.DEPTH) String topics,
+                              HttpServletRequest request,
+                              HttpServletResponse response) throws IOException {
         try {
-            combinedFutures.get();
-            bidOrderBook = bidFuture.get();
-            askOrderBook = askFuture.get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
+            marketStreamManager.openStream(
+                    Arrays.stream(markets.split(",")).map(PublicKey::valueOf).toList(),
+                    Arrays.asList(topics.split(",")),
+                    request,
+                    response
+            );
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
         }
+    }
 
-        if (bidOrderBook.isEmpty() || askOrderBook.isEmpty()) {
-            return MarketDepth.builder().build();
-        }
-
-        // isBid = false on the bids since chart JS library expects ascending order
-        final List<SerumOrder> bids = MarketUtil.convertOrderBookToSerumOrders(bidOrderBook.get(), false);
-        final List<SerumOrder> asks = MarketUtil.convertOrderBookToSerumOrders(askOrderBook.get(), false);
-
-        float bestBid = bids.size() > 0 ? bidOrderBook.get().getBestBid().getFloatPrice() : 0.0f;
-        float bestAsk = asks.size() > 0 ? askOrderBook.get().getBestAsk().getFloatPrice() : 0.0f;
-        float midPoint = (bestBid + bestAsk) / 2;
-        float aggregateBidQuantity = 0.0f, aggregateAskQuantity = 0.0f;
+    /**
+     * Serves a JSON response built from the market's snapshot.
+     *
+     * @param kind        response type, e.g. "bids"
+     * @param marketId    market id
+     * @param ifNoneMatch If-None-Match header sent by the client
+     * @param emptyBody   body to send if the market is unknown
+     * @return JSON response with ETag and cache headers
+     */
+    private ResponseEntity<byte[]> snapshotResponse(String kind,
+                                                    String marketId,
+                                                    String ifNoneMatch,
+                                                    Object emptyBody) {
+        return snapshotResponse(
+                kind,
+                marketId,
+                ifNoneMatch,
+                MediaType.APPLICATION_JSON,
+                marketResponseManager.writeJson(emptyBody)
+        );
+    }
 
-        for (SerumOrder bid : bids) {
-            aggregateBidQuantity += bid.getQuantity();
-        }
+    /**
+     * Serves a response built from the market's snapshot. The encoded body is reused until the snapshot slot
+     * changes, and clients that already have the current slot get a 304.
+     *
+     * @param kind        response type, see {@link MarketResponseManager}
+     * @param marketId    market id
+     * @param ifNoneMatch If-None-Match header sent by the client
+     * @param contentType content type of the encoded body
+     * @param emptyBody   body to send if the market is unknown, or null to send a 404
+     * @return response with ETag and cache headers
+     */
+    private ResponseEntity<byte[]> snapshotResponse(String kind,
+                                                    String marketId,
+                                                    String ifNoneMatch,
+                                                    MediaType contentType,
+                                                    byte[] emptyBody) {
+        final Optional<MarketSnapshot> snapshot = marketManager.getMarketSnapshot(PublicKey.valueOf(marketId));
+        if (snapshot.isEmpty()) {
+            if (emptyBody == null) {
+                return ResponseEntity.notFound().build();
+            }
 
-        final List<float[]> bidList = new ArrayList<>();
-        for (SerumOrder bid : bids) {
-            bidList.add(new float[]{bid.getPrice(), aggregateBidQuantity, bid.getQuantity()});
-            aggregateBidQuantity -= bid.getQuantity();
+            return ResponseEntity.ok()
+                    .header(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED)
+                    .header(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE)
+                    .contentType(contentType)
+                    .body(emptyBody);
         }
 
-        float[][] floatBids = bidList.toArray(new float[0][0]);
+        final SerializedResponse serialized = marketResponseManager.getResponse(kind, snapshot.get());
 
-        final List<float[]> askList = new ArrayList<>();
-        for (SerumOrder ask : asks) {
-            aggregateAskQuantity += ask.getQuantity();
-            askList.add(new float[]{ask.getPrice(), aggregateAskQuantity, ask.getQuantity()});
+        if (SerializedResponseCache.isNotModified(ifNoneMatch, serialized.eTag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .header(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED)
+                    .header(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .eTag(serialized.eTag())
+                    .build();
         }
 
-        float[][] floatAsks = askList.toArray(new float[0][0]);
-
-        return MarketDepth.builder()
-                .asks(floatAsks)
-                .bids(floatBids)
-                .midpoint(midPoint)
-                .bidContextSlot(marketManager.getBidContext(marketPubkey))
-                .askContextSlot(marketManager.getAskContext(marketPubkey))
-                .build();
+        return ResponseEntity.ok()
+                .header(CACHE_HEADER_NAME, CACHE_HEADER_VALUE_FORMATTED)
+                .header(CACHE_CONTROL_HEADER_NAME, CACHE_CONTROL_HEADER_VALUE)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .eTag(serialized.eTag())
+                .contentType(contentType)
+                .body(serialized.body());
     }
 
     private Map<String, Object> convertMarketToMap(Market market) {
@@ -1,10 +1,14 @@
 package com.mmorrell.serumdata.controller;
 
-import com.mmorrell.serumdata.manager.MarketRankManager;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.mmorrell.serumdata.manager.IconSpriteManager;
+import com.mmorrell.serumdata.manager.TokenIconManager;
 import com.mmorrell.serumdata.manager.TokenManager;
-import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.util.IconStore.Icon;
 import org.p2p.solanaj.core.PublicKey;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,54 +16,86 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class ImageProxyController {
 
+    // Icons change rarely and carry an ETag, the placeholder is replaced once the real icon has been fetched
+    private static final CacheControl ICON_CACHE_CONTROL = CacheControl.maxAge(7, TimeUnit.DAYS).cachePublic();
+    private static final CacheControl PLACEHOLDER_CACHE_CONTROL = CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic();
+    private static final String PLACEHOLDER_ETAG = "\"placeholder\"";
+    // Sprite sheet URLs contain their content hash
+    private static final String SPRITE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
     private final TokenManager tokenManager;
+    private final TokenIconManager tokenIconManager;
+    private final IconSpriteManager iconSpriteManager;
 
-    public ImageProxyController(final TokenManager tokenManager) {
+    public ImageProxyController(final TokenManager tokenManager,
+                                final TokenIconManager tokenIconManager,
+                                final IconSpriteManager iconSpriteManager) {
         this.tokenManager = tokenManager;
+        this.tokenIconManager = tokenIconManager;
+        this.iconSpriteManager = iconSpriteManager;
     }
 
+    // A matching If-None-Match gets a 304 without a body, Spring compares it against the ETag set here.
     @GetMapping(value = "/api/serum/token/{tokenId}/icon")
     @ResponseBody
     public ResponseEntity<InputStreamResource> getIconByTokenMint(@PathVariable String tokenId) {
+        Optional<Icon> icon;
         try {
-            PublicKey tokenMint = new PublicKey(tokenId);
-            Optional<Token> optionalToken = tokenManager.getTokenByMint(tokenMint);
-            if (optionalToken.isPresent()) {
-                Token token = optionalToken.get();
-                InputStreamResource tokenImage = tokenManager.getTokenImageInputStream(token);
-                MediaType contentType = switch (token.getImageFormat()) {
-                    case "gif" -> MediaType.IMAGE_GIF;
-                    case "jpg" -> MediaType.IMAGE_JPEG;
-                    case "svg" -> MediaType.valueOf("image/svg+xml");
-                    default -> MediaType.IMAGE_PNG;
-                };
-
-                // Edge case: in tokenlist, not in listings
-                if (!tokenManager.isImageCached(tokenMint)) {
-                    contentType = MediaType.IMAGE_PNG;
-                }
-
-                return ResponseEntity.ok()
-                        .contentType(contentType)
-                        .body(tokenImage);
-            } else {
-                // Case: Real pubkey, fake token
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_PNG)
-                        .body(new InputStreamResource(new ByteArrayInputStream(tokenManager.getPlaceHolderImage())));
-            }
+            icon = tokenIconManager.getIcon(new PublicKey(tokenId));
         } catch (Exception ex) {
             // Case: Invalid public key, or other dirty input
+            icon = Optional.empty();
+        }
+
+        if (icon.isPresent()) {
+            // Streamed from the mapped icon file, no copy on the heap
+            ByteBuffer data = icon.get().data();
             return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_PNG)
-                    .body(new InputStreamResource(new ByteArrayInputStream(tokenManager.getPlaceHolderImage())));
+                    .cacheControl(ICON_CACHE_CONTROL)
+                    .eTag(icon.get().getETag())
+                    .contentType(MediaType.parseMediaType(icon.get().contentType()))
+                    .contentLength(data.remaining())
+                    .body(new InputStreamResource(new ByteBufferBackedInputStream(data)));
         }
+
+        // Case: Unknown token, no logo, or logo not fetched yet
+        byte[] placeHolderImage = tokenManager.getPlaceHolderImage();
+        return ResponseEntity.ok()
+                .cacheControl(PLACEHOLDER_CACHE_CONTROL)
+                .eTag(PLACEHOLDER_ETAG)
+                .contentType(MediaType.IMAGE_PNG)
+                .contentLength(placeHolderImage.length)
+                .body(new InputStreamResource(new ByteBufferBackedInputStream(ByteBuffer.wrap(placeHolderImage))));
     }
 
+    @GetMapping(value = "/api/serum/token/sprite/{hash}.png")
+    public ResponseEntity<byte[]> getIconSpriteSheet(@PathVariable String hash) {
+        return iconSpriteManager.getSpriteSheet(hash)
+                .map(sheet -> ResponseEntity.ok()
+                        .header(HttpHeaders.CACHE_CONTROL, SPRITE_CACHE_CONTROL)
+                        .contentType(MediaType.IMAGE_PNG)
+                        .body(sheet.getImage()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Offset of each icon in the sprite sheet with the same hash: {"image", "cellSize", "width", "height",
+     * "icons": {tokenMint: [x, y]}}
+     */
+    @GetMapping(value = "/api/serum/token/sprite/{hash}.json")
+    public ResponseEntity<byte[]> getIconSpriteIndex(@PathVariable String hash) {
+        return iconSpriteManager.getSpriteSheet(hash)
+                .map(sheet -> ResponseEntity.ok()
+                        .header(HttpHeaders.CACHE_CONTROL, SPRITE_CACHE_CONTROL)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(sheet.getIndex()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 }
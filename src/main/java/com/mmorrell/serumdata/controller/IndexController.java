@@ -1,6 +1,7 @@
 package com.mmorrell.serumdata.controller;
 
 import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.manager.IconSpriteManager;
 import com.mmorrell.serumdata.manager.MarketManager;
 import com.mmorrell.serumdata.manager.MarketRankManager;
 import com.mmorrell.serumdata.manager.TokenManager;
@@ -28,21 +29,16 @@ public class IndexController {
     private final TokenManager tokenManager;
     private final MarketManager marketManager;
     private final MarketRankManager marketRankManager;
-    private final Map<PublicKey, Token> activeTokenMap = new HashMap<>();
+    private final IconSpriteManager iconSpriteManager;
 
     public IndexController(TokenManager tokenManager,
                            MarketManager marketManager,
-                           MarketRankManager marketRankManager) {
+                           MarketRankManager marketRankManager,
+                           IconSpriteManager iconSpriteManager) {
         this.tokenManager = tokenManager;
         this.marketManager = marketManager;
         this.marketRankManager = marketRankManager;
-
-        // Only list Tokens with an active Serum market.
-        tokenManager.getRegistry().forEach((tokenMint, token) -> {
-            if (marketManager.numMarketsByToken(tokenMint) > 0) {
-                activeTokenMap.put(tokenMint, token);
-            }
-        });
+        this.iconSpriteManager = iconSpriteManager;
     }
 
     @RequestMapping("/")
@@ -50,7 +46,7 @@ public class IndexController {
         model.addAttribute(DEFAULT_TOKEN_ATTRIBUTE_NAME, DEFAULT_TOKEN_SEARCH.toBase58());
         model.addAttribute(MARKET_ID_ATTRIBUTE_NAME, DEFAULT_MARKET.toBase58());
 
-        model.addAttribute("tokens", activeTokenMap);
+        addSelectedToken(model);
         model.addAttribute(marketRankManager);
         model.addAttribute("marketUrl",
                 "https://dex.solape.io/#/market/".concat(String.valueOf(model.getAttribute(MARKET_ID_ATTRIBUTE_NAME))));
@@ -60,9 +56,9 @@ public class IndexController {
 
     @RequestMapping("/markets")
     public String markets(Model model) {
-        model.addAttribute("tokens", activeTokenMap);
         model.addAttribute(marketRankManager);
         model.addAttribute("marketListings", marketRankManager.getMarketListings());
+        model.addAttribute("iconSprite", iconSpriteManager.getSpriteSheet());
 
         return "markets";
     }
@@ -144,11 +140,17 @@ public class IndexController {
             }
         }
 
-        model.addAttribute("tokens", activeTokenMap);
+        addSelectedToken(model);
         model.addAttribute(marketRankManager);
         model.addAttribute("marketUrl",
                 "https://dex.solape.io/#/market/".concat(String.valueOf(model.getAttribute(MARKET_ID_ATTRIBUTE_NAME))));
 
         return "index";
     }
+
+    // Only the selected token is rendered, the token select searches the rest through /api/serum/token/search
+    private void addSelectedToken(Model model) {
+        PublicKey tokenMint = PublicKey.valueOf(String.valueOf(model.getAttribute(DEFAULT_TOKEN_ATTRIBUTE_NAME)));
+        model.addAttribute("selectedToken", tokenManager.getTokenByMint(tokenMint).orElse(null));
+    }
 }
@@ -0,0 +1,122 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
+import com.mmorrell.serumdata.model.TradeRecord;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mmorrell.serumdata.util.CandleAggregator;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OHLCV candles per market, built incrementally from the fills recorded by {@link TradeTapeManager}. A market's
+ * candles are loaded from its trade tape the first time they are requested, so they survive restarts. Only recently
+ * requested markets keep candles in memory, the others are reloaded from their tape on the next request.
+ */
+@Component
+@Slf4j
+public class CandleManager {
+
+    // Enough for every bar of the longest series, the tape's retention is the real limit
+    private static final long BACKFILL_MS = Arrays.stream(CandleResolution.values())
+            .mapToLong(resolution -> resolution.getDurationMs() * resolution.getCapacity())
+            .max()
+            .orElseThrow();
+    private static final int BACKFILL_PAGE_SIZE = 1000;
+    // Each aggregator holds about 200 KB of bars
+    private static final int MAX_AGGREGATORS = 128;
+    private static final long AGGREGATOR_IDLE_MINUTES = 60L;
+
+    private final TradeTapeManager tradeTapeManager;
+    // <marketPubkey, candles>, evicted markets are reloaded from their tape on the next request
+    private final Cache<PublicKey, CandleAggregator> aggregators = CacheBuilder.newBuilder()
+            .maximumSize(MAX_AGGREGATORS)
+            .expireAfterAccess(AGGREGATOR_IDLE_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    public CandleManager(TradeTapeManager tradeTapeManager) {
+        this.tradeTapeManager = tradeTapeManager;
+    }
+
+    /**
+     * Adds fills to the market's candles if they are loaded. Otherwise the fills are read from the tape when the
+     * candles are first requested, so recording never replays the tape.
+     *
+     * @param marketPubkey known market the fills were recorded for
+     * @param trades       newly recorded fills, oldest first
+     */
+    public void record(PublicKey marketPubkey, List<TradeRecord> trades) {
+        final CandleAggregator aggregator = aggregators.getIfPresent(marketPubkey);
+        if (aggregator == null || trades.isEmpty()) {
+            return;
+        }
+
+        for (TradeRecord trade : trades) {
+            aggregator.add(trade.getSeqNum(), trade.getTimestamp(), trade.getPrice(), trade.getQuantity());
+        }
+    }
+
+    /**
+     * @param marketPubkey market
+     * @param resolution   bar size
+     * @param limit        maximum number of bars
+     * @return the newest bars, oldest first
+     */
+    public List<Candle> getCandles(PublicKey marketPubkey, CandleResolution resolution, int limit) {
+        final CandleAggregator aggregator;
+        try {
+            aggregator = aggregators.get(marketPubkey, () -> loadAggregator(marketPubkey));
+        } catch (ExecutionException | RuntimeException ex) {
+            log.warn("Unable to load candles for " + marketPubkey.toBase58() + ": " + ex.getMessage());
+            return Collections.emptyList();
+        }
+
+        // Fills recorded while the aggregator was loading weren't added to it
+        replayTape(marketPubkey, aggregator);
+        return aggregator.getCandles(resolution, limit);
+    }
+
+    // Replays as much of the trade tape as the candles hold, fills recorded meanwhile are deduplicated by seqNum
+    private CandleAggregator loadAggregator(PublicKey marketPubkey) {
+        final CandleAggregator aggregator = new CandleAggregator();
+        List<TradeRecord> page = tradeTapeManager.getTradesBetween(
+                marketPubkey,
+                System.currentTimeMillis() - BACKFILL_MS,
+                Long.MAX_VALUE,
+                BACKFILL_PAGE_SIZE
+        );
+
+        int count = 0;
+        while (!page.isEmpty()) {
+            for (TradeRecord trade : page) {
+                aggregator.add(trade.getSeqNum(), trade.getTimestamp(), trade.getPrice(), trade.getQuantity());
+            }
+            count += page.size();
+            page = tradeTapeManager.getTradesSince(marketPubkey, aggregator.getLastSeqNum(), BACKFILL_PAGE_SIZE);
+        }
+
+        if (count > 0) {
+            log.info("Loaded " + count + " fills into candles for " + marketPubkey.toBase58());
+        }
+        return aggregator;
+    }
+
+    // Usually a single empty page, fills already added are skipped by seqNum
+    private void replayTape(PublicKey marketPubkey, CandleAggregator aggregator) {
+        List<TradeRecord> page;
+        do {
+            page = tradeTapeManager.getTradesSince(marketPubkey, aggregator.getLastSeqNum(), BACKFILL_PAGE_SIZE);
+            for (TradeRecord trade : page) {
+                aggregator.add(trade.getSeqNum(), trade.getTimestamp(), trade.getPrice(), trade.getQuantity());
+            }
+        } while (page.size() == BACKFILL_PAGE_SIZE);
+    }
+}
@@ -0,0 +1,115 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serumdata.model.MarketListing;
+import com.mmorrell.serumdata.util.IconSpriteSheet;
+import com.mmorrell.serumdata.util.IconStore.Icon;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sprite sheet of the icons of every listed market's tokens, so the markets page loads one image instead of one per
+ * token. Rebuilt when the listed tokens or their icons change. The previous sheet stays available, pages rendered
+ * just before a rebuild still reference it.
+ */
+@Component
+@Slf4j
+public class IconSpriteManager {
+
+    private static final int CELL_SIZE = 32;
+    private static final long FETCH_WAIT_SECONDS = 30;
+
+    private final MarketRankManager marketRankManager;
+    private final TokenIconManager tokenIconManager;
+    private volatile IconSpriteSheet current = IconSpriteSheet.EMPTY;
+    private volatile IconSpriteSheet previous = IconSpriteSheet.EMPTY;
+    // What the current sheet was built from
+    private Set<PublicKey> builtMints = Collections.emptySet();
+    private long builtIconVersion = -1;
+
+    public IconSpriteManager(MarketRankManager marketRankManager, TokenIconManager tokenIconManager) {
+        this.marketRankManager = marketRankManager;
+        this.tokenIconManager = tokenIconManager;
+    }
+
+    @Scheduled(initialDelay = 0L, fixedDelay = 1L, timeUnit = TimeUnit.MINUTES)
+    public synchronized void updateSpriteSheet() {
+        final Set<PublicKey> mints = new LinkedHashSet<>();
+        for (MarketListing listing : marketRankManager.getMarketListings()) {
+            if (listing.getBaseMint() != null) {
+                mints.add(listing.getBaseMint());
+            }
+            if (listing.getQuoteMint() != null) {
+                mints.add(listing.getQuoteMint());
+            }
+        }
+
+        // Missing icons are fetched first, then the version tells whether any icon changed since the last build
+        final List<CompletableFuture<Optional<Icon>>> fetches = mints.stream()
+                .map(tokenIconManager::getIconAsync)
+                .toList();
+        try {
+            CompletableFuture.allOf(fetches.toArray(new CompletableFuture[0])).get(FETCH_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+            log.info("Building icon sprite sheet with icons still being fetched.");
+        } catch (Exception ex) {
+            log.warn("Icon fetch failed: " + ex.getMessage());
+        }
+
+        final long iconVersion = tokenIconManager.getIconVersion();
+        if (mints.equals(builtMints) && iconVersion == builtIconVersion) {
+            return;
+        }
+
+        final Map<PublicKey, ByteBuffer> icons = new LinkedHashMap<>();
+        for (PublicKey mint : mints) {
+            tokenIconManager.getIconAsync(mint)
+                    .getNow(Optional.empty())
+                    .ifPresent(icon -> icons.put(mint, icon.data()));
+        }
+
+        try {
+            IconSpriteSheet sheet = IconSpriteSheet.build(icons, CELL_SIZE);
+            previous = current;
+            current = sheet;
+            builtMints = mints;
+            builtIconVersion = iconVersion;
+            log.info("Built icon sprite sheet " + sheet.getHash() + ": " + sheet.size() + " of " + mints.size() +
+                    " tokens.");
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Unable to build icon sprite sheet: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return the newest sheet, empty until the first build
+     */
+    public IconSpriteSheet getSpriteSheet() {
+        return current;
+    }
+
+    /**
+     * @param hash content hash from the sheet's URL
+     * @return the current or previous sheet with that hash
+     */
+    public Optional<IconSpriteSheet> getSpriteSheet(String hash) {
+        final IconSpriteSheet sheet = current;
+        if (sheet.size() > 0 && sheet.getHash().equals(hash)) {
+            return Optional.of(sheet);
+        }
+
+        final IconSpriteSheet older = previous;
+        if (older.size() > 0 && older.getHash().equals(hash)) {
+            return Optional.of(older);
+        }
+        return Optional.empty();
+    }
+}
@@ -1,24 +1,58 @@
 package com.mmorrell.serumdata.manager;
 
 import com.mmorrell.serum.model.OpenOrdersAccount;
-import com.google.common.collect.Lists;
+import com.mmorrell.serumdata.model.PriceLevelBook;
 import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.util.OwnerCache;
+import com.mmorrell.serumdata.util.OwnerCacheMetrics;
+import com.mmorrell.serumdata.util.StorageUtil;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.p2p.solanaj.core.PublicKey;
 import org.p2p.solanaj.rpc.RpcClient;
 import org.p2p.solanaj.rpc.RpcException;
 import org.p2p.solanaj.rpc.types.AccountInfo;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
+@Slf4j
 public class IdentityManager {
 
+    private static final int OWNER_CACHE_MAX_SIZE = 1_000_000;
+    private static final String OWNER_CACHE_FILE = "owners.bin";
+    private static final int OWNER_BATCH_SIZE = 100;
+    private static final long OWNER_RESOLVE_INTERVAL_MS = 250L;
+    private static final long OWNER_RESOLVE_MAX_BACKOFF_MS = 30_000L;
+
     private final RpcClient client;
-    // <ooa, owner>
-    private final Map<PublicKey, PublicKey> ownerReverseLookupCache = new HashMap<>();
+    private final MeterRegistry meterRegistry;
+    // <ooa, owner>, loaded from and periodically saved to disk
+    private final OwnerCache ownerReverseLookupCache = new OwnerCache(OWNER_CACHE_MAX_SIZE);
+    private final Path ownerCachePath = StorageUtil.getDataDirectory().resolve(OWNER_CACHE_FILE);
+    // Accounts queued or being resolved, each is only queued once
+    private final Set<PublicKey> pendingOwners = ConcurrentHashMap.newKeySet();
+    private final Queue<PublicKey> ownerQueue = new ConcurrentLinkedQueue<>();
+    // <ooa, markets whose snapshot references it>, until it is resolved
+    private final Map<PublicKey, Set<PublicKey>> ownerWaiters = new ConcurrentHashMap<>();
+    // <market, owner version>
+    private final Map<PublicKey, AtomicLong> marketOwnerVersions = new ConcurrentHashMap<>();
+    // Failed runs in a row, each one doubles the wait before the next run
+    private int consecutiveFailures;
+    private long nextResolveMs;
     private final Map<PublicKey, String> knownEntities = new HashMap<>();
     private final Map<PublicKey, String> knownEntitiesIcons = new HashMap<>();
 
@@ -104,8 +138,34 @@ public class IdentityManager {
         );
     }
 
-    public IdentityManager(final RpcClient rpcClient) {
+    public IdentityManager(final RpcClient rpcClient, final MeterRegistry meterRegistry) {
         this.client = rpcClient;
+        this.meterRegistry = meterRegistry;
+        new OwnerCacheMetrics(ownerReverseLookupCache, "owners", Tags.empty()).bindTo(meterRegistry);
+        Gauge.builder("serum.owners.pending", pendingOwners, Set::size)
+                .description("Open orders accounts queued for owner resolution")
+                .register(meterRegistry);
+
+        try {
+            int loaded = ownerReverseLookupCache.load(ownerCachePath);
+            log.info("Loaded " + loaded + " cached open orders owners.");
+        } catch (IOException ex) {
+            log.warn("Unable to load cached open orders owners: " + ex.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelay = 5L, fixedRate = 5L, timeUnit = TimeUnit.MINUTES)
+    @PreDestroy
+    public void saveOwnerCache() {
+        if (!ownerReverseLookupCache.isDirty()) {
+            return;
+        }
+
+        try {
+            ownerReverseLookupCache.save(ownerCachePath);
+        } catch (IOException ex) {
+            log.warn("Unable to save cached open orders owners: " + ex.getMessage());
+        }
     }
 
     public void addKnownEntity(String publicKeyString, String name, String icon) {
@@ -126,24 +186,37 @@ public class IdentityManager {
         return knownEntitiesIcons.get(owner);
     }
 
+    /**
+     * Cache-only owner lookup, never calls the RPC.
+     *
+     * @param ooa open orders account
+     * @return owner, or null if it hasn't been resolved yet
+     */
+    public PublicKey getCachedOwner(PublicKey ooa) {
+        return ownerReverseLookupCache.get(ooa);
+    }
+
+    /**
+     * Fills in owners that are already resolved. Unknown accounts keep the open orders account as owner and are
+     * queued for the background resolver, so this never blocks on the RPC.
+     *
+     * @param serumOrders orders with their open orders account as owner
+     */
     public void reverseOwnerLookup(List<SerumOrder> serumOrders) {
         List<SerumOrder> unknownOwnerOrders = new ArrayList<>();
         ownerReverseLookup(serumOrders, unknownOwnerOrders);
 
-        List<PublicKey> unknownAccounts = unknownOwnerOrders.stream()
+        prefetchOwners(unknownOwnerOrders.stream()
                 .map(SerumOrder::getOwner)
-                .distinct()
-                .toList();
-
-        lookupAndAddOwnersToCache(unknownAccounts);
+                .toList());
     }
 
     public void ownerReverseLookup(List<SerumOrder> orders, List<SerumOrder> unknownOwnerOrders) {
         for (SerumOrder order : orders) {
             // do we have the true owner?
-            if (ownerReverseLookupCache.containsKey(order.getOwner())) {
-                PublicKey ooa = order.getOwner();
-                PublicKey owner = ownerReverseLookupCache.get(ooa);
+            PublicKey ooa = order.getOwner();
+            PublicKey owner = ownerReverseLookupCache.get(ooa);
+            if (owner != null) {
                 order.setOwner(owner);
 
                 if (knownEntities.containsKey(owner)) {
@@ -163,61 +236,202 @@ public class IdentityManager {
     }
 
     /**
-     * Retrieves owners and updates cache. Returns the new cache, if needed.
+     * Cache-only lookup of several accounts. Unknown accounts are queued for the background resolver.
+     *
      * @param openOrdersAccounts ooa pubkeys to lookup
-     * @return map <ooa, optional<owner>>
+     * @return map <ooa, optional<owner>>, empty if not resolved yet
      */
-    public Map<PublicKey, Optional<PublicKey>> lookupAndAddOwnersToCache(@NotNull List<PublicKey> openOrdersAccounts) {
+    public Map<PublicKey, Optional<PublicKey>> getCachedOwners(@NotNull List<PublicKey> openOrdersAccounts) {
         // <ooa, owner>
         Map<PublicKey, Optional<PublicKey>> resultMap = new HashMap<>();
+        List<PublicKey> unknownAccounts = new ArrayList<>();
 
-        // Build map of keys to search
         for (PublicKey ooa : openOrdersAccounts) {
-            boolean hasOwner = ownerReverseLookupCache.containsKey(ooa);
-            if (hasOwner) {
-                // LOGGER.info("hasOwner (not searching): " + ooa.toBase58() + ", " + ownerReverseLookupCache.get(ooa));
-                resultMap.put(ooa, Optional.of(ownerReverseLookupCache.get(ooa)));
-            } else {
-                // LOGGER.info("Going to search: " + ooa.toBase58());
-                resultMap.put(ooa, Optional.empty());
+            // One lookup, the entry may be evicted between two
+            PublicKey owner = ownerReverseLookupCache.get(ooa);
+            resultMap.put(ooa, Optional.ofNullable(owner));
+            if (owner == null) {
+                unknownAccounts.add(ooa);
             }
         }
 
-        // Craft list to pass to getMultipleAccounts
-        List<PublicKey> keysToSearch = resultMap.entrySet().stream()
-                .filter(entry -> entry.getValue().isEmpty())
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-
-        List<List<PublicKey>> accountsToSearchList = Lists.partition(keysToSearch, 100);
-
-        for (List<PublicKey> publicKeys : accountsToSearchList) {
-            try {
-                Map<PublicKey, Optional<AccountInfo.Value>> accountDataList = client.getApi().getMultipleAccountsMap(publicKeys);
-                for (PublicKey ooaKey : publicKeys) {
-                    Optional<AccountInfo.Value> ooaAccountData = accountDataList.get(ooaKey);
-
-                    if (ooaAccountData.isPresent()) {
-                        final OpenOrdersAccount ooa = OpenOrdersAccount.readOpenOrdersAccount(
-                                Base64.getDecoder().decode(
-                                        ooaAccountData.get().getData().get(0)
-                                )
-                        );
-
-                        resultMap.put(ooaKey, Optional.of(ooa.getOwner()));
-                        ownerReverseLookupCache.put(ooaKey, ooa.getOwner());
-                    } else {
-                        // OOA was closed or otherwise deleted (rare).
-                        resultMap.put(ooaKey, Optional.of(ooaKey));
-                        ownerReverseLookupCache.put(ooaKey, ooaKey);
-                    }
+        prefetchOwners(unknownAccounts);
+        return resultMap;
+    }
+
+    /**
+     * Queues accounts for owner resolution, e.g. every account seen when a book or event queue refreshes.
+     * Accounts that are cached, queued or being resolved are skipped.
+     *
+     * @param openOrdersAccounts ooa pubkeys
+     */
+    public void prefetchOwners(Collection<PublicKey> openOrdersAccounts) {
+        for (PublicKey ooa : openOrdersAccounts) {
+            if (!pendingOwners.contains(ooa) && !ownerReverseLookupCache.containsKey(ooa) && pendingOwners.add(ooa)) {
+                ownerQueue.add(ooa);
+            }
+        }
+    }
 
+    /**
+     * Queues accounts referenced by a market's snapshot. The market's owner version is incremented once they are
+     * resolved.
+     *
+     * @param market market the accounts were seen on
+     * @param openOrdersAccounts ooa pubkeys
+     */
+    public void prefetchOwners(PublicKey market, Collection<PublicKey> openOrdersAccounts) {
+        for (PublicKey ooa : openOrdersAccounts) {
+            if (!ownerReverseLookupCache.containsKey(ooa)) {
+                prefetchOwner(market, ooa);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #prefetchOwners(PublicKey, Collection)} for packed keys, e.g. a book's order owners. The cache
+     * is probed with the raw bytes, a PublicKey is only created for accounts that aren't cached.
+     *
+     * @param market market the accounts were seen on
+     * @param openOrdersAccounts 32 byte ooa pubkeys, back to back
+     */
+    public void prefetchOwners(PublicKey market, byte[] openOrdersAccounts) {
+        for (int offset = 0; offset < openOrdersAccounts.length; offset += PriceLevelBook.OWNER_SIZE) {
+            if (!ownerReverseLookupCache.containsKey(openOrdersAccounts, offset)) {
+                prefetchOwner(market, new PublicKey(Arrays.copyOfRange(
+                        openOrdersAccounts,
+                        offset,
+                        offset + PriceLevelBook.OWNER_SIZE
+                )));
+            }
+        }
+    }
+
+    private void prefetchOwner(PublicKey market, PublicKey ooa) {
+        ownerWaiters.computeIfAbsent(ooa, key -> ConcurrentHashMap.newKeySet()).add(market);
+        // Resolved in between, the resolver may have missed this market
+        if (ownerReverseLookupCache.containsKey(ooa)) {
+            Set<PublicKey> markets = ownerWaiters.remove(ooa);
+            if (markets != null) {
+                markets.forEach(this::incrementOwnerVersion);
+            }
+            return;
+        }
+        if (pendingOwners.add(ooa)) {
+            ownerQueue.add(ooa);
+        }
+    }
+
+    /**
+     * Incremented whenever the resolver adds owners referenced by the market's snapshot, so views built from cached
+     * owners know to re-encode. Owners resolved for other markets leave it unchanged.
+     *
+     * @param market market pubkey
+     * @return owner resolution version of the market
+     */
+    public long getOwnerVersion(PublicKey market) {
+        AtomicLong version = marketOwnerVersions.get(market);
+        return version != null ? version.get() : 0L;
+    }
+
+    private void incrementOwnerVersion(PublicKey market) {
+        marketOwnerVersions.computeIfAbsent(market, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public int getPendingOwnerCount() {
+        return pendingOwners.size();
+    }
+
+    /**
+     * Resolves the accounts queued before this run, in full batches of 100 so accounts queued by different markets
+     * share requests. Accounts queued during the run wait for the next one. After a failed batch the rest of the
+     * run is skipped and the next run is delayed, doubling up to 30 seconds while the RPC keeps failing.
+     */
+    @Scheduled(initialDelay = OWNER_RESOLVE_INTERVAL_MS, fixedDelay = OWNER_RESOLVE_INTERVAL_MS)
+    public void resolvePendingOwners() {
+        if (System.currentTimeMillis() < nextResolveMs) {
+            return;
+        }
+
+        int remaining = ownerQueue.size();
+        while (remaining > 0) {
+            List<PublicKey> batch = new ArrayList<>(OWNER_BATCH_SIZE);
+            PublicKey ooa;
+            while (batch.size() < Math.min(OWNER_BATCH_SIZE, remaining) && (ooa = ownerQueue.poll()) != null) {
+                batch.add(ooa);
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            remaining -= batch.size();
+
+            if (!resolveOwners(batch)) {
+                // Retried by a later run, the rest of this run's accounts are still queued
+                ownerQueue.addAll(batch);
+                consecutiveFailures++;
+                nextResolveMs = System.currentTimeMillis() + Math.min(
+                        OWNER_RESOLVE_MAX_BACKOFF_MS,
+                        OWNER_RESOLVE_INTERVAL_MS << Math.min(consecutiveFailures, 16)
+                );
+                break;
+            }
+            consecutiveFailures = 0;
+        }
+    }
+
+    // One getMultipleAccounts call, false if the RPC failed and the batch should be retried
+    private boolean resolveOwners(List<PublicKey> openOrdersAccounts) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Map<PublicKey, Optional<AccountInfo.Value>> accountDataList =
+                    client.getApi().getMultipleAccountsMap(openOrdersAccounts);
+            for (PublicKey ooaKey : openOrdersAccounts) {
+                Optional<AccountInfo.Value> ooaAccountData = accountDataList.getOrDefault(ooaKey, Optional.empty());
+
+                if (ooaAccountData.isPresent()) {
+                    final OpenOrdersAccount ooa = OpenOrdersAccount.readOpenOrdersAccount(
+                            Base64.getDecoder().decode(
+                                    ooaAccountData.get().getData().get(0)
+                            )
+                    );
+
+                    ownerReverseLookupCache.put(ooaKey, ooa.getOwner());
+                } else {
+                    // OOA was closed or otherwise deleted (rare).
+                    ownerReverseLookupCache.put(ooaKey, ooaKey);
                 }
-            } catch (RpcException e) {
-                throw new RuntimeException(e);
             }
+            pendingOwners.removeAll(openOrdersAccounts);
+
+            // Once per market, however many of its owners were in the batch
+            Set<PublicKey> markets = new HashSet<>();
+            for (PublicKey ooaKey : openOrdersAccounts) {
+                Set<PublicKey> waiters = ownerWaiters.remove(ooaKey);
+                if (waiters != null) {
+                    markets.addAll(waiters);
+                }
+            }
+            markets.forEach(this::incrementOwnerVersion);
+            sample.stop(ownerResolveTimer("success"));
+            return true;
+        } catch (RpcException e) {
+            log.warn("Unable to resolve open orders owners: " + e.getMessage());
+            sample.stop(ownerResolveTimer("error"));
+            return false;
+        } catch (RuntimeException e) {
+            // Not retried here, the accounts are queued again the next time they are seen
+            log.warn("Unable to decode open orders accounts: " + e.getMessage());
+            pendingOwners.removeAll(openOrdersAccounts);
+            openOrdersAccounts.forEach(ownerWaiters::remove);
+            sample.stop(ownerResolveTimer("error"));
+            return true;
         }
+    }
 
-        return resultMap;
+    private Timer ownerResolveTimer(String outcome) {
+        return Timer.builder("serum.owners.resolve")
+                .description("Owner resolution batches of up to 100 accounts")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 }
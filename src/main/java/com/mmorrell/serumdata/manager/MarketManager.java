@@ -5,395 +5,730 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.mmorrell.serumdata.client.AccountSubscriptionClient;
+import com.mmorrell.serumdata.model.MarketEvent;
+import com.mmorrell.serumdata.model.MarketRegistry;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import com.mmorrell.serumdata.model.StartupSnapshot;
+import com.mmorrell.serumdata.util.EventQueueTail;
 import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.SlabReader;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.p2p.solanaj.core.PublicKey;
 import org.p2p.solanaj.rpc.RpcClient;
 import org.p2p.solanaj.rpc.RpcException;
 import org.p2p.solanaj.rpc.types.*;
-import org.p2p.solanaj.rpc.types.config.Commitment;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
 @Slf4j
 public class MarketManager {
 
-    private static final int ORDER_BOOK_CACHE_DURATION_SECONDS = 1;
-    private static final int EVENT_QUEUE_CACHE_DURATION_MS = 2500;
+    private static final int MARKET_SNAPSHOT_CACHE_DURATION_SECONDS = 1;
+    private static final long DATA_AGE_WINDOW_MS = 60_000L;
 
     private final RpcClient client;
+    private final AccountSubscriptionClient subscriptionClient;
     // Managers
     private final TokenManager tokenManager;
-
-    // <marketPubkey, Market>
-    private final Map<PublicKey, Market> marketCache = new HashMap<>();
-    // <baseMint, List<Market>>
-    private final Map<PublicKey, List<Market>> marketMapCache = new HashMap<>();
-    // <quoteMint, List<Market>>
-    private final Map<PublicKey, List<Market>> marketMapQuoteMintCache = new HashMap<>();
-
-    // Price cache for notional calculations
-    // <marketId, bestBid>
+    private final TradeTapeManager tradeTapeManager;
+    private final CandleManager candleManager;
+    private final IdentityManager identityManager;
+    private final PriceManager priceManager;
+
+    // Markets and mint indexes, rebuilt off to the side and swapped in by updateMarkets()
+    private volatile MarketRegistry marketRegistry = MarketRegistry.EMPTY;
+    // <marketPubkey, market account data> the registry was decoded from, kept for the startup snapshot
+    private volatile Map<PublicKey, byte[]> marketAccounts = Collections.emptyMap();
+    // Completes once markets have been loaded from the RPC, right away on a cold start
+    private final CompletableFuture<Void> initialSync;
+
+    // Pricing graph: mints quoting fewer markets aren't worth reading books for
     private static final int MINIMUM_REQUIRED_MARKETS_FOR_PRICING = 2;
-    private final Map<PublicKey, Float> priceCache = new HashMap<>();
+    private static final int MAX_PRICING_MARKETS_PER_PAIR = 3;
+
+    // Market discovery
+    private static final PublicKey SERUM_PROGRAM_ID = new PublicKey("srmqPvymJeFKQ4zGQed1GFppgkRHL9kaELCbyksJtPX");
+    // Part of a market account that changes after creation: base deposits and fees, quote vault, quote deposits and
+    // fees. Everything else (mints, vaults, queues, lot sizes) is fixed.
+    private static final int VOLATILE_DATA_OFFSET = 149;
+    private static final int VOLATILE_DATA_LENGTH = 64;
+    private static final int FULL_REFRESH_INTERVAL = 12;
+    private int refreshCount;
+    // Program accounts of the market size that aren't real markets, skipped by later refreshes
+    private final Set<PublicKey> ignoredMarketAccounts = ConcurrentHashMap.newKeySet();
+
+    // <marketPubkey, account data> returned by a refresh, changed holds the markets that need decoding
+    private record FetchedMarketAccounts(Map<PublicKey, byte[]> accounts, Set<PublicKey> changed) {
+    }
 
     // Solana Context
     private final long DEFAULT_MIN_CONTEXT_SLOT = 0L;
-    private final Map<PublicKey, Long> askOrderBookMinContextSlot = new HashMap<>();
-    private final Map<PublicKey, Long> bidOrderBookMinContextSlot = new HashMap<>();
-    private final Map<PublicKey, Long> eventQueueMinContextSlot = new HashMap<>();
+    // <account, slot>, last slot pushed by accountSubscribe for each bids/asks/event queue account
+    private final Map<PublicKey, Long> accountContextSlot = new ConcurrentHashMap<>();
+    // Newest context slot of any fetch or notification, stands in for the current slot
+    private final AtomicLong latestSlot = new AtomicLong();
+    // Snapshot revisions, seeded from the clock so ETags issued before a restart never match a new snapshot
+    private final AtomicLong snapshotRevision = new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
 
-    // Caching for individual bid and asks orderbooks.
-    final LoadingCache<PublicKey, OrderBook> bidOrderBookLoadingCache = CacheBuilder.newBuilder()
-            .refreshAfterWrite(ORDER_BOOK_CACHE_DURATION_SECONDS, TimeUnit.SECONDS)
-            .build(
-                    new CacheLoader<>() {
-                        @Override
-                        public OrderBook load(PublicKey marketPubkey) {
-                            try {
-                                Market cachedMarket = marketCache.get(marketPubkey);
-                                long slotToUse = bidOrderBookMinContextSlot.getOrDefault(marketPubkey, DEFAULT_MIN_CONTEXT_SLOT);
-
-                                AccountInfo accountInfo = client.getApi()
-                                        .getAccountInfo(
-                                                cachedMarket.getBids(),
-                                                Map.of(
-                                                        "minContextSlot",
-                                                        slotToUse,
-                                                        "commitment",
-                                                        Commitment.CONFIRMED
-                                                )
-                                        );
-
-                                bidOrderBookMinContextSlot.put(marketPubkey, accountInfo.getContext().getSlot());
-
-                                return buildOrderBook(
-                                        Base64.getDecoder().decode(
-                                                accountInfo.getValue()
-                                                        .getData()
-                                                        .get(0)
-                                        ),
-                                        cachedMarket
-                                );
-                            } catch (RpcException ex) {
-                                return bidOrderBookLoadingCache.asMap().get(marketPubkey);
-                            }
-                        }
-                    });
+    // Slots between the newest known slot and the context slot of each served snapshot
+    private final DistributionSummary dataAge;
+
+    // <marketPubkey, last requested time ms>, used for background refresh
+    private final Map<PublicKey, Long> marketLastRequested = new ConcurrentHashMap<>();
+
+    // <marketPubkey, recent events>
+    private final Map<PublicKey, EventQueueTail> eventQueueTails = new ConcurrentHashMap<>();
 
-    // Caching for individual bid and asks orderbooks.
-    final LoadingCache<PublicKey, OrderBook> askOrderBookLoadingCache = CacheBuilder.newBuilder()
-            .refreshAfterWrite(ORDER_BOOK_CACHE_DURATION_SECONDS, TimeUnit.SECONDS)
+    // Markets with accountSubscribe on their bids, asks and event queue
+    private final Set<PublicKey> subscribedMarkets = ConcurrentHashMap.newKeySet();
+
+    // Bids, asks and event queue for each market, fetched and cached as one unit.
+    final LoadingCache<PublicKey, MarketSnapshot> marketSnapshotCache = CacheBuilder.newBuilder()
+            .refreshAfterWrite(MARKET_SNAPSHOT_CACHE_DURATION_SECONDS, TimeUnit.SECONDS)
+            .recordStats()
             .build(
                     new CacheLoader<>() {
                         @Override
-                        public OrderBook load(PublicKey marketPubkey) {
-                            try {
-                                Market cachedMarket = marketCache.get(marketPubkey);
-                                long slotToUse = askOrderBookMinContextSlot.getOrDefault(marketPubkey, DEFAULT_MIN_CONTEXT_SLOT);
-
-                                AccountInfo accountInfo = client.getApi()
-                                        .getAccountInfo(
-                                                cachedMarket.getAsks(),
-                                                Map.of(
-                                                        "minContextSlot",
-                                                        slotToUse,
-                                                        "commitment",
-                                                        Commitment.CONFIRMED
-                                                )
-                                        );
-
-                                askOrderBookMinContextSlot.put(marketPubkey, accountInfo.getContext().getSlot());
-
-                                return buildOrderBook(
-                                        Base64.getDecoder().decode(
-                                                accountInfo.getValue()
-                                                        .getData()
-                                                        .get(0)
-                                        ),
-                                        cachedMarket
-                                );
-                            } catch (RpcException ex) {
-                                return askOrderBookLoadingCache.asMap().get(marketPubkey);
+                        public MarketSnapshot load(PublicKey marketPubkey) throws RpcException {
+                            Market cachedMarket = marketRegistry.getMarket(marketPubkey).orElseThrow();
+                            MarketSnapshot cachedSnapshot = marketSnapshotCache.asMap().get(marketPubkey);
+
+                            // Kept up to date by accountSubscribe, no need to poll
+                            if (cachedSnapshot != null && isSubscriptionLive(cachedMarket)) {
+                                return cachedSnapshot;
                             }
-                        }
-                    });
 
-    final LoadingCache<PublicKey, EventQueue> eventQueueLoadingCache = CacheBuilder.newBuilder()
-            .refreshAfterWrite(EVENT_QUEUE_CACHE_DURATION_MS, TimeUnit.MILLISECONDS)
-            .build(
-                    new CacheLoader<>() {
-                        @Override
-                        public EventQueue load(PublicKey marketPubkey) {
                             try {
-                                Market cachedMarket = marketCache.get(marketPubkey);
-                                long slotToUse = eventQueueMinContextSlot.getOrDefault(marketPubkey, DEFAULT_MIN_CONTEXT_SLOT);
-
-                                AccountInfo accountInfo = client.getApi()
-                                        .getAccountInfo(
-                                                cachedMarket.getEventQueueKey(),
-                                                Map.of(
-                                                        "minContextSlot",
-                                                        slotToUse,
-                                                        "commitment",
-                                                        Commitment.CONFIRMED
-                                                )
-                                        );
-
-                                eventQueueMinContextSlot.put(marketPubkey, accountInfo.getContext().getSlot());
-
-                                return EventQueue.readEventQueue(
-                                        Base64.getDecoder().decode(
-                                                accountInfo.getValue().getData().get(0)
-                                        ),
-                                        cachedMarket.getBaseDecimals(),
-                                        cachedMarket.getQuoteDecimals(),
-                                        cachedMarket.getBaseLotSize(),
-                                        cachedMarket.getQuoteLotSize()
+                                MarketSnapshot snapshot = fetchMarketSnapshot(
+                                        cachedMarket,
+                                        cachedSnapshot != null ? cachedSnapshot.getSlot() : DEFAULT_MIN_CONTEXT_SLOT
                                 );
+                                subscribeToMarket(cachedMarket);
+                                return snapshot;
                             } catch (RpcException ex) {
-                                return eventQueueLoadingCache.asMap().get(marketPubkey);
+                                if (cachedSnapshot == null) {
+                                    throw ex;
+                                }
+                                return cachedSnapshot;
                             }
                         }
                     });
 
-    public MarketManager(final TokenManager tokenManager, final RpcClient rpcClient) {
+    public MarketManager(final TokenManager tokenManager,
+                         final RpcClient rpcClient,
+                         final AccountSubscriptionClient subscriptionClient,
+                         final TradeTapeManager tradeTapeManager,
+                         final CandleManager candleManager,
+                         final IdentityManager identityManager,
+                         final PriceManager priceManager,
+                         final StartupSnapshotStore startupSnapshotStore,
+                         final MeterRegistry meterRegistry) {
         this.tokenManager = tokenManager;
+        this.tradeTapeManager = tradeTapeManager;
+        this.candleManager = candleManager;
+        this.identityManager = identityManager;
+        this.priceManager = priceManager;
         this.client = rpcClient;
-        updateMarkets();
+        this.subscriptionClient = subscriptionClient;
+
+        new GuavaCacheMetrics<>(marketSnapshotCache, "marketSnapshots", Tags.empty()).bindTo(meterRegistry);
+        this.dataAge = DistributionSummary.builder("serum.market.data.age")
+                .description("Slots behind the newest known slot, per served market snapshot")
+                .baseUnit("slots")
+                .serviceLevelObjectives(1, 2, 5, 10, 25, 50, 150, 500)
+                .register(meterRegistry);
+        Gauge.builder("serum.market.data.age.max", this, MarketManager::getMaxDataAge)
+                .description("Slots behind the newest known slot, oldest cached market snapshot")
+                .baseUnit("slots")
+                .register(meterRegistry);
+        Gauge.builder("serum.markets", this, manager -> manager.getMarketCache().size())
+                .description("Cached markets")
+                .register(meterRegistry);
+
+        final Optional<StartupSnapshot> snapshot = startupSnapshotStore.getLoadedSnapshot()
+                .filter(startupSnapshot -> !startupSnapshot.getMarketAccounts().isEmpty());
+        if (snapshot.isPresent()) {
+            // Serve from the snapshot right away, getProgramAccounts and pricing run in the background
+            loadMarkets(snapshot.get());
+            initialSync = CompletableFuture.runAsync(this::updateMarkets);
+            initialSync.exceptionally(ex -> {
+                log.warn("Unable to refresh markets: " + ex.getMessage());
+                return null;
+            });
+        } else {
+            updateMarkets();
+            initialSync = CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * @return completes once markets were loaded from the RPC, already complete unless started from a snapshot
+     */
+    public CompletableFuture<Void> getInitialSync() {
+        return initialSync;
+    }
+
+    /**
+     * @return <marketPubkey, account data> of all cached markets
+     */
+    public Map<PublicKey, byte[]> getMarketAccounts() {
+        return marketAccounts;
+    }
+
+    /**
+     * @return <mint, USD price> used for notional calculations
+     */
+    public Map<PublicKey, Float> getPrices() {
+        return priceManager.getPrices();
+    }
+
+    private void loadMarkets(StartupSnapshot snapshot) {
+        final List<Market> markets = new ArrayList<>(snapshot.getMarketAccounts().size());
+        snapshot.getMarketAccounts().values().forEach(data -> decodeMarket(data).ifPresent(markets::add));
+
+        marketAccounts = Map.copyOf(snapshot.getMarketAccounts());
+        marketRegistry = new MarketRegistry(markets);
+        log.info("Serum markets loaded from startup snapshot: " + markets.size());
+    }
+
+    private Optional<Market> decodeMarket(byte[] data) {
+        Market market = Market.readMarket(data);
+
+        // Ignore fake/erroneous market accounts
+        if (market.getOwnAddress().equals(new PublicKey("11111111111111111111111111111111"))) {
+            return Optional.empty();
+        }
+
+        market.setBaseDecimals(
+                (byte) tokenManager.getDecimals(
+                        market.getBaseMint()
+                )
+        );
+        market.setQuoteDecimals(
+                (byte) tokenManager.getDecimals(
+                        market.getQuoteMint()
+                )
+        );
+        return Optional.of(market);
     }
 
     public List<Market> getMarketCache() {
-        return new ArrayList<>(marketCache.values());
+        return marketRegistry.getMarkets();
     }
 
     public List<Market> getMarketsByBaseMint(PublicKey tokenMint) {
-        final Set<Market> result = new HashSet<>(marketMapCache.getOrDefault(tokenMint, new ArrayList<>()));
-        return new ArrayList<>(result);
+        return marketRegistry.getMarketsByBaseMint(tokenMint);
     }
 
     public List<Market> getMarketsByTokenMint(PublicKey tokenMint) {
-        final Set<Market> result = new HashSet<>();
-
-        result.addAll(marketMapCache.getOrDefault(tokenMint, new ArrayList<>()));
-        result.addAll(marketMapQuoteMintCache.getOrDefault(tokenMint, new ArrayList<>()));
-
-        return new ArrayList<>(result);
+        return marketRegistry.getMarketsByTokenMint(tokenMint);
     }
 
     /**
-     * Update marketCache with the latest markets
+     * Rebuilds the market registry with the latest markets and re-prices them, then publishes it in one swap.
+     * Readers keep using the previous registry until the new one is complete.
+     * <p>
+     * Only the part of each market account that changes after creation is fetched, and only markets whose data
+     * changed (or new markets) are decoded again. Every {@link #FULL_REFRESH_INTERVAL}th refresh reads whole accounts.
      */
-    public void updateMarkets() {
-        log.info("Caching all Serum markets.");
-        final List<ProgramAccount> programAccounts;
+    public synchronized void updateMarkets() {
+        final Map<PublicKey, byte[]> previousAccounts = marketAccounts;
+        final boolean fullRefresh = refreshCount++ % FULL_REFRESH_INTERVAL == 0 || previousAccounts.isEmpty();
+        log.info(fullRefresh ? "Caching all Serum markets." : "Refreshing changed Serum markets.");
 
+        final FetchedMarketAccounts fetched;
         try {
-            programAccounts = new ArrayList<>(
-                    client.getApi().getProgramAccounts(
-                            new PublicKey("srmqPvymJeFKQ4zGQed1GFppgkRHL9kaELCbyksJtPX"),
-                            Collections.emptyList(),
-                            SerumUtils.MARKET_ACCOUNT_SIZE
-                    )
-            );
+            fetched = fullRefresh ? fetchAllMarketAccounts() : fetchChangedMarketAccounts(previousAccounts);
         } catch (RpcException e) {
             throw new RuntimeException(e);
         }
 
-        for (ProgramAccount programAccount : programAccounts) {
-            Market market = Market.readMarket(programAccount.getAccount().getDecodedData());
+        // Decode changed markets across cores, unchanged ones are reused. Decimals are checked as well, the token
+        // registry may have learned about a mint since the market was decoded.
+        final MarketRegistry previousRegistry = marketRegistry;
+        final Map<PublicKey, byte[]> accounts = fetched.accounts();
+        final Set<PublicKey> ignored = ConcurrentHashMap.newKeySet();
+        final List<Market> markets = accounts.entrySet().parallelStream()
+                .map(entry -> {
+                    Optional<Market> existing = fetched.changed().contains(entry.getKey()) ?
+                            Optional.empty() :
+                            previousRegistry.getMarket(entry.getKey()).filter(this::hasCurrentDecimals);
+                    if (existing.isPresent()) {
+                        return existing;
+                    }
 
-            // Ignore fake/erroneous market accounts
-            if (market.getOwnAddress().equals(new PublicKey("11111111111111111111111111111111"))) {
-                continue;
+                    Optional<Market> decoded = decodeMarket(entry.getValue());
+                    if (decoded.isEmpty()) {
+                        ignored.add(entry.getKey());
+                    }
+                    return decoded;
+                })
+                .flatMap(Optional::stream)
+                .toList();
+        accounts.keySet().removeAll(ignored);
+        ignoredMarketAccounts.addAll(ignored);
+
+        final MarketRegistry registry = new MarketRegistry(markets);
+        updatePrices(registry);
+
+        marketRegistry = registry;
+        marketAccounts = Map.copyOf(accounts);
+        log.info("All Serum markets cached: " + markets.size() + ", changed: " + fetched.changed().size());
+    }
+
+    /**
+     * Reads the books of every market between two quote mints and solves prices with them. Books of markets that are
+     * being viewed keep their edges fresh in between, see {@link #buildMarketSnapshot}.
+     */
+    private void updatePrices(MarketRegistry registry) {
+        final Set<PublicKey> quoteMints = new HashSet<>();
+        for (Market market : registry.getMarkets()) {
+            if (registry.getMarketsByQuoteMint(market.getQuoteMint()).size() >= MINIMUM_REQUIRED_MARKETS_FOR_PRICING) {
+                quoteMints.add(market.getQuoteMint());
             }
+        }
+
+        // Most liquid few markets of each pair, dead and duplicate markets would only cost RPC calls
+        final Map<List<PublicKey>, List<Market>> marketsByPair = new HashMap<>();
+        for (Market market : registry.getMarkets()) {
+            if (quoteMints.contains(market.getBaseMint()) && quoteMints.contains(market.getQuoteMint()) &&
+                    market.getBaseDepositsTotal() > 0 && market.getQuoteDepositsTotal() > 0) {
+                marketsByPair.computeIfAbsent(
+                        List.of(market.getBaseMint(), market.getQuoteMint()),
+                        pair -> new ArrayList<>()
+                ).add(market);
+            }
+        }
+        final List<Market> pricingMarkets = new ArrayList<>();
+        for (List<Market> pairMarkets : marketsByPair.values()) {
+            pairMarkets.sort(Comparator.comparingLong(Market::getQuoteDepositsTotal).reversed());
+            pricingMarkets.addAll(pairMarkets.subList(0, Math.min(MAX_PRICING_MARKETS_PER_PAIR, pairMarkets.size())));
+        }
 
-            market.setBaseDecimals(
-                    (byte) tokenManager.getDecimals(
-                            market.getBaseMint()
-                    )
-            );
-            market.setQuoteDecimals(
-                    (byte) tokenManager.getDecimals(
-                            market.getQuoteMint()
-                    )
-            );
-            marketCache.put(market.getOwnAddress(), market);
-
-            // marketMapCache is a baseMint to List<Market> map which powers the token search.
-            // Get list of existing markets for this base mint. otherwise create a new list and put it there.
-            Set<Market> existingMarketList = new HashSet<>(marketMapCache.getOrDefault(market.getBaseMint(),
-                    new ArrayList<>()));
-            existingMarketList.add(market);
-
-            // put it as a market for quote mint (as a base)
-            Set<Market> existingMarketQuoteList = new HashSet<>(marketMapQuoteMintCache.getOrDefault(market.getQuoteMint(),
-                    new ArrayList<>()));
-            existingMarketQuoteList.add(market);
-
-            marketMapCache.put(market.getBaseMint(), existingMarketList.stream().toList());
-            marketMapQuoteMintCache.put(market.getQuoteMint(), existingMarketQuoteList.stream().toList());
+        log.info("Pricing " + quoteMints.size() + " quote mints from " + pricingMarkets.size() + " markets...");
+        final Map<PublicKey, Optional<AccountInfo.Value>> accountData = new HashMap<>();
+        final List<PublicKey> books = pricingMarkets.stream()
+                .flatMap(market -> Stream.of(market.getBids(), market.getAsks()))
+                .toList();
+        for (List<PublicKey> publicKeys : Lists.partition(books, 100)) {
+            try {
+                accountData.putAll(client.getApi().getMultipleAccountsMap(new ArrayList<>(publicKeys)));
+            } catch (RpcException e) {
+                log.warn("Unable to fetch books for pricing: " + e.getMessage());
+            }
         }
 
-        final Map<PublicKey, Integer> marketsToPriceMap = new HashMap<>();
-        for (Market market : marketCache.values()) {
-            int marketCount = marketsToPriceMap.getOrDefault(market.getQuoteMint(), 0);
-            marketsToPriceMap.put(market.getQuoteMint(), marketCount + 1);
+        final SlabReader slabReader = SlabReader.forCurrentThread();
+        for (Market market : pricingMarkets) {
+            Optional<AccountInfo.Value> bids = accountData.getOrDefault(market.getBids(), Optional.empty());
+            Optional<AccountInfo.Value> asks = accountData.getOrDefault(market.getAsks(), Optional.empty());
+            if (bids.isPresent() && asks.isPresent()) {
+                priceManager.updateBook(
+                        market,
+                        MarketUtil.buildPriceLevelBook(slabReader.wrapBase64(bids.get().getData().get(0)), market, true),
+                        MarketUtil.buildPriceLevelBook(slabReader.wrapBase64(asks.get().getData().get(0)), market, false)
+                );
+            }
         }
 
-        final List<PublicKey> quoteMintsToPrice =
-                marketsToPriceMap.entrySet().stream()
-                        .filter(entry -> entry.getValue() >= MINIMUM_REQUIRED_MARKETS_FOR_PRICING)
-                        .map(Map.Entry::getKey)
-                        .toList();
-
-        log.info("Pricing markets...");
-        final Map<PublicKey, Market> mintToUsdcMarketPubkey = new HashMap<>();
-        final Map<PublicKey, PublicKey> mintToBidOrderBook = new HashMap<>();
-
-        // Get best known USDC market for quote mint
-        quoteMintsToPrice.forEach(publicKey -> {
-            List<Market> existing = marketMapCache.getOrDefault(publicKey, marketMapQuoteMintCache.get(publicKey));
-            if (existing != null) {
-                List<Market> baseMarkets = new ArrayList<>(existing);
-                baseMarkets.sort(Comparator.comparingLong(Market::getQuoteDepositsTotal).reversed());
-                for (Market baseMarket : baseMarkets) {
-                    if (baseMarket.getQuoteMint().equals(MarketUtil.USDC_MINT) ||
-                            baseMarket.getQuoteMint().equals(MarketUtil.USDT_MINT)) {
-                        mintToUsdcMarketPubkey.put(publicKey, baseMarket);
-                        mintToBidOrderBook.put(publicKey, baseMarket.getBids());
-                        break;
-                    }
-                }
+        priceManager.retainMarkets(registry.getMarkets().stream()
+                .map(Market::getOwnAddress)
+                .collect(Collectors.toSet()));
+        priceManager.solve();
+    }
+
+    // Whole accounts of every market
+    private FetchedMarketAccounts fetchAllMarketAccounts() throws RpcException {
+        final List<ProgramAccount> programAccounts = client.getApi().getProgramAccounts(
+                SERUM_PROGRAM_ID,
+                Collections.emptyList(),
+                SerumUtils.MARKET_ACCOUNT_SIZE
+        );
+
+        final Map<PublicKey, byte[]> accounts = new HashMap<>(programAccounts.size() * 2);
+        for (ProgramAccount programAccount : programAccounts) {
+            PublicKey pubkey = PublicKey.valueOf(programAccount.getPubkey());
+            if (!ignoredMarketAccounts.contains(pubkey)) {
+                accounts.put(pubkey, programAccount.getAccount().getDecodedData());
             }
-        });
+        }
 
-        // Request data for all bid orderbooks, for best usdc markets, for token mints with > 3 markets
-        Map<PublicKey, Optional<AccountInfo.Value>> accountData = new HashMap<>();
-        Collection<PublicKey> bidOrderBooks = mintToBidOrderBook.values();
-        List<List<PublicKey>> accountsToSearchList = Lists.partition(bidOrderBooks.stream().toList(), 100);
-        for (List<PublicKey> publicKeys : accountsToSearchList) {
-            try {
-                accountData.putAll(client.getApi().getMultipleAccountsMap(
-                                new ArrayList<>(publicKeys)
+        return new FetchedMarketAccounts(accounts, accounts.keySet());
+    }
+
+    /**
+     * Fetches only the volatile region of every market account (64 of 388 bytes) with dataSlice, and patches it into
+     * the previous account data. Markets that weren't known before are fetched whole with getMultipleAccounts,
+     * closed markets drop out.
+     */
+    private FetchedMarketAccounts fetchChangedMarketAccounts(Map<PublicKey, byte[]> previousAccounts)
+            throws RpcException {
+        final List<?> slices = client.call(
+                "getProgramAccounts",
+                List.of(
+                        SERUM_PROGRAM_ID.toBase58(),
+                        Map.of(
+                                "encoding", "base64",
+                                "dataSlice", Map.of(
+                                        "offset", VOLATILE_DATA_OFFSET,
+                                        "length", VOLATILE_DATA_LENGTH
+                                ),
+                                "filters", List.of(Map.of("dataSize", SerumUtils.MARKET_ACCOUNT_SIZE))
                         )
-                );
-            } catch (RpcException e) {
-                throw new RuntimeException(e);
+                ),
+                List.class
+        );
+
+        final Map<PublicKey, byte[]> accounts = new HashMap<>(slices.size() * 2);
+        final Set<PublicKey> changed = new HashSet<>();
+        final List<PublicKey> unknown = new ArrayList<>();
+        for (Object item : slices) {
+            Map<?, ?> programAccount = (Map<?, ?>) item;
+            PublicKey pubkey = PublicKey.valueOf((String) programAccount.get("pubkey"));
+            if (ignoredMarketAccounts.contains(pubkey)) {
+                continue;
+            }
+
+            List<?> data = (List<?>) ((Map<?, ?>) programAccount.get("account")).get("data");
+            byte[] slice = Base64.getDecoder().decode((String) data.get(0));
+            byte[] previous = previousAccounts.get(pubkey);
+            if (previous == null || slice.length != VOLATILE_DATA_LENGTH) {
+                unknown.add(pubkey);
+            } else if (Arrays.equals(previous, VOLATILE_DATA_OFFSET, VOLATILE_DATA_OFFSET + VOLATILE_DATA_LENGTH,
+                    slice, 0, VOLATILE_DATA_LENGTH)) {
+                accounts.put(pubkey, previous);
+            } else {
+                byte[] patched = previous.clone();
+                System.arraycopy(slice, 0, patched, VOLATILE_DATA_OFFSET, VOLATILE_DATA_LENGTH);
+                accounts.put(pubkey, patched);
+                changed.add(pubkey);
             }
         }
 
-        quoteMintsToPrice.forEach(mintToPrice -> {
-            if (accountData.containsKey(mintToBidOrderBook.get(mintToPrice))) {
-                Optional<AccountInfo.Value> data = accountData.get(mintToBidOrderBook.get(mintToPrice));
-                if (data.isPresent()) {
-                    Market market = mintToUsdcMarketPubkey.get(mintToPrice);
-                    byte[] decoded = Base64.getDecoder().decode(data.get().getData().get(0));
-                    OrderBook bidOrderbook = OrderBook.readOrderBook(decoded);
-                    bidOrderbook.setBaseDecimals(market.getBaseDecimals());
-                    bidOrderbook.setQuoteDecimals(market.getQuoteDecimals());
-                    bidOrderbook.setBaseLotSize(market.getBaseLotSize());
-                    bidOrderbook.setQuoteLotSize(market.getQuoteLotSize());
-
-                    // getOrders is slightly inefficient, need to cache better
-                    if (bidOrderbook.getOrders().size() > 0 && bidOrderbook.getSlab().getSlabNodes().get(0) != null) {
-                        priceCache.put(mintToPrice, bidOrderbook.getBestBid().getFloatPrice());
-                        log.info(mintToPrice + ": Price: " + priceCache.get(mintToPrice));
-                    } else {
-                        log.info(mintToPrice + ": No bids found..");
-                    }
-                }
+        for (List<PublicKey> publicKeys : Lists.partition(unknown, 100)) {
+            Map<PublicKey, Optional<AccountInfo.Value>> accountData = client.getApi().getMultipleAccountsMap(publicKeys);
+            for (PublicKey pubkey : publicKeys) {
+                accountData.getOrDefault(pubkey, Optional.empty()).ifPresent(value -> {
+                    accounts.put(pubkey, Base64.getDecoder().decode(value.getData().get(0)));
+                    changed.add(pubkey);
+                });
             }
-        });
+        }
+
+        return new FetchedMarketAccounts(accounts, changed);
+    }
 
-        log.info("All Serum markets cached: " + programAccounts.size());
+    private boolean hasCurrentDecimals(Market market) {
+        return market.getBaseDecimals() == (byte) tokenManager.getDecimals(market.getBaseMint()) &&
+                market.getQuoteDecimals() == (byte) tokenManager.getDecimals(market.getQuoteMint());
     }
 
     public int numMarketsByToken(PublicKey tokenMint) {
-        return marketMapCache.getOrDefault(tokenMint, new ArrayList<>()).size();
+        return marketRegistry.getMarketsByBaseMint(tokenMint).size();
     }
 
     public Optional<Market> getMarketById(String marketId) {
-        return Optional.ofNullable(marketCache.get(PublicKey.valueOf(marketId)));
+        return marketRegistry.getMarket(PublicKey.valueOf(marketId));
     }
 
-    // note: stablecoin values are hardcoded since most liquidity is on saber/mercurial
     public float getQuoteNotional(Market market, int quoteDecimals) {
-        float price = getQuoteMintPrice(market.getQuoteMint());
-        if (price == 0.0f) {
-            // check serum if not hardcoded (e.g. not a stablecoin)
-            price = priceCache.getOrDefault(market.getQuoteMint(), 0.0f);
-        }
+        float price = priceManager.getPrice(market.getQuoteMint());
         float totalQuantity = (float) ((double) market.getQuoteDepositsTotal() / SerumUtils.getQuoteSplTokenMultiplier((byte) quoteDecimals));
         return price * totalQuantity;
     }
 
     /**
-     * Top 20 quote mints have their price calculated on startup / interval, used for subsequent calculations
+     * Returns the latest bids, asks and event queue of a market, all read at the same slot.
      *
-     * @param quoteMint token mint
-     * @return best bid for token mint's USDC market
+     * @param marketPubkey market id
+     * @return cached snapshot, or empty if the market is unknown or could not be loaded
      */
-    private float getQuoteMintPrice(PublicKey quoteMint) {
-        // USDC, USDT, USDCet, UXD, soUSDT, USDH, soUSDC, PAI
-        if (quoteMint.equals(MarketUtil.USDC_MINT) ||
-                quoteMint.equals(MarketUtil.USDT_MINT) ||
-                quoteMint.equals(PublicKey.valueOf("A9mUU4qviSctJVPJdBJWkb28deg915LYJKrzQ19ji3FM")) ||
-                quoteMint.equals(PublicKey.valueOf("7kbnvuGBxxj8AG9qp8Scn56muWGaRaFqxg1FsRp3PaFT")) ||
-                quoteMint.equals(PublicKey.valueOf("BQcdHdAQW1hczDbBi9hiegXAR7A98Q9jx3X3iBBBDiq4")) ||
-                quoteMint.equals(PublicKey.valueOf("USDH1SM1ojwWUga67PGrgFWUHibbjqMvuMaDkRJTgkX")) ||
-                quoteMint.equals(PublicKey.valueOf("BXXkv6z8ykpG1yuvUDPgh732wzVHB69RnB9YgSYh3itW")) ||
-                quoteMint.equals(PublicKey.valueOf("Ea5SjE2Y6yvCeW5dYTn7PYMuW5ikXkvbGdcmSnXeaLjS"))
-        ) {
-            return 1f;
+    public Optional<MarketSnapshot> getMarketSnapshot(PublicKey marketPubkey) {
+        if (!marketRegistry.containsMarket(marketPubkey)) {
+            return Optional.empty();
         }
 
-        return 0;
-    }
-
-    public Optional<OrderBook> getCachedBidOrderBook(PublicKey marketPubkey) {
+        marketLastRequested.put(marketPubkey, System.currentTimeMillis());
         try {
-            return Optional.of(bidOrderBookLoadingCache.get(marketPubkey));
+            MarketSnapshot snapshot = marketSnapshotCache.get(marketPubkey);
+            dataAge.record(Math.max(0L, latestSlot.get() - snapshot.getSlot()));
+            return Optional.of(snapshot);
         } catch (ExecutionException e) {
             return Optional.empty();
         }
     }
 
-    public Optional<OrderBook> getCachedAskOrderBook(PublicKey marketPubkey) {
-        try {
-            return Optional.of(askOrderBookLoadingCache.get(marketPubkey));
-        } catch (ExecutionException e) {
+    /**
+     * Like {@link #getMarketSnapshot(PublicKey)}, but never loads: counts as a request, so the background refresh
+     * loads and refreshes the market, and returns what is cached now.
+     *
+     * @param marketPubkey market id
+     * @return cached snapshot, or empty if the market isn't loaded yet
+     */
+    public Optional<MarketSnapshot> getCachedMarketSnapshot(PublicKey marketPubkey) {
+        if (!marketRegistry.containsMarket(marketPubkey)) {
             return Optional.empty();
         }
+
+        marketLastRequested.put(marketPubkey, System.currentTimeMillis());
+        return Optional.ofNullable(marketSnapshotCache.getIfPresent(marketPubkey));
     }
 
-    public Optional<EventQueue> getCachedEventQueue(PublicKey marketPubkey) {
-        try {
-            return Optional.of(eventQueueLoadingCache.get(marketPubkey));
-        } catch (ExecutionException e) {
-            return Optional.empty();
+    // Only markets requested within the last minute, snapshots nobody asks for aren't refreshed
+    private double getMaxDataAge() {
+        final long slot = latestSlot.get();
+        long oldest = slot;
+        for (Market market : getActiveMarkets(DATA_AGE_WINDOW_MS)) {
+            MarketSnapshot snapshot = marketSnapshotCache.asMap().get(market.getOwnAddress());
+            if (snapshot != null) {
+                oldest = Math.min(oldest, snapshot.getSlot());
+            }
+        }
+        return slot - oldest;
+    }
+
+    private MarketSnapshot fetchMarketSnapshot(Market market, long minContextSlot) throws RpcException {
+        final MultipleAccountsInfo accountsInfo = client.call(
+                "getMultipleAccounts",
+                List.of(
+                        List.of(
+                                market.getBids().toBase58(),
+                                market.getAsks().toBase58(),
+                                market.getEventQueueKey().toBase58()
+                        ),
+                        Map.of(
+                                "encoding", "base64",
+                                "commitment", "confirmed",
+                                "minContextSlot", minContextSlot
+                        )
+                ),
+                MultipleAccountsInfo.class
+        );
+
+        final List<AccountInfo.Value> values = accountsInfo.getValue();
+        if (values.size() != 3 || values.contains(null)) {
+            throw new RpcException("Missing accounts for market " + market.getOwnAddress().toBase58());
         }
+
+        return buildMarketSnapshot(
+                market,
+                accountsInfo.getContext().getSlot(),
+                values.get(0).getData().get(0),
+                values.get(1).getData().get(0),
+                values.get(2).getData().get(0)
+        );
+    }
+
+    /**
+     * Builds a snapshot from base64 encoded account data. Slabs are decoded into a per-thread buffer and read in
+     * place, only the flattened price levels are kept.
+     */
+    MarketSnapshot buildMarketSnapshot(Market market, long slot, String bids, String asks, String eventQueue) {
+        latestSlot.accumulateAndGet(slot, Math::max);
+        final SlabReader slabReader = SlabReader.forCurrentThread();
+        final PriceLevelBook bidLevels = MarketUtil.buildPriceLevelBook(slabReader.wrapBase64(bids), market, true);
+        final PriceLevelBook askLevels = MarketUtil.buildPriceLevelBook(slabReader.wrapBase64(asks), market, false);
+        priceManager.updateBook(market, bidLevels, askLevels);
+
+        return MarketSnapshot.builder()
+                .market(market)
+                .events(appendEvents(Base64.getDecoder().decode(eventQueue), market, slot))
+                .bidLevels(prefetchOwners(market, bidLevels))
+                .askLevels(prefetchOwners(market, askLevels))
+                .slot(slot)
+                .revision(snapshotRevision.incrementAndGet())
+                .build();
+    }
+
+    /**
+     * Publishes a snapshot fetched in the background. Ignored if the cache already holds a later slot. Replacing a
+     * snapshot takes a new revision, the cached one may have been updated after this one was built.
+     *
+     * @param snapshot snapshot with bids, asks and event queue from one slot
+     */
+    void updateMarketSnapshot(MarketSnapshot snapshot) {
+        marketSnapshotCache.asMap().merge(
+                snapshot.getMarket().getOwnAddress(),
+                snapshot,
+                (existing, updated) -> updated.getSlot() >= existing.getSlot() ?
+                        updated.toBuilder().revision(snapshotRevision.incrementAndGet()).build() :
+                        existing
+        );
     }
 
-    private OrderBook buildOrderBook(byte[] data, Market market) {
-        OrderBook orderBook = OrderBook.readOrderBook(data);
-        orderBook.setBaseDecimals(market.getBaseDecimals());
-        orderBook.setQuoteDecimals(market.getQuoteDecimals());
-        orderBook.setBaseLotSize(market.getBaseLotSize());
-        orderBook.setQuoteLotSize(market.getQuoteLotSize());
+    /**
+     * Markets that have been requested recently, used by the background refresh.
+     *
+     * @param maxIdleMs how long ago the market was last requested
+     * @return recently requested markets
+     */
+    List<Market> getActiveMarkets(long maxIdleMs) {
+        final long cutoff = System.currentTimeMillis() - maxIdleMs;
+        final MarketRegistry registry = marketRegistry;
+        return marketLastRequested.entrySet().stream()
+                .filter(entry -> entry.getValue() >= cutoff)
+                .map(entry -> registry.getMarket(entry.getKey()))
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    /**
+     * @param market market to check
+     * @return true if bids, asks and event queue are all kept live by accountSubscribe
+     */
+    boolean isSubscriptionLive(Market market) {
+        return subscriptionClient.isLive(market.getBids()) &&
+                subscriptionClient.isLive(market.getAsks()) &&
+                subscriptionClient.isLive(market.getEventQueueKey());
+    }
+
+    /**
+     * Unsubscribes markets nobody has requested for a while. They go back to polling, and are subscribed again the
+     * next time their snapshot is loaded.
+     *
+     * @param maxIdleMs how long ago the market was last requested
+     */
+    void unsubscribeIdleMarkets(long maxIdleMs) {
+        final long cutoff = System.currentTimeMillis() - maxIdleMs;
+        for (PublicKey marketPubkey : subscribedMarkets) {
+            if (marketLastRequested.getOrDefault(marketPubkey, 0L) >= cutoff) {
+                continue;
+            }
+
+            Optional<Market> market = marketRegistry.getMarket(marketPubkey);
+            if (subscribedMarkets.remove(marketPubkey) && market.isPresent()) {
+                subscriptionClient.unsubscribe(market.get().getBids());
+                subscriptionClient.unsubscribe(market.get().getAsks());
+                subscriptionClient.unsubscribe(market.get().getEventQueueKey());
+            }
+        }
+    }
+
+    /**
+     * Subscribes to the market's bids, asks and event queue, once. Each notification replaces one part of the
+     * cached snapshot. Polling resumes by itself whenever the websocket is down.
+     *
+     * @param market market that has been requested
+     */
+    private void subscribeToMarket(Market market) {
+        if (!subscriptionClient.isEnabled() || !subscribedMarkets.add(market.getOwnAddress())) {
+            return;
+        }
+
+        subscriptionClient.subscribe(
+                market.getBids(),
+                (account, slot, data) -> applyBookUpdate(market, account, slot, data, true)
+        );
+        subscriptionClient.subscribe(
+                market.getAsks(),
+                (account, slot, data) -> applyBookUpdate(market, account, slot, data, false)
+        );
+        subscriptionClient.subscribe(
+                market.getEventQueueKey(),
+                (account, slot, data) -> {
+                    if (!isNewerUpdate(account, slot)) {
+                        return;
+                    }
+
+                    final EventQueueTail tail = getEventQueueTail(market);
+                    final List<MarketEvent> newEvents = tail.append(data);
+                    final List<MarketEvent> events = tail.getEvents();
+                    publishUpdate(market, slot, snapshot -> snapshot.toBuilder().events(events));
+                    recordEvents(market, slot, newEvents);
+                }
+        );
+    }
+
+    private void applyBookUpdate(Market market, PublicKey account, long slot, byte[] data, boolean isBid) {
+        if (!isNewerUpdate(account, slot)) {
+            return;
+        }
+
+        final PriceLevelBook book = MarketUtil.buildPriceLevelBook(
+                SlabReader.forCurrentThread().wrap(data),
+                market,
+                isBid
+        );
+        publishUpdate(
+                market,
+                slot,
+                snapshot -> isBid ? snapshot.toBuilder().bidLevels(book) : snapshot.toBuilder().askLevels(book)
+        ).ifPresent(updated -> {
+            prefetchOwners(market, book);
+            priceManager.updateBook(market, updated.getBidLevels(), updated.getAskLevels());
+        });
+    }
+
+    // Notifications for the three accounts arrive independently, so ordering is tracked per account.
+    private boolean isNewerUpdate(PublicKey account, long slot) {
+        latestSlot.accumulateAndGet(slot, Math::max);
+        return accountContextSlot.merge(account, slot, Math::max) == slot;
+    }
+
+    /**
+     * Replaces the cached snapshot with an updated copy. The update only copies fields, it may run several times if
+     * other updates race it, so decoding and side effects happen before or after this.
+     *
+     * @return the published snapshot, empty if the market isn't cached
+     */
+    private Optional<MarketSnapshot> publishUpdate(Market market, long slot, Function<MarketSnapshot,
+            MarketSnapshot.MarketSnapshotBuilder> update) {
+        final ConcurrentMap<PublicKey, MarketSnapshot> snapshots = marketSnapshotCache.asMap();
+        MarketSnapshot snapshot;
+        MarketSnapshot updated;
+        do {
+            snapshot = snapshots.get(market.getOwnAddress());
+            if (snapshot == null) {
+                return Optional.empty();
+            }
+            updated = update.apply(snapshot)
+                    .slot(Math.max(slot, snapshot.getSlot()))
+                    .revision(snapshotRevision.incrementAndGet())
+                    .build();
+        } while (!snapshots.replace(market.getOwnAddress(), snapshot, updated));
+        return Optional.of(updated);
+    }
+
+    // Only events pushed since the market's previous event queue fetch are decoded, and only those are recorded
+    // and added to the candles
+    private List<MarketEvent> appendEvents(byte[] data, Market market, long slot) {
+        final EventQueueTail tail = getEventQueueTail(market);
+        recordEvents(market, slot, tail.append(data));
+        return tail.getEvents();
+    }
 
-        return orderBook;
+    private EventQueueTail getEventQueueTail(Market market) {
+        return eventQueueTails.computeIfAbsent(
+                market.getOwnAddress(),
+                marketPubkey -> new EventQueueTail(market)
+        );
     }
 
-    public long getBidContext(PublicKey publicKey) {
-        return bidOrderBookMinContextSlot.getOrDefault(publicKey, DEFAULT_MIN_CONTEXT_SLOT);
+    private void recordEvents(Market market, long slot, List<MarketEvent> newEvents) {
+        identityManager.prefetchOwners(market.getOwnAddress(), newEvents.stream()
+                .filter(MarketEvent::isFill)
+                .map(MarketEvent::getOpenOrders)
+                .toList());
+        candleManager.record(market.getOwnAddress(), tradeTapeManager.record(market, slot, newEvents));
     }
 
-    public long getAskContext(PublicKey publicKey) {
-        return bidOrderBookMinContextSlot.getOrDefault(publicKey, DEFAULT_MIN_CONTEXT_SLOT);
+    // Owners are resolved in the background, so they are usually known by the time the book is requested
+    private PriceLevelBook prefetchOwners(Market market, PriceLevelBook book) {
+        identityManager.prefetchOwners(market.getOwnAddress(), book.getOrderOwners());
+        return book;
     }
 }
@@ -3,7 +3,10 @@ package com.mmorrell.serumdata.manager;
 import com.mmorrell.serum.model.Market;
 import com.mmorrell.serum.model.SerumUtils;
 import com.mmorrell.serumdata.model.MarketListing;
+import com.mmorrell.serumdata.model.MarketRankings;
+import com.mmorrell.serumdata.model.StartupSnapshot;
 import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.model.TokenSearchResult;
 import com.mmorrell.serumdata.util.MarketUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.p2p.solanaj.core.PublicKey;
@@ -12,7 +15,6 @@ import org.springframework.stereotype.Component;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -38,33 +40,50 @@ public class MarketRankManager {
 
     private final MarketManager marketManager;
     private final TokenManager tokenManager;
-    private List<MarketListing> marketListings;
+    private final StartupSnapshotStore startupSnapshotStore;
+    // Listings and their indexes, replaced as a whole
+    private volatile MarketRankings rankings = MarketRankings.EMPTY;
+    // Every ranked token in rank order, the result of a blank search
+    private volatile RankedTokens rankedTokens;
 
-    public MarketRankManager(MarketManager marketManager, TokenManager tokenManager) {
+    private record RankedTokens(MarketRankings rankings, long registryVersion, List<Token> tokens) {
+    }
+
+    public MarketRankManager(MarketManager marketManager,
+                             TokenManager tokenManager,
+                             StartupSnapshotStore startupSnapshotStore) {
         this.marketManager = marketManager;
         this.tokenManager = tokenManager;
+        this.startupSnapshotStore = startupSnapshotStore;
 
         updateCachedMarketListings();
 
-        log.info("Caching token images.");
-        List<PublicKey> mintImagesToCache = marketListings.stream()
-                .map(MarketListing::getBaseMint)
-                .collect(Collectors.toList());
-
-        // Always add USDC
-        mintImagesToCache.add(new PublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v"));
-
-        // Dedupe
-        Set<PublicKey> deDupedMintImagesToCache = new HashSet<>(mintImagesToCache);
-        tokenManager.cacheAllTokenImages(deDupedMintImagesToCache.stream().toList());
-
-        log.info("Successfully cached token images: " + marketListings.size());
+        if (marketManager.getInitialSync().isDone()) {
+            saveStartupSnapshot();
+        } else {
+            // Started from a snapshot, catch up once the markets have been loaded from the RPC
+            marketManager.getInitialSync().thenRunAsync(() -> {
+                updateCachedMarketListings();
+                saveStartupSnapshot();
+            });
+        }
     }
 
     @Scheduled(initialDelay = 5L, fixedRate = 5L, timeUnit = TimeUnit.MINUTES)
     public void updateMarketsScheduled() {
         marketManager.updateMarkets();
         updateCachedMarketListings();
+        saveStartupSnapshot();
+    }
+
+    // Markets, tokens and prices for the next warm start
+    private void saveStartupSnapshot() {
+        startupSnapshotStore.save(StartupSnapshot.builder()
+                .createdAt(System.currentTimeMillis())
+                .tokens(List.copyOf(tokenManager.getRegistry().values()))
+                .marketAccounts(marketManager.getMarketAccounts())
+                .prices(marketManager.getPrices())
+                .build());
     }
 
     /**
@@ -75,15 +94,46 @@ public class MarketRankManager {
      * @return serum market rank for the given token
      */
     public int getMarketRankOfToken(PublicKey tokenMint) {
-        for (int i = 0; i < marketListings.size(); i++) {
-            PublicKey baseMint = marketListings.get(i).getBaseMint();
-            PublicKey baseMintChecked = baseMint == null ? MarketUtil.USDC_MINT : baseMint;
-            if (baseMintChecked.equals(tokenMint)) {
-                return i;
-            }
-        }
+        return rankings.getTokenRank(tokenMint).orElse(RANK_PLACEHOLDER);
+    }
 
-        return RANK_PLACEHOLDER;
+    /**
+     * Searches tokens with at least one listed market, ranked by their most active market.
+     *
+     * @param query    symbol, name or mint prefix
+     * @param page     1-based page
+     * @param pageSize tokens per page
+     * @return requested page of matches
+     */
+    public TokenSearchResult searchTokens(String query, int page, int pageSize) {
+        final MarketRankings current = rankings;
+        final List<Token> matches = query.isBlank() ? getRankedTokens(current) : search(query, current);
+        final int from = Math.min((page - 1) * pageSize, matches.size());
+        final int to = Math.min(from + pageSize, matches.size());
+
+        return TokenSearchResult.builder()
+                .query(query)
+                .page(page)
+                .pageSize(pageSize)
+                .total(matches.size())
+                .tokens(matches.subList(from, to))
+                .build();
+    }
+
+    private List<Token> search(String query, MarketRankings current) {
+        final Map<PublicKey, Integer> ranks = current.getTokenRanks();
+        return tokenManager.searchTokens(query, mint -> ranks.getOrDefault(mint, -1));
+    }
+
+    // Built when the rankings are, rebuilt here if the token registry was reloaded since
+    private List<Token> getRankedTokens(MarketRankings current) {
+        final long registryVersion = tokenManager.getRegistryVersion();
+        RankedTokens ranked = rankedTokens;
+        if (ranked == null || ranked.rankings() != current || ranked.registryVersion() != registryVersion) {
+            ranked = new RankedTokens(current, registryVersion, search("", current));
+            rankedTokens = ranked;
+        }
+        return ranked.tokens();
     }
 
     // Used in Thymeleaf. Needs better solution.
@@ -92,45 +142,11 @@ public class MarketRankManager {
     }
 
     public Optional<Market> getMostActiveMarket(PublicKey baseMint) {
-        List<Market> markets = marketManager.getMarketsByBaseMint(baseMint);
-        if (markets.size() < 1) {
-            return Optional.empty();
-        }
-
-        // sort by base deposits
-        markets.sort(Comparator.comparingLong(Market::getBaseDepositsTotal).reversed());
-
-        // prefer USDC over other pairs if 2 top pairs are XYZ / USDC
-        if (markets.size() > 1) {
-            Market firstMarket = markets.get(0);
-            Market secondMarket = markets.get(1);
-
-            // if first pair isn't USDC quoted, and second pair is, move it to first place
-            if (!firstMarket.getQuoteMint().equals(MarketUtil.USDC_MINT) &&
-                    secondMarket.getQuoteMint().equals(MarketUtil.USDC_MINT)) {
-                markets.set(0, secondMarket);
-                markets.set(1, firstMarket);
-            }
-        }
-
-        return Optional.ofNullable(markets.get(0));
+        return rankings.getMostActiveMarket(baseMint);
     }
 
     public Optional<Market> getMostActiveMarket(PublicKey baseMint, PublicKey quoteMint) {
-        List<Market> markets = marketManager.getMarketsByTokenMint(baseMint);
-        if (markets.size() < 1) {
-            return Optional.empty();
-        }
-
-        // sort by base deposits
-        markets.sort(Comparator.comparingLong(Market::getBaseDepositsTotal).reversed());
-        for (Market market : markets) {
-            if (market.getQuoteMint().equals(quoteMint)) {
-                return Optional.of(market);
-            }
-        }
-
-        return Optional.empty();
+        return rankings.getMostActiveMarket(baseMint, quoteMint);
     }
 
     /**
@@ -144,29 +160,16 @@ public class MarketRankManager {
             return Optional.of(TOP_TOKENS.get(symbol));
         }
 
-        List<Token> possibleBaseTokens = tokenManager.getTokensBySymbol(symbol);
-        List<Market> activeMarkets = new ArrayList<>();
-
-        for (Token baseToken : possibleBaseTokens) {
-            // compile list of markets, return one with most fees accrued.
-            Optional<Market> optionalMarket = getMostActiveMarket(baseToken.getPublicKey());
-            optionalMarket.ifPresent(activeMarkets::add);
-        }
-        activeMarkets.sort(Comparator.comparingLong(Market::getQuoteFeesAccrued).reversed());
-
-        if (activeMarkets.size() > 0) {
-            return tokenManager.getTokenByMint(activeMarkets.get(0).getBaseMint());
-        } else {
-            return Optional.empty();
-        }
+        return rankings.getMostActiveTokenBySymbol(symbol);
     }
 
     public List<MarketListing> getMarketListings() {
-        return marketListings;
+        return rankings.getListings();
     }
 
     private void updateCachedMarketListings() {
-        marketListings = marketManager.getMarketCache().stream()
+        final List<Market> markets = marketManager.getMarketCache();
+        final List<MarketListing> marketListings = markets.stream()
                 .map(market -> {
                     // base and quote decimals
                     Optional<Token> baseToken = tokenManager.getTokenByMint(market.getBaseMint());
@@ -198,6 +201,9 @@ public class MarketRankManager {
                 })
                 .sorted((o1, o2) -> (int) (o2.getQuoteNotional() - o1.getQuoteNotional()))
                 .toList();
+
+        rankings = new MarketRankings(marketListings, markets, tokenManager.getRegistry());
+        getRankedTokens(rankings);
     }
 
     // used in thymeleaf
@@ -0,0 +1,143 @@
+package com.mmorrell.serumdata.manager;
+
+import com.google.common.collect.Lists;
+import com.mmorrell.serum.model.Market;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+import org.p2p.solanaj.rpc.types.AccountInfo;
+import org.p2p.solanaj.rpc.types.MultipleAccountsInfo;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Refreshes the snapshot (bids, asks and event queue) of every recently viewed market in the background.
+ * All hot accounts are fetched with getMultipleAccounts in batches of up to 100, with a few batches in flight at once,
+ * instead of one request per market. Markets kept live by accountSubscribe are skipped.
+ */
+@Component
+@Slf4j
+public class MarketRefreshEngine {
+
+    private static final int MAX_ACCOUNTS_PER_REQUEST = 100;
+    private static final int ACCOUNTS_PER_MARKET = 3;
+    private static final int MAX_IN_FLIGHT_REQUESTS = 4;
+    private static final long REFRESH_INTERVAL_MS = 500L;
+    private static final long UNSUBSCRIBE_INTERVAL_MS = 30_000L;
+
+    // Markets nobody has requested for this long are left to the caches' own refresh
+    private static final long ACTIVE_MARKET_IDLE_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final MarketManager marketManager;
+    private final RpcClient client;
+    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(MAX_IN_FLIGHT_REQUESTS, runnable -> {
+        Thread thread = new Thread(runnable, "MarketRefreshThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MarketRefreshEngine(final MarketManager marketManager, final RpcClient rpcClient) {
+        this.marketManager = marketManager;
+        this.client = rpcClient;
+    }
+
+    @Scheduled(initialDelay = REFRESH_INTERVAL_MS, fixedDelay = REFRESH_INTERVAL_MS)
+    public void refreshActiveMarkets() {
+        final List<Market> hotMarkets = marketManager.getActiveMarkets(ACTIVE_MARKET_IDLE_MS).stream()
+                .filter(market -> !marketManager.isSubscriptionLive(market))
+                .toList();
+
+        if (hotMarkets.isEmpty()) {
+            return;
+        }
+
+        // A market's 3 accounts always share a batch, so its snapshot comes from one slot.
+        // One future per batch, at most MAX_IN_FLIGHT_REQUESTS run at once
+        final List<CompletableFuture<Void>> batches = Lists.partition(
+                        hotMarkets,
+                        MAX_ACCOUNTS_PER_REQUEST / ACCOUNTS_PER_MARKET
+                ).stream()
+                .map(batch -> CompletableFuture.runAsync(() -> refreshBatch(batch), requestExecutor))
+                .toList();
+
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Drops the websocket subscriptions of markets that left the active window, so subscriptions don't pile up as
+     * users browse markets.
+     */
+    @Scheduled(initialDelay = UNSUBSCRIBE_INTERVAL_MS, fixedDelay = UNSUBSCRIBE_INTERVAL_MS)
+    public void unsubscribeIdleMarkets() {
+        marketManager.unsubscribeIdleMarkets(ACTIVE_MARKET_IDLE_MS);
+    }
+
+    private void refreshBatch(List<Market> batch) {
+        final List<String> accounts = new ArrayList<>(batch.size() * ACCOUNTS_PER_MARKET);
+        for (Market market : batch) {
+            accounts.add(market.getBids().toBase58());
+            accounts.add(market.getAsks().toBase58());
+            accounts.add(market.getEventQueueKey().toBase58());
+        }
+
+        final MultipleAccountsInfo accountsInfo;
+        try {
+            accountsInfo = client.call(
+                    "getMultipleAccounts",
+                    List.of(
+                            accounts,
+                            Map.of(
+                                    "encoding", "base64",
+                                    "commitment", "confirmed"
+                            )
+                    ),
+                    MultipleAccountsInfo.class
+            );
+        } catch (RpcException ex) {
+            // Snapshot cache keeps polling these markets until the next cycle
+            log.warn("Batch refresh failed: " + ex.getMessage());
+            return;
+        }
+
+        final long slot = accountsInfo.getContext().getSlot();
+        final List<AccountInfo.Value> values = accountsInfo.getValue();
+        if (values.size() != accounts.size()) {
+            log.warn("Batch refresh returned " + values.size() + " of " + accounts.size() + " accounts.");
+            return;
+        }
+
+        // Decode in parallel, order books with thousands of orders are the expensive part
+        IntStream.range(0, batch.size())
+                .parallel()
+                .forEach(i -> {
+                    Market market = batch.get(i);
+                    AccountInfo.Value bids = values.get(i * ACCOUNTS_PER_MARKET);
+                    AccountInfo.Value asks = values.get(i * ACCOUNTS_PER_MARKET + 1);
+                    AccountInfo.Value eventQueue = values.get(i * ACCOUNTS_PER_MARKET + 2);
+                    if (bids == null || asks == null || eventQueue == null) {
+                        return;
+                    }
+
+                    try {
+                        marketManager.updateMarketSnapshot(
+                                marketManager.buildMarketSnapshot(
+                                        market,
+                                        slot,
+                                        bids.getData().get(0),
+                                        asks.getData().get(0),
+                                        eventQueue.getData().get(0)
+                                )
+                        );
+                    } catch (Exception ex) {
+                        log.warn("Unable to decode " + market.getOwnAddress().toBase58() + ": " + ex.getMessage());
+                    }
+                });
+    }
+}
@@ -0,0 +1,217 @@
+package com.mmorrell.serumdata.manager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.model.MarketDepth;
+import com.mmorrell.serumdata.model.MarketEvent;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import com.mmorrell.serumdata.model.SerumOrder;
+import com.mmorrell.serumdata.model.TradeHistoryEvent;
+import com.mmorrell.serumdata.util.BinaryDepthEncoder;
+import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.SerializedResponseCache;
+import com.mmorrell.serumdata.util.SerializedResponseCache.SerializedResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Builds and encodes the per-market views of a snapshot (bids, asks, trade history, depth).
+ * Each view is encoded once per snapshot slot and shared by the REST endpoints and the stream.
+ */
+@Component
+public class MarketResponseManager {
+
+    public static final String BIDS = "bids";
+    public static final String ASKS = "asks";
+    public static final String TRADE_HISTORY = "tradeHistory";
+    public static final String DEPTH = "depth";
+    public static final String DEPTH_BINARY = "depth.bin";
+    // Views that show order owners, re-encoded when the background resolver adds owners
+    private static final Set<String> OWNER_KINDS = Set.of(BIDS, ASKS, TRADE_HISTORY);
+
+    private final IdentityManager identityManager;
+    private final ObjectMapper objectMapper;
+    private final SerializedResponseCache serializedResponseCache = new SerializedResponseCache();
+    // <kind, encoder>
+    private final Map<String, Function<MarketSnapshot, byte[]>> encoders;
+
+    public MarketResponseManager(final IdentityManager identityManager,
+                                 final ObjectMapper objectMapper,
+                                 final MeterRegistry meterRegistry) {
+        this.identityManager = identityManager;
+        this.objectMapper = objectMapper;
+        this.serializedResponseCache.bindTo(meterRegistry, "responses");
+        this.encoders = Map.of(
+                BIDS, snapshot -> writeJson(buildOrders(snapshot.getBidLevels())),
+                ASKS, snapshot -> writeJson(buildOrders(snapshot.getAskLevels())),
+                TRADE_HISTORY, snapshot -> writeJson(buildTradeHistory(snapshot, -1L)),
+                DEPTH, snapshot -> writeJson(buildMarketDepth(snapshot)),
+                DEPTH_BINARY, BinaryDepthEncoder::encode
+        );
+    }
+
+    /**
+     * @param kind one of the view constants, e.g. {@link #BIDS}
+     * @return true if the view exists
+     */
+    public boolean isKnownKind(String kind) {
+        return encoders.containsKey(kind);
+    }
+
+    /**
+     * Returns the encoded view of a snapshot, reused until the market's snapshot slot changes or, for views with
+     * owners, until more owners are resolved.
+     *
+     * @param kind     one of the view constants, e.g. {@link #BIDS}
+     * @param snapshot market snapshot
+     * @return encoded body with its ETag
+     */
+    public SerializedResponse getResponse(String kind, MarketSnapshot snapshot) {
+        final Function<MarketSnapshot, byte[]> encoder = encoders.get(kind);
+        if (encoder == null) {
+            throw new IllegalArgumentException("Unknown response kind: " + kind);
+        }
+
+        return serializedResponseCache.get(
+                kind,
+                snapshot.getMarket().getOwnAddress().toBase58(),
+                snapshot.getRevision(),
+                OWNER_KINDS.contains(kind) ? identityManager.getOwnerVersion(snapshot.getMarket().getOwnAddress()) : 0L,
+                () -> encoder.apply(snapshot)
+        );
+    }
+
+    /**
+     * @param body any JSON serializable object
+     * @return JSON bytes
+     */
+    public byte[] writeJson(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<SerumOrder> buildOrders(PriceLevelBook book) {
+        List<SerumOrder> serumOrders = MarketUtil.convertPriceLevelBookToSerumOrders(book);
+        identityManager.reverseOwnerLookup(serumOrders);
+        return serumOrders;
+    }
+
+    /**
+     * Trade history from the snapshot's recent events, newest first. Maker fills are folded into their taker row.
+     *
+     * @param snapshot market snapshot
+     * @param since    only events with a higher sequence number are returned, -1 for all
+     * @return trade history rows
+     */
+    public List<TradeHistoryEvent> buildTradeHistory(MarketSnapshot snapshot, long since) {
+        final List<MarketEvent> events = snapshot.getEvents();
+
+        // Events are newest first, so everything after the cursor is a prefix (plus one for the last maker)
+        int newEventCount = 0;
+        while (newEventCount < events.size() && events.get(newEventCount).getSeqNum() > since) {
+            newEventCount++;
+        }
+        final List<MarketEvent> tradeEvents = events.subList(0, Math.min(newEventCount + 1, events.size()));
+
+        final List<TradeHistoryEvent> result = new ArrayList<>();
+        // Owners not resolved yet fall back to the open orders account
+        Map<PublicKey, Optional<PublicKey>> owners = identityManager.getCachedOwners(
+                tradeEvents.stream()
+                        .map(MarketEvent::getOpenOrders)
+                        .toList()
+        );
+
+        for (int i = 0; i < newEventCount; i++) {
+            MarketEvent event = tradeEvents.get(i);
+
+            if (event.isMaker()) {
+                // Skip event if it's a maker side fill
+                // We are attaching that metadata to the taker event instead.
+                continue;
+            }
+
+            // Get owner of taker OOA
+            Optional<PublicKey> owner = owners.getOrDefault(event.getOpenOrders(), Optional.empty());
+
+            // Fall back if not found yet
+            PublicKey taker = owner.orElseGet(event::getOpenOrders);
+
+            // Calculate the corresponding maker for trade.
+            // The maker event is always pushed right before the taker. E.g. seqNum 10 is taker, 9 is maker.
+            // Volume and price can also be correlated but it isn't as deterministic.
+            int makerIndex = i + 1;
+            final Optional<PublicKey> makerPubkey =
+                    makerIndex < tradeEvents.size() && tradeEvents.get(makerIndex).getSeqNum() == event.getSeqNum() - 1 ?
+                            Optional.ofNullable(tradeEvents.get(makerIndex).getOpenOrders()) :
+                            Optional.empty();
+
+            final TradeHistoryEvent tradeHistoryEvent = TradeHistoryEvent.builder()
+                    .index(i)
+                    .seqNum(event.getSeqNum())
+                    .price(event.getPrice())
+                    .quantity(event.getQuantity())
+                    .owner(taker)
+                    .takerOoa(event.getOpenOrders())
+                    .build();
+
+            // Known entity e.g. Wintermute
+            boolean isKnownTaker = identityManager.hasReverseLookup(taker);
+            if (isKnownTaker) {
+                tradeHistoryEvent.setTakerEntityName(identityManager.getEntityNameByOwner(taker));
+                tradeHistoryEvent.setTakerEntityIcon(identityManager.getEntityIconByOwner(taker));
+            }
+
+            // Maker metadata
+            if (makerPubkey.isPresent()) {
+                Optional<PublicKey> makerOwner = owners.getOrDefault(makerPubkey.get(), Optional.empty());
+                tradeHistoryEvent.setMakerOoa(makerPubkey.get());
+                if (makerOwner.isPresent()) {
+                    tradeHistoryEvent.setMakerOwner(makerOwner.get());
+                    if (identityManager.hasReverseLookup(makerOwner.get())) {
+                        tradeHistoryEvent.setMakerEntityName(identityManager.getEntityNameByOwner(makerOwner.get()));
+                        tradeHistoryEvent.setMakerEntityIcon(identityManager.getEntityIconByOwner(makerOwner.get()));
+                    }
+                } else {
+                    tradeHistoryEvent.setMakerOwner(makerPubkey.get());
+                }
+            }
+
+            tradeHistoryEvent.setFill(event.isFill());
+            tradeHistoryEvent.setOut(event.isOut());
+            tradeHistoryEvent.setBid(event.isBid());
+            tradeHistoryEvent.setMaker(event.isMaker());
+
+            result.add(tradeHistoryEvent);
+        }
+
+        return result;
+    }
+
+    private MarketDepth buildMarketDepth(MarketSnapshot snapshot) {
+        // Bids and asks come from the same slot, so the book can't be drawn crossed
+        final PriceLevelBook bidLevels = snapshot.getBidLevels();
+        final PriceLevelBook askLevels = snapshot.getAskLevels();
+
+        float midPoint = (bidLevels.getBestPrice() + askLevels.getBestPrice()) / 2;
+
+        // Chart JS library expects ascending order on both sides
+        float[][] floatBids = MarketUtil.convertPriceLevelBookToDepth(bidLevels);
+        float[][] floatAsks = MarketUtil.convertPriceLevelBookToDepth(askLevels);
+
+        return MarketDepth.builder()
+                .asks(floatAsks)
+                .bids(floatBids)
+                .midpoint(midPoint)
+                .bidContextSlot(snapshot.getSlot())
+                .askContextSlot(snapshot.getSlot())
+                .build();
+    }
+}
@@ -0,0 +1,260 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server-sent event streams of market views (depth, bids, asks, trade history) for one or more markets per
+ * connection. A frame is pushed only when a market's snapshot revision advances.
+ * <p>
+ * Streams use non-blocking servlet output, so a write never waits on the socket and a few writer threads serve every
+ * connection. A client whose socket can't take more data is skipped, and receives the latest snapshot once it can,
+ * never a backlog of intermediate ones. A client that stays unwritable for 5 seconds is disconnected.
+ */
+@Component
+@Slf4j
+public class MarketStreamManager {
+
+    public static final int MAX_MARKETS_PER_STREAM = 10;
+    private static final long PUSH_INTERVAL_MS = 200L;
+    private static final long HEARTBEAT_INTERVAL_MS = TimeUnit.SECONDS.toMillis(15);
+    // Clients reconnect on their own, this just bounds the lifetime of abandoned streams
+    private static final long STREAM_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final long SEND_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final int WRITER_THREADS = 4;
+
+    private final MarketManager marketManager;
+    private final MarketResponseManager marketResponseManager;
+    private final Set<MarketStream> streams = ConcurrentHashMap.newKeySet();
+    // Writes never block, the threads only assemble frames
+    private final ExecutorService writerExecutor = Executors.newFixedThreadPool(WRITER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "MarketStreamWriterThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class MarketStream {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream output;
+        private final List<PublicKey> markets;
+        private final List<String> kinds;
+        // <market, snapshot revision of the last frame sent>
+        private final Map<PublicKey, Long> sentRevisions = new HashMap<>();
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private long lastWriteMs = System.currentTimeMillis();
+        // When the socket stopped taking data, 0 while it is writable
+        private long unwritableSinceMs;
+
+        private MarketStream(AsyncContext asyncContext,
+                             ServletOutputStream output,
+                             List<PublicKey> markets,
+                             List<String> kinds) {
+            this.asyncContext = asyncContext;
+            this.output = output;
+            this.markets = markets;
+            this.kinds = kinds;
+        }
+    }
+
+    public MarketStreamManager(final MarketManager marketManager,
+                               final MarketResponseManager marketResponseManager) {
+        this.marketManager = marketManager;
+        this.marketResponseManager = marketResponseManager;
+    }
+
+    /**
+     * Opens a stream on the request, which stays open after the controller returns. Every frame is an SSE event
+     * named after the view, with data {"marketId": "...", "slot": 123, "data": (same body as the REST endpoint)}.
+     *
+     * @param markets markets to stream, at most {@link #MAX_MARKETS_PER_STREAM}
+     * @param kinds   JSON views to stream, e.g. {@link MarketResponseManager#DEPTH}
+     */
+    public void openStream(List<PublicKey> markets,
+                           List<String> kinds,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        if (markets.isEmpty() || markets.size() > MAX_MARKETS_PER_STREAM) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_MARKETS_PER_STREAM + " markets per stream");
+        }
+        for (String kind : kinds) {
+            if (!marketResponseManager.isKnownKind(kind) || kind.equals(MarketResponseManager.DEPTH_BINARY)) {
+                throw new IllegalArgumentException("Unknown stream topic: " + kind);
+            }
+        }
+
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        final AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(STREAM_TIMEOUT_MS);
+        final MarketStream stream = new MarketStream(
+                asyncContext,
+                response.getOutputStream(),
+                List.copyOf(markets),
+                List.copyOf(kinds)
+        );
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                streams.remove(stream);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                close(stream);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                close(stream);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        stream.output.setWriteListener(new WriteListener() {
+            // Frames are only written by the push loop, which checks isReady() first
+            @Override
+            public void onWritePossible() {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                log.debug("Closing market stream: " + throwable.getMessage());
+                close(stream);
+            }
+        });
+        streams.add(stream);
+
+        // First frames go out on the next tick
+    }
+
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    @Scheduled(initialDelay = PUSH_INTERVAL_MS, fixedDelay = PUSH_INTERVAL_MS)
+    public void pushUpdates() {
+        if (streams.isEmpty()) {
+            return;
+        }
+
+        // Cached snapshots only, streamed markets count as requested so the background refresh loads them
+        final Map<PublicKey, MarketSnapshot> latestSnapshots = new HashMap<>();
+        for (MarketStream stream : streams) {
+            for (PublicKey market : stream.markets) {
+                if (!latestSnapshots.containsKey(market)) {
+                    marketManager.getCachedMarketSnapshot(market).ifPresent(
+                            snapshot -> latestSnapshots.put(market, snapshot)
+                    );
+                }
+            }
+        }
+
+        for (MarketStream stream : streams) {
+            // Previous tick still being assembled, it gets the latest state next time
+            if (!stream.writing.compareAndSet(false, true)) {
+                continue;
+            }
+
+            writerExecutor.execute(() -> {
+                try {
+                    writeUpdates(stream, latestSnapshots);
+                } catch (IOException | IllegalStateException ex) {
+                    log.debug("Closing market stream: " + ex.getMessage());
+                    close(stream);
+                } finally {
+                    stream.writing.set(false);
+                }
+            });
+        }
+    }
+
+    private void writeUpdates(MarketStream stream, Map<PublicKey, MarketSnapshot> latestSnapshots) throws IOException {
+        final long now = System.currentTimeMillis();
+        if (!stream.output.isReady()) {
+            if (stream.unwritableSinceMs == 0) {
+                stream.unwritableSinceMs = now;
+            } else if (now - stream.unwritableSinceMs >= SEND_TIMEOUT_MS) {
+                log.debug("Dropping market stream, unwritable for " + (now - stream.unwritableSinceMs) + " ms");
+                close(stream);
+            }
+            return;
+        }
+        stream.unwritableSinceMs = 0;
+
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (PublicKey market : stream.markets) {
+            MarketSnapshot snapshot = latestSnapshots.get(market);
+            if (snapshot == null || snapshot.getRevision() <= stream.sentRevisions.getOrDefault(market, -1L)) {
+                continue;
+            }
+
+            for (String kind : stream.kinds) {
+                frames.writeBytes(buildEvent(kind, snapshot.getRevision(), buildFrame(market, snapshot, kind)));
+            }
+            stream.sentRevisions.put(market, snapshot.getRevision());
+        }
+
+        if (frames.size() == 0) {
+            if (now - stream.lastWriteMs < HEARTBEAT_INTERVAL_MS) {
+                return;
+            }
+            // Detects closed connections on idle markets
+            frames.writeBytes(":heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Buffered by the container if the socket can't take it all, isReady() stays false until it is sent
+        stream.output.write(frames.toByteArray());
+        if (stream.output.isReady()) {
+            stream.output.flush();
+        }
+        stream.lastWriteMs = now;
+    }
+
+    private void close(MarketStream stream) {
+        streams.remove(stream);
+        if (stream.closed.compareAndSet(false, true)) {
+            try {
+                stream.asyncContext.complete();
+            } catch (IllegalStateException ex) {
+                // Already completed by the container
+            }
+        }
+    }
+
+    private static byte[] buildEvent(String name, long id, String data) {
+        return ("event:" + name + "\nid:" + id + "\ndata:" + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // The view is already encoded once per revision, so the frame is assembled around it instead of re-serialized
+    private String buildFrame(PublicKey market, MarketSnapshot snapshot, String kind) {
+        return "{\"marketId\":\"" + market.toBase58() + "\",\"slot\":" + snapshot.getSlot() + ",\"data\":" +
+                new String(marketResponseManager.getResponse(kind, snapshot).body(), StandardCharsets.UTF_8) + "}";
+    }
+}
@@ -0,0 +1,140 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import com.mmorrell.serumdata.model.StartupSnapshot;
+import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.PricingGraph;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * USD prices of token mints, derived by a {@link PricingGraph} over every market whose book has been read recently.
+ * <p>
+ * Each book refresh replaces that market's edge, which only marks the prices dirty. Prices are solved again at most
+ * every few seconds and published as one immutable map, so lookups never wait on a solve.
+ */
+@Component
+@Slf4j
+public class PriceManager {
+
+    // USDC, USDT, USDCet, UXD, soUSDT, USDH, soUSDC, PAI
+    // note: stablecoin values are fixed since most liquidity is on saber/mercurial
+    private static final Map<PublicKey, Float> ANCHORS = Map.of(
+            MarketUtil.USDC_MINT, 1f,
+            MarketUtil.USDT_MINT, 1f,
+            PublicKey.valueOf("A9mUU4qviSctJVPJdBJWkb28deg915LYJKrzQ19ji3FM"), 1f,
+            PublicKey.valueOf("7kbnvuGBxxj8AG9qp8Scn56muWGaRaFqxg1FsRp3PaFT"), 1f,
+            PublicKey.valueOf("BQcdHdAQW1hczDbBi9hiegXAR7A98Q9jx3X3iBBBDiq4"), 1f,
+            PublicKey.valueOf("USDH1SM1ojwWUga67PGrgFWUHibbjqMvuMaDkRJTgkX"), 1f,
+            PublicKey.valueOf("BXXkv6z8ykpG1yuvUDPgh732wzVHB69RnB9YgSYh3itW"), 1f,
+            PublicKey.valueOf("Ea5SjE2Y6yvCeW5dYTn7PYMuW5ikXkvbGdcmSnXeaLjS"), 1f
+    );
+    private static final int MAX_HOPS = 4;
+    private static final double MIN_LIQUIDITY_USD = 100.0;
+    // Edges of books that stopped being read are dropped
+    private static final long MAX_EDGE_AGE_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private record TimedEdge(PricingGraph.Edge edge, long updatedAt) {
+    }
+
+    // <marketPubkey, edge>
+    private final Map<PublicKey, TimedEdge> edges = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    // <mint, USD price>
+    private volatile Map<PublicKey, Float> prices;
+
+    public PriceManager(StartupSnapshotStore startupSnapshotStore) {
+        // Last known prices serve until the first solve
+        final Map<PublicKey, Float> initialPrices = new HashMap<>(startupSnapshotStore.getLoadedSnapshot()
+                .map(StartupSnapshot::getPrices)
+                .orElse(Collections.emptyMap()));
+        initialPrices.putAll(ANCHORS);
+        this.prices = Map.copyOf(initialPrices);
+    }
+
+    /**
+     * Replaces a market's edge with one built from its latest book.
+     *
+     * @param market market the book belongs to
+     * @param bids   bids, best first
+     * @param asks   asks, best first
+     */
+    public void updateBook(Market market, PriceLevelBook bids, PriceLevelBook asks) {
+        final Optional<PricingGraph.Edge> edge = PricingGraph.Edge.of(
+                market.getBaseMint(),
+                market.getQuoteMint(),
+                bids,
+                asks
+        );
+
+        if (edge.isPresent()) {
+            edges.put(market.getOwnAddress(), new TimedEdge(edge.get(), System.currentTimeMillis()));
+            dirty.set(true);
+        } else if (edges.remove(market.getOwnAddress()) != null) {
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Drops the edges of markets that are no longer cached.
+     *
+     * @param marketPubkeys all cached markets
+     */
+    public void retainMarkets(Set<PublicKey> marketPubkeys) {
+        if (edges.keySet().retainAll(marketPubkeys)) {
+            dirty.set(true);
+        }
+    }
+
+    @Scheduled(initialDelay = 5L, fixedDelay = 5L, timeUnit = TimeUnit.SECONDS)
+    public void solveIfDirty() {
+        if (dirty.getAndSet(false)) {
+            solve();
+        }
+    }
+
+    /**
+     * Solves the graph now and publishes the new prices.
+     */
+    public synchronized void solve() {
+        final long cutoff = System.currentTimeMillis() - MAX_EDGE_AGE_MS;
+        edges.values().removeIf(edge -> edge.updatedAt() < cutoff);
+
+        final List<PricingGraph.Edge> current = edges.values().stream()
+                .map(TimedEdge::edge)
+                .toList();
+        final Map<PublicKey, Float> previous = prices;
+        prices = PricingGraph.solve(current, ANCHORS, MAX_HOPS, MIN_LIQUIDITY_USD);
+
+        // Solved every few seconds while books stream in, only mints gained or lost are worth an info line
+        final String summary = "Priced " + prices.size() + " mints from " + current.size() + " markets.";
+        if (prices.keySet().equals(previous.keySet())) {
+            log.debug(summary);
+        } else {
+            log.info(summary);
+        }
+    }
+
+    /**
+     * @param mint token mint
+     * @return USD price, 0 if the mint can't be priced
+     */
+    public float getPrice(PublicKey mint) {
+        return prices.getOrDefault(mint, 0.0f);
+    }
+
+    /**
+     * @return <mint, USD price> of every priced mint
+     */
+    public Map<PublicKey, Float> getPrices() {
+        return prices;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serumdata.model.StartupSnapshot;
+import com.mmorrell.serumdata.util.StartupSnapshotCodec;
+import com.mmorrell.serumdata.util.StorageUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Reads the startup snapshot once, before the managers that boot from it are created, and writes new ones.
+ */
+@Component
+@Slf4j
+public class StartupSnapshotStore {
+
+    private static final String SNAPSHOT_FILE = "startup.snapshot";
+
+    private final Path snapshotPath = StorageUtil.getDataDirectory().resolve(SNAPSHOT_FILE);
+    private final StartupSnapshot loadedSnapshot;
+
+    public StartupSnapshotStore() {
+        StartupSnapshot snapshot = null;
+        try {
+            snapshot = StartupSnapshotCodec.read(snapshotPath).orElse(null);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Unable to read startup snapshot, starting cold: " + ex.getMessage());
+        }
+
+        this.loadedSnapshot = snapshot;
+        if (snapshot != null) {
+            log.info("Loaded startup snapshot from " + snapshotPath + ", " +
+                    (System.currentTimeMillis() - snapshot.getCreatedAt()) / 1000 + "s old.");
+        }
+    }
+
+    /**
+     * @return the snapshot found at startup, empty on a cold start
+     */
+    public Optional<StartupSnapshot> getLoadedSnapshot() {
+        return Optional.ofNullable(loadedSnapshot);
+    }
+
+    public void save(StartupSnapshot snapshot) {
+        try {
+            StartupSnapshotCodec.write(snapshot, snapshotPath);
+            log.info("Saved startup snapshot: " + snapshot.getMarketAccounts().size() + " markets, " +
+                    snapshot.getTokens().size() + " tokens.");
+        } catch (IOException ex) {
+            log.warn("Unable to save startup snapshot: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.util.IconStore;
+import com.mmorrell.serumdata.util.IconStore.Icon;
+import com.mmorrell.serumdata.util.StorageUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token icons, fetched from the token list's logo URI the first time they are requested and kept in an
+ * {@link IconStore}. Concurrent requests for the same icon share one fetch, failed fetches aren't retried for a
+ * while. When the token list changes, stored icons whose logo URI changed are fetched again in the background.
+ */
+@Component
+@Slf4j
+public class TokenIconManager {
+
+    private static final String ICON_FILE = "icons.dat";
+    private static final long FAILED_FETCH_RETRY_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long FETCH_WAIT_MS = 3000;
+    private static final int FETCH_THREADS = 8;
+
+    private final OkHttpClient client;
+    private final TokenManager tokenManager;
+    private final IconStore iconStore;
+    private final ExecutorService fetchExecutor = Executors.newFixedThreadPool(FETCH_THREADS);
+    // <tokenMint, fetch>, one per icon at a time
+    private final Map<PublicKey, CompletableFuture<Optional<Icon>>> fetches = new ConcurrentHashMap<>();
+    // <tokenMint, retry after ms>
+    private final Map<PublicKey, Long> failedFetches = new ConcurrentHashMap<>();
+    private long seenRegistryVersion;
+    // Incremented whenever an icon is stored
+    private final AtomicLong iconVersion = new AtomicLong();
+
+    public TokenIconManager(OkHttpClient client, TokenManager tokenManager) {
+        this.client = client;
+        this.tokenManager = tokenManager;
+        this.iconStore = openIconStore();
+        this.seenRegistryVersion = tokenManager.getRegistryVersion();
+        log.info("Token icons loaded: " + iconStore.getIcons().size());
+    }
+
+    // Falls back to a temporary file, icons are then fetched again after a restart
+    private static IconStore openIconStore() {
+        final Path path = StorageUtil.getDataDirectory().resolve(ICON_FILE);
+        try {
+            return new IconStore(path);
+        } catch (IOException ex) {
+            log.warn("Unable to open " + path + ", icons won't persist: " + ex.getMessage());
+            try {
+                Path temporary = Files.createTempFile("icons", ".dat");
+                temporary.toFile().deleteOnExit();
+                return new IconStore(temporary);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the stored icon, fetching it first if needed. Waits a few seconds at most for a fetch.
+     *
+     * @param tokenMint token mint
+     * @return icon, or empty if the token is unknown, has no working logo, or its fetch is still running
+     */
+    public Optional<Icon> getIcon(PublicKey tokenMint) {
+        try {
+            return getIconAsync(tokenMint).get(FETCH_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException ex) {
+            return Optional.empty();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param tokenMint token mint
+     * @return the stored icon, or a fetch of it. Empty if the token is unknown or has no working logo.
+     */
+    public CompletableFuture<Optional<Icon>> getIconAsync(PublicKey tokenMint) {
+        final Optional<Icon> icon = iconStore.get(tokenMint);
+        if (icon.isPresent()) {
+            return CompletableFuture.completedFuture(icon);
+        }
+
+        final Long retryAfter = failedFetches.get(tokenMint);
+        if (retryAfter != null && retryAfter > System.currentTimeMillis()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return tokenManager.getTokenByMint(tokenMint)
+                .map(this::fetch)
+                .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()));
+    }
+
+    public long getIconVersion() {
+        return iconVersion.get();
+    }
+
+    /**
+     * Fetches icons again whose logo URI changed with the last token list update, and gives failed ones another try.
+     */
+    @Scheduled(initialDelay = 1L, fixedDelay = 1L, timeUnit = TimeUnit.MINUTES)
+    public void refreshChangedIcons() {
+        final long registryVersion = tokenManager.getRegistryVersion();
+        if (registryVersion == seenRegistryVersion) {
+            return;
+        }
+        seenRegistryVersion = registryVersion;
+        failedFetches.clear();
+
+        int changed = 0;
+        for (Map.Entry<PublicKey, Icon> entry : iconStore.getIcons().entrySet()) {
+            Optional<Token> token = tokenManager.getTokenByMint(entry.getKey());
+            if (token.isPresent() && sourceHash(token.get()) != entry.getValue().sourceHash()) {
+                fetch(token.get());
+                changed++;
+            }
+        }
+
+        if (changed > 0) {
+            log.info("Refreshing changed token icons: " + changed);
+        }
+    }
+
+    // Single flight, the fetch is only started if none is running for this mint
+    private CompletableFuture<Optional<Icon>> fetch(Token token) {
+        final PublicKey tokenMint = token.getPublicKey();
+        final CompletableFuture<Optional<Icon>> fetch = new CompletableFuture<>();
+        final CompletableFuture<Optional<Icon>> running = fetches.putIfAbsent(tokenMint, fetch);
+        if (running != null) {
+            return running;
+        }
+
+        fetchExecutor.execute(() -> {
+            try {
+                fetch.complete(download(token));
+            } catch (RuntimeException ex) {
+                fetch.completeExceptionally(ex);
+            } finally {
+                fetches.remove(tokenMint, fetch);
+            }
+        });
+        return fetch;
+    }
+
+    private Optional<Icon> download(Token token) {
+        final String logoURI = token.getLogoURI();
+        if (logoURI != null && !logoURI.isBlank()) {
+            try (Response response = client.newCall(new Request.Builder().url(logoURI).build()).execute()) {
+                ResponseBody responseBody = response.body();
+                MediaType contentType = responseBody != null ? responseBody.contentType() : null;
+                if (response.isSuccessful() && contentType != null && contentType.type().contains("image") &&
+                        responseBody.contentLength() <= IconStore.MAX_ICON_SIZE) {
+                    // Content-Length is -1 for chunked responses, so the read itself is bounded: one byte past the
+                    // limit is enough to reject the icon
+                    byte[] data = responseBody.byteStream().readNBytes(IconStore.MAX_ICON_SIZE + 1);
+                    // Case: Non-null response of <20 characters (invalid image)
+                    if (data.length > 20 && data.length <= IconStore.MAX_ICON_SIZE) {
+                        failedFetches.remove(token.getPublicKey());
+                        Icon icon = iconStore.put(
+                                token.getPublicKey(),
+                                sourceHash(token),
+                                contentType.type() + "/" + contentType.subtype(),
+                                data
+                        );
+                        iconVersion.incrementAndGet();
+                        return Optional.of(icon);
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                // Case: HTTP exception, URL format exception, or unknown
+                log.debug("Unable to fetch icon of " + token.getAddress() + ": " + ex.getMessage());
+            }
+        }
+
+        failedFetches.put(token.getPublicKey(), System.currentTimeMillis() + FAILED_FETCH_RETRY_MS);
+        return Optional.empty();
+    }
+
+    private static int sourceHash(Token token) {
+        return Objects.hashCode(token.getLogoURI());
+    }
+
+    @PreDestroy
+    public void close() {
+        fetchExecutor.shutdownNow();
+        try {
+            iconStore.close();
+        } catch (IOException ex) {
+            log.warn("Unable to close icon store: " + ex.getMessage());
+        }
+    }
+}
@@ -7,21 +7,25 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.io.Resources;
+import com.mmorrell.serumdata.model.StartupSnapshot;
 import com.mmorrell.serumdata.model.Token;
 import com.mmorrell.serumdata.util.MarketUtil;
+import com.mmorrell.serumdata.util.TokenSearchIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.p2p.solanaj.core.PublicKey;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
 
 /**
  * Caches the Solana token registry in-memory
@@ -30,27 +34,73 @@ import java.util.stream.Collectors;
 @Slf4j
 public class TokenManager {
     private static final int CHAIN_ID_MAINNET = 101;
+    // Overridable for offline runs, e.g. against the load test's stand-in token server
+    private static final String TOKEN_LIST_URL = Optional.ofNullable(System.getenv("OPENSERUM_TOKEN_LIST_URL"))
+            .orElse("https://raw.githubusercontent.com/solana-labs/token-list/main/src/tokens/solana.tokenlist.json");
 
     private final OkHttpClient client;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    // <tokenMint string, token>
-    private final Map<PublicKey, Token> tokenCache = new HashMap<>();
-    private final Map<PublicKey, ByteBuffer> tokenImageCache = new ConcurrentHashMap<>();
+    // <tokenMint string, token>, updated in the background after a warm start
+    private final Map<PublicKey, Token> tokenCache = new ConcurrentHashMap<>();
+    // Rebuilt from tokenCache after every registry update, and swapped in whole
+    private volatile TokenSearchIndex searchIndex = TokenSearchIndex.EMPTY;
+    private final AtomicLong registryVersion = new AtomicLong();
     private byte[] placeHolderImage;
 
+    // Metrics
+    private final Timer registryRefreshTimer;
+    private final Counter lookupHits;
+    private final Counter lookupMisses;
+
     // Loads tokens from github repo into memory when this constructor is called. (e.g. during Bean creation)
-    public TokenManager(final OkHttpClient client) {
+    // With a startup snapshot, tokens come from disk and github is fetched in the background.
+    public TokenManager(final OkHttpClient client,
+                        final StartupSnapshotStore startupSnapshotStore,
+                        final MeterRegistry meterRegistry) {
         this.client = client;
+        this.registryRefreshTimer = Timer.builder("serum.tokens.refresh")
+                .description("Token list download and index rebuild")
+                .register(meterRegistry);
+        this.lookupHits = tokenLookupCounter(meterRegistry, "hit");
+        this.lookupMisses = tokenLookupCounter(meterRegistry, "miss");
+        Gauge.builder("serum.tokens", tokenCache, Map::size)
+                .description("Tokens in the registry")
+                .register(meterRegistry);
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         cachePlaceHolderImage();
-        updateRegistry();
+
+        final Optional<StartupSnapshot> snapshot = startupSnapshotStore.getLoadedSnapshot()
+                .filter(startupSnapshot -> !startupSnapshot.getTokens().isEmpty());
+        if (snapshot.isPresent()) {
+            snapshot.get().getTokens().forEach(token -> tokenCache.put(token.getPublicKey(), token));
+            rebuildSearchIndex();
+            log.info("Tokens loaded from startup snapshot: " + tokenCache.size());
+
+            CompletableFuture.runAsync(this::updateRegistry).exceptionally(ex -> {
+                log.warn("Unable to refresh tokens: " + ex.getMessage());
+                return null;
+            });
+        } else {
+            updateRegistry();
+        }
+    }
+
+    private static Counter tokenLookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("serum.tokens.lookups")
+                .description("Token lookups by mint, a miss falls back to defaults (e.g. 9 decimals)")
+                .tag("result", result)
+                .register(meterRegistry);
     }
 
     @Scheduled(initialDelay = 2L, fixedRate = 2L, timeUnit = TimeUnit.HOURS)
     public void updateRegistry() {
+        registryRefreshTimer.record(this::loadRegistry);
+    }
+
+    private void loadRegistry() {
         log.info("Caching tokens from solana.tokenlist.json");
-        String json = httpGet("https://raw.githubusercontent.com/solana-labs/token-list/main/src/tokens/solana.tokenlist.json");
+        String json = httpGet(TOKEN_LIST_URL);
 
         JsonNode rootNode;
         try {
@@ -85,71 +135,31 @@ public class TokenManager {
             }
         }
 
+        rebuildSearchIndex();
         log.info("Tokens cached.");
     }
 
-    /**
-     * Creates executor threads to cache ByteBuffer objects of image data into a local Map
-     *
-     * @param tokenMints tokens to cache images of
-     */
-    public void cacheAllTokenImages(List<PublicKey> tokenMints){
-        ExecutorService service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        List<Callable<Void>> callableTasks = new ArrayList<>();
-
-        for (PublicKey tokenMint : tokenMints) {
-            Callable<Void> callableTask = () -> {
-                if (!tokenImageCache.containsKey(tokenMint)) {
-                    tokenImageCache.put(tokenMint, cacheTokenImage(getTokenLogoByMint(tokenMint)));
-                }
-                return (Void) null;
-            };
-            callableTasks.add(callableTask);
-        }
-
-        try {
-            service.invokeAll(callableTasks);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    public boolean isImageCached(PublicKey tokenMint) {
-        return tokenImageCache.containsKey(tokenMint);
+    private void rebuildSearchIndex() {
+        searchIndex = new TokenSearchIndex(List.copyOf(tokenCache.values()));
+        registryVersion.incrementAndGet();
     }
 
-    private ByteBuffer cacheTokenImage(String logoURI) {
-        try {
-            Request request = new Request.Builder()
-                    .url(logoURI)
-                    .build();
-
-            try (Response response = client.newCall(request).execute()) {
-                ResponseBody responseBody = response.body();
-                byte[] data = responseBody.bytes();
-                if (data != null) {
-                    if (data.length > 20 && isAcceptedContentType(responseBody.contentType())) {
-                        return ByteBuffer.wrap(data);
-                    } else {
-                        // Case: Non-null response of <20 characters (invalid image)
-                        return ByteBuffer.wrap(placeHolderImage);
-                    }
-                } else {
-                    // Case: Null response body
-                    return ByteBuffer.wrap(placeHolderImage);
-                }
-            } catch (Exception ex) {
-                // Case: HTTP exception
-                return ByteBuffer.wrap(placeHolderImage);
-            }
-        } catch (Exception ex) {
-            // Case: URL format exception, or unknown
-            return ByteBuffer.wrap(placeHolderImage);
-        }
+    /**
+     * @return incremented whenever the token list is reloaded
+     */
+    public long getRegistryVersion() {
+        return registryVersion.get();
     }
 
-    private boolean isAcceptedContentType(MediaType contentType) {
-        return contentType.type().contains("image");
+    /**
+     * Searches tokens by symbol, name or mint, see {@link TokenSearchIndex#search}.
+     *
+     * @param query symbol, name or mint prefix, typos are tolerated
+     * @param rank  lower is better, negative excludes the token
+     * @return matching tokens, best first
+     */
+    public List<Token> searchTokens(String query, ToIntFunction<PublicKey> rank) {
+        return searchIndex.search(query, rank);
     }
 
     // Used for formatting media type
@@ -181,12 +191,19 @@ public class TokenManager {
         }
     }
 
+    // Counted registry lookup
+    private Token lookup(PublicKey tokenMint) {
+        final Token token = tokenCache.get(tokenMint);
+        (token != null ? lookupHits : lookupMisses).increment();
+        return token;
+    }
+
     public Optional<Token> getTokenByMint(PublicKey tokenMint) {
-        return Optional.ofNullable(tokenCache.get(tokenMint));
+        return Optional.ofNullable(lookup(tokenMint));
     }
 
     public String getTokenNameByMint(PublicKey tokenMint) {
-        Token token = tokenCache.get(tokenMint);
+        Token token = lookup(tokenMint);
         if (token != null) {
             return token.getName();
         } else {
@@ -195,7 +212,7 @@ public class TokenManager {
     }
 
     public String getTokenSymbolByMint(PublicKey tokenMint) {
-        Token token = tokenCache.get(tokenMint);
+        Token token = lookup(tokenMint);
         if (token != null) {
             return token.getSymbol();
         } else {
@@ -204,7 +221,7 @@ public class TokenManager {
     }
 
     public String getTokenLogoByMint(PublicKey tokenMint) {
-        Token token = tokenCache.get(tokenMint);
+        Token token = lookup(tokenMint);
         if (token != null) {
             return token.getLogoURI();
         } else {
@@ -238,14 +255,12 @@ public class TokenManager {
             return List.of(getTokenByMint(SerumUtils.WRAPPED_SOL_MINT).get());
         } else {
             // return symbol if we have it
-            return tokenCache.values().stream()
-                    .filter(token -> token.getSymbol().equalsIgnoreCase(tokenSymbol))
-                    .collect(Collectors.toList());
+            return searchIndex.getTokensBySymbol(symbol);
         }
     }
 
     public int getDecimals(PublicKey tokenMint) {
-        final Optional<Token> token = Optional.ofNullable(tokenCache.get(tokenMint));
+        final Optional<Token> token = Optional.ofNullable(lookup(tokenMint));
         return token.map(Token::getDecimals).orElse(9);
     }
 
@@ -259,23 +274,8 @@ public class TokenManager {
         }
     }
 
-    // Additional fallback for JSP front-end
+    // Served for tokens without a working logo, see TokenIconManager
     public byte[] getPlaceHolderImage() {
         return placeHolderImage;
     }
-
-    public InputStreamResource getTokenImageInputStream(Token token) {
-        if (tokenImageCache.containsKey(token.getPublicKey())) {
-            ByteBuffer data = tokenImageCache.get(token.getPublicKey());
-            if (data.hasArray()) {
-                return new InputStreamResource(new ByteArrayInputStream(data.array()));
-            } else {
-                // Case: Empty ByteBuffer object
-                return new InputStreamResource(new ByteArrayInputStream(placeHolderImage));
-            }
-        } else {
-            // Case: Non-cached token (has no markets)
-            return new InputStreamResource(new ByteArrayInputStream(placeHolderImage));
-        }
-    }
 }
@@ -0,0 +1,161 @@
+package com.mmorrell.serumdata.manager;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.MarketEvent;
+import com.mmorrell.serumdata.model.TradeRecord;
+import com.mmorrell.serumdata.util.StorageUtil;
+import com.mmorrell.serumdata.util.TradeTape;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.p2p.solanaj.core.PublicKey;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists every taker fill seen on a market's event queue to that market's {@link TradeTape}, so trade history
+ * survives restarts and reaches further back than the event queue. Tapes already open in another process (e.g. a
+ * second container on the same volume) are served read-only and not recorded to.
+ */
+@Component
+@Slf4j
+public class TradeTapeManager {
+
+    private static final long RETENTION_MS = TimeUnit.DAYS.toMillis(180);
+    private static final String TRADES_DIRECTORY = "trades";
+
+    private final IdentityManager identityManager;
+    private final Path tradesDirectory;
+    // <marketPubkey, tape>
+    private final Map<PublicKey, TradeTape> tapes = new ConcurrentHashMap<>();
+    // <marketPubkey, last event recorded>, a maker fill can arrive in the batch before its taker
+    private final Map<PublicKey, MarketEvent> lastEvents = new ConcurrentHashMap<>();
+
+    public TradeTapeManager(IdentityManager identityManager) {
+        this.identityManager = identityManager;
+        this.tradesDirectory = StorageUtil.getDataDirectory().resolve(TRADES_DIRECTORY);
+    }
+
+    /**
+     * Appends the taker fills among newly decoded events. Each taker fill is paired with the maker fill pushed
+     * right before it. Owners are only filled in if they are already cached, no RPC calls are made here.
+     *
+     * @param market    market the events belong to
+     * @param slot      context slot of the event queue read
+     * @param newEvents events not seen before, oldest first
+     * @return fills that were stored, oldest first
+     */
+    public List<TradeRecord> record(Market market, long slot, List<MarketEvent> newEvents) {
+        if (newEvents.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<TradeRecord> recorded = new ArrayList<>();
+        final PublicKey marketPubkey = market.getOwnAddress();
+        final long timestamp = System.currentTimeMillis();
+        MarketEvent previous = lastEvents.get(marketPubkey);
+        try {
+            final TradeTape tape = getTape(marketPubkey);
+            for (MarketEvent event : newEvents) {
+                if (event.isFill() && !event.isMaker() && event.getQuantity() > 0) {
+                    MarketEvent maker = previous != null && previous.getSeqNum() == event.getSeqNum() - 1 &&
+                            previous.isMaker() ? previous : null;
+                    TradeRecord trade = toTradeRecord(event, maker, slot, timestamp);
+                    if (tape.append(trade)) {
+                        recorded.add(trade);
+                    }
+                }
+                previous = event;
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            log.warn("Unable to record trades for " + marketPubkey.toBase58() + ": " + ex.getMessage());
+        }
+        lastEvents.put(marketPubkey, previous);
+        return recorded;
+    }
+
+    /**
+     * @param marketPubkey market
+     * @param seqNum       cursor, fills after this sequence number are returned
+     * @param limit        maximum number of fills
+     * @return fills in sequence order
+     */
+    public List<TradeRecord> getTradesSince(PublicKey marketPubkey, long seqNum, int limit) {
+        return getTape(marketPubkey).getTradesSince(seqNum, limit);
+    }
+
+    /**
+     * @param marketPubkey market
+     * @param fromMs       start time, inclusive
+     * @param toMs         end time, exclusive
+     * @param limit        maximum number of fills
+     * @return fills in time order
+     */
+    public List<TradeRecord> getTradesBetween(PublicKey marketPubkey, long fromMs, long toMs, int limit) {
+        return getTape(marketPubkey).getTradesBetween(fromMs, toMs, limit);
+    }
+
+    @Scheduled(initialDelay = 1L, fixedRate = 1L, timeUnit = TimeUnit.HOURS)
+    public void compactTapes() {
+        final long cutoff = System.currentTimeMillis() - RETENTION_MS;
+        tapes.forEach((marketPubkey, tape) -> {
+            try {
+                tape.compact(cutoff);
+            } catch (IOException ex) {
+                log.warn("Unable to compact trades for " + marketPubkey.toBase58() + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        tapes.forEach((marketPubkey, tape) -> {
+            try {
+                tape.close();
+            } catch (IOException ex) {
+                log.warn("Unable to close trades for " + marketPubkey.toBase58() + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    private TradeTape getTape(PublicKey marketPubkey) {
+        return tapes.computeIfAbsent(marketPubkey, key -> {
+            try {
+                TradeTape tape = new TradeTape(
+                        tradesDirectory.resolve(key.toBase58()),
+                        TradeTape.DEFAULT_SEGMENT_CAPACITY
+                );
+                if (tape.isReadOnly()) {
+                    log.warn("Trades for " + key.toBase58() + " are written by another process, read-only");
+                }
+                return tape;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    private TradeRecord toTradeRecord(MarketEvent taker, MarketEvent maker, long slot, long timestamp) {
+        return TradeRecord.builder()
+                .seqNum(taker.getSeqNum())
+                .slot(slot)
+                .timestamp(timestamp)
+                .price(taker.getPrice())
+                .quantity(taker.getQuantity())
+                .bid(taker.isBid())
+                .takerOoa(taker.getOpenOrders())
+                .makerOoa(maker != null ? maker.getOpenOrders() : null)
+                .takerOwner(identityManager.getCachedOwner(taker.getOpenOrders()))
+                .makerOwner(maker != null ? identityManager.getCachedOwner(maker.getOpenOrders()) : null)
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * One OHLCV bar. Only periods with at least one fill have a bar.
+ */
+@Value
+@Builder(toBuilder = true)
+public class Candle {
+    // Start of the period, ms
+    long time;
+    float open;
+    float high;
+    float low;
+    float close;
+    // Base quantity traded
+    double volume;
+}
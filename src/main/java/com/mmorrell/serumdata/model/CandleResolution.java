@@ -0,0 +1,48 @@
+package com.mmorrell.serumdata.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Candle sizes kept per market, finest first. Each resolution is a whole multiple of the one before it, so its bars
+ * are rolled up from the finer bars. Capacity is the number of bars retained.
+ */
+public enum CandleResolution {
+    ONE_MINUTE("1m", TimeUnit.MINUTES.toMillis(1), 1440),
+    FIVE_MINUTES("5m", TimeUnit.MINUTES.toMillis(5), 2016),
+    ONE_HOUR("1h", TimeUnit.HOURS.toMillis(1), 2160),
+    ONE_DAY("1d", TimeUnit.DAYS.toMillis(1), 730);
+
+    private final String label;
+    private final long durationMs;
+    private final int capacity;
+
+    CandleResolution(String label, long durationMs, int capacity) {
+        this.label = label;
+        this.durationMs = durationMs;
+        this.capacity = capacity;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param label e.g. "5m"
+     * @return matching resolution, if any
+     */
+    public static Optional<CandleResolution> fromLabel(String label) {
+        return Arrays.stream(values())
+                .filter(resolution -> resolution.label.equals(label))
+                .findFirst();
+    }
+}
@@ -0,0 +1,24 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Value;
+import org.p2p.solanaj.core.PublicKey;
+
+/**
+ * One fill or out event from a market's event queue, identified by its queue sequence number.
+ */
+@Value
+@Builder
+public class MarketEvent {
+    // Increases by one for every event the market pushes, used as the trade history cursor
+    long seqNum;
+    float price;
+    float quantity;
+    PublicKey openOrders;
+
+    // Flags
+    boolean fill;
+    boolean out;
+    boolean bid;
+    boolean maker;
+}
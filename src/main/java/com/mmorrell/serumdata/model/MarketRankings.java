@@ -0,0 +1,136 @@
+package com.mmorrell.serumdata.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.util.MarketUtil;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.*;
+
+/**
+ * Immutable market listings together with the rank and lookup indexes derived from them. Built once per listings
+ * update and published with a single reference swap, the same way as {@link MarketRegistry}, so every lookup is a
+ * hash lookup on a consistent view.
+ */
+public class MarketRankings {
+
+    public static final MarketRankings EMPTY = new MarketRankings(
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyMap()
+    );
+
+    private record MarketPair(PublicKey baseMint, PublicKey quoteMint) {
+    }
+
+    private final ImmutableList<MarketListing> listings;
+    // <tokenMint, rank>, every token with a listed market
+    private final ImmutableMap<PublicKey, Integer> tokenRanks;
+    // <baseMint, market with the most base deposits, USDC quoted preferred>
+    private final ImmutableMap<PublicKey, Market> mostActiveByBaseMint;
+    // <base and quote mint, market with the most base deposits>
+    private final ImmutableMap<MarketPair, Market> mostActiveByPair;
+    // <upper case symbol, token whose most active market accrued the most quote fees>
+    private final ImmutableMap<String, Token> mostActiveTokenBySymbol;
+
+    /**
+     * @param listings listings, best first
+     * @param markets  markets the listings were built from
+     * @param tokens   <tokenMint, token> registry
+     */
+    public MarketRankings(List<MarketListing> listings, Collection<Market> markets, Map<PublicKey, Token> tokens) {
+        this.listings = ImmutableList.copyOf(listings);
+        this.tokenRanks = ImmutableMap.copyOf(buildTokenRanks(listings));
+
+        final Map<PublicKey, List<Market>> byBaseMint = new HashMap<>();
+        final Map<MarketPair, Market> byPair = new HashMap<>();
+        for (Market market : markets) {
+            byBaseMint.computeIfAbsent(market.getBaseMint(), mint -> new ArrayList<>()).add(market);
+            byPair.merge(
+                    new MarketPair(market.getBaseMint(), market.getQuoteMint()),
+                    market,
+                    (existing, candidate) ->
+                            candidate.getBaseDepositsTotal() > existing.getBaseDepositsTotal() ? candidate : existing
+            );
+        }
+
+        final Map<PublicKey, Market> mostActive = new HashMap<>();
+        byBaseMint.forEach((baseMint, baseMarkets) -> mostActive.put(baseMint, pickMostActive(baseMarkets)));
+
+        final Map<String, Token> bySymbol = new HashMap<>();
+        final Map<String, Market> bySymbolMarket = new HashMap<>();
+        mostActive.forEach((baseMint, market) -> {
+            Token token = tokens.get(baseMint);
+            if (token == null || token.getSymbol() == null) {
+                return;
+            }
+
+            String symbol = token.getSymbol().toUpperCase(Locale.ROOT);
+            Market best = bySymbolMarket.get(symbol);
+            if (best == null || market.getQuoteFeesAccrued() > best.getQuoteFeesAccrued()) {
+                bySymbolMarket.put(symbol, market);
+                bySymbol.put(symbol, token);
+            }
+        });
+
+        this.mostActiveByBaseMint = ImmutableMap.copyOf(mostActive);
+        this.mostActiveByPair = ImmutableMap.copyOf(byPair);
+        this.mostActiveTokenBySymbol = ImmutableMap.copyOf(bySymbol);
+    }
+
+    // Base mints rank by their best listing, tokens only ever quoted rank after all of them
+    private static Map<PublicKey, Integer> buildTokenRanks(List<MarketListing> listings) {
+        final Map<PublicKey, Integer> ranks = new HashMap<>();
+        for (int i = 0; i < listings.size(); i++) {
+            PublicKey baseMint = listings.get(i).getBaseMint();
+            if (baseMint != null) {
+                ranks.putIfAbsent(baseMint, i);
+            }
+        }
+        for (int i = 0; i < listings.size(); i++) {
+            PublicKey quoteMint = listings.get(i).getQuoteMint();
+            if (quoteMint != null) {
+                ranks.putIfAbsent(quoteMint, listings.size() + i);
+            }
+        }
+        return ranks;
+    }
+
+    private static Market pickMostActive(List<Market> markets) {
+        // sort by base deposits
+        markets.sort(Comparator.comparingLong(Market::getBaseDepositsTotal).reversed());
+
+        // prefer USDC over other pairs if 2 top pairs are XYZ / USDC
+        if (markets.size() > 1 &&
+                !markets.get(0).getQuoteMint().equals(MarketUtil.USDC_MINT) &&
+                markets.get(1).getQuoteMint().equals(MarketUtil.USDC_MINT)) {
+            return markets.get(1);
+        }
+        return markets.get(0);
+    }
+
+    public List<MarketListing> getListings() {
+        return listings;
+    }
+
+    public Map<PublicKey, Integer> getTokenRanks() {
+        return tokenRanks;
+    }
+
+    public Optional<Integer> getTokenRank(PublicKey tokenMint) {
+        return Optional.ofNullable(tokenRanks.get(tokenMint));
+    }
+
+    public Optional<Market> getMostActiveMarket(PublicKey baseMint) {
+        return Optional.ofNullable(mostActiveByBaseMint.get(baseMint));
+    }
+
+    public Optional<Market> getMostActiveMarket(PublicKey baseMint, PublicKey quoteMint) {
+        return Optional.ofNullable(mostActiveByPair.get(new MarketPair(baseMint, quoteMint)));
+    }
+
+    public Optional<Token> getMostActiveTokenBySymbol(String symbol) {
+        return Optional.ofNullable(mostActiveTokenBySymbol.get(symbol.toUpperCase(Locale.ROOT)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.mmorrell.serumdata.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.mmorrell.serum.model.Market;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.*;
+
+/**
+ * Immutable, pre-indexed view of all cached markets.
+ * A refresh builds a new registry off to the side and publishes it with a single reference swap, so readers never
+ * lock and never copy. All returned lists are shared and unmodifiable.
+ */
+public class MarketRegistry {
+
+    public static final MarketRegistry EMPTY = new MarketRegistry(Collections.emptyList());
+
+    // <marketPubkey, Market>
+    private final ImmutableMap<PublicKey, Market> marketsById;
+    private final ImmutableList<Market> markets;
+    // <baseMint, List<Market>>
+    private final ImmutableMap<PublicKey, ImmutableList<Market>> marketsByBaseMint;
+    // <quoteMint, List<Market>>
+    private final ImmutableMap<PublicKey, ImmutableList<Market>> marketsByQuoteMint;
+    // <mint, List<Market>>, markets where the mint is either base or quote
+    private final ImmutableMap<PublicKey, ImmutableList<Market>> marketsByTokenMint;
+
+    /**
+     * Builds all indexes in one pass over the markets.
+     *
+     * @param markets markets, duplicates (by own address) are dropped
+     */
+    public MarketRegistry(Collection<Market> markets) {
+        final Map<PublicKey, Market> byId = new LinkedHashMap<>();
+        for (Market market : markets) {
+            byId.putIfAbsent(market.getOwnAddress(), market);
+        }
+
+        final Map<PublicKey, ImmutableList.Builder<Market>> byBase = new HashMap<>();
+        final Map<PublicKey, ImmutableList.Builder<Market>> byQuote = new HashMap<>();
+        final Map<PublicKey, ImmutableList.Builder<Market>> byToken = new HashMap<>();
+        for (Market market : byId.values()) {
+            byBase.computeIfAbsent(market.getBaseMint(), mint -> ImmutableList.builder()).add(market);
+            byQuote.computeIfAbsent(market.getQuoteMint(), mint -> ImmutableList.builder()).add(market);
+            byToken.computeIfAbsent(market.getBaseMint(), mint -> ImmutableList.builder()).add(market);
+            if (!market.getQuoteMint().equals(market.getBaseMint())) {
+                byToken.computeIfAbsent(market.getQuoteMint(), mint -> ImmutableList.builder()).add(market);
+            }
+        }
+
+        this.marketsById = ImmutableMap.copyOf(byId);
+        this.markets = ImmutableList.copyOf(byId.values());
+        this.marketsByBaseMint = buildIndex(byBase);
+        this.marketsByQuoteMint = buildIndex(byQuote);
+        this.marketsByTokenMint = buildIndex(byToken);
+    }
+
+    private static ImmutableMap<PublicKey, ImmutableList<Market>> buildIndex(
+            Map<PublicKey, ImmutableList.Builder<Market>> builders) {
+        final ImmutableMap.Builder<PublicKey, ImmutableList<Market>> index = ImmutableMap.builder();
+        builders.forEach((mint, builder) -> index.put(mint, builder.build()));
+        return index.build();
+    }
+
+    public Optional<Market> getMarket(PublicKey marketPubkey) {
+        return Optional.ofNullable(marketsById.get(marketPubkey));
+    }
+
+    public boolean containsMarket(PublicKey marketPubkey) {
+        return marketsById.containsKey(marketPubkey);
+    }
+
+    public List<Market> getMarkets() {
+        return markets;
+    }
+
+    public List<Market> getMarketsByBaseMint(PublicKey baseMint) {
+        return marketsByBaseMint.getOrDefault(baseMint, ImmutableList.of());
+    }
+
+    public List<Market> getMarketsByQuoteMint(PublicKey quoteMint) {
+        return marketsByQuoteMint.getOrDefault(quoteMint, ImmutableList.of());
+    }
+
+    public List<Market> getMarketsByTokenMint(PublicKey tokenMint) {
+        return marketsByTokenMint.getOrDefault(tokenMint, ImmutableList.of());
+    }
+}
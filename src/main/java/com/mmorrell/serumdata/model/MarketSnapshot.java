@@ -0,0 +1,34 @@
+package com.mmorrell.serumdata.model;
+
+import com.mmorrell.serum.model.Market;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Bids, asks and recent events of one market, fetched together at a single context slot.
+ * Never mutated after creation, a refresh replaces the whole snapshot.
+ */
+@Value
+@Builder(toBuilder = true)
+// Revisions are unique, so comparing them is enough (e.g. for ConcurrentMap.replace) without walking the books
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class MarketSnapshot {
+    Market market;
+    // Recent events, newest first, including ones the crank already consumed from the queue
+    List<MarketEvent> events;
+
+    // Bids and asks, read straight from the slab once per refresh, used by /bids, /asks and /depth
+    PriceLevelBook bidLevels;
+    PriceLevelBook askLevels;
+
+    // Context slot the data was read at. Pushed account updates can change the data without advancing it.
+    long slot;
+
+    // Incremented on every rebuild, including pushed updates at the same slot. Versions cached responses, ETags and
+    // stream frames.
+    @EqualsAndHashCode.Include
+    long revision;
+}
@@ -0,0 +1,75 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Value;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.Arrays;
+
+/**
+ * One side of an order book, sorted best price first and flattened into primitive arrays.
+ * Built once per order book refresh, then shared by /bids, /asks and /depth.
+ */
+@Value
+@Builder
+public class PriceLevelBook {
+
+    public static final int OWNER_SIZE = 32;
+
+    public static final PriceLevelBook EMPTY = PriceLevelBook.builder()
+            .orderPrices(new float[0])
+            .orderQuantities(new float[0])
+            .orderPercents(new float[0])
+            .orderOwners(new byte[0])
+            .levelPrices(new float[0])
+            .levelPriceLots(new long[0])
+            .levelQuantityLots(new long[0])
+            .levelQuantities(new float[0])
+            .levelCumulativeQuantities(new float[0])
+            .levelCumulativeNotionals(new float[0])
+            .build();
+
+    // Bids are sorted by descending price, asks by ascending price
+    boolean bid;
+
+    // Individual orders, index 0 is the best price
+    float[] orderPrices;
+    float[] orderQuantities;
+    // Running share of the side's notional, up to and including this order
+    float[] orderPercents;
+    // 32 bytes per order, turned into a PublicKey only when serialized
+    byte[] orderOwners;
+
+    // Orders aggregated by price, index 0 is the best price
+    float[] levelPrices;
+    float[] levelQuantities;
+    float[] levelCumulativeQuantities;
+    float[] levelCumulativeNotionals;
+    // Same levels in lots, exact integers for compact encodings
+    long[] levelPriceLots;
+    long[] levelQuantityLots;
+
+    public int getOrderCount() {
+        return orderPrices.length;
+    }
+
+    public PublicKey getOrderOwner(int order) {
+        return new PublicKey(Arrays.copyOfRange(orderOwners, order * OWNER_SIZE, (order + 1) * OWNER_SIZE));
+    }
+
+    public int getLevelCount() {
+        return levelPrices.length;
+    }
+
+    public float getBestPrice() {
+        return levelPrices.length > 0 ? levelPrices[0] : 0.0f;
+    }
+
+    public float getTotalQuantity() {
+        return levelCumulativeQuantities.length > 0 ? levelCumulativeQuantities[levelCumulativeQuantities.length - 1] : 0.0f;
+    }
+
+    public float getTotalNotional() {
+        return levelCumulativeNotionals.length > 0 ? levelCumulativeNotionals[levelCumulativeNotionals.length - 1] : 0.0f;
+    }
+}
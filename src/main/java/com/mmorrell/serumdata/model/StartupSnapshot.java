@@ -0,0 +1,24 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Value;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything needed to serve requests right after startup: token registry, raw market accounts and quote mint
+ * prices. Token icons persist on their own, see TokenIconManager. Written periodically, read once at startup while fresh data loads in the background.
+ */
+@Value
+@Builder
+public class StartupSnapshot {
+    // When the snapshot was written, ms
+    long createdAt;
+    List<Token> tokens;
+    // <marketPubkey, market account data>, decoded again on load
+    Map<PublicKey, byte[]> marketAccounts;
+    // <quoteMint, price>
+    Map<PublicKey, Float> prices;
+}
@@ -0,0 +1,21 @@
+package com.mmorrell.serumdata.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of token search results, best match first.
+ */
+@Value
+@Builder
+public class TokenSearchResult {
+    String query;
+    // 1-based
+    int page;
+    int pageSize;
+    // Matches over all pages
+    int total;
+    List<Token> tokens;
+}
@@ -10,6 +10,8 @@ import org.p2p.solanaj.core.PublicKey;
 @Builder
 public class TradeHistoryEvent {
     private int index;
+    // Event queue sequence number, pass the highest one seen as /tradeHistory?since= to get only newer trades
+    private long seqNum;
     private float price;
     private float quantity;
 
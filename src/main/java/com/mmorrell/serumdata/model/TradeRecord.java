@@ -0,0 +1,38 @@
+package com.mmorrell.serumdata.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.mmorrell.serumdata.util.PublicKeySerializer;
+import lombok.Builder;
+import lombok.Value;
+import org.p2p.solanaj.core.PublicKey;
+
+/**
+ * One taker fill as stored in a market's trade tape.
+ */
+@Value
+@Builder(toBuilder = true)
+public class TradeRecord {
+    // Event queue sequence number of the taker fill, used as the cursor
+    long seqNum;
+    // Context slot of the event queue read that first saw the fill
+    long slot;
+    // Wall-clock time the fill was recorded, ms
+    long timestamp;
+    float price;
+    float quantity;
+    // Taker side
+    boolean bid;
+
+    @JsonSerialize(using = PublicKeySerializer.class)
+    PublicKey takerOoa;
+
+    @JsonSerialize(using = PublicKeySerializer.class)
+    PublicKey makerOoa;
+
+    // Null if the owner wasn't known yet when the fill was recorded
+    @JsonSerialize(using = PublicKeySerializer.class)
+    PublicKey takerOwner;
+
+    @JsonSerialize(using = PublicKeySerializer.class)
+    PublicKey makerOwner;
+}
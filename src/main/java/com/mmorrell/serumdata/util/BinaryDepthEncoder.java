@@ -0,0 +1,89 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.SerumUtils;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.PriceLevelBook;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compact binary alternative to the JSON depth response, decoded by static/js/depth-decoder.js.
+ * <p>
+ * Layout, little-endian:
+ * <pre>
+ * u8   version (1)
+ * u64  slot
+ * f64  price scale     (price = price lots * price scale)
+ * f64  quantity scale  (quantity = quantity lots * quantity scale)
+ * f32  midpoint
+ * u32  bid level count
+ * u32  ask level count
+ * bid levels, then ask levels, both in ascending price order:
+ *   varint  zigzag(price lots - previous level's price lots), the first level of a side is relative to 0
+ *   varint  quantity lots at this level, cumulative totals are rebuilt by the client
+ * </pre>
+ */
+public class BinaryDepthEncoder {
+
+    public static final String MEDIA_TYPE = "application/vnd.openserum.depth";
+    public static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 8 + 4 + 4 + 4;
+    // Two varints per level, at most 10 bytes each
+    private static final int MAX_LEVEL_SIZE = 20;
+
+    public static byte[] encode(MarketSnapshot snapshot) {
+        final Market market = snapshot.getMarket();
+        final PriceLevelBook bidLevels = snapshot.getBidLevels();
+        final PriceLevelBook askLevels = snapshot.getAskLevels();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                HEADER_SIZE + (bidLevels.getLevelCount() + askLevels.getLevelCount()) * MAX_LEVEL_SIZE
+        ).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.put(VERSION);
+        buffer.putLong(snapshot.getSlot());
+        buffer.putDouble(
+                market.getQuoteLotSize() * SerumUtils.getBaseSplTokenMultiplier(market.getBaseDecimals()) /
+                        (market.getBaseLotSize() * SerumUtils.getQuoteSplTokenMultiplier(market.getQuoteDecimals()))
+        );
+        buffer.putDouble(market.getBaseLotSize() / SerumUtils.getBaseSplTokenMultiplier(market.getBaseDecimals()));
+        buffer.putFloat((bidLevels.getBestPrice() + askLevels.getBestPrice()) / 2);
+        buffer.putInt(bidLevels.getLevelCount());
+        buffer.putInt(askLevels.getLevelCount());
+
+        putLevels(buffer, bidLevels);
+        putLevels(buffer, askLevels);
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void putLevels(ByteBuffer buffer, PriceLevelBook book) {
+        final int levelCount = book.getLevelCount();
+        long previousPriceLots = 0;
+        for (int i = 0; i < levelCount; i++) {
+            // Levels are stored best price first, bids are reversed to ascending order
+            int level = book.isBid() ? levelCount - 1 - i : i;
+            long priceLots = book.getLevelPriceLots()[level];
+
+            putVarint(buffer, zigzag(priceLots - previousPriceLots));
+            putVarint(buffer, book.getLevelQuantityLots()[level]);
+            previousPriceLots = priceLots;
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,105 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
+
+import java.util.List;
+
+/**
+ * Candles of one market at every {@link CandleResolution}, updated one fill at a time.
+ * <p>
+ * Fills only go into the finest series. When a bar is complete (the next fill lands in a later period) it is rolled
+ * up into the next coarser series, and so on. Coarser series therefore lag by their finer series' open bars, which
+ * reads fold back in, so a read costs the number of bars returned plus one bar per finer resolution.
+ */
+public class CandleAggregator {
+
+    private final CandleSeries[] series;
+    private long lastSeqNum = -1;
+
+    public CandleAggregator() {
+        final CandleResolution[] resolutions = CandleResolution.values();
+        this.series = new CandleSeries[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            series[i] = new CandleSeries(resolutions[i].getDurationMs(), resolutions[i].getCapacity());
+        }
+    }
+
+    /**
+     * Adds a fill. Fills at or below the last added sequence number are ignored.
+     *
+     * @param seqNum   event queue sequence number of the fill
+     * @param time     fill time, ms
+     * @param price    fill price
+     * @param quantity base quantity
+     */
+    public synchronized void add(long seqNum, long time, float price, float quantity) {
+        if (seqNum <= lastSeqNum) {
+            return;
+        }
+        lastSeqNum = seqNum;
+        merge(0, time, price, price, price, price, quantity);
+    }
+
+    private void merge(int level, long time, float open, float high, float low, float close, double volume) {
+        final CandleSeries target = series[level];
+        if (level + 1 < series.length && target.startsNewBar(time)) {
+            // Complete, roll it up before the new bar replaces it
+            Candle complete = target.getCurrent();
+            merge(
+                    level + 1,
+                    complete.getTime(),
+                    complete.getOpen(),
+                    complete.getHigh(),
+                    complete.getLow(),
+                    complete.getClose(),
+                    complete.getVolume()
+            );
+        }
+        target.merge(time, open, high, low, close, volume);
+    }
+
+    public synchronized long getLastSeqNum() {
+        return lastSeqNum;
+    }
+
+    /**
+     * @param resolution bar size
+     * @param limit      maximum number of bars
+     * @return the newest bars, oldest first
+     */
+    public synchronized List<Candle> getCandles(CandleResolution resolution, int limit) {
+        final int level = resolution.ordinal();
+        final CandleSeries target = series[level];
+        final List<Candle> candles = target.getLatest(limit);
+
+        // Open bars of finer series haven't been rolled up yet, coarsest (oldest) first
+        for (int i = level - 1; i >= 0; i--) {
+            Candle open = series[i].getCurrent();
+            if (open != null) {
+                fold(candles, open, target.getDurationMs());
+            }
+        }
+
+        if (candles.size() > limit) {
+            candles.subList(0, candles.size() - limit).clear();
+        }
+        return candles;
+    }
+
+    private static void fold(List<Candle> candles, Candle bar, long durationMs) {
+        final long time = bar.getTime() - Math.floorMod(bar.getTime(), durationMs);
+        final int last = candles.size() - 1;
+        if (last >= 0 && candles.get(last).getTime() >= time) {
+            Candle existing = candles.get(last);
+            candles.set(last, existing.toBuilder()
+                    .high(Math.max(existing.getHigh(), bar.getHigh()))
+                    .low(Math.min(existing.getLow(), bar.getLow()))
+                    .close(bar.getClose())
+                    .volume(existing.getVolume() + bar.getVolume())
+                    .build());
+        } else {
+            candles.add(bar.toBuilder().time(time).build());
+        }
+    }
+}
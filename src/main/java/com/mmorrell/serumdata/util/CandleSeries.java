@@ -0,0 +1,113 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.Candle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring of OHLCV bars at one resolution, stored in parallel primitive arrays. The newest bar is the one
+ * still being built, older bars are overwritten once the ring is full. Not thread safe, see {@link CandleAggregator}.
+ */
+public class CandleSeries {
+
+    private final long durationMs;
+    private final int capacity;
+    private final long[] times;
+    private final float[] opens;
+    private final float[] highs;
+    private final float[] lows;
+    private final float[] closes;
+    private final double[] volumes;
+    private int size;
+    // Index of the newest bar
+    private int current = -1;
+
+    public CandleSeries(long durationMs, int capacity) {
+        this.durationMs = durationMs;
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.opens = new float[capacity];
+        this.highs = new float[capacity];
+        this.lows = new float[capacity];
+        this.closes = new float[capacity];
+        this.volumes = new double[capacity];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param time fill or bar time, ms
+     * @return true if merging data at this time would start a new bar, i.e. the newest bar is complete
+     */
+    public boolean startsNewBar(long time) {
+        return size > 0 && bucket(time) > times[current];
+    }
+
+    /**
+     * Adds a fill, or a finer bar, to the bar covering its time. Data older than the newest bar is folded into it.
+     */
+    public void merge(long time, float open, float high, float low, float close, double volume) {
+        if (size == 0 || startsNewBar(time)) {
+            current = (current + 1) % capacity;
+            size = Math.min(size + 1, capacity);
+            times[current] = bucket(time);
+            opens[current] = open;
+            highs[current] = high;
+            lows[current] = low;
+            closes[current] = close;
+            volumes[current] = volume;
+            return;
+        }
+
+        highs[current] = Math.max(highs[current], high);
+        lows[current] = Math.min(lows[current], low);
+        closes[current] = close;
+        volumes[current] += volume;
+    }
+
+    /**
+     * @return the newest bar, or null if empty
+     */
+    public Candle getCurrent() {
+        return size == 0 ? null : toCandle(current);
+    }
+
+    /**
+     * @param limit maximum number of bars
+     * @return the newest bars, oldest first
+     */
+    public List<Candle> getLatest(int limit) {
+        final int count = Math.min(limit, size);
+        final List<Candle> result = new ArrayList<>(count + 4);
+        for (int i = count - 1; i >= 0; i--) {
+            result.add(toCandle(Math.floorMod(current - i, capacity)));
+        }
+        return result;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    private long bucket(long time) {
+        return time - Math.floorMod(time, durationMs);
+    }
+
+    private Candle toCandle(int index) {
+        return Candle.builder()
+                .time(times[index])
+                .open(opens[index])
+                .high(highs[index])
+                .low(lows[index])
+                .close(closes[index])
+                .volume(volumes[index])
+                .build();
+    }
+}
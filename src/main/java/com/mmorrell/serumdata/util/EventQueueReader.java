@@ -0,0 +1,150 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.SerumUtils;
+import com.mmorrell.serumdata.model.MarketEvent;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads the header and individual events of a Serum event queue account in place, so callers can decode only the
+ * events they haven't seen yet.
+ * <p>
+ * The queue is a ring buffer: the oldest event is at {@link #getHead()}, and the event with sequence number
+ * {@code seqNum} sits {@code seqNum - (getSeqNum() - getCount())} slots after it.
+ */
+public class EventQueueReader {
+
+    // Account layout: 5 byte "serum" padding, then account flags, head, count and seqNum (u64 each)
+    private static final int HEAD_OFFSET = 13;
+    private static final int COUNT_OFFSET = 21;
+    private static final int SEQ_NUM_OFFSET = 29;
+    private static final int EVENTS_OFFSET = 37;
+    // Trailing "padding" bytes
+    private static final int TAIL_PADDING = 7;
+    private static final int EVENT_SIZE = 88;
+
+    // Event fields, relative to the event's offset
+    private static final int NATIVE_QUANTITY_RELEASED_OFFSET = 8;
+    private static final int NATIVE_QUANTITY_PAID_OFFSET = 16;
+    private static final int NATIVE_FEE_OR_REBATE_OFFSET = 24;
+    private static final int ORDER_PRICE_OFFSET = 40;
+    private static final int OPEN_ORDERS_OFFSET = 48;
+
+    private static final int FILL_FLAG = 1;
+    private static final int OUT_FLAG = 2;
+    private static final int BID_FLAG = 4;
+    private static final int MAKER_FLAG = 8;
+
+    private final ByteBuffer buffer;
+    private final long head;
+    private final long count;
+    private final long seqNum;
+    private final long capacity;
+
+    public EventQueueReader(byte[] data) {
+        this.buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.length < EVENTS_OFFSET + EVENT_SIZE) {
+            this.head = 0;
+            this.count = 0;
+            this.seqNum = 0;
+            this.capacity = 0;
+            return;
+        }
+
+        this.capacity = (data.length - EVENTS_OFFSET - TAIL_PADDING) / EVENT_SIZE;
+        this.head = buffer.getLong(HEAD_OFFSET);
+        this.count = Math.min(buffer.getLong(COUNT_OFFSET), capacity);
+        this.seqNum = buffer.getLong(SEQ_NUM_OFFSET);
+    }
+
+    public long getHead() {
+        return head;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return sequence number the next pushed event will get
+     */
+    public long getSeqNum() {
+        return seqNum;
+    }
+
+    /**
+     * @return sequence number of the oldest event still in the queue
+     */
+    public long getFirstSeqNum() {
+        return seqNum - count;
+    }
+
+    /**
+     * Decodes a single event.
+     *
+     * @param eventSeqNum sequence number, from {@link #getFirstSeqNum()} (inclusive) to {@link #getSeqNum()}
+     * @param market      market the queue belongs to, for decimals
+     * @return decoded event
+     */
+    public MarketEvent readEvent(long eventSeqNum, Market market) {
+        if (eventSeqNum < getFirstSeqNum() || eventSeqNum >= seqNum) {
+            throw new IndexOutOfBoundsException("Event " + eventSeqNum + " is not in the queue");
+        }
+
+        final int offset = (int) (EVENTS_OFFSET + ((head + eventSeqNum - getFirstSeqNum()) % capacity) * EVENT_SIZE);
+        final int flags = buffer.get(offset);
+        final boolean bid = (flags & BID_FLAG) != 0;
+        final boolean maker = (flags & MAKER_FLAG) != 0;
+        final boolean fill = (flags & FILL_FLAG) != 0;
+
+        final long nativeQuantityReleased = buffer.getLong(offset + NATIVE_QUANTITY_RELEASED_OFFSET);
+        final long nativeQuantityPaid = buffer.getLong(offset + NATIVE_QUANTITY_PAID_OFFSET);
+        final long nativeFeeOrRebate = buffer.getLong(offset + NATIVE_FEE_OR_REBATE_OFFSET);
+        final double baseMultiplier = SerumUtils.getBaseSplTokenMultiplier(market.getBaseDecimals());
+        final double quoteMultiplier = SerumUtils.getQuoteSplTokenMultiplier(market.getQuoteDecimals());
+
+        float price, quantity;
+        if (fill) {
+            // Bids pay quote and receive base, asks the other way round. Fees are taken out of the quote side.
+            final long nativeBase = bid ? nativeQuantityReleased : nativeQuantityPaid;
+            final long nativeQuote = bid ?
+                    (maker ? nativeQuantityPaid + nativeFeeOrRebate : nativeQuantityPaid - nativeFeeOrRebate) :
+                    (maker ? nativeQuantityReleased - nativeFeeOrRebate : nativeQuantityReleased + nativeFeeOrRebate);
+
+            quantity = (float) (nativeBase / baseMultiplier);
+            price = nativeBase == 0 ? 0.0f : (float) ((nativeQuote / quoteMultiplier) / (nativeBase / baseMultiplier));
+        } else {
+            // Out events release the unfilled remainder at the order's own price
+            price = SerumUtils.priceLotsToNumber(
+                    buffer.getLong(offset + ORDER_PRICE_OFFSET),
+                    market.getBaseDecimals(),
+                    market.getQuoteDecimals(),
+                    market.getBaseLotSize(),
+                    market.getQuoteLotSize()
+            );
+            if (!bid) {
+                quantity = (float) (nativeQuantityReleased / baseMultiplier);
+            } else {
+                // Bids get quote back, converted to base at the order price
+                quantity = price == 0.0f ? 0.0f : (float) (nativeQuantityReleased / quoteMultiplier / price);
+            }
+        }
+
+        final byte[] openOrders = new byte[32];
+        buffer.get(offset + OPEN_ORDERS_OFFSET, openOrders);
+
+        return MarketEvent.builder()
+                .seqNum(eventSeqNum)
+                .price(price)
+                .quantity(quantity)
+                .openOrders(new PublicKey(openOrders))
+                .fill(fill)
+                .out((flags & OUT_FLAG) != 0)
+                .bid(bid)
+                .maker(maker)
+                .build();
+    }
+}
@@ -0,0 +1,68 @@
+package com.mmorrell.serumdata.util;
+
+import com.google.common.collect.ImmutableList;
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.MarketEvent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Most recent events of one market, deduplicated by sequence number. Each event queue fetch only decodes the events
+ * pushed since the previous one. Events stay in the tail after the crank consumes them from the queue.
+ */
+public class EventQueueTail {
+
+    public static final int MAX_EVENTS = 512;
+
+    private final Market market;
+    // Oldest first
+    private final Deque<MarketEvent> events = new ArrayDeque<>();
+    private long nextSeqNum = -1;
+    private List<MarketEvent> published = ImmutableList.of();
+
+    public EventQueueTail(Market market) {
+        this.market = market;
+    }
+
+    /**
+     * Decodes the events this tail hasn't seen yet and adds them to the tail.
+     * Data from an older slot than a previous call adds nothing.
+     *
+     * @param data event queue account data
+     * @return the newly decoded events, oldest first
+     */
+    public synchronized List<MarketEvent> append(byte[] data) {
+        final EventQueueReader reader = new EventQueueReader(data);
+
+        // More than a queue's worth of events since the last fetch leaves a gap, the tail just skips it
+        final long firstNew = Math.max(reader.getFirstSeqNum(), nextSeqNum);
+        if (firstNew >= reader.getSeqNum()) {
+            return ImmutableList.of();
+        }
+
+        final ImmutableList.Builder<MarketEvent> added = ImmutableList.builder();
+        for (long seqNum = firstNew; seqNum < reader.getSeqNum(); seqNum++) {
+            MarketEvent event = reader.readEvent(seqNum, market);
+            added.add(event);
+            events.addLast(event);
+            if (events.size() > MAX_EVENTS) {
+                events.removeFirst();
+            }
+        }
+        nextSeqNum = reader.getSeqNum();
+
+        final ImmutableList.Builder<MarketEvent> newestFirst = ImmutableList.builderWithExpectedSize(events.size());
+        events.descendingIterator().forEachRemaining(newestFirst::add);
+        published = newestFirst.build();
+        return added.build();
+    }
+
+    /**
+     * @return recent events, newest first
+     */
+    public synchronized List<MarketEvent> getEvents() {
+        return published;
+    }
+}
@@ -0,0 +1,176 @@
+package com.mmorrell.serumdata.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.hash.Hashing;
+import org.p2p.solanaj.core.PublicKey;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token icons downscaled into one PNG grid, plus a JSON index of each icon's offset in it. Both are addressed by a
+ * hash of the PNG, so they can be cached forever and a rebuilt sheet gets a new URL.
+ * <p>
+ * Icons ImageIO can't decode (e.g. SVG) are left out, pages fall back to the icon endpoint for those.
+ */
+public class IconSpriteSheet {
+
+    public static final IconSpriteSheet EMPTY = new IconSpriteSheet("empty", 0, 0, new byte[0], new byte[0],
+            Collections.emptyMap());
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int COLUMNS = 32;
+
+    private final String hash;
+    private final int columns;
+    private final int rows;
+    private final byte[] image;
+    private final byte[] index;
+    // <tokenMint, cell number>
+    private final Map<PublicKey, Integer> cells;
+
+    private IconSpriteSheet(String hash, int columns, int rows, byte[] image, byte[] index,
+                            Map<PublicKey, Integer> cells) {
+        this.hash = hash;
+        this.columns = columns;
+        this.rows = rows;
+        this.image = image;
+        this.index = index;
+        this.cells = cells;
+    }
+
+    /**
+     * @param icons    <tokenMint, encoded image>, in sheet order
+     * @param cellSize width and height of each icon in the sheet
+     * @return the sheet, without icons that couldn't be decoded
+     */
+    public static IconSpriteSheet build(Map<PublicKey, ByteBuffer> icons, int cellSize) throws IOException {
+        final Map<PublicKey, BufferedImage> decoded = new LinkedHashMap<>();
+        for (Map.Entry<PublicKey, ByteBuffer> icon : icons.entrySet()) {
+            try {
+                BufferedImage image = ImageIO.read(new ByteBufferBackedInputStream(icon.getValue().duplicate()));
+                if (image != null) {
+                    decoded.put(icon.getKey(), image);
+                }
+            } catch (IOException | RuntimeException ex) {
+                // Corrupt or unsupported image, left out
+            }
+        }
+
+        if (decoded.isEmpty()) {
+            return EMPTY;
+        }
+
+        final int columns = Math.min(COLUMNS, decoded.size());
+        final int rows = (decoded.size() + columns - 1) / columns;
+        final BufferedImage sheet = new BufferedImage(columns * cellSize, rows * cellSize, BufferedImage.TYPE_INT_ARGB);
+        final Map<PublicKey, Integer> cells = new LinkedHashMap<>();
+        final Map<String, List<Integer>> offsets = new LinkedHashMap<>();
+
+        final Graphics2D graphics = sheet.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            int cell = 0;
+            for (Map.Entry<PublicKey, BufferedImage> icon : decoded.entrySet()) {
+                int x = (cell % columns) * cellSize;
+                int y = (cell / columns) * cellSize;
+                // Area averaging keeps large logos from aliasing when shrunk this much
+                Image scaled = icon.getValue().getScaledInstance(cellSize, cellSize, Image.SCALE_AREA_AVERAGING);
+                graphics.drawImage(scaled, x, y, null);
+
+                cells.put(icon.getKey(), cell);
+                offsets.put(icon.getKey().toBase58(), List.of(x, y));
+                cell++;
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(sheet, "png", png);
+        final byte[] image = png.toByteArray();
+        final String hash = Hashing.murmur3_128().hashBytes(image).toString().substring(0, 16);
+
+        final Map<String, Object> index = new LinkedHashMap<>();
+        index.put("image", getImageUrl(hash));
+        index.put("cellSize", cellSize);
+        index.put("width", columns * cellSize);
+        index.put("height", rows * cellSize);
+        index.put("icons", offsets);
+
+        return new IconSpriteSheet(hash, columns, rows, image, toJson(index), Map.copyOf(cells));
+    }
+
+    private static byte[] toJson(Map<String, Object> index) {
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(index);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String getImageUrl(String hash) {
+        return "/api/serum/token/sprite/" + hash + ".png";
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getImageUrl() {
+        return getImageUrl(hash);
+    }
+
+    public String getIndexUrl() {
+        return "/api/serum/token/sprite/" + hash + ".json";
+    }
+
+    public byte[] getImage() {
+        return image;
+    }
+
+    public byte[] getIndex() {
+        return index;
+    }
+
+    public int size() {
+        return cells.size();
+    }
+
+    public boolean contains(PublicKey tokenMint) {
+        return tokenMint != null && cells.containsKey(tokenMint);
+    }
+
+    /**
+     * Inline CSS showing one icon of the sheet, scaled to the given size. Used in Thymeleaf.
+     *
+     * @param tokenMint icon in the sheet, see {@link #contains}
+     * @param size      displayed width and height, px
+     * @return style attribute value
+     */
+    public String getStyle(PublicKey tokenMint, int size) {
+        final int cell = cells.get(tokenMint);
+        return String.format(
+                "display:inline-block;vertical-align:middle;width:%dpx;height:%dpx;" +
+                        "background:url(%s) %dpx %dpx/%dpx %dpx no-repeat;",
+                size,
+                size,
+                getImageUrl(),
+                -(cell % columns) * size,
+                -(cell / columns) * size,
+                columns * size,
+                rows * size
+        );
+    }
+}
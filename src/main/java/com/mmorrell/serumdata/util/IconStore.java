@@ -0,0 +1,183 @@
+package com.mmorrell.serumdata.util;
+
+import com.google.common.hash.Hashing;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token icons in one memory-mapped, append-only file. Icons are read straight from the mapping, the heap only holds
+ * the index, which is rebuilt by scanning the file on open.
+ * <p>
+ * The file is a sequence of fixed-size segments, each mapped once. A record never crosses a segment, and its magic
+ * number is written after the rest of it, so a scan stops at the first record that wasn't completely written.
+ * Replacing an icon appends a new record, the superseded one stays in the file. Logos rarely change, so the file is
+ * never compacted.
+ */
+public class IconStore implements Closeable {
+
+    public static final int MAX_ICON_SIZE = 1024 * 1024;
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int RECORD_MAGIC = 0x49434f4e; // "ICON"
+    private static final int KEY_SIZE = 32;
+    // magic, mint, source hash, content hash, content type length, data length
+    private static final int RECORD_HEADER_SIZE = 4 + KEY_SIZE + 4 + 8 + 1 + 4;
+
+    /**
+     * A stored icon.
+     *
+     * @param data        image, backed by the mapped file
+     * @param contentType media type sent by the icon's host
+     * @param contentHash hash of the image, stable across restarts
+     * @param sourceHash  hash of the logo URI the image was fetched from
+     */
+    public record Icon(ByteBuffer data, String contentType, long contentHash, int sourceHash) {
+        // Every reader gets its own position and limit
+        @Override
+        public ByteBuffer data() {
+            return data.duplicate();
+        }
+
+        public String getETag() {
+            return "\"" + Long.toHexString(contentHash) + "\"";
+        }
+    }
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<PublicKey, Icon> icons = new ConcurrentHashMap<>();
+    private int writePosition;
+
+    /**
+     * Opens or creates the file and indexes the icons already in it.
+     *
+     * @param path icon file
+     */
+    public IconStore(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+
+        final long segmentCount = Math.max(1, (channel.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) i * SEGMENT_SIZE, SEGMENT_SIZE));
+            writePosition = scan(segments.get(i));
+        }
+    }
+
+    // Indexes complete records, returns the position after the last one
+    private int scan(MappedByteBuffer segment) {
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= SEGMENT_SIZE && segment.getInt(position) == RECORD_MAGIC) {
+            final byte[] mint = new byte[KEY_SIZE];
+            segment.get(position + 4, mint);
+            final int sourceHash = segment.getInt(position + 4 + KEY_SIZE);
+            final long contentHash = segment.getLong(position + 8 + KEY_SIZE);
+            final int typeLength = segment.get(position + 16 + KEY_SIZE) & 0xff;
+            final int dataLength = segment.getInt(position + 17 + KEY_SIZE);
+            if (dataLength < 0 || dataLength > MAX_ICON_SIZE ||
+                    position + RECORD_HEADER_SIZE + typeLength + dataLength > SEGMENT_SIZE) {
+                break;
+            }
+
+            final byte[] type = new byte[typeLength];
+            segment.get(position + RECORD_HEADER_SIZE, type);
+            final ByteBuffer data = segment.slice(position + RECORD_HEADER_SIZE + typeLength, dataLength)
+                    .asReadOnlyBuffer();
+            if (hash(data.duplicate()) != contentHash) {
+                // Torn write
+                break;
+            }
+
+            icons.put(new PublicKey(mint), new Icon(data, new String(type, StandardCharsets.US_ASCII), contentHash,
+                    sourceHash));
+            position += RECORD_HEADER_SIZE + typeLength + dataLength;
+        }
+        return position;
+    }
+
+    public Optional<Icon> get(PublicKey tokenMint) {
+        return Optional.ofNullable(icons.get(tokenMint));
+    }
+
+    public Map<PublicKey, Icon> getIcons() {
+        return icons;
+    }
+
+    /**
+     * Appends an icon, replacing any stored for the same mint.
+     *
+     * @param tokenMint   token mint
+     * @param sourceHash  hash of the logo URI
+     * @param contentType media type, ASCII
+     * @param image       image, at most {@link #MAX_ICON_SIZE} bytes
+     * @return the stored icon
+     */
+    public synchronized Icon put(PublicKey tokenMint, int sourceHash, String contentType, byte[] image)
+            throws IOException {
+        if (image.length > MAX_ICON_SIZE) {
+            throw new IllegalArgumentException("Icon too large: " + image.length);
+        }
+
+        final byte[] type = contentType.getBytes(StandardCharsets.US_ASCII);
+        final int typeLength = Math.min(type.length, 255);
+        final int recordSize = RECORD_HEADER_SIZE + typeLength + image.length;
+        if (writePosition + recordSize > SEGMENT_SIZE) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE,
+                    SEGMENT_SIZE));
+            writePosition = 0;
+        }
+
+        final MappedByteBuffer segment = segments.get(segments.size() - 1);
+        final int position = writePosition;
+        final long contentHash = hash(ByteBuffer.wrap(image));
+        segment.put(position + 4, tokenMint.toByteArray());
+        segment.putInt(position + 4 + KEY_SIZE, sourceHash);
+        segment.putLong(position + 8 + KEY_SIZE, contentHash);
+        segment.put(position + 16 + KEY_SIZE, (byte) typeLength);
+        segment.putInt(position + 17 + KEY_SIZE, image.length);
+        segment.put(position + RECORD_HEADER_SIZE, type, 0, typeLength);
+        segment.put(position + RECORD_HEADER_SIZE + typeLength, image);
+        // Last, marks the record complete
+        segment.putInt(position, RECORD_MAGIC);
+        writePosition += recordSize;
+
+        final Icon icon = new Icon(
+                segment.slice(position + RECORD_HEADER_SIZE + typeLength, image.length).asReadOnlyBuffer(),
+                new String(type, 0, typeLength, StandardCharsets.US_ASCII),
+                contentHash,
+                sourceHash
+        );
+        icons.put(tokenMint, icon);
+        return icon;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        channel.close();
+    }
+
+    private static long hash(ByteBuffer data) {
+        return Hashing.murmur3_128().hashBytes(data).asLong();
+    }
+}
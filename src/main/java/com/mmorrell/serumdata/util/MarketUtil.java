@@ -1,9 +1,14 @@
 package com.mmorrell.serumdata.util;
 
+import com.mmorrell.serum.model.Market;
 import com.mmorrell.serum.model.OrderBook;
+import com.mmorrell.serum.model.SerumUtils;
+import com.mmorrell.serumdata.model.PriceLevelBook;
 import com.mmorrell.serumdata.model.SerumOrder;
 import org.p2p.solanaj.core.PublicKey;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -44,4 +49,124 @@ public class MarketUtil {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Flattens one side of the book (best price first) straight from the slab, with per-order percentages plus
+     * aggregated price levels with cumulative quantity and notional.
+     *
+     * @param slab   reader positioned on the bids or asks account
+     * @param market market the slab belongs to, for decimals and lot sizes
+     * @param isBid  true for bids (descending prices), false for asks (ascending prices)
+     * @return flattened side of the book
+     */
+    public static PriceLevelBook buildPriceLevelBook(SlabReader slab, Market market, boolean isBid) {
+        final int orderCount = slab.getLeafCount();
+        if (orderCount == 0) {
+            return PriceLevelBook.EMPTY;
+        }
+
+        final byte baseDecimals = market.getBaseDecimals();
+        final byte quoteDecimals = market.getQuoteDecimals();
+        final long baseLotSize = market.getBaseLotSize();
+        final long quoteLotSize = market.getQuoteLotSize();
+        final double baseMultiplier = SerumUtils.getBaseSplTokenMultiplier(baseDecimals);
+
+        final float[] orderPrices = new float[orderCount];
+        final float[] orderQuantities = new float[orderCount];
+        final float[] orderPercents = new float[orderCount];
+        final byte[] orderOwners = new byte[orderCount * PriceLevelBook.OWNER_SIZE];
+
+        final float[] levelPrices = new float[orderCount];
+        final float[] levelQuantities = new float[orderCount];
+        final float[] levelCumulativeQuantities = new float[orderCount];
+        final float[] levelCumulativeNotionals = new float[orderCount];
+        final long[] levelPriceLots = new long[orderCount];
+        final long[] levelQuantityLots = new long[orderCount];
+
+        int levelCount = 0;
+        long lastPriceLots = -1;
+        float cumulativeQuantity = 0.0f, cumulativeNotional = 0.0f;
+        for (int i = 0; i < orderCount; i++) {
+            // Slab leaves are in ascending price order, bids are read from the top
+            int leaf = isBid ? orderCount - 1 - i : i;
+            long priceLots = slab.getPriceLots(leaf);
+            float price = SerumUtils.priceLotsToNumber(priceLots, baseDecimals, quoteDecimals, baseLotSize, quoteLotSize);
+            long quantityLots = slab.getQuantityLots(leaf);
+            float quantity = (float) (quantityLots * baseLotSize / baseMultiplier);
+
+            orderPrices[i] = price;
+            orderQuantities[i] = quantity;
+            slab.copyOwner(leaf, orderOwners, i * PriceLevelBook.OWNER_SIZE);
+
+            cumulativeQuantity += quantity;
+            cumulativeNotional += price * quantity;
+            orderPercents[i] = cumulativeNotional;
+
+            // Orders are sorted, so equal prices are always adjacent
+            if (priceLots != lastPriceLots) {
+                levelPriceLots[levelCount] = priceLots;
+                levelPrices[levelCount++] = price;
+                lastPriceLots = priceLots;
+            }
+            levelQuantities[levelCount - 1] += quantity;
+            levelQuantityLots[levelCount - 1] += quantityLots;
+            levelCumulativeQuantities[levelCount - 1] = cumulativeQuantity;
+            levelCumulativeNotionals[levelCount - 1] = cumulativeNotional;
+        }
+
+        for (int i = 0; i < orderCount; i++) {
+            orderPercents[i] /= cumulativeNotional;
+        }
+
+        return PriceLevelBook.builder()
+                .bid(isBid)
+                .orderPrices(orderPrices)
+                .orderQuantities(orderQuantities)
+                .orderPercents(orderPercents)
+                .orderOwners(orderOwners)
+                .levelPrices(Arrays.copyOf(levelPrices, levelCount))
+                .levelQuantities(Arrays.copyOf(levelQuantities, levelCount))
+                .levelCumulativeQuantities(Arrays.copyOf(levelCumulativeQuantities, levelCount))
+                .levelCumulativeNotionals(Arrays.copyOf(levelCumulativeNotionals, levelCount))
+                .levelPriceLots(Arrays.copyOf(levelPriceLots, levelCount))
+                .levelQuantityLots(Arrays.copyOf(levelQuantityLots, levelCount))
+                .build();
+    }
+
+    /**
+     * @param book precomputed side of the book
+     * @return orders in book order (best price first), with "percent" metadata
+     */
+    public static List<SerumOrder> convertPriceLevelBookToSerumOrders(PriceLevelBook book) {
+        final List<SerumOrder> serumOrders = new ArrayList<>(book.getOrderCount());
+        for (int i = 0; i < book.getOrderCount(); i++) {
+            SerumOrder serumOrder = new SerumOrder();
+            serumOrder.setPrice(book.getOrderPrices()[i]);
+            serumOrder.setQuantity(book.getOrderQuantities()[i]);
+            serumOrder.setOwner(book.getOrderOwner(i));
+            serumOrder.addMetadata("percent", book.getOrderPercents()[i]);
+            serumOrders.add(serumOrder);
+        }
+        return serumOrders;
+    }
+
+    /**
+     * Depth chart points, [price, cumulative quantity, quantity], in ascending price order as the chart expects.
+     *
+     * @param book precomputed side of the book
+     * @return one point per price level
+     */
+    public static float[][] convertPriceLevelBookToDepth(PriceLevelBook book) {
+        final int levelCount = book.getLevelCount();
+        final float[][] depth = new float[levelCount][];
+        for (int i = 0; i < levelCount; i++) {
+            // Bids are stored best (highest) first, so they are reversed here
+            int level = book.isBid() ? levelCount - 1 - i : i;
+            depth[i] = new float[]{
+                    book.getLevelPrices()[level],
+                    book.getLevelCumulativeQuantities()[level],
+                    book.getLevelQuantities()[level]
+            };
+        }
+        return depth;
+    }
 }
@@ -0,0 +1,328 @@
+package com.mmorrell.serumdata.util;
+
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread safe map of open orders account to owner, stored as raw 32 byte keys.
+ * <p>
+ * Entries are split over lock-striped segments. Each segment packs its entries into one byte array (account
+ * followed by owner) with an open addressing index next to it, and evicts its oldest entry once full. Segments start
+ * small and double as they fill, so memory follows the number of entries rather than the maximum size. Owners never
+ * change, so entries are never updated, and the whole cache can be saved to and loaded from a flat file.
+ */
+public class OwnerCache {
+
+    private static final int KEY_SIZE = 32;
+    private static final int ENTRY_SIZE = KEY_SIZE * 2;
+    private static final int SEGMENT_COUNT = 32;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+    private static final int SNAPSHOT_MAGIC = 0x4f574e52; // "OWNR"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private volatile boolean dirty;
+    // Lookup statistics, see OwnerCacheMetrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+
+    private static class Segment {
+        private final int capacity;
+        // Entries in insertion order, grown until it holds capacity entries, then used as a ring
+        private byte[] entries;
+        // Open addressing index: entry number + 1, 0 if empty, at most half full
+        private int[] table;
+        private int mask;
+        private int size;
+        private int next;
+        private long evictions;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            allocate(Math.min(capacity, INITIAL_SEGMENT_CAPACITY));
+        }
+
+        private void allocate(int entryCount) {
+            entries = entries == null ?
+                    new byte[entryCount * ENTRY_SIZE] :
+                    Arrays.copyOf(entries, entryCount * ENTRY_SIZE);
+            final int tableSize = Integer.highestOneBit(Math.max(2, entryCount) * 2 - 1) << 1;
+            table = new int[tableSize];
+            mask = tableSize - 1;
+
+            // Not full yet, so the entries are 0 to size - 1, all distinct
+            for (int entry = 0; entry < size; entry++) {
+                int slot = hash(entries, entry * ENTRY_SIZE) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry + 1;
+            }
+        }
+
+        private synchronized boolean contains(byte[] key, int offset, int hash) {
+            return table[find(key, offset, hash)] != 0;
+        }
+
+        private synchronized boolean get(byte[] key, int hash, byte[] owner) {
+            final int slot = find(key, 0, hash);
+            if (table[slot] == 0) {
+                return false;
+            }
+            System.arraycopy(entries, (table[slot] - 1) * ENTRY_SIZE + KEY_SIZE, owner, 0, KEY_SIZE);
+            return true;
+        }
+
+        private synchronized boolean put(byte[] key, int hash, byte[] owner) {
+            int slot = find(key, 0, hash);
+            if (table[slot] != 0) {
+                return false;
+            }
+
+            final int entry = next;
+            if (size == capacity) {
+                // Evict the oldest entry, which is the one about to be overwritten
+                remove(entry);
+                evictions++;
+                slot = find(key, 0, hash);
+            } else {
+                if (size * ENTRY_SIZE == entries.length) {
+                    allocate(Math.min(capacity, size * 2));
+                    slot = find(key, 0, hash);
+                }
+                size++;
+            }
+
+            System.arraycopy(key, 0, entries, entry * ENTRY_SIZE, KEY_SIZE);
+            System.arraycopy(owner, 0, entries, entry * ENTRY_SIZE + KEY_SIZE, KEY_SIZE);
+            table[slot] = entry + 1;
+            next = (next + 1) % capacity;
+            return true;
+        }
+
+        private int find(byte[] key, int offset, int hash) {
+            int slot = hash & mask;
+            while (table[slot] != 0 && !keyEquals(table[slot] - 1, key, offset)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // Backward shift deletion, keeps probe sequences intact without tombstones
+        private void remove(int entry) {
+            int slot = hash(entries, entry * ENTRY_SIZE) & mask;
+            while (table[slot] != entry + 1) {
+                slot = (slot + 1) & mask;
+            }
+
+            int gap = slot;
+            int probe = (gap + 1) & mask;
+            while (table[probe] != 0) {
+                int home = hash(entries, (table[probe] - 1) * ENTRY_SIZE) & mask;
+                // Move back if its home isn't cyclically within (gap, probe]
+                if (((probe - home) & mask) >= ((probe - gap) & mask)) {
+                    table[gap] = table[probe];
+                    gap = probe;
+                }
+                probe = (probe + 1) & mask;
+            }
+            table[gap] = 0;
+        }
+
+        private boolean keyEquals(int entry, byte[] key, int keyOffset) {
+            final int offset = entry * ENTRY_SIZE;
+            return Arrays.equals(entries, offset, offset + KEY_SIZE, key, keyOffset, keyOffset + KEY_SIZE);
+        }
+
+        private synchronized void write(DataOutputStream output) throws IOException {
+            // Oldest first, so a reload keeps the eviction order
+            final int first = size == capacity ? next : 0;
+            for (int i = 0; i < size; i++) {
+                output.write(entries, ((first + i) % capacity) * ENTRY_SIZE, ENTRY_SIZE);
+            }
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized long evictions() {
+            return evictions;
+        }
+    }
+
+    /**
+     * @param maxSize maximum number of entries, spread evenly over the segments
+     */
+    public OwnerCache(int maxSize) {
+        final int segmentCapacity = Math.max(1, maxSize / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * @param ooa open orders account
+     * @return owner, or null if not cached
+     */
+    public PublicKey get(PublicKey ooa) {
+        final byte[] key = ooa.toByteArray();
+        final int hash = hash(key, 0);
+        final byte[] owner = new byte[KEY_SIZE];
+        if (segmentFor(hash).get(key, hash, owner)) {
+            hits.increment();
+            return new PublicKey(owner);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Lookup without copying the owner, not counted as a hit or miss.
+     *
+     * @param ooa open orders account
+     * @return true if the owner is cached
+     */
+    public boolean containsKey(PublicKey ooa) {
+        return containsKey(ooa.toByteArray(), 0);
+    }
+
+    /**
+     * Same as {@link #containsKey(PublicKey)} for a raw key, e.g. one of the packed order owners of a book, so no
+     * PublicKey is allocated.
+     *
+     * @param keys   array holding the 32 byte open orders account
+     * @param offset start of the account in keys
+     * @return true if the owner is cached
+     */
+    public boolean containsKey(byte[] keys, int offset) {
+        final int hash = hash(keys, offset);
+        return segmentFor(hash).contains(keys, offset, hash);
+    }
+
+    /**
+     * Caches an owner. Existing entries are kept as they are, owners don't change.
+     */
+    public void put(PublicKey ooa, PublicKey owner) {
+        final byte[] key = ooa.toByteArray();
+        final int hash = hash(key, 0);
+        if (segmentFor(hash).put(key, hash, owner.toByteArray())) {
+            puts.increment();
+            dirty = true;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getPutCount() {
+        return puts.sum();
+    }
+
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            evictions += segment.evictions();
+        }
+        return evictions;
+    }
+
+    /**
+     * @return true if entries were added since the last save or load
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes all entries to a temporary file and moves it over the snapshot, so a crash never leaves a partial
+     * snapshot behind.
+     *
+     * @param path snapshot file
+     */
+    public void save(Path path) throws IOException {
+        dirty = false;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(SNAPSHOT_VERSION);
+            for (Segment segment : segments) {
+                segment.write(output);
+            }
+        } catch (IOException ex) {
+            dirty = true;
+            throw ex;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds the entries of a snapshot, if it exists.
+     *
+     * @param path snapshot file
+     * @return number of entries read
+     */
+    public int load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        int count = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not an owner cache snapshot: " + path);
+            }
+
+            final byte[] key = new byte[KEY_SIZE];
+            final byte[] owner = new byte[KEY_SIZE];
+            while (input.available() > 0) {
+                input.readFully(key);
+                input.readFully(owner);
+                int hash = hash(key, 0);
+                segmentFor(hash).put(key, hash, owner);
+                count++;
+            }
+        }
+        dirty = false;
+        return count;
+    }
+
+    private Segment segmentFor(int hash) {
+        // High bits pick the segment, low bits the slot within it
+        return segments[(hash >>> 27) % SEGMENT_COUNT];
+    }
+
+    // Public keys are already uniformly distributed, the first 4 bytes are enough
+    private static int hash(byte[] data, int offset) {
+        int hash = (data[offset] & 0xff) |
+                (data[offset + 1] & 0xff) << 8 |
+                (data[offset + 2] & 0xff) << 16 |
+                (data[offset + 3] & 0xff) << 24;
+        return hash * 0x9E3779B1;
+    }
+}
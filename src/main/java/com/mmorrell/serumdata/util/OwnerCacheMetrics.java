@@ -0,0 +1,50 @@
+package com.mmorrell.serumdata.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * Standard cache metrics (cache.gets, cache.puts, cache.evictions, cache.size) for an {@link OwnerCache}, so it shows
+ * up next to the Guava caches.
+ */
+public class OwnerCacheMetrics extends CacheMeterBinder<OwnerCache> {
+
+    public OwnerCacheMetrics(OwnerCache cache, String cacheName, Iterable<Tag> tags) {
+        super(cache, cacheName, tags);
+    }
+
+    @Override
+    protected Long size() {
+        final OwnerCache cache = getCache();
+        return cache != null ? (long) cache.size() : null;
+    }
+
+    @Override
+    protected long hitCount() {
+        final OwnerCache cache = getCache();
+        return cache != null ? cache.getHitCount() : 0L;
+    }
+
+    @Override
+    protected Long missCount() {
+        final OwnerCache cache = getCache();
+        return cache != null ? cache.getMissCount() : null;
+    }
+
+    @Override
+    protected Long evictionCount() {
+        final OwnerCache cache = getCache();
+        return cache != null ? cache.getEvictionCount() : null;
+    }
+
+    @Override
+    protected long putCount() {
+        final OwnerCache cache = getCache();
+        return cache != null ? cache.getPutCount() : 0L;
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+    }
+}
@@ -0,0 +1,163 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.*;
+import java.util.function.DoublePredicate;
+
+/**
+ * Derives USD prices for token mints from a graph of markets: mints are nodes, each market with a two-sided book is an
+ * edge carrying its mid price and liquidity.
+ * <p>
+ * Prices spread out from anchor mints (stablecoins), most liquid paths first. A path's liquidity is that of its
+ * thinnest market, in USD. A mint is priced once the most liquid path to it is known, as the average of the prices
+ * implied by each already priced neighbour, weighted by the liquidity of the path through that neighbour. Dust
+ * markets and long paths are ignored.
+ */
+public class PricingGraph {
+
+    // Only book depth within this distance of the mid price counts as liquidity
+    private static final float LIQUIDITY_BAND = 0.05f;
+
+    /**
+     * One market as seen by the graph.
+     *
+     * @param baseMint  base mint
+     * @param quoteMint quote mint
+     * @param midPrice  quote per base, between best bid and best ask
+     * @param liquidity depth near the mid price, in quote units, the smaller of both sides
+     */
+    public record Edge(PublicKey baseMint, PublicKey quoteMint, float midPrice, double liquidity) {
+
+        /**
+         * @return the edge, or empty if a side of the book is empty or the book is crossed
+         */
+        public static Optional<Edge> of(PublicKey baseMint, PublicKey quoteMint, PriceLevelBook bids,
+                                        PriceLevelBook asks) {
+            final float bestBid = bids.getBestPrice();
+            final float bestAsk = asks.getBestPrice();
+            if (bestBid <= 0 || bestAsk <= 0 || bestBid >= bestAsk) {
+                return Optional.empty();
+            }
+
+            final float midPrice = (bestBid + bestAsk) / 2;
+            final double liquidity = Math.min(
+                    depth(bids, price -> price >= midPrice * (1 - LIQUIDITY_BAND)),
+                    depth(asks, price -> price <= midPrice * (1 + LIQUIDITY_BAND))
+            );
+            return Optional.of(new Edge(baseMint, quoteMint, midPrice, liquidity));
+        }
+
+        // Levels are best price first, so the cumulative notional of the last level in the band is the depth
+        private static double depth(PriceLevelBook book, DoublePredicate inBand) {
+            int level = 0;
+            while (level < book.getLevelCount() && inBand.test(book.getLevelPrices()[level])) {
+                level++;
+            }
+            return level == 0 ? 0.0 : book.getLevelCumulativeNotionals()[level - 1];
+        }
+    }
+
+    // Best known path to a mint that hasn't been priced yet
+    private record Candidate(PublicKey mint, double liquidity) {
+    }
+
+    private static class Estimate {
+        private double weightedPriceSum;
+        private double weightSum;
+        private double bestLiquidity;
+        private int hops;
+    }
+
+    /**
+     * @param edges        markets with a mid price
+     * @param anchors      <mint, fixed USD price> where pricing starts
+     * @param maxHops      longest path, in markets, from an anchor
+     * @param minLiquidity markets with less USD liquidity are ignored
+     * @return <mint, USD price>, anchors included
+     */
+    public static Map<PublicKey, Float> solve(Collection<Edge> edges, Map<PublicKey, Float> anchors, int maxHops,
+                                              double minLiquidity) {
+        final Map<PublicKey, List<Edge>> adjacency = new HashMap<>();
+        for (Edge edge : edges) {
+            if (edge.midPrice() > 0 && edge.liquidity() > 0 && !edge.baseMint().equals(edge.quoteMint())) {
+                adjacency.computeIfAbsent(edge.baseMint(), mint -> new ArrayList<>()).add(edge);
+                adjacency.computeIfAbsent(edge.quoteMint(), mint -> new ArrayList<>()).add(edge);
+            }
+        }
+
+        final Map<PublicKey, Float> prices = new HashMap<>(anchors);
+        final Map<PublicKey, Double> pathLiquidity = new HashMap<>();
+        final Map<PublicKey, Integer> pathHops = new HashMap<>();
+        final Map<PublicKey, Estimate> estimates = new HashMap<>();
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>(
+                Comparator.comparingDouble(Candidate::liquidity).reversed()
+        );
+
+        for (PublicKey anchor : anchors.keySet()) {
+            pathLiquidity.put(anchor, Double.POSITIVE_INFINITY);
+            pathHops.put(anchor, 0);
+            relax(anchor, adjacency, prices, pathLiquidity, pathHops, estimates, queue, maxHops, minLiquidity);
+        }
+
+        while (!queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            Estimate estimate = estimates.get(candidate.mint());
+            // Stale queue entry, or already priced through a more liquid path
+            if (prices.containsKey(candidate.mint()) || candidate.liquidity() < estimate.bestLiquidity) {
+                continue;
+            }
+
+            prices.put(candidate.mint(), (float) (estimate.weightedPriceSum / estimate.weightSum));
+            pathLiquidity.put(candidate.mint(), estimate.bestLiquidity);
+            pathHops.put(candidate.mint(), estimate.hops);
+            relax(candidate.mint(), adjacency, prices, pathLiquidity, pathHops, estimates, queue, maxHops,
+                    minLiquidity);
+        }
+
+        return Map.copyOf(prices);
+    }
+
+    // Adds the price each market of a newly priced mint implies for its unpriced counterpart
+    private static void relax(PublicKey mint,
+                              Map<PublicKey, List<Edge>> adjacency,
+                              Map<PublicKey, Float> prices,
+                              Map<PublicKey, Double> pathLiquidity,
+                              Map<PublicKey, Integer> pathHops,
+                              Map<PublicKey, Estimate> estimates,
+                              PriorityQueue<Candidate> queue,
+                              int maxHops,
+                              double minLiquidity) {
+        final int hops = pathHops.get(mint) + 1;
+        if (hops > maxHops) {
+            return;
+        }
+
+        final float price = prices.get(mint);
+        for (Edge edge : adjacency.getOrDefault(mint, Collections.emptyList())) {
+            final boolean fromQuote = edge.quoteMint().equals(mint);
+            final PublicKey other = fromQuote ? edge.baseMint() : edge.quoteMint();
+            if (prices.containsKey(other)) {
+                continue;
+            }
+
+            // Liquidity is in quote units, the quote price is either known or implied by this edge
+            final double quotePrice = fromQuote ? price : price / edge.midPrice();
+            final double liquidity = Math.min(pathLiquidity.get(mint), edge.liquidity() * quotePrice);
+            if (liquidity < minLiquidity) {
+                continue;
+            }
+
+            final double otherPrice = fromQuote ? price * edge.midPrice() : price / edge.midPrice();
+            final Estimate estimate = estimates.computeIfAbsent(other, key -> new Estimate());
+            estimate.weightedPriceSum += otherPrice * liquidity;
+            estimate.weightSum += liquidity;
+            if (liquidity > estimate.bestLiquidity) {
+                estimate.bestLiquidity = liquidity;
+                estimate.hops = hops;
+                queue.add(new Candidate(other, liquidity));
+            }
+        }
+    }
+}
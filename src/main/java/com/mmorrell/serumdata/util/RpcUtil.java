@@ -3,11 +3,17 @@ package com.mmorrell.serumdata.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
 public class RpcUtil {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RpcUtil.class);
     private static final PublicCluster DEFAULT_CLUSTER = PublicCluster.PROJECT_SERUM;
     private static final String CUSTOM_ENDPOINT = System.getenv("OPENSERUM_ENDPOINT");
+    private static final String CUSTOM_ENDPOINTS = System.getenv("OPENSERUM_ENDPOINTS");
+    private static final String WEBSOCKET_ENDPOINT = System.getenv("OPENSERUM_WS_ENDPOINT");
     public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/103.0.0.0 Safari/537.36";
 
     private enum PublicCluster {
@@ -27,17 +33,53 @@ public class RpcUtil {
 
     public static String getPublicEndpoint() {
         if (CUSTOM_ENDPOINT != null) {
-            try {
-                PublicCluster cluster = PublicCluster.valueOf(CUSTOM_ENDPOINT);
-                LOGGER.info("Using known endpoint: " + cluster.name() + " (" + cluster.getEndpoint() + ")");
-                return cluster.getEndpoint();
-            } catch (IllegalArgumentException ex) {
-                LOGGER.info("Using custom endpoint: " + CUSTOM_ENDPOINT);
-                return CUSTOM_ENDPOINT;
-            }
+            return resolveEndpoint(CUSTOM_ENDPOINT);
         }
 
         LOGGER.info("Using fallback endpoint: " + DEFAULT_CLUSTER.getEndpoint());
         return DEFAULT_CLUSTER.getEndpoint();
     }
+
+    /**
+     * Endpoints for the RPC pool, from a comma separated list of known cluster names or URLs. Falls back to the
+     * single endpoint when not set.
+     *
+     * @return endpoints, most preferred first
+     */
+    public static List<String> getPublicEndpoints() {
+        if (CUSTOM_ENDPOINTS != null && !CUSTOM_ENDPOINTS.isBlank()) {
+            return Arrays.stream(CUSTOM_ENDPOINTS.split(","))
+                    .map(String::trim)
+                    .filter(endpoint -> !endpoint.isEmpty())
+                    .map(RpcUtil::resolveEndpoint)
+                    .distinct()
+                    .toList();
+        }
+
+        return List.of(getPublicEndpoint());
+    }
+
+    private static String resolveEndpoint(String endpoint) {
+        try {
+            PublicCluster cluster = PublicCluster.valueOf(endpoint);
+            LOGGER.info("Using known endpoint: " + cluster.name() + " (" + cluster.getEndpoint() + ")");
+            return cluster.getEndpoint();
+        } catch (IllegalArgumentException ex) {
+            LOGGER.info("Using custom endpoint: " + endpoint);
+            return endpoint;
+        }
+    }
+
+    /**
+     * Websocket endpoint used for accountSubscribe. Subscription mode is disabled when not set.
+     *
+     * @return websocket endpoint, e.g. wss://api.mainnet-beta.solana.com/
+     */
+    public static Optional<String> getWebsocketEndpoint() {
+        if (WEBSOCKET_ENDPOINT != null) {
+            LOGGER.info("Using websocket endpoint: " + WEBSOCKET_ENDPOINT);
+        }
+
+        return Optional.ofNullable(WEBSOCKET_ENDPOINT);
+    }
 }
@@ -0,0 +1,103 @@
+package com.mmorrell.serumdata.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Keeps the serialized body of a response for as long as its version (e.g. the market snapshot revision) is unchanged.
+ * Thousands of clients polling the same market then share one serialization per snapshot.
+ */
+public class SerializedResponseCache {
+
+    private static final int MAX_CACHED_RESPONSES = 8192;
+
+    public record SerializedResponse(long version, long revision, String eTag, byte[] body) {
+    }
+
+    // <key, serialized response>, e.g. <"bids:marketId", ...>
+    private final Cache<String, SerializedResponse> responseCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_RESPONSES)
+            .recordStats()
+            .build();
+
+    /**
+     * Publishes hits, misses, evictions and size as cache.* metrics.
+     *
+     * @param cacheName value of the cache tag
+     */
+    public void bindTo(MeterRegistry registry, String cacheName) {
+        new GuavaCacheMetrics<>(responseCache, cacheName, Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Returns the cached response for this key and version, encoding a fresh body if the version changed.
+     *
+     * @param kind    response type, e.g. "bids", also used in the ETag
+     * @param id      e.g. market id
+     * @param version snapshot version, responses with the same version are identical
+     * @param body    encodes the response body (JSON, binary), only called on a cache miss
+     * @return serialized response with a strong ETag
+     */
+    public SerializedResponse get(String kind, String id, long version, Supplier<byte[]> body) {
+        return get(kind, id, version, 0L, body);
+    }
+
+    /**
+     * Same as {@link #get(String, String, long, Supplier)}, for bodies that also depend on state outside the
+     * snapshot (e.g. resolved order owners). A new revision re-encodes the body without a new version.
+     *
+     * @param revision version of the outside state, 0 if there is none
+     */
+    public SerializedResponse get(String kind, String id, long version, long revision, Supplier<byte[]> body) {
+        final String key = kind + ":" + id;
+        final SerializedResponse cached = responseCache.getIfPresent(key);
+        if (cached != null && cached.version() == version && cached.revision() == revision) {
+            return cached;
+        }
+
+        final SerializedResponse serialized = new SerializedResponse(
+                version,
+                revision,
+                revision == 0L ?
+                        String.format("\"%s-%d\"", kind, version) :
+                        String.format("\"%s-%d.%d\"", kind, version, revision),
+                body.get()
+        );
+
+        responseCache.put(key, serialized);
+        return serialized;
+    }
+
+    /**
+     * Weak comparison, as If-None-Match requires: proxies that compress responses mark the ETag weak (W/"...") and
+     * clients send it back that way.
+     *
+     * @param ifNoneMatch value of the If-None-Match request header, a list of ETags or "*", may be null
+     * @param eTag        current ETag
+     * @return true if the client already has this version
+     */
+    public static boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        final String opaqueTag = stripWeakPrefix(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || stripWeakPrefix(trimmed).equals(opaqueTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String stripWeakPrefix(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+}
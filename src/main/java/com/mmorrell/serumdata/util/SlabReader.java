@@ -0,0 +1,205 @@
+package com.mmorrell.serumdata.util;
+
+import org.p2p.solanaj.core.PublicKey;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Flyweight reader for Serum bids/asks slab accounts. Reads leaf prices, quantities and owners straight from the
+ * account bytes instead of materializing a node object per order.
+ * <p>
+ * Leaves are found with an in-order walk of the crit-bit tree, so index 0 is always the lowest price and no sort is
+ * needed. Instances are reused: each {@link #wrap} replaces the previous account, and {@link #wrapBase64} decodes
+ * into a buffer owned by the reader. Not thread-safe, use {@link #forCurrentThread()}.
+ */
+public class SlabReader {
+
+    // Account layout: 5 byte "serum" padding, 8 byte account flags, then the slab header
+    private static final int ROOT_NODE_OFFSET = 33;
+    private static final int LEAF_COUNT_OFFSET = 37;
+    private static final int NODES_OFFSET = 45;
+    private static final int NODE_SIZE = 72;
+
+    private static final int INNER_NODE_TAG = 1;
+    private static final int LEAF_NODE_TAG = 2;
+
+    // Node fields, relative to the node's offset
+    private static final int CHILDREN_OFFSET = 24;
+    private static final int PRICE_OFFSET = 16;
+    private static final int OWNER_OFFSET = 24;
+    private static final int QUANTITY_OFFSET = 56;
+
+    private static final int PUBLIC_KEY_SIZE = 32;
+    // Crit-bit tree over 128-bit keys, so no path is deeper than this
+    private static final int MAX_TREE_DEPTH = 130;
+
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private static final ThreadLocal<SlabReader> THREAD_READERS = ThreadLocal.withInitial(SlabReader::new);
+
+    private ByteBuffer buffer;
+    private int[] leafOffsets = new int[1024];
+    private int leafCount;
+    private final int[] stack = new int[MAX_TREE_DEPTH];
+
+    // Reused for base64 decoding, grows to the largest account seen by this thread
+    private byte[] decoded = new byte[0];
+
+    /**
+     * @return a reader owned by the calling thread
+     */
+    public static SlabReader forCurrentThread() {
+        return THREAD_READERS.get();
+    }
+
+    /**
+     * Reads the given account bytes without copying them.
+     *
+     * @param data slab account data
+     * @return this reader
+     */
+    public SlabReader wrap(byte[] data) {
+        return wrap(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decodes a base64 encoded account into this reader's own buffer. Valid until the next wrap on this reader.
+     *
+     * @param base64Data slab account data as returned by the RPC
+     * @return this reader
+     */
+    public SlabReader wrapBase64(String base64Data) {
+        int length = base64Data.length();
+        while (length > 0 && base64Data.charAt(length - 1) == '=') {
+            length--;
+        }
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid base64 length");
+        }
+
+        final int decodedLength = length / 4 * 3 + Math.max(length % 4 - 1, 0);
+        if (decoded.length < decodedLength) {
+            decoded = new byte[decodedLength];
+        }
+
+        int bits = 0, bitCount = 0, position = 0;
+        for (int i = 0; i < length; i++) {
+            char c = base64Data.charAt(i);
+            int value = c < 128 ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid base64 character: " + c);
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                decoded[position++] = (byte) (bits >> bitCount);
+            }
+        }
+
+        return wrap(ByteBuffer.wrap(decoded, 0, decodedLength));
+    }
+
+    /**
+     * Indexes the leaves of the slab in ascending price order.
+     *
+     * @param data slab account data
+     * @return this reader
+     */
+    public SlabReader wrap(ByteBuffer data) {
+        this.buffer = data.order(ByteOrder.LITTLE_ENDIAN);
+        this.leafCount = 0;
+
+        if (buffer.limit() < NODES_OFFSET) {
+            return this;
+        }
+
+        final long declaredLeafCount = buffer.getLong(LEAF_COUNT_OFFSET);
+        final int nodeCount = (buffer.limit() - NODES_OFFSET) / NODE_SIZE;
+        if (declaredLeafCount <= 0 || declaredLeafCount > nodeCount) {
+            return this;
+        }
+        if (leafOffsets.length < declaredLeafCount) {
+            leafOffsets = Arrays.copyOf(leafOffsets, (int) declaredLeafCount);
+        }
+
+        // In-order walk, left child (lower keys) first
+        int depth = 0;
+        int node = buffer.getInt(ROOT_NODE_OFFSET);
+        while (true) {
+            while (node >= 0 && node < nodeCount && depth < MAX_TREE_DEPTH) {
+                int offset = nodeOffset(node);
+                int tag = buffer.getInt(offset);
+                if (tag == INNER_NODE_TAG) {
+                    stack[depth++] = offset;
+                    node = buffer.getInt(offset + CHILDREN_OFFSET);
+                } else {
+                    if (tag == LEAF_NODE_TAG && leafCount < declaredLeafCount) {
+                        leafOffsets[leafCount++] = offset;
+                    }
+                    break;
+                }
+            }
+
+            if (depth == 0) {
+                return this;
+            }
+            node = buffer.getInt(stack[--depth] + CHILDREN_OFFSET + 4);
+        }
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * @param leaf leaf index, 0 is the lowest price
+     * @return price in lots
+     */
+    public long getPriceLots(int leaf) {
+        return buffer.getLong(leafOffsets[leaf] + PRICE_OFFSET);
+    }
+
+    /**
+     * @param leaf leaf index, 0 is the lowest price
+     * @return quantity in lots
+     */
+    public long getQuantityLots(int leaf) {
+        return buffer.getLong(leafOffsets[leaf] + QUANTITY_OFFSET);
+    }
+
+    /**
+     * Copies the 32 byte owner (open orders account) of a leaf without allocating.
+     *
+     * @param leaf      leaf index, 0 is the lowest price
+     * @param dst       destination array
+     * @param dstOffset offset in the destination array
+     */
+    public void copyOwner(int leaf, byte[] dst, int dstOffset) {
+        buffer.get(leafOffsets[leaf] + OWNER_OFFSET, dst, dstOffset, PUBLIC_KEY_SIZE);
+    }
+
+    /**
+     * @param leaf leaf index, 0 is the lowest price
+     * @return owner (open orders account) of the leaf
+     */
+    public PublicKey getOwner(int leaf) {
+        final byte[] owner = new byte[PUBLIC_KEY_SIZE];
+        copyOwner(leaf, owner, 0);
+        return new PublicKey(owner);
+    }
+
+    private static int nodeOffset(int node) {
+        return NODES_OFFSET + node * NODE_SIZE;
+    }
+}
@@ -0,0 +1,156 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.StartupSnapshot;
+import com.mmorrell.serumdata.model.Token;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Binary file format of the {@link StartupSnapshot}: a magic number and version, then one length-prefixed section
+ * each for tokens, market accounts and prices. Snapshots with another version are ignored, the application
+ * then starts cold.
+ */
+public class StartupSnapshotCodec {
+
+    private static final int MAGIC = 0x534e4150; // "SNAP"
+    private static final int VERSION = 2;
+    private static final int PUBLIC_KEY_SIZE = 32;
+
+    /**
+     * Writes to a temporary file first, so a crash mid-write leaves the previous snapshot intact.
+     *
+     * @param snapshot snapshot to write
+     * @param path     snapshot file
+     */
+    public static void write(StartupSnapshot snapshot, Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(snapshot.getCreatedAt());
+
+            output.writeInt(snapshot.getTokens().size());
+            for (Token token : snapshot.getTokens()) {
+                writeString(output, token.getName());
+                writeString(output, token.getAddress());
+                writeString(output, token.getSymbol());
+                writeString(output, token.getLogoURI());
+                output.writeInt(token.getChainId());
+                output.writeInt(token.getDecimals());
+                output.write(token.getPublicKey().toByteArray());
+                writeString(output, token.getImageFormat());
+            }
+
+            writeBytesMap(output, snapshot.getMarketAccounts());
+
+            output.writeInt(snapshot.getPrices().size());
+            for (Map.Entry<PublicKey, Float> price : snapshot.getPrices().entrySet()) {
+                output.write(price.getKey().toByteArray());
+                output.writeFloat(price.getValue());
+            }
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param path snapshot file
+     * @return snapshot, or empty if there is none or it was written by another version
+     */
+    public static Optional<StartupSnapshot> read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return Optional.empty();
+            }
+            final long createdAt = input.readLong();
+
+            final int tokenCount = input.readInt();
+            final List<Token> tokens = new ArrayList<>(tokenCount);
+            for (int i = 0; i < tokenCount; i++) {
+                tokens.add(Token.builder()
+                        .name(readString(input))
+                        .address(readString(input))
+                        .symbol(readString(input))
+                        .logoURI(readString(input))
+                        .chainId(input.readInt())
+                        .decimals(input.readInt())
+                        .publicKey(readPublicKey(input))
+                        .imageFormat(readString(input))
+                        .build());
+            }
+
+            final Map<PublicKey, byte[]> marketAccounts = readBytesMap(input);
+
+            final int priceCount = input.readInt();
+            final Map<PublicKey, Float> prices = new HashMap<>(priceCount * 2);
+            for (int i = 0; i < priceCount; i++) {
+                prices.put(readPublicKey(input), input.readFloat());
+            }
+
+            return Optional.of(StartupSnapshot.builder()
+                    .createdAt(createdAt)
+                    .tokens(tokens)
+                    .marketAccounts(marketAccounts)
+                    .prices(prices)
+                    .build());
+        }
+    }
+
+    private static void writeBytesMap(DataOutputStream output, Map<PublicKey, byte[]> entries) throws IOException {
+        output.writeInt(entries.size());
+        for (Map.Entry<PublicKey, byte[]> entry : entries.entrySet()) {
+            output.write(entry.getKey().toByteArray());
+            output.writeInt(entry.getValue().length);
+            output.write(entry.getValue());
+        }
+    }
+
+    private static Map<PublicKey, byte[]> readBytesMap(DataInputStream input) throws IOException {
+        final int count = input.readInt();
+        final Map<PublicKey, byte[]> entries = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            PublicKey key = readPublicKey(input);
+            byte[] value = new byte[input.readInt()];
+            input.readFully(value);
+            entries.put(key, value);
+        }
+        return entries;
+    }
+
+    // Token list fields are optional, null is written as a flag
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static PublicKey readPublicKey(DataInputStream input) throws IOException {
+        final byte[] key = new byte[PUBLIC_KEY_SIZE];
+        input.readFully(key);
+        return new PublicKey(key);
+    }
+}
@@ -0,0 +1,28 @@
+package com.mmorrell.serumdata.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+
+public class StorageUtil {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageUtil.class);
+    private static final String DEFAULT_DATA_DIRECTORY = "data";
+    private static final String DATA_DIRECTORY = System.getenv("OPENSERUM_DATA_DIR");
+
+    /**
+     * Directory for everything persisted to disk (trade tapes, snapshots). Relative to the working directory
+     * unless OPENSERUM_DATA_DIR is set.
+     *
+     * @return data directory, not necessarily created yet
+     */
+    public static Path getDataDirectory() {
+        if (DATA_DIRECTORY != null) {
+            LOGGER.info("Using data directory: " + DATA_DIRECTORY);
+            return Path.of(DATA_DIRECTORY);
+        }
+
+        return Path.of(DEFAULT_DATA_DIRECTORY);
+    }
+}
@@ -0,0 +1,212 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.Token;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable search index over the token registry, rebuilt whenever the registry changes.
+ * <p>
+ * Exact symbols are a hash lookup. Prefixes of the symbol, the name and each word of the name are found with a
+ * binary search over the sorted terms, so a prefix match costs a range scan instead of a registry scan. Queries
+ * that match no prefix (typos, infixes) fall back to the trigrams they share with a token's symbol and name.
+ */
+public class TokenSearchIndex {
+
+    public static final TokenSearchIndex EMPTY = new TokenSearchIndex(Collections.emptyList());
+
+    private static final int EXACT_SYMBOL = 0;
+    private static final int SYMBOL_PREFIX = 1;
+    private static final int NAME_PREFIX = 2;
+    private static final int FUZZY = 3;
+    // Share of the query's trigrams a fuzzy match needs
+    private static final double MIN_TRIGRAM_SIMILARITY = 0.5;
+
+    private final Token[] tokens;
+    // <upper case symbol, tokens>
+    private final Map<String, List<Token>> tokensBySymbol;
+    // <mint address, token id>
+    private final Map<String, Integer> tokenIds;
+    // Sorted lower case terms, with the token and match class of each
+    private final String[] terms;
+    private final int[] termTokens;
+    private final byte[] termClasses;
+    // <trigram, token ids>
+    private final Map<String, int[]> trigrams;
+
+    public TokenSearchIndex(Collection<Token> registry) {
+        this.tokens = registry.stream()
+                .filter(token -> token.getSymbol() != null)
+                .sorted(Comparator.comparing(Token::getSymbol).thenComparing(Token::getAddress))
+                .toArray(Token[]::new);
+
+        final Map<String, List<Token>> symbols = new HashMap<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<Term> termList = new ArrayList<>();
+        final Map<String, Set<Integer>> trigramSets = new HashMap<>();
+        for (int id = 0; id < tokens.length; id++) {
+            final Token token = tokens[id];
+            ids.put(token.getAddress(), id);
+            symbols.computeIfAbsent(token.getSymbol().toUpperCase(Locale.ROOT), symbol -> new ArrayList<>()).add(token);
+
+            final String symbol = normalize(token.getSymbol());
+            final String name = normalize(token.getName());
+            termList.add(new Term(symbol, id, SYMBOL_PREFIX));
+            if (!name.isEmpty()) {
+                termList.add(new Term(name, id, NAME_PREFIX));
+                for (String word : name.split(" ")) {
+                    if (!word.isEmpty() && !word.equals(name)) {
+                        termList.add(new Term(word, id, NAME_PREFIX));
+                    }
+                }
+            }
+
+            for (String gram : trigramsOf(symbol + " " + name)) {
+                trigramSets.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+            }
+        }
+
+        termList.sort(Comparator.comparing(Term::text));
+        this.terms = new String[termList.size()];
+        this.termTokens = new int[termList.size()];
+        this.termClasses = new byte[termList.size()];
+        for (int i = 0; i < termList.size(); i++) {
+            terms[i] = termList.get(i).text();
+            termTokens[i] = termList.get(i).token();
+            termClasses[i] = (byte) termList.get(i).matchClass();
+        }
+
+        symbols.replaceAll((symbol, list) -> List.copyOf(list));
+        this.tokensBySymbol = Map.copyOf(symbols);
+        this.tokenIds = Map.copyOf(ids);
+
+        final Map<String, int[]> packed = new HashMap<>(trigramSets.size() * 2);
+        trigramSets.forEach((gram, members) -> packed.put(gram, members.stream().mapToInt(Integer::intValue).toArray()));
+        this.trigrams = packed;
+    }
+
+    private record Term(String text, int token, int matchClass) {
+    }
+
+    /**
+     * @param symbol symbol, any case
+     * @return all tokens with exactly this symbol
+     */
+    public List<Token> getTokensBySymbol(String symbol) {
+        return tokensBySymbol.getOrDefault(symbol.toUpperCase(Locale.ROOT), Collections.emptyList());
+    }
+
+    public int size() {
+        return tokens.length;
+    }
+
+    /**
+     * Finds tokens by symbol, name or mint. Exact symbols come first, then symbol prefixes, name prefixes and fuzzy
+     * matches, each ordered by rank.
+     *
+     * @param query symbol, name or mint, blank lists every ranked token
+     * @param rank  lower is better, negative excludes the token
+     * @return matches, best first
+     */
+    public List<Token> search(String query, ToIntFunction<PublicKey> rank) {
+        final String normalized = normalize(query);
+        // <token id, best match class>
+        final Map<Integer, Integer> matches = new HashMap<>();
+
+        if (normalized.isEmpty()) {
+            for (int id = 0; id < tokens.length; id++) {
+                matches.put(id, SYMBOL_PREFIX);
+            }
+        } else {
+            // Mint addresses are case sensitive
+            final Integer mintMatch = tokenIds.get(query.trim());
+            if (mintMatch != null) {
+                matches.put(mintMatch, EXACT_SYMBOL);
+            }
+
+            int index = lowerBound(normalized);
+            while (index < terms.length && terms[index].startsWith(normalized)) {
+                int matchClass = termClasses[index] == SYMBOL_PREFIX && terms[index].length() == normalized.length()
+                        ? EXACT_SYMBOL
+                        : termClasses[index];
+                matches.merge(termTokens[index], matchClass, Math::min);
+                index++;
+            }
+
+            if (matches.isEmpty()) {
+                addFuzzyMatches(normalized, matches);
+            }
+        }
+
+        final List<Match> ranked = new ArrayList<>(matches.size());
+        matches.forEach((id, matchClass) -> {
+            int tokenRank = rank.applyAsInt(tokens[id].getPublicKey());
+            if (tokenRank >= 0) {
+                ranked.add(new Match(tokens[id], matchClass, tokenRank));
+            }
+        });
+        // Equally ranked tokens are ordered by symbol
+        ranked.sort(Comparator.comparingInt(Match::matchClass)
+                .thenComparingInt(Match::rank)
+                .thenComparing(match -> match.token().getSymbol()));
+
+        return ranked.stream()
+                .map(Match::token)
+                .toList();
+    }
+
+    private record Match(Token token, int matchClass, int rank) {
+    }
+
+    private void addFuzzyMatches(String query, Map<Integer, Integer> matches) {
+        final Set<String> queryTrigrams = trigramsOf(query);
+        final Map<Integer, Integer> shared = new HashMap<>();
+        for (String gram : queryTrigrams) {
+            for (int id : trigrams.getOrDefault(gram, new int[0])) {
+                shared.merge(id, 1, Integer::sum);
+            }
+        }
+
+        final double required = Math.max(1, queryTrigrams.size() * MIN_TRIGRAM_SIMILARITY);
+        shared.forEach((id, count) -> {
+            if (count >= required) {
+                matches.put(id, FUZZY);
+            }
+        });
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Padded so that short symbols and word boundaries still produce trigrams
+    private static Set<String> trigramsOf(String text) {
+        final Set<String> result = new HashSet<>();
+        final String padded = " " + text + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+    }
+}
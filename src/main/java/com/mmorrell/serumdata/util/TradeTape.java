@@ -0,0 +1,563 @@
+package com.mmorrell.serumdata.util;
+
+import com.mmorrell.serumdata.model.TradeRecord;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, memory-mapped log of one market's fills.
+ * <p>
+ * The log is a directory of segment files named after their first sequence number. Records are fixed size and
+ * ordered by sequence number and timestamp, so cursor and time-range queries binary search the mapped segments.
+ * The open segment is preallocated and rolls when full or when the UTC day changes. Closed segments are truncated
+ * to their records, and {@link #compact(long)} drops expired segments and merges small neighbours.
+ * <p>
+ * Appends are serialized, queries never lock: a record is written before the segment's count is published.
+ * <p>
+ * One process writes a directory at a time, guarded by an exclusive lock on its {@code .lock} file. A tape opened
+ * while another process holds the lock is read-only: it never appends, compacts or deletes, and queries pick up the
+ * writer's new records and segments, checked at most once a second (see {@link #refresh()}).
+ */
+public class TradeTape implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_CAPACITY = 65_536;
+
+    private static final String SEGMENT_SUFFIX = ".tape";
+    private static final String LOCK_FILE = ".lock";
+    private static final int MAGIC = 0x45504154; // "TAPE"
+    private static final int VERSION = 1;
+
+    // Segment header: magic u32, version u32, record count u64, padded to 64 bytes
+    private static final int COUNT_OFFSET = 8;
+    private static final int HEADER_SIZE = 64;
+
+    // Record: seqNum, slot, timestamp (u64), price, quantity (f32), flags (u8), padding, then 4 public keys
+    private static final int RECORD_SIZE = 168;
+    private static final int SEQ_NUM_OFFSET = 0;
+    private static final int SLOT_OFFSET = 8;
+    private static final int TIMESTAMP_OFFSET = 16;
+    private static final int PRICE_OFFSET = 24;
+    private static final int QUANTITY_OFFSET = 28;
+    private static final int FLAGS_OFFSET = 32;
+    private static final int TAKER_OOA_OFFSET = 40;
+    private static final int MAKER_OOA_OFFSET = 72;
+    private static final int TAKER_OWNER_OFFSET = 104;
+    private static final int MAKER_OWNER_OFFSET = 136;
+    private static final int PUBLIC_KEY_SIZE = 32;
+    private static final int BID_FLAG = 1;
+
+    private static final byte[] EMPTY_KEY = new byte[PUBLIC_KEY_SIZE];
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long REFRESH_INTERVAL_MS = 1000L;
+
+    private final Path directory;
+    private final int segmentCapacity;
+    // Held until close, null if another process writes this directory
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    // Oldest first, swapped as a whole when segments roll or are compacted
+    private volatile List<Segment> segments;
+    // Open for appends, null until the first append after opening or rolling
+    private Segment activeSegment;
+    private long lastSeqNum = -1;
+    private long lastTimestamp;
+    // Read-only tapes only, when queries next look for the writer's changes
+    private volatile long nextRefreshMs;
+
+    private static class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private volatile int count;
+
+        private Segment(Path path, MappedByteBuffer buffer, int capacity, int count) {
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        private static Segment create(Path path, int capacity) throws IOException {
+            final Segment segment = new Segment(
+                    path,
+                    map(path, HEADER_SIZE + (long) capacity * RECORD_SIZE, false),
+                    capacity,
+                    0
+            );
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.buffer.putLong(COUNT_OFFSET, 0);
+            return segment;
+        }
+
+        private static Segment open(Path path, boolean readOnly) throws IOException {
+            final long size = Files.size(path);
+            final MappedByteBuffer buffer = map(path, size, readOnly);
+            if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a trade tape segment: " + path);
+            }
+
+            final int capacity = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+            final Segment segment = new Segment(path, buffer, capacity, 0);
+            segment.readCount();
+            return segment;
+        }
+
+        // Records are written before the count, so everything below it is complete
+        private void readCount() {
+            count = (int) Math.min(buffer.getLong(COUNT_OFFSET), capacity);
+        }
+
+        private static MappedByteBuffer map(Path path, long size, boolean readOnly) throws IOException {
+            final StandardOpenOption[] options = readOnly ?
+                    new StandardOpenOption[]{StandardOpenOption.READ} :
+                    new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+            try (FileChannel channel = FileChannel.open(path, options)) {
+                MappedByteBuffer buffer = channel.map(
+                        readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+                        0,
+                        size
+                );
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return buffer;
+            }
+        }
+
+        private int offset(int record) {
+            return HEADER_SIZE + record * RECORD_SIZE;
+        }
+
+        private long getSeqNum(int record) {
+            return buffer.getLong(offset(record) + SEQ_NUM_OFFSET);
+        }
+
+        private long getTimestamp(int record) {
+            return buffer.getLong(offset(record) + TIMESTAMP_OFFSET);
+        }
+
+        private void write(TradeRecord trade) {
+            final int offset = offset(count);
+            buffer.putLong(offset + SEQ_NUM_OFFSET, trade.getSeqNum());
+            buffer.putLong(offset + SLOT_OFFSET, trade.getSlot());
+            buffer.putLong(offset + TIMESTAMP_OFFSET, trade.getTimestamp());
+            buffer.putFloat(offset + PRICE_OFFSET, trade.getPrice());
+            buffer.putFloat(offset + QUANTITY_OFFSET, trade.getQuantity());
+            buffer.put(offset + FLAGS_OFFSET, (byte) (trade.isBid() ? BID_FLAG : 0));
+            putKey(offset + TAKER_OOA_OFFSET, trade.getTakerOoa());
+            putKey(offset + MAKER_OOA_OFFSET, trade.getMakerOoa());
+            putKey(offset + TAKER_OWNER_OFFSET, trade.getTakerOwner());
+            putKey(offset + MAKER_OWNER_OFFSET, trade.getMakerOwner());
+
+            // Readers only look at records below count
+            buffer.putLong(COUNT_OFFSET, count + 1);
+            count = count + 1;
+        }
+
+        private void putKey(int offset, PublicKey key) {
+            buffer.put(offset, key != null ? key.toByteArray() : EMPTY_KEY, 0, PUBLIC_KEY_SIZE);
+        }
+
+        private TradeRecord read(int record) {
+            final int offset = offset(record);
+            return TradeRecord.builder()
+                    .seqNum(buffer.getLong(offset + SEQ_NUM_OFFSET))
+                    .slot(buffer.getLong(offset + SLOT_OFFSET))
+                    .timestamp(buffer.getLong(offset + TIMESTAMP_OFFSET))
+                    .price(buffer.getFloat(offset + PRICE_OFFSET))
+                    .quantity(buffer.getFloat(offset + QUANTITY_OFFSET))
+                    .bid((buffer.get(offset + FLAGS_OFFSET) & BID_FLAG) != 0)
+                    .takerOoa(getKey(offset + TAKER_OOA_OFFSET))
+                    .makerOoa(getKey(offset + MAKER_OOA_OFFSET))
+                    .takerOwner(getKey(offset + TAKER_OWNER_OFFSET))
+                    .makerOwner(getKey(offset + MAKER_OWNER_OFFSET))
+                    .build();
+        }
+
+        private PublicKey getKey(int offset) {
+            final byte[] key = new byte[PUBLIC_KEY_SIZE];
+            buffer.get(offset, key);
+            return Arrays.equals(key, EMPTY_KEY) ? null : new PublicKey(key);
+        }
+
+        // Sealed segments are never appended to, the preallocated space is given back
+        private void seal() throws IOException {
+            buffer.force();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(offset(count));
+            }
+        }
+
+        private void copyTo(FileChannel channel) throws IOException {
+            channel.write(buffer.slice(HEADER_SIZE, count * RECORD_SIZE));
+        }
+    }
+
+    /**
+     * Opens (or creates) the tape stored in a directory, read-only if another process has it open.
+     *
+     * @param directory       one directory per market
+     * @param segmentCapacity records per segment
+     */
+    public TradeTape(Path directory, int segmentCapacity) throws IOException {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        Files.createDirectories(directory);
+
+        final FileChannel channel = FileChannel.open(
+                directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE
+        );
+        FileLock acquired;
+        try {
+            acquired = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            // Held by another tape in this process
+            acquired = null;
+        }
+        if (acquired == null) {
+            channel.close();
+        }
+        this.lock = acquired;
+        this.lockChannel = acquired != null ? channel : null;
+
+        final List<Segment> loaded;
+        try {
+            loaded = loadSegments();
+        } catch (IOException ex) {
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+            throw ex;
+        }
+
+        updateLast(loaded);
+        if (!loaded.isEmpty()) {
+            Segment last = loaded.get(loaded.size() - 1);
+            // Still preallocated, so it was open for appends when the process stopped
+            if (!isReadOnly() && last.capacity == segmentCapacity && last.count < last.capacity) {
+                activeSegment = last;
+            }
+        }
+        this.segments = List.copyOf(loaded);
+        this.nextRefreshMs = System.currentTimeMillis() + REFRESH_INTERVAL_MS;
+    }
+
+    // The writer deletes empty segments, a reader keeps them since the writer may still be filling them
+    private List<Segment> loadSegments() throws IOException {
+        final List<Segment> loaded = new ArrayList<>();
+        for (Path path : listSegmentPaths()) {
+            Segment segment = Segment.open(path, isReadOnly());
+            if (segment.count > 0 || isReadOnly()) {
+                loaded.add(segment);
+            } else {
+                Files.delete(path);
+            }
+        }
+        return loaded;
+    }
+
+    private List<Path> listSegmentPaths() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+    }
+
+    private void updateLast(List<Segment> loaded) {
+        for (int i = loaded.size() - 1; i >= 0; i--) {
+            Segment segment = loaded.get(i);
+            if (segment.count > 0) {
+                lastSeqNum = segment.getSeqNum(segment.count - 1);
+                lastTimestamp = segment.getTimestamp(segment.count - 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if another process held the directory's lock when this tape was opened
+     */
+    public boolean isReadOnly() {
+        return lock == null;
+    }
+
+    /**
+     * Appends a fill. Fills at or below the last stored sequence number are ignored, so replaying an event queue
+     * after a restart doesn't duplicate them. Timestamps are kept non-decreasing.
+     *
+     * @param trade fill to store
+     * @return true if it was stored, always false for a read-only tape
+     */
+    public synchronized boolean append(TradeRecord trade) throws IOException {
+        if (isReadOnly() || trade.getSeqNum() <= lastSeqNum) {
+            return false;
+        }
+
+        final long timestamp = Math.max(trade.getTimestamp(), lastTimestamp);
+        final TradeRecord record = timestamp == trade.getTimestamp() ?
+                trade :
+                trade.toBuilder().timestamp(timestamp).build();
+
+        if (activeSegment != null && (activeSegment.count == activeSegment.capacity ||
+                activeSegment.getTimestamp(0) / DAY_MS != timestamp / DAY_MS)) {
+            activeSegment.seal();
+            activeSegment = null;
+        }
+
+        if (activeSegment == null) {
+            activeSegment = Segment.create(segmentPath(record.getSeqNum()), segmentCapacity);
+            final List<Segment> rolled = new ArrayList<>(segments);
+            rolled.add(activeSegment);
+            segments = List.copyOf(rolled);
+        }
+
+        activeSegment.write(record);
+        lastSeqNum = record.getSeqNum();
+        lastTimestamp = timestamp;
+        return true;
+    }
+
+    public long getLastSeqNum() {
+        refreshIfDue();
+        synchronized (this) {
+            return lastSeqNum;
+        }
+    }
+
+    /**
+     * Picks up what the writing process did since the tape was opened or last refreshed: records appended to mapped
+     * segments are read from their counts, and the segments are mapped again if the writer rolled, compacted or
+     * deleted any. Queries call this at most once a second. No-op unless the tape is read-only.
+     */
+    public synchronized void refresh() throws IOException {
+        if (!isReadOnly()) {
+            return;
+        }
+        nextRefreshMs = System.currentTimeMillis() + REFRESH_INTERVAL_MS;
+
+        final List<Segment> current = segments;
+        if (listSegmentPaths().equals(current.stream().map(segment -> segment.path).toList())) {
+            current.forEach(Segment::readCount);
+            updateLast(current);
+        } else {
+            // Mappings of replaced or deleted files still hold their old contents, so nothing is reused
+            final List<Segment> loaded = loadSegments();
+            updateLast(loaded);
+            segments = List.copyOf(loaded);
+        }
+    }
+
+    private void refreshIfDue() {
+        if (!isReadOnly() || System.currentTimeMillis() < nextRefreshMs) {
+            return;
+        }
+        synchronized (this) {
+            if (System.currentTimeMillis() >= nextRefreshMs) {
+                try {
+                    refresh();
+                } catch (IOException ex) {
+                    // A segment the writer is creating or replacing, the current segments are served until the next
+                    // refresh
+                }
+            }
+        }
+    }
+
+    /**
+     * @param seqNum cursor, only fills with a higher sequence number are returned
+     * @param limit  maximum number of fills
+     * @return fills in sequence order
+     */
+    public List<TradeRecord> getTradesSince(long seqNum, int limit) {
+        refreshIfDue();
+        final List<TradeRecord> result = new ArrayList<>();
+        for (Segment segment : segments) {
+            int count = segment.count;
+            if (count == 0 || segment.getSeqNum(count - 1) <= seqNum) {
+                continue;
+            }
+
+            int low = 0, high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (segment.getSeqNum(mid) <= seqNum) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            for (int i = low; i < count && result.size() < limit; i++) {
+                result.add(segment.read(i));
+            }
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param fromMs start time, inclusive
+     * @param toMs   end time, exclusive
+     * @param limit  maximum number of fills
+     * @return fills in time order
+     */
+    public List<TradeRecord> getTradesBetween(long fromMs, long toMs, int limit) {
+        refreshIfDue();
+        final List<TradeRecord> result = new ArrayList<>();
+        for (Segment segment : segments) {
+            int count = segment.count;
+            if (count == 0 || segment.getTimestamp(count - 1) < fromMs) {
+                continue;
+            }
+            if (segment.getTimestamp(0) >= toMs) {
+                break;
+            }
+
+            int low = 0, high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (segment.getTimestamp(mid) < fromMs) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            for (int i = low; i < count && result.size() < limit; i++) {
+                if (segment.getTimestamp(i) >= toMs) {
+                    return result;
+                }
+                result.add(segment.read(i));
+            }
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes closed segments whose newest fill is older than the cutoff, then merges runs of adjacent closed
+     * segments that together fit in one segment (e.g. quiet markets that roll daily). Left to the writer if the tape
+     * is read-only.
+     *
+     * @param minTimestamp retention cutoff, ms
+     */
+    public synchronized void compact(long minTimestamp) throws IOException {
+        if (isReadOnly()) {
+            return;
+        }
+
+        final List<Segment> retained = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment != activeSegment && segment.getTimestamp(segment.count - 1) < minTimestamp) {
+                Files.deleteIfExists(segment.path);
+            } else {
+                retained.add(segment);
+            }
+        }
+
+        final List<Segment> compacted = new ArrayList<>();
+        List<Segment> run = new ArrayList<>();
+        int runCount = 0;
+        for (Segment segment : retained) {
+            if (segment == activeSegment || runCount + segment.count > segmentCapacity) {
+                compacted.add(merge(run));
+                run = new ArrayList<>();
+                runCount = 0;
+            }
+            if (segment == activeSegment) {
+                compacted.add(segment);
+            } else {
+                run.add(segment);
+                runCount += segment.count;
+            }
+        }
+        compacted.add(merge(run));
+        compacted.removeIf(segment -> segment == null);
+
+        segments = List.copyOf(compacted);
+    }
+
+    // Replaces a run of closed segments with one file named after the first. Readers holding the old list keep
+    // their mappings, which stay valid after the files are replaced.
+    private Segment merge(List<Segment> run) throws IOException {
+        if (run.isEmpty()) {
+            return null;
+        }
+        if (run.size() == 1) {
+            return run.get(0);
+        }
+
+        final Path target = run.get(0).path;
+        final Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            channel.position(HEADER_SIZE);
+            for (Segment segment : run) {
+                segment.copyTo(channel);
+                count += segment.count;
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(COUNT_OFFSET, count);
+            channel.write(header, 0);
+            channel.force(true);
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Segment segment : run.subList(1, run.size())) {
+            Files.deleteIfExists(segment.path);
+        }
+        return Segment.open(target, false);
+    }
+
+    /**
+     * Seals the open segment and releases the directory. The tape can't be appended to afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.seal();
+            activeSegment = null;
+        }
+        if (lockChannel != null && lockChannel.isOpen()) {
+            // Closing the channel releases the lock
+            lockChannel.close();
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    private Path segmentPath(long firstSeqNum) {
+        return directory.resolve(String.format("%020d%s", firstSeqNum, SEGMENT_SUFFIX));
+    }
+}
@@ -3,11 +3,17 @@ $.fn.DataTable.ext.pager.numbers_length = 5;
 
 var chartTitle = "", baseSymbol, quoteSymbol, baseLogo, quoteLogo, bidContextSlot, askContextSlot, marketTable;
 
+// Server-sent market updates, one connection for all views of the active market
+var marketStream, marketStreamHandlers = {depth: renderDepth};
+// Reconnect delay after the stream was closed for good, views poll in the meantime
+var marketStreamRetryMs = 2000, marketStreamRetryTimer;
+
 function formatToken(token) {
     if (!token.id) {
         return token.text;
     }
-    if (token.element.dataset.icon != null) {
+    // Search results carry the flag themselves, the pre-selected option has a data-icon attribute
+    if (token.icon || (token.element && token.element.dataset.icon != null)) {
         return $(
             '<span><img loading="lazy" src="/api/serum/token/' + token.id + '/icon"' +
             ' class="img-icon" /> ' + token.text + '</span>'
@@ -123,6 +129,7 @@ function loadMarkets(tokenId) {
 
 function setMarket(marketId) {
     activeMarketId = marketId; // starts order book loop
+    openMarketStream();
 
     loadMarketDetail();
 
@@ -227,110 +234,158 @@ function explorerLink(accountId) {
     return "<a target=_blank href=\"https://solana.fm/account/" + accountId + "\">" + accountId + "</a>";
 }
 
+// (Re)opens the stream for the active market with every registered view, falls back to polling if unsupported
+function openMarketStream() {
+    clearTimeout(marketStreamRetryTimer);
+    if (marketStream) {
+        marketStream.close();
+        marketStream = null;
+    }
+    if (!activeMarketId || typeof EventSource === 'undefined') {
+        return;
+    }
+
+    const topics = Object.keys(marketStreamHandlers);
+    const stream = new EventSource("/api/serum/stream?markets=" + activeMarketId + "&topics=" + topics.join(","));
+    marketStream = stream;
+    stream.onopen = function () {
+        marketStreamRetryMs = 2000;
+    };
+    // The browser retries dropped connections by itself, CLOSED means it gave up (e.g. a non-200 response)
+    stream.onerror = function () {
+        if (stream.readyState !== EventSource.CLOSED || stream !== marketStream) {
+            return;
+        }
+
+        marketStream = null;
+        marketStreamRetryTimer = setTimeout(openMarketStream, marketStreamRetryMs);
+        marketStreamRetryMs = Math.min(marketStreamRetryMs * 2, 60000);
+    };
+    topics.forEach(function (topic) {
+        stream.addEventListener(topic, function (event) {
+            const frame = JSON.parse(event.data);
+            if (frame.marketId === activeMarketId) {
+                marketStreamHandlers[topic](frame.data);
+            }
+        });
+    });
+}
+
+// Only polls when the market stream isn't available
 function updateDepthChart() {
-    if (activeMarketId) {
-        let apiUrl = "/api/serum/market/" + activeMarketId + "/depth";
+    if (activeMarketId && !marketStream) {
+        let apiUrl = "/api/serum/market/" + activeMarketId + "/depth?format=binary";
         // bids + asks
-        $.get({url: apiUrl, cache: true})
-            .done(function (newData) {
-                bidContextSlot = newData.bidContextSlot;
-                askContextSlot = newData.askContextSlot;
-
-                $(".marketContext").text("Slot: " + bidContextSlot)
-
-                // loop total bids, total each level, total all that
-                totalBids = newData.bids.reduce(
-                    (previousValue, currentValue) => {
-                        return previousValue + (currentValue[0] * currentValue[2]);
-                    },
-                    0
-                );
-
-                var totalBidsString = formatter.format(totalBids);
-                if (marketCurrencySymbol !== '$') {
-                    // trim $ if not a usdc pair, since formatter assumes money
-                    totalBidsString = totalBidsString.substring(1);
+        fetch(apiUrl)
+            .then(response => {
+                if (!response.ok) {
+                    throw new Error("Depth request failed: " + response.status);
                 }
+                return response.arrayBuffer();
+            })
+            .then(decodeBinaryDepth)
+            .then(renderDepth)
+            .catch(error => console.warn(error.message));
+    }
+}
 
-                if (newData.asks.length === 0) {
-                    totalAsks = 0;
-                } else {
-                    totalAsks = newData.asks[newData.asks.length - 1][1].toFixed(2);
-                }
+function renderDepth(newData) {
+    bidContextSlot = newData.bidContextSlot;
+    askContextSlot = newData.askContextSlot;
 
-                depthChart.series[0].setData(newData.bids);
-                depthChart.series[1].setData(newData.asks);
-                depthChart.xAxis[0].options.plotLines[0].value = newData.midpoint;
-                depthChart.xAxis[0].setExtremes(newData.midpoint - (newData.midpoint / 3), newData.midpoint + (newData.midpoint / 3));
-                depthChart.xAxis[0].update();
-
-                // text for agg totals
-                bidTotal ? bidTotal.destroy() : null;
-                bidTotal = depthChart.renderer.text(totalBidsString + " " + $("#quoteName").text(), 50, 133)
-                    .attr({
-                        zIndex: 5
-                    })
-                    .css({
-                        fontSize: '12px',
-                        color: '#00ff08'
-                    })
-                    .add();
-
-                var totalAsksString = formatter.format(totalAsks).substring(1);
-
-                askTotal ? askTotal.destroy() : null;
-                var xAskTotal = $("#container").width() * 0.75;
-                askTotal = depthChart.renderer.text(totalAsksString + " " + $("#baseName").text(), xAskTotal, 133)
-                    .attr({
-                        zIndex: 5
-                    })
-                    .css({
-                        fontSize: '12px',
-                        color: '#ff0000'
-                    })
-                    .add();
-
-                depthChart.redraw();
-                depthChart.hideLoading();
-
-                // update ticker spans
-                $(".livePrice").text(marketCurrencySymbol + newData.midpoint.toFixed(3) + " ");
-
-                // update price chart with a midpoint tick, if it has changed.
-                if (parseFloat(myChart.data.datasets[0].data[myChart.data.labels.length - 1]).toFixed(8) !== parseFloat(newData.midpoint).toFixed(8)) {
-                    // only update it if the midpoint changes
-
-                    if (activeMarketId !== lastLoadedChartId) {
-                        return;
-                    }
+    $(".marketContext").text("Slot: " + bidContextSlot)
 
-                    if (totalBids === 0) {
-                        return;
-                    }
+    // loop total bids, total each level, total all that
+    totalBids = newData.bids.reduce(
+        (previousValue, currentValue) => {
+            return previousValue + (currentValue[0] * currentValue[2]);
+        },
+        0
+    );
 
-                    addData(parseInt(myChart.data.labels[myChart.data.labels.length - 1]) + 1, newData.midpoint, true);
+    var totalBidsString = formatter.format(totalBids);
+    if (marketCurrencySymbol !== '$') {
+        // trim $ if not a usdc pair, since formatter assumes money
+        totalBidsString = totalBidsString.substring(1);
+    }
 
-                    // if over 1000 data points, start popping from the front
-                    if (myChart.data.labels.length >= 100) {
-                        myChart.data.datasets[0].data.shift();
-                        myChart.data.labels.shift();
-                        myChart.update();
-                    }
+    if (newData.asks.length === 0) {
+        totalAsks = 0;
+    } else {
+        totalAsks = newData.asks[newData.asks.length - 1][1].toFixed(2);
+    }
 
-                }
+    depthChart.series[0].setData(newData.bids);
+    depthChart.series[1].setData(newData.asks);
+    depthChart.xAxis[0].options.plotLines[0].value = newData.midpoint;
+    depthChart.xAxis[0].setExtremes(newData.midpoint - (newData.midpoint / 3), newData.midpoint + (newData.midpoint / 3));
+    depthChart.xAxis[0].update();
+
+    // text for agg totals
+    bidTotal ? bidTotal.destroy() : null;
+    bidTotal = depthChart.renderer.text(totalBidsString + " " + $("#quoteName").text(), 50, 133)
+        .attr({
+            zIndex: 5
+        })
+        .css({
+            fontSize: '12px',
+            color: '#00ff08'
+        })
+        .add();
+
+    var totalAsksString = formatter.format(totalAsks).substring(1);
+
+    askTotal ? askTotal.destroy() : null;
+    var xAskTotal = $("#container").width() * 0.75;
+    askTotal = depthChart.renderer.text(totalAsksString + " " + $("#baseName").text(), xAskTotal, 133)
+        .attr({
+            zIndex: 5
+        })
+        .css({
+            fontSize: '12px',
+            color: '#ff0000'
+        })
+        .add();
+
+    depthChart.redraw();
+    depthChart.hideLoading();
+
+    // update ticker spans
+    $(".livePrice").text(marketCurrencySymbol + newData.midpoint.toFixed(3) + " ");
+
+    // update price chart with a midpoint tick, if it has changed.
+    if (parseFloat(myChart.data.datasets[0].data[myChart.data.labels.length - 1]).toFixed(8) !== parseFloat(newData.midpoint).toFixed(8)) {
+        // only update it if the midpoint changes
+
+        if (activeMarketId !== lastLoadedChartId) {
+            return;
+        }
+
+        if (totalBids === 0) {
+            return;
+        }
+
+        addData(parseInt(myChart.data.labels[myChart.data.labels.length - 1]) + 1, newData.midpoint, true);
+
+        // if over 1000 data points, start popping from the front
+        if (myChart.data.labels.length >= 100) {
+            myChart.data.datasets[0].data.shift();
+            myChart.data.labels.shift();
+            myChart.update();
+        }
 
-                // paint midpoint once if no other data exists
-                if (isNaN(myChart.data.labels[0])) {
-                    myChart.data.labels.pop();
-                    myChart.data.datasets[0].data.pop();
-                    addData(0, newData.midpoint, true);
-                    addData(1, newData.midpoint, true); // 2 entries to draw a straight line
-                }
+    }
 
-                $(document).attr("title",
-                    marketCurrencySymbol + newData.midpoint.toFixed(3) + ' ' + chartTitle.replace(/\s/g, '') + ' -' +
-                    ' openbook-dex Market Data - OpenSerum'
-                );
-            });
+    // paint midpoint once if no other data exists
+    if (isNaN(myChart.data.labels[0])) {
+        myChart.data.labels.pop();
+        myChart.data.datasets[0].data.pop();
+        addData(0, newData.midpoint, true);
+        addData(1, newData.midpoint, true); // 2 entries to draw a straight line
     }
+
+    $(document).attr("title",
+        marketCurrencySymbol + newData.midpoint.toFixed(3) + ' ' + chartTitle.replace(/\s/g, '') + ' -' +
+        ' openbook-dex Market Data - OpenSerum'
+    );
 }
\ No newline at end of file
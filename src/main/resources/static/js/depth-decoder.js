@@ -0,0 +1,70 @@
+// Decoder for the binary depth format, see BinaryDepthEncoder.java for the layout.
+// Returns the same shape as the JSON depth response: bids/asks as ascending [price, cumulative, quantity] points.
+function decodeBinaryDepth(arrayBuffer) {
+    const view = new DataView(arrayBuffer);
+    let offset = 0;
+
+    const version = view.getUint8(offset);
+    offset += 1;
+    if (version !== 1) {
+        throw new Error("Unsupported depth format version: " + version);
+    }
+
+    const slot = Number(view.getBigUint64(offset, true));
+    offset += 8;
+    const priceScale = view.getFloat64(offset, true);
+    offset += 8;
+    const quantityScale = view.getFloat64(offset, true);
+    offset += 8;
+    const midpoint = view.getFloat32(offset, true);
+    offset += 4;
+    const bidLevelCount = view.getUint32(offset, true);
+    offset += 4;
+    const askLevelCount = view.getUint32(offset, true);
+    offset += 4;
+
+    // LEB128, multiplication instead of shifts so values above 32 bits stay exact
+    function readVarint() {
+        let value = 0, multiplier = 1, byte;
+        do {
+            byte = view.getUint8(offset++);
+            value += (byte & 0x7f) * multiplier;
+            multiplier *= 128;
+        } while (byte & 0x80);
+        return value;
+    }
+
+    function readLevels(count) {
+        const levels = new Array(count);
+        let priceLots = 0;
+        for (let i = 0; i < count; i++) {
+            const zigzag = readVarint();
+            priceLots += (zigzag % 2 === 0) ? zigzag / 2 : -(zigzag + 1) / 2;
+            levels[i] = [priceLots * priceScale, 0, readVarint() * quantityScale];
+        }
+        return levels;
+    }
+
+    const bids = readLevels(bidLevelCount);
+    const asks = readLevels(askLevelCount);
+
+    // Bids accumulate from the best (highest) price down, asks from the best (lowest) price up
+    let cumulative = 0;
+    for (let i = bids.length - 1; i >= 0; i--) {
+        cumulative += bids[i][2];
+        bids[i][1] = cumulative;
+    }
+    cumulative = 0;
+    for (let i = 0; i < asks.length; i++) {
+        cumulative += asks[i][2];
+        asks[i][1] = cumulative;
+    }
+
+    return {
+        bids: bids,
+        asks: asks,
+        midpoint: midpoint,
+        bidContextSlot: slot,
+        askContextSlot: slot
+    };
+}
@@ -30,6 +30,7 @@
     <!-- JavaScript Bundle with Popper -->
     <script src="static/js/bootstrap.bundle.min.js"></script>
     <script src="static/js/jquery.dataTables.min.js"></script>
+    <script src="static/js/depth-decoder.js"></script>
     <script src="static/js/custom.js"></script>
 
     <!-- inlined vars from controller -->
@@ -41,17 +42,28 @@
 
 
         $(document).ready(function () {
-            var options = $("#tokenSelect option");                    // Collect options
-            options.detach().sort(function (a, b) {               // Detach from select, then Sort
-                var at = $(a).data("rank");
-                var bt = $(b).data("rank");
-                return (at > bt) ? 1 : ((at < bt) ? -1 : 0);            // Tell the sort function how to order
-            });
-            options.appendTo("#tokenSelect");                          // Re-attach to select
-            $("#tokenSelect").val($("#tokenSelect option:first").val());
-            $("#tokenSelect").show();
-
-            $('#tokenSelect').select2({
+            // Tokens are searched server side, ranked by market activity
+            $('#tokenSelect').show().select2({
+                ajax: {
+                    url: '/api/serum/token/search',
+                    dataType: 'json',
+                    delay: 150,
+                    data: function (params) {
+                        return {q: params.term || '', page: params.page || 1};
+                    },
+                    processResults: function (data) {
+                        return {
+                            results: data.tokens.map(function (token) {
+                                return {
+                                    id: token.address,
+                                    text: token.symbol + ' (' + token.name + ') (' + token.address + ')',
+                                    icon: true
+                                };
+                            }),
+                            pagination: {more: data.page * data.pageSize < data.total}
+                        };
+                    }
+                },
                 templateResult: formatToken,
                 templateSelection: formatToken
             });
@@ -107,10 +119,11 @@
                         <h5 class="card-title" style="float: left; margin-right: 10px">Token</h5>
                         <p class="card-text">
                             <select class="form-control" id="tokenSelect" style="display: none; width: 75%;">
-                                <option th:each="token : ${tokens.values()}"
-                                        th:value="${token.address}"
-                                        th:attr="data-icon=${marketRankManager.getImage(token.address)},data-rank=${marketRankManager.getMarketRankOfToken(token.address)}"
-                                        th:text="${token.symbol} + ' (' + ${token.name} + ') (' + ${token.address} + ')'">
+                                <option th:if="${selectedToken != null}"
+                                        th:value="${selectedToken.address}"
+                                        th:attr="data-icon=${marketRankManager.getImage(selectedToken.address)}"
+                                        th:text="${selectedToken.symbol} + ' (' + ${selectedToken.name} + ') (' + ${selectedToken.address} + ')'"
+                                        selected>
                                 </option>
                             </select>
                         </p>
@@ -756,15 +769,36 @@
                 }
             });
 
+            // Tables are updated by the market stream, polling is only the fallback
+            marketStreamHandlers.bids = function (data) {
+                bidTable.clear().rows.add(data).draw(false);
+            };
+            marketStreamHandlers.asks = function (data) {
+                askTable.clear().rows.add(data).draw(false);
+            };
+            marketStreamHandlers.tradeHistory = function (data) {
+                tradeHistoryTable.clear().rows.add(data).draw(false);
+            };
+            openMarketStream();
+
             setInterval(function () {
+                if (marketStream) {
+                    return;
+                }
                 bidTable.ajax.url('/api/serum/market/' + activeMarketId + '/bids');
                 bidTable.ajax.reload();
             }, 400);
             setInterval(function () {
+                if (marketStream) {
+                    return;
+                }
                 askTable.ajax.url('/api/serum/market/' + activeMarketId + '/asks');
                 askTable.ajax.reload();
             }, 400);
             setInterval(function () {
+                if (marketStream) {
+                    return;
+                }
                 tradeHistoryTable.ajax.url('/api/serum/market/' + activeMarketId + '/tradeHistory');
                 tradeHistoryTable.ajax.reload();
             }, 2500);
@@ -86,10 +86,15 @@
                             <tbody>
                             <tr th:each="market : ${marketListings}">
                                 <td>
-                                    <img loading="lazy" width="20" height="20"
+                                    <!-- icons come from one sprite sheet, the icon endpoint is the fallback -->
+                                    <span th:if="${iconSprite.contains(market.baseMint)}"
+                                          th:style="${iconSprite.getStyle(market.baseMint, 20)} + 'border-radius: 5px;'"></span>
+                                    <img th:unless="${iconSprite.contains(market.baseMint)}" loading="lazy" width="20" height="20"
                                          th:src="${marketRankManager.getImage(market.baseMint)}"
                                          style="border-radius: 5px;">
-                                    <img loading="lazy" width="20" height="20"
+                                    <span th:if="${iconSprite.contains(market.quoteMint)}"
+                                          th:style="${iconSprite.getStyle(market.quoteMint, 20)} + 'border-radius: 5px;'"></span>
+                                    <img th:unless="${iconSprite.contains(market.quoteMint)}" loading="lazy" width="20" height="20"
                                          th:src="${marketRankManager.getImage(market.quoteMint)}"
                                          style="border-radius: 5px;">
                                     <span th:text="${marketRankManager.getMarketListingName(market)}"></span>
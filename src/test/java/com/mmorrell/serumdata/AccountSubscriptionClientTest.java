@@ -0,0 +1,177 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.client.AccountSubscriptionClient;
+import lombok.extern.slf4j.Slf4j;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.net.InetSocketAddress;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the subscription client against a local stand-in for the RPC node's websocket.
+ */
+@Slf4j
+public class AccountSubscriptionClientTest {
+
+    private static final PublicKey TEST_ACCOUNT = PublicKey.valueOf("8BnEgHoWFysVcuFFX7QztDmzuH8r5ZFvyP3sYwn1XTh6");
+    private static final byte[] TEST_DATA = new byte[]{1, 3, 3, 7};
+    private static final long TEST_SLOT = 150000000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private StandInServer server;
+
+    @BeforeEach
+    public void startServer() throws InterruptedException {
+        server = new StandInServer();
+        server.start();
+        assertTrue(server.started.await(5, TimeUnit.SECONDS));
+    }
+
+    @AfterEach
+    public void stopServer() throws InterruptedException {
+        server.stop(1000);
+    }
+
+    @Test
+    public void notificationAndFallbackTest() throws InterruptedException {
+        AccountSubscriptionClient client = new AccountSubscriptionClient(
+                "ws://localhost:" + server.getPort(),
+                objectMapper
+        );
+        assertTrue(client.isEnabled());
+        assertFalse(client.isLive(TEST_ACCOUNT));
+
+        CountDownLatch notified = new CountDownLatch(1);
+        AtomicLong notifiedSlot = new AtomicLong();
+        AtomicReference<byte[]> notifiedData = new AtomicReference<>();
+        client.subscribe(TEST_ACCOUNT, (account, slot, data) -> {
+            notifiedSlot.set(slot);
+            notifiedData.set(data);
+            notified.countDown();
+        });
+
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+        assertEquals(TEST_SLOT, notifiedSlot.get());
+        assertArrayEquals(TEST_DATA, notifiedData.get());
+        assertTrue(client.isLive(TEST_ACCOUNT));
+
+        // Socket drops, callers should go back to polling
+        server.getConnections().forEach(WebSocket::close);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.isLive(TEST_ACCOUNT) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(25);
+        }
+        assertFalse(client.isLive(TEST_ACCOUNT));
+    }
+
+    @Test
+    public void unsubscribeTest() throws InterruptedException {
+        AccountSubscriptionClient client = new AccountSubscriptionClient(
+                "ws://localhost:" + server.getPort(),
+                objectMapper
+        );
+
+        CountDownLatch notified = new CountDownLatch(1);
+        client.subscribe(TEST_ACCOUNT, (account, slot, data) -> notified.countDown());
+        // Already registered, not sent again
+        client.subscribe(TEST_ACCOUNT, (account, slot, data) -> fail("Should not replace the first listener"));
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+        assertTrue(client.isLive(TEST_ACCOUNT));
+
+        client.unsubscribe(TEST_ACCOUNT);
+        assertFalse(client.isLive(TEST_ACCOUNT));
+        assertTrue(server.unsubscribed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, server.subscriptionIds.get() - 100);
+        assertEquals(101, server.unsubscribedId.get());
+    }
+
+    @Test
+    public void disabledWithoutEndpointTest() {
+        AccountSubscriptionClient client = new AccountSubscriptionClient(null, objectMapper);
+        client.subscribe(TEST_ACCOUNT, (account, slot, data) -> fail("Should not be notified"));
+
+        assertFalse(client.isEnabled());
+        assertFalse(client.isConnected());
+        assertFalse(client.isLive(TEST_ACCOUNT));
+    }
+
+    // Confirms every accountSubscribe, then immediately pushes one notification for it.
+    private class StandInServer extends WebSocketServer {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final AtomicLong subscriptionIds = new AtomicLong(100);
+        private final CountDownLatch unsubscribed = new CountDownLatch(1);
+        private final AtomicLong unsubscribedId = new AtomicLong();
+
+        StandInServer() {
+            super(new InetSocketAddress("localhost", 0));
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            try {
+                JsonNode request = objectMapper.readTree(message);
+                if ("accountUnsubscribe".equals(request.get("method").asText())) {
+                    unsubscribedId.set(request.get("params").get(0).asLong());
+                    conn.send(String.format(
+                            "{\"jsonrpc\":\"2.0\",\"result\":true,\"id\":%d}",
+                            request.get("id").asLong()
+                    ));
+                    unsubscribed.countDown();
+                    return;
+                }
+                assertEquals("accountSubscribe", request.get("method").asText());
+                assertEquals(TEST_ACCOUNT.toBase58(), request.get("params").get(0).asText());
+
+                long subscriptionId = subscriptionIds.incrementAndGet();
+                conn.send(String.format(
+                        "{\"jsonrpc\":\"2.0\",\"result\":%d,\"id\":%d}",
+                        subscriptionId,
+                        request.get("id").asLong()
+                ));
+                conn.send(String.format(
+                        "{\"jsonrpc\":\"2.0\",\"method\":\"accountNotification\",\"params\":{\"result\":" +
+                                "{\"context\":{\"slot\":%d},\"value\":{\"data\":[\"%s\",\"base64\"]," +
+                                "\"executable\":false,\"lamports\":1,\"rentEpoch\":0}},\"subscription\":%d}}",
+                        TEST_SLOT,
+                        Base64.getEncoder().encodeToString(TEST_DATA),
+                        subscriptionId
+                ));
+            } catch (Exception ex) {
+                log.error(ex.getMessage());
+            }
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+            log.error(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serum.model.SerumUtils;
+import com.mmorrell.serumdata.model.MarketSnapshot;
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import com.mmorrell.serumdata.util.BinaryDepthEncoder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Encodes snapshots and reads them back with a port of static/js/depth-decoder.js, so the two stay in step.
+ */
+public class BinaryDepthEncoderTest {
+
+    private static final long SLOT = 150000000L;
+    private static final long BASE_LOT_SIZE = 100000L;
+    private static final long QUOTE_LOT_SIZE = 10L;
+
+    private Market market;
+
+    @BeforeEach
+    public void setUp() {
+        final ByteBuffer data = ByteBuffer.allocate(388).order(ByteOrder.LITTLE_ENDIAN);
+        data.putLong(349, BASE_LOT_SIZE);
+        data.putLong(357, QUOTE_LOT_SIZE);
+        market = Market.readMarket(data.array());
+        market.setBaseDecimals((byte) 9);
+        market.setQuoteDecimals((byte) 6);
+    }
+
+    @Test
+    public void roundTrip() {
+        // Best price first, prices and quantities above 32 bits need 5+ byte varints
+        final PriceLevelBook bids = book(
+                true,
+                new long[]{5_000_000_000L, 4_999_999_872L, 12L},
+                new long[]{1L, 300L, 1L << 40}
+        );
+        final PriceLevelBook asks = book(
+                false,
+                new long[]{5_000_000_128L, 6_000_000_000L},
+                new long[]{127L, 128L}
+        );
+
+        final Depth depth = decode(BinaryDepthEncoder.encode(snapshot(bids, asks)));
+
+        assertEquals(SLOT, depth.slot());
+        assertEquals(0.1, depth.priceScale(), 1e-12);
+        assertEquals(0.0001, depth.quantityScale(), 1e-12);
+        assertEquals((bids.getBestPrice() + asks.getBestPrice()) / 2, depth.midpoint());
+
+        // Ascending on both sides
+        assertLevels(List.of(
+                new double[]{12, 1L << 40},
+                new double[]{4_999_999_872L, 300},
+                new double[]{5_000_000_000L, 1}
+        ), depth.bids(), depth);
+        assertLevels(List.of(
+                new double[]{5_000_000_128L, 127},
+                new double[]{6_000_000_000L, 128}
+        ), depth.asks(), depth);
+
+        // Bids accumulate from the highest price down, asks from the lowest up
+        assertEquals((1L + 300L + (1L << 40)) * depth.quantityScale(), depth.bids().get(0)[1], 1e-3);
+        assertEquals(1 * depth.quantityScale(), depth.bids().get(2)[1], 1e-12);
+        assertEquals(127 * depth.quantityScale(), depth.asks().get(0)[1], 1e-12);
+        assertEquals(255 * depth.quantityScale(), depth.asks().get(1)[1], 1e-12);
+
+        // Decoded prices match the JSON response's
+        assertEquals(bids.getLevelPrices()[0], depth.bids().get(2)[0], 1e-3);
+        assertEquals(asks.getLevelPrices()[1], depth.asks().get(1)[0], 1e-3);
+    }
+
+    @Test
+    public void varintBytes() {
+        // zigzag(150) = 300 and quantity 300 both encode as 0xAC 0x02
+        final byte[] encoded = BinaryDepthEncoder.encode(snapshot(
+                PriceLevelBook.EMPTY,
+                book(false, new long[]{150L}, new long[]{300L})
+        ));
+
+        final int levels = 1 + 8 + 8 + 8 + 4 + 4 + 4;
+        assertEquals(levels + 4, encoded.length);
+        assertEquals((byte) 0xAC, encoded[levels]);
+        assertEquals((byte) 0x02, encoded[levels + 1]);
+        assertEquals((byte) 0xAC, encoded[levels + 2]);
+        assertEquals((byte) 0x02, encoded[levels + 3]);
+    }
+
+    @Test
+    public void negativeDeltas() {
+        // The decoder doesn't rely on ordering, levels that step down are zigzag encoded deltas below zero
+        final PriceLevelBook asks = book(
+                false,
+                new long[]{1_000_000L, 64L, 1L << 35, 63L},
+                new long[]{1L, 2L, 3L, 4L}
+        );
+
+        final Depth depth = decode(BinaryDepthEncoder.encode(snapshot(PriceLevelBook.EMPTY, asks)));
+
+        assertLevels(List.of(
+                new double[]{1_000_000L, 1},
+                new double[]{64L, 2},
+                new double[]{1L << 35, 3},
+                new double[]{63L, 4}
+        ), depth.asks(), depth);
+    }
+
+    @Test
+    public void emptySide() {
+        final Depth depth = decode(BinaryDepthEncoder.encode(snapshot(
+                book(true, new long[]{200L, 100L}, new long[]{5L, 6L}),
+                PriceLevelBook.EMPTY
+        )));
+
+        assertTrue(depth.asks().isEmpty());
+        assertLevels(List.of(
+                new double[]{100L, 6},
+                new double[]{200L, 5}
+        ), depth.bids(), depth);
+
+        final Depth empty = decode(BinaryDepthEncoder.encode(snapshot(PriceLevelBook.EMPTY, PriceLevelBook.EMPTY)));
+        assertTrue(empty.bids().isEmpty());
+        assertTrue(empty.asks().isEmpty());
+        assertEquals(0.0f, empty.midpoint());
+    }
+
+    private static void assertLevels(List<double[]> expectedLots, List<double[]> levels, Depth depth) {
+        assertEquals(expectedLots.size(), levels.size());
+        for (int i = 0; i < levels.size(); i++) {
+            assertEquals(expectedLots.get(i)[0], levels.get(i)[0] / depth.priceScale(), 1e-3);
+            assertEquals(expectedLots.get(i)[1], levels.get(i)[2] / depth.quantityScale(), 1e-3);
+        }
+    }
+
+    private MarketSnapshot snapshot(PriceLevelBook bids, PriceLevelBook asks) {
+        return MarketSnapshot.builder()
+                .market(market)
+                .events(List.of())
+                .bidLevels(bids)
+                .askLevels(asks)
+                .slot(SLOT)
+                .revision(1L)
+                .build();
+    }
+
+    private PriceLevelBook book(boolean bid, long[] priceLots, long[] quantityLots) {
+        final float[] prices = new float[priceLots.length];
+        for (int i = 0; i < priceLots.length; i++) {
+            prices[i] = SerumUtils.priceLotsToNumber(
+                    priceLots[i],
+                    market.getBaseDecimals(),
+                    market.getQuoteDecimals(),
+                    market.getBaseLotSize(),
+                    market.getQuoteLotSize()
+            );
+        }
+
+        return PriceLevelBook.builder()
+                .bid(bid)
+                .orderPrices(new float[0])
+                .orderQuantities(new float[0])
+                .orderPercents(new float[0])
+                .orderOwners(new byte[0])
+                .levelPrices(prices)
+                .levelPriceLots(priceLots)
+                .levelQuantityLots(quantityLots)
+                .levelQuantities(new float[priceLots.length])
+                .levelCumulativeQuantities(new float[priceLots.length])
+                .levelCumulativeNotionals(new float[priceLots.length])
+                .build();
+    }
+
+    // Levels are [price, cumulative quantity, quantity], as in the JSON depth response
+    private record Depth(long slot,
+                         double priceScale,
+                         double quantityScale,
+                         float midpoint,
+                         List<double[]> bids,
+                         List<double[]> asks) {
+    }
+
+    // Same steps as decodeBinaryDepth, including its double arithmetic
+    private static Depth decode(byte[] encoded) {
+        final ByteBuffer view = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(BinaryDepthEncoder.VERSION, view.get());
+        final long slot = view.getLong();
+        final double priceScale = view.getDouble();
+        final double quantityScale = view.getDouble();
+        final float midpoint = view.getFloat();
+        final int bidLevelCount = view.getInt();
+        final int askLevelCount = view.getInt();
+
+        final List<double[]> bids = readLevels(view, bidLevelCount, priceScale, quantityScale);
+        final List<double[]> asks = readLevels(view, askLevelCount, priceScale, quantityScale);
+        assertFalse(view.hasRemaining());
+
+        double cumulative = 0;
+        for (int i = bids.size() - 1; i >= 0; i--) {
+            cumulative += bids.get(i)[2];
+            bids.get(i)[1] = cumulative;
+        }
+        cumulative = 0;
+        for (double[] ask : asks) {
+            cumulative += ask[2];
+            ask[1] = cumulative;
+        }
+
+        return new Depth(slot, priceScale, quantityScale, midpoint, bids, asks);
+    }
+
+    private static List<double[]> readLevels(ByteBuffer view, int count, double priceScale, double quantityScale) {
+        final double[][] levels = new double[count][];
+        double priceLots = 0;
+        for (int i = 0; i < count; i++) {
+            final double zigzag = readVarint(view);
+            priceLots += (zigzag % 2 == 0) ? zigzag / 2 : -(zigzag + 1) / 2;
+            levels[i] = new double[]{priceLots * priceScale, 0, readVarint(view) * quantityScale};
+        }
+        return List.of(levels);
+    }
+
+    private static double readVarint(ByteBuffer view) {
+        double value = 0;
+        double multiplier = 1;
+        int b;
+        do {
+            b = view.get() & 0xFF;
+            value += (b & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,61 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.Candle;
+import com.mmorrell.serumdata.model.CandleResolution;
+import com.mmorrell.serumdata.util.CandleAggregator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CandleAggregatorTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void minuteBarsRollUpIntoFiveMinuteBars() {
+        final CandleAggregator aggregator = new CandleAggregator();
+        // Minutes 0-6, price goes up one per minute, two fills per minute
+        long seqNum = 0;
+        for (int minute = 0; minute < 7; minute++) {
+            aggregator.add(++seqNum, minute * MINUTE, 10 + minute, 1);
+            aggregator.add(++seqNum, minute * MINUTE + 30_000, 10.5f + minute, 2);
+        }
+        // Replayed fill is ignored
+        aggregator.add(seqNum, 6 * MINUTE + 40_000, 100, 100);
+
+        final List<Candle> minutes = aggregator.getCandles(CandleResolution.ONE_MINUTE, 100);
+        assertEquals(7, minutes.size());
+        assertEquals(6 * MINUTE, minutes.get(6).getTime());
+        assertEquals(16f, minutes.get(6).getOpen());
+        assertEquals(16.5f, minutes.get(6).getClose());
+        assertEquals(3.0, minutes.get(6).getVolume(), 0.0001);
+
+        final List<Candle> fiveMinutes = aggregator.getCandles(CandleResolution.FIVE_MINUTES, 100);
+        assertEquals(2, fiveMinutes.size());
+        assertEquals(0, fiveMinutes.get(0).getTime());
+        assertEquals(10f, fiveMinutes.get(0).getOpen());
+        assertEquals(14.5f, fiveMinutes.get(0).getHigh());
+        assertEquals(10f, fiveMinutes.get(0).getLow());
+        assertEquals(14.5f, fiveMinutes.get(0).getClose());
+        assertEquals(15.0, fiveMinutes.get(0).getVolume(), 0.0001);
+        // Still open, minute 6 hasn't been rolled up yet
+        assertEquals(5 * MINUTE, fiveMinutes.get(1).getTime());
+        assertEquals(15f, fiveMinutes.get(1).getOpen());
+        assertEquals(16.5f, fiveMinutes.get(1).getClose());
+        assertEquals(6.0, fiveMinutes.get(1).getVolume(), 0.0001);
+
+        final List<Candle> hours = aggregator.getCandles(CandleResolution.ONE_HOUR, 100);
+        assertEquals(1, hours.size());
+        assertEquals(10f, hours.get(0).getOpen());
+        assertEquals(16.5f, hours.get(0).getHigh());
+        assertEquals(16.5f, hours.get(0).getClose());
+        assertEquals(21.0, hours.get(0).getVolume(), 0.0001);
+
+        assertEquals(List.of(6 * MINUTE), aggregator.getCandles(CandleResolution.ONE_MINUTE, 1).stream()
+                .map(Candle::getTime)
+                .toList());
+    }
+}
@@ -0,0 +1,86 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.MarketEvent;
+import com.mmorrell.serumdata.util.EventQueueTail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventQueueTailTest {
+
+    private static final int EVENTS_OFFSET = 37;
+    private static final int EVENT_SIZE = 88;
+    private static final int CAPACITY = 4;
+
+    private Market market;
+
+    @BeforeEach
+    public void setUp() {
+        market = Market.readMarket(new byte[388]);
+        market.setBaseDecimals((byte) 6);
+        market.setQuoteDecimals((byte) 6);
+    }
+
+    /**
+     * Event queue with the given seqNum range still in the queue, stored from ring position head.
+     * Every event is a taker bid fill of seqNum base units paying 2x quote units (price 2).
+     */
+    private static byte[] buildEventQueue(long head, long firstSeqNum, long nextSeqNum) {
+        final ByteBuffer queue = ByteBuffer.allocate(EVENTS_OFFSET + CAPACITY * EVENT_SIZE + 7)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        queue.putLong(13, head);
+        queue.putLong(21, nextSeqNum - firstSeqNum);
+        queue.putLong(29, nextSeqNum);
+
+        for (long seqNum = firstSeqNum; seqNum < nextSeqNum; seqNum++) {
+            int offset = (int) (EVENTS_OFFSET + ((head + seqNum - firstSeqNum) % CAPACITY) * EVENT_SIZE);
+            queue.put(offset, (byte) (1 | 4)); // fill, bid
+            queue.putLong(offset + 8, seqNum * 1_000_000); // base released
+            queue.putLong(offset + 16, seqNum * 2_000_000); // quote paid
+            queue.put(offset + 48, (byte) seqNum); // open orders
+        }
+
+        return queue.array();
+    }
+
+    @Test
+    public void onlyNewEventsAreAppended() {
+        final EventQueueTail tail = new EventQueueTail(market);
+
+        assertEquals(List.of(1L, 2L, 3L), seqNums(tail.append(buildEventQueue(0, 1, 4))));
+        List<MarketEvent> events = tail.getEvents();
+        assertEquals(List.of(3L, 2L, 1L), events.stream().map(MarketEvent::getSeqNum).toList());
+        assertEquals(2.0f, events.get(0).getPrice(), 0.0001f);
+        assertEquals(3.0f, events.get(0).getQuantity(), 0.0001f);
+        assertTrue(events.get(0).isFill());
+        assertTrue(events.get(0).isBid());
+
+        // Crank consumed 1 and 2, then 4 and 5 were pushed and wrapped around the ring
+        assertEquals(List.of(4L, 5L), seqNums(tail.append(buildEventQueue(2, 3, 6))));
+        events = tail.getEvents();
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), events.stream().map(MarketEvent::getSeqNum).toList());
+        assertEquals(5.0f, events.get(0).getQuantity(), 0.0001f);
+        assertEquals(5, events.get(0).getOpenOrders().toByteArray()[0]);
+    }
+
+    @Test
+    public void olderDataAddsNothing() {
+        final EventQueueTail tail = new EventQueueTail(market);
+
+        tail.append(buildEventQueue(1, 2, 6));
+        final List<MarketEvent> events = tail.getEvents();
+        assertTrue(tail.append(buildEventQueue(0, 1, 4)).isEmpty());
+        assertSame(events, tail.getEvents());
+        assertEquals(4, events.size());
+    }
+
+    private static List<Long> seqNums(List<MarketEvent> events) {
+        return events.stream().map(MarketEvent::getSeqNum).toList();
+    }
+}
@@ -0,0 +1,66 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.util.IconSpriteSheet;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IconSpriteSheetTest {
+
+    private static final PublicKey USDC = new PublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v");
+    private static final PublicKey SRM = new PublicKey("SRMuApVNdxXokk5GT7XD5cUUgXMBCoAz2LHeuAoKWRt");
+    private static final PublicKey BROKEN = new PublicKey("So11111111111111111111111111111111111111112");
+
+    @Test
+    public void iconsAreDownscaledIntoOneSheet() throws IOException {
+        final Map<PublicKey, ByteBuffer> icons = new LinkedHashMap<>();
+        icons.put(USDC, png(Color.BLUE, 256));
+        icons.put(BROKEN, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        icons.put(SRM, png(Color.RED, 64));
+
+        final IconSpriteSheet sheet = IconSpriteSheet.build(icons, 32);
+        assertEquals(2, sheet.size());
+        assertTrue(sheet.contains(USDC));
+        assertFalse(sheet.contains(BROKEN));
+        assertTrue(sheet.getImageUrl().contains(sheet.getHash()));
+
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(sheet.getImage()));
+        assertEquals(64, image.getWidth());
+        assertEquals(32, image.getHeight());
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(16, 16));
+        assertEquals(Color.RED.getRGB(), image.getRGB(48, 16));
+
+        final JsonNode index = new ObjectMapper().readTree(sheet.getIndex());
+        assertEquals(32, index.get("icons").get(SRM.toBase58()).get(0).asInt());
+        assertEquals(sheet.getImageUrl(), index.get("image").asText());
+        assertTrue(sheet.getStyle(SRM, 20).contains("-20px 0px/40px 20px"));
+
+        // Same icons, same URL
+        assertEquals(sheet.getHash(), IconSpriteSheet.build(icons, 32).getHash());
+    }
+
+    private static ByteBuffer png(Color color, int size) throws IOException {
+        final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, size, size);
+        graphics.dispose();
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+}
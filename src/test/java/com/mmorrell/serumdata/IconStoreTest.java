@@ -0,0 +1,63 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.IconStore;
+import com.mmorrell.serumdata.util.IconStore.Icon;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IconStoreTest {
+
+    private static final PublicKey USDC = new PublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v");
+    private static final PublicKey SRM = new PublicKey("SRMuApVNdxXokk5GT7XD5cUUgXMBCoAz2LHeuAoKWRt");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void iconsSurviveReopenAndLatestWins() throws IOException {
+        final Path path = directory.resolve("icons.dat");
+        final Icon first;
+        try (IconStore store = new IconStore(path)) {
+            assertTrue(store.get(USDC).isEmpty());
+            first = store.put(USDC, 1, "image/png", new byte[]{1, 2, 3});
+            store.put(SRM, 2, "image/svg+xml", new byte[]{4, 5});
+            store.put(USDC, 3, "image/jpeg", new byte[]{6, 7, 8, 9});
+            assertArrayEquals(new byte[]{6, 7, 8, 9}, toArray(store.get(USDC).orElseThrow().data()));
+        }
+
+        try (IconStore store = new IconStore(path)) {
+            assertEquals(2, store.getIcons().size());
+
+            final Icon usdc = store.get(USDC).orElseThrow();
+            assertEquals("image/jpeg", usdc.contentType());
+            assertEquals(3, usdc.sourceHash());
+            assertArrayEquals(new byte[]{6, 7, 8, 9}, toArray(usdc.data()));
+            assertNotEquals(first.getETag(), usdc.getETag());
+
+            final Icon srm = store.get(SRM).orElseThrow();
+            assertEquals("image/svg+xml", srm.contentType());
+            assertArrayEquals(new byte[]{4, 5}, toArray(srm.data()));
+
+            // Appends continue after the existing records
+            store.put(SRM, 4, "image/png", new byte[]{10});
+        }
+
+        try (IconStore store = new IconStore(path)) {
+            assertArrayEquals(new byte[]{10}, toArray(store.get(SRM).orElseThrow().data()));
+            assertArrayEquals(new byte[]{6, 7, 8, 9}, toArray(store.get(USDC).orElseThrow().data()));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serum.model.Market;
+import com.mmorrell.serumdata.model.MarketListing;
+import com.mmorrell.serumdata.model.MarketRankings;
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.util.MarketUtil;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketRankingsTest {
+
+    private static final PublicKey SRM = key(1);
+    private static final PublicKey FAKE_SRM = key(2);
+    private static final PublicKey USDT = MarketUtil.USDT_MINT;
+    private static final PublicKey USDC = MarketUtil.USDC_MINT;
+
+    @Test
+    public void indexesAnswerRankAndMostActiveLookups() {
+        final Market srmUsdt = market(10, SRM, USDT, 1000, 5);
+        final Market srmUsdc = market(11, SRM, USDC, 900, 50);
+        final Market smallSrmUsdc = market(12, SRM, USDC, 100, 1);
+        final Market fakeSrmUsdc = market(13, FAKE_SRM, USDC, 5000, 10);
+
+        final List<MarketListing> listings = List.of(
+                listing(srmUsdc),
+                listing(fakeSrmUsdc),
+                listing(srmUsdt)
+        );
+        final MarketRankings rankings = new MarketRankings(
+                listings,
+                List.of(srmUsdt, srmUsdc, smallSrmUsdc, fakeSrmUsdc),
+                Map.of(SRM, token(SRM, "SRM"), FAKE_SRM, token(FAKE_SRM, "srm"))
+        );
+
+        assertEquals(0, rankings.getTokenRank(SRM).orElseThrow());
+        assertEquals(1, rankings.getTokenRank(FAKE_SRM).orElseThrow());
+        // Only ever quoted, ranks after every base mint
+        assertEquals(3, rankings.getTokenRank(USDC).orElseThrow());
+        assertTrue(rankings.getTokenRank(key(99)).isEmpty());
+
+        // Most base deposits is USDT quoted, the runner up is USDC quoted and preferred
+        assertEquals(srmUsdc, rankings.getMostActiveMarket(SRM).orElseThrow());
+        assertEquals(srmUsdt, rankings.getMostActiveMarket(SRM, USDT).orElseThrow());
+        assertEquals(srmUsdc, rankings.getMostActiveMarket(SRM, USDC).orElseThrow());
+        assertTrue(rankings.getMostActiveMarket(USDC, SRM).isEmpty());
+
+        // Both tokens claim SRM, the one whose market accrued more quote fees wins
+        assertEquals(SRM, rankings.getMostActiveTokenBySymbol("srm").orElseThrow().getPublicKey());
+    }
+
+    private static Market market(int id, PublicKey baseMint, PublicKey quoteMint, long baseDeposits, long quoteFees) {
+        final ByteBuffer data = ByteBuffer.allocate(388).order(ByteOrder.LITTLE_ENDIAN);
+        data.put(13, key(id).toByteArray());
+        data.put(53, baseMint.toByteArray());
+        data.put(85, quoteMint.toByteArray());
+        data.putLong(149, baseDeposits);
+        data.putLong(205, quoteFees);
+        return Market.readMarket(data.array());
+    }
+
+    private static MarketListing listing(Market market) {
+        return new MarketListing("", market.getOwnAddress(), 0, 0, 0, 0, market.getBaseMint(), market.getQuoteMint());
+    }
+
+    private static Token token(PublicKey mint, String symbol) {
+        return Token.builder()
+                .publicKey(mint)
+                .address(mint.toBase58())
+                .symbol(symbol)
+                .build();
+    }
+
+    private static PublicKey key(int seed) {
+        final byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return new PublicKey(key);
+    }
+}
@@ -0,0 +1,117 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.OwnerCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OwnerCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private static PublicKey randomKey(Random random) {
+        final byte[] key = new byte[32];
+        random.nextBytes(key);
+        return new PublicKey(key);
+    }
+
+    @Test
+    public void evictsOldestEntriesOnceFull() {
+        final OwnerCache cache = new OwnerCache(32 * 64);
+        final Random random = new Random(1);
+        final PublicKey[] ooas = new PublicKey[10_000];
+        final PublicKey[] owners = new PublicKey[ooas.length];
+        for (int i = 0; i < ooas.length; i++) {
+            ooas[i] = randomKey(random);
+            owners[i] = randomKey(random);
+            cache.put(ooas[i], owners[i]);
+        }
+
+        assertTrue(cache.size() <= 32 * 64);
+        // The newest entry of every segment survives, and lookups still find everything that is left
+        assertEquals(owners[ooas.length - 1], cache.get(ooas[ooas.length - 1]));
+        int found = 0;
+        for (int i = 0; i < ooas.length; i++) {
+            PublicKey owner = cache.get(ooas[i]);
+            if (owner != null) {
+                assertEquals(owners[i], owner);
+                found++;
+            }
+        }
+        assertEquals(cache.size(), found);
+        assertNull(cache.get(ooas[0]));
+
+        // Metrics counters
+        assertEquals(ooas.length, cache.getPutCount());
+        assertEquals(ooas.length - cache.size(), cache.getEvictionCount());
+        assertEquals(found + 1, cache.getHitCount());
+        assertEquals(ooas.length - found + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void growsSegmentsAndCountsOnlyGets() {
+        final OwnerCache cache = new OwnerCache(32 * 1000);
+        final Random random = new Random(3);
+        final PublicKey[] ooas = new PublicKey[20_000];
+        final PublicKey[] owners = new PublicKey[ooas.length];
+        for (int i = 0; i < ooas.length; i++) {
+            ooas[i] = randomKey(random);
+            owners[i] = randomKey(random);
+            cache.put(ooas[i], owners[i]);
+        }
+
+        // Below the maximum size, nothing is evicted while segments grow
+        assertEquals(ooas.length, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        for (int i = 0; i < ooas.length; i++) {
+            assertTrue(cache.containsKey(ooas[i]));
+        }
+        assertFalse(cache.containsKey(randomKey(random)));
+
+        // Packed keys, as in a book's order owners
+        final byte[] packed = new byte[3 * 32];
+        System.arraycopy(ooas[7].toByteArray(), 0, packed, 0, 32);
+        System.arraycopy(randomKey(random).toByteArray(), 0, packed, 32, 32);
+        System.arraycopy(ooas[19_999].toByteArray(), 0, packed, 64, 32);
+        assertTrue(cache.containsKey(packed, 0));
+        assertFalse(cache.containsKey(packed, 32));
+        assertTrue(cache.containsKey(packed, 64));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+
+        for (int i = 0; i < ooas.length; i++) {
+            assertEquals(owners[i], cache.get(ooas[i]));
+        }
+        assertEquals(ooas.length, cache.getHitCount());
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        final OwnerCache cache = new OwnerCache(1000);
+        final Random random = new Random(2);
+        final PublicKey ooa = randomKey(random);
+        final PublicKey owner = randomKey(random);
+        cache.put(ooa, owner);
+        for (int i = 0; i < 100; i++) {
+            cache.put(randomKey(random), randomKey(random));
+        }
+        assertTrue(cache.isDirty());
+
+        final Path snapshot = directory.resolve("owners.bin");
+        cache.save(snapshot);
+        assertFalse(cache.isDirty());
+
+        final OwnerCache loaded = new OwnerCache(1000);
+        assertEquals(101, loaded.load(snapshot));
+        assertEquals(owner, loaded.get(ooa));
+        assertEquals(cache.size(), loaded.size());
+        assertFalse(loaded.isDirty());
+    }
+}
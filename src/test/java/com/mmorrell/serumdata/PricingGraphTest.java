@@ -0,0 +1,101 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.PriceLevelBook;
+import com.mmorrell.serumdata.util.PricingGraph;
+import com.mmorrell.serumdata.util.PricingGraph.Edge;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PricingGraphTest {
+
+    private static final PublicKey USDC = key(1);
+    private static final PublicKey SOL = key(2);
+    private static final PublicKey MSOL = key(3);
+    private static final PublicKey RAY = key(4);
+    private static final PublicKey DUST = key(5);
+    private static final Map<PublicKey, Float> ANCHORS = Map.of(USDC, 1f);
+
+    @Test
+    public void edgeUsesMidPriceAndDepthNearIt() {
+        final PriceLevelBook bids = book(new float[]{99, 98, 80}, new float[]{990, 1970, 9970});
+        final PriceLevelBook asks = book(new float[]{101, 103, 120}, new float[]{505, 1030, 5000});
+
+        final Edge edge = PricingGraph.Edge.of(SOL, USDC, bids, asks).orElseThrow();
+        assertEquals(100f, edge.midPrice(), 0.0001f);
+        // Levels past 5% of the mid price don't count, the thinner side wins
+        assertEquals(1030, edge.liquidity(), 0.0001);
+
+        // Crossed and one-sided books have no mid price
+        assertTrue(PricingGraph.Edge.of(SOL, USDC, asks, bids).isEmpty());
+        assertTrue(PricingGraph.Edge.of(SOL, USDC, bids, book(new float[0], new float[0])).isEmpty());
+    }
+
+    @Test
+    public void pricesSpreadAcrossHops() {
+        final Map<PublicKey, Float> prices = PricingGraph.solve(
+                List.of(
+                        new Edge(SOL, USDC, 20f, 100_000),
+                        // quote per base: 1 mSOL = 1.1 SOL
+                        new Edge(MSOL, SOL, 1.1f, 1_000),
+                        new Edge(RAY, MSOL, 0.01f, 500)
+                ),
+                ANCHORS,
+                4,
+                100
+        );
+
+        assertEquals(1f, prices.get(USDC));
+        assertEquals(20f, prices.get(SOL), 0.0001f);
+        assertEquals(22f, prices.get(MSOL), 0.0001f);
+        assertEquals(0.22f, prices.get(RAY), 0.0001f);
+
+        // Too many hops away
+        assertFalse(PricingGraph.solve(
+                List.of(new Edge(SOL, USDC, 20f, 100_000), new Edge(MSOL, SOL, 1.1f, 1_000)),
+                ANCHORS,
+                1,
+                100
+        ).containsKey(MSOL));
+    }
+
+    @Test
+    public void liquidityWeightsPathsAndDropsDust() {
+        final Map<PublicKey, Float> prices = PricingGraph.solve(
+                List.of(
+                        new Edge(SOL, USDC, 20f, 100_000),
+                        // Direct market, $3000 deep
+                        new Edge(RAY, USDC, 1.0f, 3_000),
+                        // Through SOL, 50 SOL = $1000 deep
+                        new Edge(RAY, SOL, 0.06f, 50),
+                        // $10 deep, ignored
+                        new Edge(DUST, USDC, 5f, 10)
+                ),
+                ANCHORS,
+                4,
+                100
+        );
+
+        // (1.0 * 3000 + 1.2 * 1000) / 4000
+        assertEquals(1.05f, prices.get(RAY), 0.0001f);
+        assertFalse(prices.containsKey(DUST));
+    }
+
+    private static PriceLevelBook book(float[] levelPrices, float[] levelCumulativeNotionals) {
+        return PriceLevelBook.builder()
+                .levelPrices(levelPrices)
+                .levelCumulativeNotionals(levelCumulativeNotionals)
+                .build();
+    }
+
+    private static PublicKey key(int seed) {
+        final byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return new PublicKey(key);
+    }
+}
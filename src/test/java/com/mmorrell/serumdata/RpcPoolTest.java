@@ -0,0 +1,193 @@
+package com.mmorrell.serumdata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mmorrell.serumdata.client.RpcPool;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.rpc.RpcClient;
+import org.p2p.solanaj.rpc.RpcException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RpcPoolTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
+
+    private final List<StandInNode> nodes = new ArrayList<>();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RpcPool pool;
+
+    @AfterEach
+    public void stop() {
+        if (pool != null) {
+            pool.close();
+        }
+        nodes.forEach(node -> node.server.stop(0));
+    }
+
+    @Test
+    public void slowAccountReadsAreHedgedToTheNextNode() throws Exception {
+        final StandInNode slow = node("slow", 1000L);
+        final StandInNode fast = node("fast", 1000L);
+        slow.delays.put("getAccountInfo", 2000L);
+        pool = new RpcPool(List.of(slow.endpoint(), fast.endpoint()), 0L, 25L, meterRegistry);
+
+        final long start = System.currentTimeMillis();
+        assertEquals("fast", pool.call("getAccountInfo", List.of("account"), String.class));
+        assertTrue(System.currentTimeMillis() - start < 1500L);
+        assertEquals(1.0, meterRegistry.get("serum.rpc.hedged").tag("method", "getAccountInfo").counter().count());
+    }
+
+    @Test
+    public void failedCallsFailOverToTheNextNode() throws Exception {
+        final StandInNode broken = node("broken", 1000L);
+        final StandInNode healthy = node("healthy", 1000L);
+        broken.errors.add("getProgramAccounts");
+        pool = new RpcPool(List.of(broken.endpoint(), healthy.endpoint()), 0L, 25L, meterRegistry);
+
+        assertEquals("healthy", pool.call("getProgramAccounts", List.of(), String.class));
+        assertEquals(1L, meterRegistry.get("serum.rpc.requests")
+                .tags("method", "getProgramAccounts", "endpoint", "0", "outcome", "error")
+                .timer()
+                .count());
+        broken.errors.clear();
+        // Not ejected after a single failure
+        assertTrue(pool.getStatus().get(0).healthy());
+    }
+
+    @Test
+    public void laggingNodesAreEjectedUntilTheyCatchUp() throws Exception {
+        final StandInNode lagging = node("lagging", 900L);
+        final StandInNode current = node("current", 1000L);
+        pool = new RpcPool(List.of(lagging.endpoint(), current.endpoint()), 0L, 25L, meterRegistry);
+
+        pool.pollSlots();
+        assertFalse(pool.getStatus().get(0).healthy());
+        assertEquals("current", pool.call("getBalance", List.of(), String.class));
+
+        lagging.slot = 990L;
+        pool.pollSlots();
+        assertTrue(pool.getStatus().get(0).healthy());
+    }
+
+    @Test
+    public void solanajClientsAreCalledThroughTheirEndpoint() throws Exception {
+        final StandInNode node = node("solanaj", 1000L);
+        pool = new RpcPool(List.of(RpcPool.Endpoint.of(new RpcClient(node.url()))), 0L, 25L, meterRegistry);
+
+        // getSlot's result is read as a Long by solanaj's own deserializer
+        pool.pollSlots();
+        assertEquals(1000L, pool.getStatus().get(0).slot());
+        assertTrue(pool.getStatus().get(0).healthy());
+        assertEquals(1000L, pool.call("getSlot", List.of(), Long.class));
+        assertEquals("solanaj", pool.call("getAccountInfo", List.of("account"), String.class));
+        assertEquals(node.url(), pool.getEndpoint());
+    }
+
+    private StandInNode node(String name, long slot) throws IOException {
+        final StandInNode node = new StandInNode(name, slot);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Local JSON-RPC server: getSlot returns its slot, every other method returns its name after an optional delay.
+     */
+    private static class StandInNode {
+        private final String name;
+        private final HttpServer server;
+        private final Map<String, Long> delays = new HashMap<>();
+        private final List<String> errors = new ArrayList<>();
+        private volatile long slot;
+
+        private StandInNode(String name, long slot) throws IOException {
+            this.name = name;
+            this.slot = slot;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                JsonNode request = OBJECT_MAPPER.readTree(exchange.getRequestBody());
+                String method = request.get("method").asText();
+                try {
+                    Thread.sleep(delays.getOrDefault(method, 0L));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("jsonrpc", "2.0");
+                response.put("id", request.get("id").asLong());
+                if (errors.contains(method)) {
+                    response.put("error", Map.of("code", -32005, "message", "Node is unhealthy"));
+                } else {
+                    response.put("result", method.equals("getSlot") ? (Object) this.slot : this.name);
+                }
+
+                byte[] body = OBJECT_MAPPER.writeValueAsBytes(response);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            });
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+        }
+
+        private String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+
+        private RpcPool.Endpoint endpoint() {
+            final String url = url();
+            return new RpcPool.Endpoint() {
+                @Override
+                public String getUrl() {
+                    return url;
+                }
+
+                @Override
+                public <T> T call(String method, List<Object> params, Class<T> clazz) throws RpcException {
+                    try {
+                        byte[] request = OBJECT_MAPPER.writeValueAsBytes(Map.of(
+                                "jsonrpc", "2.0",
+                                "id", 1,
+                                "method", method,
+                                "params", params
+                        ));
+                        HttpResponse<String> response = HTTP_CLIENT.send(
+                                HttpRequest.newBuilder(URI.create(url))
+                                        .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                                        .build(),
+                                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
+                        );
+                        JsonNode body = OBJECT_MAPPER.readTree(response.body());
+                        if (body.has("error")) {
+                            throw new RpcException(body.get("error").get("message").asText());
+                        }
+                        return OBJECT_MAPPER.convertValue(body.get("result"), clazz);
+                    } catch (IOException | InterruptedException ex) {
+                        throw new RpcException(ex.getMessage());
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.util.SlabReader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlabReaderTest {
+
+    private static final int NODES_OFFSET = 45;
+    private static final int NODE_SIZE = 72;
+
+    /**
+     * Builds a slab where node order differs from price order:
+     * root (0) -> [leaf 105 (3), inner (1) -> [leaf 110 (2), leaf 120 (4)]], plus a free node (5).
+     */
+    private static byte[] buildSlab() {
+        final ByteBuffer slab = ByteBuffer.allocate(NODES_OFFSET + 6 * NODE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        slab.putInt(33, 0); // root
+        slab.putLong(37, 3); // leaf count
+
+        putInnerNode(slab, 0, 3, 1);
+        putInnerNode(slab, 1, 2, 4);
+        putLeafNode(slab, 2, 110, 7, (byte) 2);
+        putLeafNode(slab, 3, 105, 5, (byte) 3);
+        putLeafNode(slab, 4, 120, 9, (byte) 4);
+        slab.putInt(NODES_OFFSET + 5 * NODE_SIZE, 3); // free node
+
+        return slab.array();
+    }
+
+    private static void putInnerNode(ByteBuffer slab, int node, int leftChild, int rightChild) {
+        final int offset = NODES_OFFSET + node * NODE_SIZE;
+        slab.putInt(offset, 1);
+        slab.putInt(offset + 24, leftChild);
+        slab.putInt(offset + 28, rightChild);
+    }
+
+    private static void putLeafNode(ByteBuffer slab, int node, long price, long quantity, byte owner) {
+        final int offset = NODES_OFFSET + node * NODE_SIZE;
+        slab.putInt(offset, 2);
+        slab.putLong(offset + 16, price);
+        for (int i = 0; i < 32; i++) {
+            slab.put(offset + 24 + i, owner);
+        }
+        slab.putLong(offset + 56, quantity);
+    }
+
+    @Test
+    public void leavesAreReadInAscendingPriceOrder() {
+        final SlabReader reader = new SlabReader().wrap(buildSlab());
+
+        assertEquals(3, reader.getLeafCount());
+        assertEquals(105, reader.getPriceLots(0));
+        assertEquals(110, reader.getPriceLots(1));
+        assertEquals(120, reader.getPriceLots(2));
+        assertEquals(5, reader.getQuantityLots(0));
+        assertEquals(9, reader.getQuantityLots(2));
+
+        final byte[] owner = new byte[32];
+        reader.copyOwner(1, owner, 0);
+        final byte[] expectedOwner = new byte[32];
+        Arrays.fill(expectedOwner, (byte) 2);
+        assertArrayEquals(expectedOwner, owner);
+        assertArrayEquals(expectedOwner, reader.getOwner(1).toByteArray());
+    }
+
+    @Test
+    public void base64MatchesRawBytes() {
+        final byte[] slab = buildSlab();
+        final SlabReader reader = new SlabReader();
+
+        // Trailing bytes change the padding, check every variant
+        for (int extra = 0; extra < 3; extra++) {
+            byte[] data = Arrays.copyOf(slab, slab.length + extra);
+            reader.wrapBase64(Base64.getEncoder().encodeToString(data));
+
+            assertEquals(3, reader.getLeafCount());
+            assertEquals(120, reader.getPriceLots(2));
+            assertEquals(9, reader.getQuantityLots(2));
+        }
+    }
+
+    @Test
+    public void emptySlabHasNoLeaves() {
+        final byte[] slab = buildSlab();
+        ByteBuffer.wrap(slab).order(ByteOrder.LITTLE_ENDIAN).putLong(37, 0);
+
+        assertEquals(0, new SlabReader().wrap(slab).getLeafCount());
+        assertEquals(0, new SlabReader().wrap(new byte[0]).getLeafCount());
+    }
+}
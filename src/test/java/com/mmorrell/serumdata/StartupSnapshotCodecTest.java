@@ -0,0 +1,56 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.StartupSnapshot;
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.util.StartupSnapshotCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupSnapshotCodecTest {
+
+    private static final PublicKey MINT = new PublicKey("EPjFWdd5AufqSSqeM2qN1xzybapC8G4wEGGkZwyTDt1v");
+    private static final PublicKey MARKET = new PublicKey("9wFFyRfZBsuAha4YcuxcXLKwMxJR43S7fPfQLusDBzvT");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void roundTrip() throws IOException {
+        final Path path = directory.resolve("startup.snapshot");
+        assertTrue(StartupSnapshotCodec.read(path).isEmpty());
+
+        final Token token = Token.builder()
+                .name("USD Coin")
+                .address(MINT.toBase58())
+                .symbol("USDC")
+                .logoURI(null)
+                .chainId(101)
+                .decimals(6)
+                .publicKey(MINT)
+                .imageFormat("png")
+                .build();
+
+        StartupSnapshotCodec.write(StartupSnapshot.builder()
+                .createdAt(1234L)
+                .tokens(List.of(token))
+                .marketAccounts(Map.of(MARKET, new byte[]{1, 2, 3}))
+                .prices(Map.of(MINT, 1.5f))
+                .build(), path);
+
+        final StartupSnapshot snapshot = StartupSnapshotCodec.read(path).orElseThrow();
+        assertEquals(1234L, snapshot.getCreatedAt());
+        assertEquals(List.of(token), snapshot.getTokens());
+        assertArrayEquals(new byte[]{1, 2, 3}, snapshot.getMarketAccounts().get(MARKET));
+        assertEquals(1.5f, snapshot.getPrices().get(MINT));
+        assertFalse(Files.exists(directory.resolve("startup.snapshot.tmp")));
+    }
+}
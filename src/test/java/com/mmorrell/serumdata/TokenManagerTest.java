@@ -1,6 +1,8 @@
 package com.mmorrell.serumdata;
 
+import com.mmorrell.serumdata.manager.StartupSnapshotStore;
 import com.mmorrell.serumdata.manager.TokenManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
 import org.junit.jupiter.api.Test;
@@ -17,7 +19,7 @@ public class TokenManagerTest {
     public TokenManagerTest() {
         this.tokenManager = new TokenManager(new OkHttpClient.Builder()
                 .callTimeout(10, TimeUnit.SECONDS)
-                .build());
+                .build(), new StartupSnapshotStore(), new SimpleMeterRegistry());
     }
 
     @Test
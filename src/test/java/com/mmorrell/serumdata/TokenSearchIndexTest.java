@@ -0,0 +1,52 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.Token;
+import com.mmorrell.serumdata.util.TokenSearchIndex;
+import org.junit.jupiter.api.Test;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenSearchIndexTest {
+
+    private static final Token SOL = token("So11111111111111111111111111111111111111112", "SOL", "Wrapped SOL");
+    private static final Token SOLAPE = token("GHvFFSZ9BctWsEc5nujR1MTmmJWY7tgQz2AXE6WVFtGN", "SOLAPE", "SolAPE Token");
+    private static final Token SRM = token("SRMuApVNdxXokk5GT7XD5cUUgXMBCoAz2LHeuAoKWRt", "SRM", "Serum");
+    private static final Token FAKE_SRM = token("4k3Dyjzvzp8eMZWUXbBCjEvwSkkk59S5iCNLY3QrkX6R", "SRM", "Not Serum");
+
+    private final TokenSearchIndex index = new TokenSearchIndex(List.of(SOL, SOLAPE, SRM, FAKE_SRM));
+
+    @Test
+    public void exactSymbolFirstThenPrefixesByRank() {
+        // SOLAPE is more active, but SOL is an exact symbol match
+        final Map<PublicKey, Integer> ranks = Map.of(SOL.getPublicKey(), 5, SOLAPE.getPublicKey(), 1);
+        assertEquals(List.of(SOL, SOLAPE), index.search("sol", mint -> ranks.getOrDefault(mint, -1)));
+
+        // Name words match too, unranked tokens are excluded
+        assertEquals(List.of(SOLAPE), index.search("ape", mint -> ranks.getOrDefault(mint, -1)));
+    }
+
+    @Test
+    public void typosFallBackToTrigrams() {
+        assertEquals(List.of(SRM), index.search("serun", mint -> mint.equals(SRM.getPublicKey()) ? 0 : -1));
+    }
+
+    @Test
+    public void symbolAndMintLookups() {
+        assertEquals(2, index.getTokensBySymbol("srm").size());
+        assertEquals(List.of(SRM), index.search(SRM.getAddress(), mint -> 0));
+        assertEquals(4, index.search("", mint -> 0).size());
+    }
+
+    private static Token token(String address, String symbol, String name) {
+        return Token.builder()
+                .address(address)
+                .publicKey(PublicKey.valueOf(address))
+                .symbol(symbol)
+                .name(name)
+                .build();
+    }
+}
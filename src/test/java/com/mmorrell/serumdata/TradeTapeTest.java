@@ -0,0 +1,146 @@
+package com.mmorrell.serumdata;
+
+import com.mmorrell.serumdata.model.TradeRecord;
+import com.mmorrell.serumdata.util.TradeTape;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.p2p.solanaj.core.PublicKey;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeTapeTest {
+
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final PublicKey TAKER = new PublicKey("9BVcYqEQxyccuwznvxXqDkSJFavvTyheiTYk231T1A8S");
+
+    @TempDir
+    Path directory;
+
+    private static TradeRecord trade(long seqNum, long timestamp) {
+        return TradeRecord.builder()
+                .seqNum(seqNum)
+                .slot(seqNum * 10)
+                .timestamp(timestamp)
+                .price(1.5f)
+                .quantity(seqNum)
+                .bid(seqNum % 2 == 0)
+                .takerOoa(TAKER)
+                .build();
+    }
+
+    private static List<Long> seqNums(List<TradeRecord> trades) {
+        return trades.stream().map(TradeRecord::getSeqNum).toList();
+    }
+
+    @Test
+    public void appendRollAndQuery() throws IOException {
+        try (TradeTape tape = new TradeTape(directory, 4)) {
+            for (long seqNum = 1; seqNum <= 10; seqNum++) {
+                assertTrue(tape.append(trade(seqNum, 1000 * seqNum)));
+            }
+            assertFalse(tape.append(trade(5, 50_000)));
+            assertEquals(3, tape.getSegmentCount());
+
+            assertEquals(List.of(4L, 5L, 6L), seqNums(tape.getTradesSince(3, 3)));
+            assertEquals(List.of(9L, 10L), seqNums(tape.getTradesSince(8, 100)));
+            assertTrue(tape.getTradesSince(10, 100).isEmpty());
+            assertEquals(List.of(3L, 4L, 5L, 6L), seqNums(tape.getTradesBetween(3000, 7000, 100)));
+
+            final TradeRecord record = tape.getTradesSince(1, 1).get(0);
+            assertEquals(20, record.getSlot());
+            assertEquals(1.5f, record.getPrice(), 0.0001f);
+            assertTrue(record.isBid());
+            assertEquals(TAKER, record.getTakerOoa());
+            assertNull(record.getMakerOoa());
+        }
+    }
+
+    @Test
+    public void reopenContinuesFromLastSeqNum() throws IOException {
+        try (TradeTape tape = new TradeTape(directory, 16)) {
+            tape.append(trade(1, 1000));
+            tape.append(trade(2, 2000));
+        }
+
+        try (TradeTape tape = new TradeTape(directory, 16)) {
+            assertEquals(2, tape.getLastSeqNum());
+            assertFalse(tape.append(trade(2, 3000)));
+            assertTrue(tape.append(trade(3, 3000)));
+            assertEquals(List.of(1L, 2L, 3L), seqNums(tape.getTradesSince(-1, 100)));
+        }
+    }
+
+    @Test
+    public void secondTapeOnDirectoryIsReadOnly() throws IOException {
+        try (TradeTape writer = new TradeTape(directory, 16)) {
+            writer.append(trade(1, 1000));
+
+            try (TradeTape reader = new TradeTape(directory, 16)) {
+                assertTrue(reader.isReadOnly());
+                assertFalse(reader.append(trade(2, 2000)));
+                assertEquals(List.of(1L), seqNums(reader.getTradesSince(-1, 100)));
+            }
+
+            assertFalse(writer.isReadOnly());
+            assertTrue(writer.append(trade(2, 2000)));
+        }
+
+        try (TradeTape tape = new TradeTape(directory, 16)) {
+            assertFalse(tape.isReadOnly());
+        }
+    }
+
+    @Test
+    public void readOnlyTapeFollowsTheWriter() throws IOException {
+        try (TradeTape writer = new TradeTape(directory, 4)) {
+            writer.append(trade(1, 0));
+
+            try (TradeTape reader = new TradeTape(directory, 4)) {
+                assertTrue(reader.isReadOnly());
+                assertEquals(1, reader.getLastSeqNum());
+
+                // Appended to the mapped segment, then rolled into a new one
+                for (long seqNum = 2; seqNum <= 6; seqNum++) {
+                    writer.append(trade(seqNum, seqNum * 1000));
+                }
+                reader.refresh();
+                assertEquals(6, reader.getLastSeqNum());
+                assertEquals(List.of(4L, 5L, 6L), seqNums(reader.getTradesSince(3, 100)));
+
+                // Day 0 segments expired and deleted by the writer
+                writer.append(trade(7, DAY_MS));
+                writer.append(trade(8, 2 * DAY_MS));
+                writer.compact(DAY_MS / 2);
+                reader.refresh();
+                assertEquals(List.of(7L, 8L), seqNums(reader.getTradesSince(-1, 100)));
+                assertEquals(List.of(7L), seqNums(reader.getTradesBetween(DAY_MS, 2 * DAY_MS, 100)));
+            }
+        }
+    }
+
+    @Test
+    public void compactDropsExpiredAndMergesSmallSegments() throws IOException {
+        try (TradeTape tape = new TradeTape(directory, 8)) {
+            // One fill per day, each day rolls a new segment
+            for (long day = 0; day < 5; day++) {
+                tape.append(trade(day + 1, day * DAY_MS));
+            }
+            assertEquals(5, tape.getSegmentCount());
+
+            tape.compact(DAY_MS);
+            // Day 0 expired, days 1-3 merged, day 4 is still open
+            assertEquals(2, tape.getSegmentCount());
+            assertEquals(List.of(2L, 3L, 4L, 5L), seqNums(tape.getTradesSince(-1, 100)));
+            assertEquals(List.of(3L, 4L), seqNums(tape.getTradesBetween(2 * DAY_MS, 4 * DAY_MS, 100)));
+        }
+
+        try (TradeTape tape = new TradeTape(directory, 8)) {
+            assertEquals(List.of(2L, 3L, 4L, 5L), seqNums(tape.getTradesSince(-1, 100)));
+        }
+    }
+}